@@ -0,0 +1,36 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample;
+
+/**
+ * Iteration counts shared by the benchmarks, which can be overridden on the command line.
+ */
+final class BenchmarkSettings {
+    /**
+     * Number of one second warmup iterations.
+     */
+    static final int WARMUP_ITERATIONS = 5;
+
+    /**
+     * Number of one second measurement iterations.
+     */
+    static final int MEASUREMENT_ITERATIONS = 5;
+
+    /**
+     * Do not allow instantiation.
+     */
+    private BenchmarkSettings() {
+    }
+}
@@ -0,0 +1,78 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample;
+
+import java.io.IOException;
+import java.security.NoSuchAlgorithmException;
+
+import org.codehaus.jettison.json.JSONException;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Corpus of Tweets that each benchmark invocation takes the next Tweet from, cycling through the corpus. Larger corpora
+ * show the cost of the hot path once its working set no longer fits in the CPU caches.
+ */
+@State(Scope.Thread)
+public class CorpusState {
+    /**
+     * Seed for generating the corpus, fixed so that results are comparable across runs.
+     */
+    private static final long SEED = 20140219L;
+
+    @Param({"MIXED", "PLAIN", "IMAGES", "RETWEET", "REPLY", "MENTIONS"})
+    public TweetCorpus.Shape shape;
+
+    @Param({"100", "1000", "10000"})
+    public int size;
+
+    private TweetCorpus corpus;
+    private int next;
+
+    /**
+     * Generates the corpus.
+     *
+     * @throws JSONException if the Tweet JSON could not be built or parsed
+     * @throws IOException if an image could not be hashed
+     * @throws NoSuchAlgorithmException if the image hash algorithm is not available
+     */
+    @Setup(Level.Trial)
+    public void generateCorpus() throws JSONException, IOException, NoSuchAlgorithmException {
+        corpus = TweetCorpus.generate(shape, size, SEED);
+    }
+
+    /**
+     * Returns the corpus.
+     *
+     * @return Generated corpus
+     */
+    TweetCorpus getCorpus() {
+        return corpus;
+    }
+
+    /**
+     * Returns the index of the Tweet for the next invocation.
+     *
+     * @return Index of a Tweet in the corpus
+     */
+    int nextIndex() {
+        final int idx = next;
+        next = (next + 1) % corpus.size();
+        return idx;
+    }
+}
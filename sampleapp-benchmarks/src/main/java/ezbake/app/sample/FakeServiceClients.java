@@ -0,0 +1,382 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample;
+
+import static ezbake.data.image.frack.utilities.IndexingUtils.bytesToHex;
+import static ezbake.data.image.frack.utilities.IndexingUtils.getHash;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.thrift.TBase;
+import org.apache.thrift.TException;
+import org.apache.thrift.TProcessor;
+import org.apache.thrift.TServiceClient;
+import org.apache.thrift.protocol.TCompactProtocol;
+import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.protocol.TProtocolFactory;
+
+import ezbake.app.sample.util.ServiceClients;
+import ezbake.base.thrift.EzSecurityToken;
+import ezbake.services.indexing.image.thrift.Document;
+import ezbake.services.indexing.image.thrift.IngestedDocumentInfo;
+import ezbake.services.indexing.image.thrift.IngestedImageInfo;
+
+/**
+ * In-process stand-ins for the EzBake services, for measuring the pipeline without them. Clients are the generated
+ * Thrift clients connected through a {@link LoopbackTransport} to a processor for the service, so every call pays for
+ * serialization as it would against a real service. The services accept every call and answer with IDs or empty
+ * results, except that the image indexer reports the IDs of the images it is given, as the image worker checks them.
+ * <p/>
+ * Each service can be given a latency, uniform random jitter and a rate of injected errors, configured per service
+ * name with the formats below or for all services with {@value #DEFAULT_SERVICE}. Calls and injected errors are
+ * counted per service across all instances.
+ */
+public final class FakeServiceClients implements ServiceClients {
+    /**
+     * Configuration property formats, formatted with the service name, for each service's latency, jitter and error
+     * rate.
+     */
+    public static final String LATENCY_MILLIS_PROP_FORMAT = "sampleapp.harness.%s.latency.millis";
+    public static final String JITTER_MILLIS_PROP_FORMAT = "sampleapp.harness.%s.jitter.millis";
+    public static final String ERROR_RATE_PROP_FORMAT = "sampleapp.harness.%s.error.rate";
+
+    /**
+     * Service name under which to configure all services.
+     */
+    public static final String DEFAULT_SERVICE = "default";
+
+    private static final String ADD_DOCUMENT_METHOD = "addDocument";
+    private static final String INGEST_DOCUMENTS_METHOD = "ingestDocuments";
+
+    /**
+     * Calls and injected errors keyed by service name.
+     */
+    private static final ConcurrentMap<String, AtomicLong> CALLS = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, AtomicLong> ERRORS = new ConcurrentHashMap<>();
+
+    /**
+     * Source of the provenance IDs handed out by the provenance service.
+     */
+    private static final AtomicLong PROVENANCE_IDS = new AtomicLong();
+
+    private final Properties props;
+    private final TProtocolFactory protocolFactory = new TCompactProtocol.Factory();
+
+    /**
+     * Idle clients keyed by service name, and the service name of each client that is out.
+     */
+    private final Map<String, Deque<TServiceClient>> idleClients = new HashMap<>();
+    private final Map<TServiceClient, String> activeClients = new IdentityHashMap<>();
+
+    /**
+     * Constructor.
+     *
+     * @param props Configuration properties
+     */
+    public FakeServiceClients(Properties props) {
+        this.props = props;
+    }
+
+    /**
+     * Returns the number of calls made to each service.
+     *
+     * @return Calls keyed by service name
+     */
+    public static Map<String, Long> getCalls() {
+        return snapshot(CALLS);
+    }
+
+    /**
+     * Returns the number of errors injected into calls to each service.
+     *
+     * @return Injected errors keyed by service name
+     */
+    public static Map<String, Long> getErrors() {
+        return snapshot(ERRORS);
+    }
+
+    @Override
+    public synchronized <T extends TServiceClient> T getClient(String serviceName, Class<T> clientClass)
+            throws TException {
+        final Deque<TServiceClient> idle = idleClients.get(serviceName);
+        TServiceClient client = idle == null ? null : idle.poll();
+        if (client == null || !clientClass.isInstance(client)) {
+            client = createClient(serviceName, clientClass);
+        }
+
+        activeClients.put(client, serviceName);
+        return clientClass.cast(client);
+    }
+
+    @Override
+    public synchronized void returnToPool(TServiceClient client) {
+        final String serviceName = activeClients.remove(client);
+        if (serviceName == null) {
+            return;
+        }
+
+        Deque<TServiceClient> idle = idleClients.get(serviceName);
+        if (idle == null) {
+            idle = new ArrayDeque<>();
+            idleClients.put(serviceName, idle);
+        }
+
+        idle.push(client);
+    }
+
+    @Override
+    public EzSecurityToken fetchAppToken() {
+        return new EzSecurityToken();
+    }
+
+    @Override
+    public void close() {
+        // Clients hold no resources
+    }
+
+    /**
+     * Creates a client connected to an in-process stand-in for a service.
+     *
+     * @param serviceName Name of the service
+     * @param clientClass Class of the generated client, nested in the generated service class
+     * @param <T> Type of the client
+     * @return Client for the stand-in
+     * @throws TException if the client could not be created
+     */
+    private <T extends TServiceClient> T createClient(String serviceName, Class<T> clientClass) throws TException {
+        final String serviceClassName = clientClass.getEnclosingClass().getName();
+        try {
+            final Class<?> ifaceClass = Class.forName(serviceClassName + "$Iface");
+            final Object service = Proxy.newProxyInstance(
+                    ifaceClass.getClassLoader(), new Class<?>[] {ifaceClass}, new FakeService(serviceName));
+
+            final TProcessor processor = (TProcessor) Class.forName(serviceClassName + "$Processor")
+                    .getConstructor(ifaceClass).newInstance(service);
+
+            final TProtocol protocol = protocolFactory.getProtocol(new LoopbackTransport(processor, protocolFactory));
+            return clientClass.getConstructor(TProtocol.class).newInstance(protocol);
+        } catch (final ReflectiveOperationException e) {
+            throw new TException(String.format("Unable to create stand-in client for service '%s'", serviceName), e);
+        }
+    }
+
+    /**
+     * Returns a configuration property of a service, falling back to the property for all services.
+     *
+     * @param format Property format
+     * @param serviceName Name of the service
+     * @return Property value, or "0" if not configured
+     */
+    private String getServiceProperty(String format, String serviceName) {
+        return props.getProperty(
+                String.format(format, serviceName), props.getProperty(String.format(format, DEFAULT_SERVICE), "0"));
+    }
+
+    /**
+     * Returns a copy of counters.
+     *
+     * @param counters Counters keyed by service name
+     * @return Counts keyed by service name
+     */
+    private static Map<String, Long> snapshot(Map<String, AtomicLong> counters) {
+        final Map<String, Long> counts = new TreeMap<>();
+        for (final Map.Entry<String, AtomicLong> counter : counters.entrySet()) {
+            counts.put(counter.getKey(), counter.getValue().get());
+        }
+
+        return counts;
+    }
+
+    /**
+     * Increments the counter of a service.
+     *
+     * @param counters Counters keyed by service name
+     * @param serviceName Name of the service
+     */
+    private static void increment(ConcurrentMap<String, AtomicLong> counters, String serviceName) {
+        AtomicLong counter = counters.get(serviceName);
+        if (counter == null) {
+            final AtomicLong created = new AtomicLong();
+            counter = counters.putIfAbsent(serviceName, created);
+            if (counter == null) {
+                counter = created;
+            }
+        }
+
+        counter.incrementAndGet();
+    }
+
+    /**
+     * Returns a value of a type that a client can read back: an empty collection, string ID, zero or empty struct.
+     *
+     * @param type Return type of a service method
+     * @return Default value, or null for void
+     * @throws ReflectiveOperationException if a struct could not be created
+     */
+    private static Object getDefaultValue(Class<?> type) throws ReflectiveOperationException {
+        if (type == Void.TYPE) {
+            return null;
+        } else if (type == Boolean.TYPE) {
+            return Boolean.TRUE;
+        } else if (type == Long.TYPE) {
+            return 0L;
+        } else if (type == Integer.TYPE) {
+            return 0;
+        } else if (type == Double.TYPE) {
+            return 0.0;
+        } else if (type == String.class) {
+            return UUID.randomUUID().toString();
+        } else if (type == List.class) {
+            return new ArrayList<>();
+        } else if (type == Set.class) {
+            return new HashSet<>();
+        } else if (type == Map.class) {
+            return new HashMap<>();
+        } else if (type == ByteBuffer.class) {
+            return ByteBuffer.allocate(0);
+        } else if (TBase.class.isAssignableFrom(type)) {
+            return type.newInstance();
+        } else if (type.isEnum()) {
+            return type.getEnumConstants()[0];
+        }
+
+        return null;
+    }
+
+    /**
+     * Reports the ID of each image given to the image indexer, computed as the generators compute it.
+     *
+     * @param documents Image documents
+     * @return Info of the ingested documents
+     * @throws TException if an image could not be hashed
+     */
+    private static List<IngestedDocumentInfo> ingestDocuments(List<Document> documents) throws TException {
+        final List<IngestedDocumentInfo> ingested = new ArrayList<>(documents.size());
+        for (final Document document : documents) {
+            try {
+                final String imageId = bytesToHex(getHash(document.getBlob(), document.getFileName()));
+                ingested.add(
+                        new IngestedDocumentInfo().setIngestedImages(
+                                Collections.singletonList(new IngestedImageInfo().setImageId(imageId))));
+            } catch (IOException | NoSuchAlgorithmException e) {
+                throw new TException("Could not hash image " + document.getFileName(), e);
+            }
+        }
+
+        return ingested;
+    }
+
+    /**
+     * Serves the calls to one service.
+     */
+    private final class FakeService implements InvocationHandler {
+        private final String serviceName;
+        private final long latencyMillis;
+        private final long jitterMillis;
+        private final double errorRate;
+
+        /**
+         * Constructor.
+         *
+         * @param serviceName Name of the service
+         */
+        FakeService(String serviceName) {
+            this.serviceName = serviceName;
+            latencyMillis = Long.parseLong(getServiceProperty(LATENCY_MILLIS_PROP_FORMAT, serviceName));
+            jitterMillis = Long.parseLong(getServiceProperty(JITTER_MILLIS_PROP_FORMAT, serviceName));
+            errorRate = Double.parseDouble(getServiceProperty(ERROR_RATE_PROP_FORMAT, serviceName));
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Object invoke(Object proxy, Method method, Object[] args) throws TException {
+            if (method.getDeclaringClass() == Object.class) {
+                return invokeObjectMethod(proxy, method, args);
+            }
+
+            increment(CALLS, serviceName);
+            final ThreadLocalRandom random = ThreadLocalRandom.current();
+            final long delayMillis = latencyMillis + (jitterMillis > 0 ? random.nextLong(jitterMillis) : 0);
+            if (delayMillis > 0) {
+                try {
+                    TimeUnit.MILLISECONDS.sleep(delayMillis);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new TException("Interrupted while simulating latency", e);
+                }
+            }
+
+            if (random.nextDouble() < errorRate) {
+                increment(ERRORS, serviceName);
+                throw new TException(String.format("Injected error in %s.%s", serviceName, method.getName()));
+            }
+
+            switch (method.getName()) {
+                case ADD_DOCUMENT_METHOD:
+                    return PROVENANCE_IDS.incrementAndGet();
+                case INGEST_DOCUMENTS_METHOD:
+                    return ingestDocuments((List<Document>) args[0]);
+                default:
+                    try {
+                        return getDefaultValue(method.getReturnType());
+                    } catch (final ReflectiveOperationException e) {
+                        throw new TException("Could not create result of " + method.getName(), e);
+                    }
+            }
+        }
+
+        /**
+         * Implements the methods of {@link Object} for the service proxy.
+         *
+         * @param proxy Service proxy
+         * @param method Method of {@link Object}
+         * @param args Arguments of the method
+         * @return Result of the method
+         */
+        private Object invokeObjectMethod(Object proxy, Method method, Object[] args) {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    return serviceName;
+            }
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample;
+
+import java.io.IOException;
+import java.security.NoSuchAlgorithmException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ezbake.services.extractor.imagemetadata.thrift.Image;
+
+/**
+ * Benchmarks hashing an image into its EzBake image ID, as the generators do for every image referenced by a Tweet,
+ * across the sizes of thumbnails, photos and large originals.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = BenchmarkSettings.WARMUP_ITERATIONS)
+@Measurement(iterations = BenchmarkSettings.MEASUREMENT_ITERATIONS)
+public class ImageHashBenchmark {
+    @Param({"16384", "131072", "1048576"})
+    public int imageBytes;
+
+    private Image image;
+
+    /**
+     * Creates an image of random bytes.
+     */
+    @Setup(Level.Trial)
+    public void createImage() {
+        final byte[] blob = new byte[imageBytes];
+        new Random(imageBytes).nextBytes(blob);
+
+        image = new Image();
+        image.setBlob(blob);
+        image.setFileName("436206756168220674.jpg");
+    }
+
+    /**
+     * Hashes the image into its ID.
+     *
+     * @return EzBake image ID
+     * @throws IOException if the image could not be read for hashing
+     * @throws NoSuchAlgorithmException if the hash algorithm is not available
+     */
+    @Benchmark
+    public String getImageId() throws IOException, NoSuchAlgorithmException {
+        return TweetGenerator.getImageId(image);
+    }
+}
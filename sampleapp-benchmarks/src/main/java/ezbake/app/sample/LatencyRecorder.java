@@ -0,0 +1,69 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample;
+
+import java.util.Arrays;
+
+/**
+ * Records latencies and reports their percentiles. Every sample is kept, which suits runs over a bounded corpus.
+ */
+final class LatencyRecorder {
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final double NANOS_PER_MILLI = 1e6;
+    private static final double PERCENT = 100;
+
+    private long[] samples = new long[INITIAL_CAPACITY];
+    private int count;
+
+    /**
+     * Records a latency.
+     *
+     * @param nanos Latency in nanoseconds
+     */
+    synchronized void record(long nanos) {
+        if (count == samples.length) {
+            samples = Arrays.copyOf(samples, count * 2);
+        }
+
+        samples[count++] = nanos;
+    }
+
+    /**
+     * Returns the recorded latencies in ascending order.
+     *
+     * @return Sorted latencies in nanoseconds
+     */
+    synchronized long[] getSorted() {
+        final long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    /**
+     * Returns a percentile of sorted latencies in milliseconds, using the nearest rank.
+     *
+     * @param sorted Sorted latencies in nanoseconds
+     * @param percentile Percentile between 0 and 100
+     * @return Latency in milliseconds, or 0 if there are no latencies
+     */
+    static double getPercentileMillis(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+
+        final int rank = (int) Math.ceil(percentile / PERCENT * sorted.length);
+        return sorted[Math.max(rank, 1) - 1] / NANOS_PER_MILLI;
+    }
+}
@@ -0,0 +1,86 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample;
+
+import org.apache.thrift.TException;
+import org.apache.thrift.TProcessor;
+import org.apache.thrift.protocol.TProtocolFactory;
+import org.apache.thrift.transport.TMemoryBuffer;
+import org.apache.thrift.transport.TMemoryInputTransport;
+import org.apache.thrift.transport.TTransport;
+import org.apache.thrift.transport.TTransportException;
+
+/**
+ * Transport that hands each request to a processor in process when it is flushed, and reads the processor's response,
+ * so that generated Thrift clients can call local service implementations through the full serialization path.
+ */
+final class LoopbackTransport extends TTransport {
+    private static final int INITIAL_BUFFER_BYTES = 1024;
+
+    private final TProcessor processor;
+    private final TProtocolFactory protocolFactory;
+    private TMemoryBuffer request = new TMemoryBuffer(INITIAL_BUFFER_BYTES);
+    private TMemoryInputTransport response = new TMemoryInputTransport(new byte[0]);
+
+    /**
+     * Constructor.
+     *
+     * @param processor Processor that serves the requests
+     * @param protocolFactory Factory for the protocol used by the client
+     */
+    LoopbackTransport(TProcessor processor, TProtocolFactory protocolFactory) {
+        this.processor = processor;
+        this.protocolFactory = protocolFactory;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return true;
+    }
+
+    @Override
+    public void open() {
+        // Always open
+    }
+
+    @Override
+    public void close() {
+        // Nothing to release
+    }
+
+    @Override
+    public int read(byte[] buf, int off, int len) throws TTransportException {
+        return response.read(buf, off, len);
+    }
+
+    @Override
+    public void write(byte[] buf, int off, int len) throws TTransportException {
+        request.write(buf, off, len);
+    }
+
+    @Override
+    public void flush() throws TTransportException {
+        final TMemoryInputTransport input = new TMemoryInputTransport(request.getArray(), 0, request.length());
+        final TMemoryBuffer output = new TMemoryBuffer(INITIAL_BUFFER_BYTES);
+        request = new TMemoryBuffer(INITIAL_BUFFER_BYTES);
+        try {
+            processor.process(protocolFactory.getProtocol(input), protocolFactory.getProtocol(output));
+        } catch (final TException e) {
+            throw new TTransportException(e);
+        }
+
+        response = new TMemoryInputTransport(output.getArray(), 0, output.length());
+    }
+}
@@ -0,0 +1,553 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.apache.thrift.TDeserializer;
+import org.apache.thrift.TException;
+import org.apache.thrift.TSerializer;
+import org.apache.thrift.protocol.TCompactProtocol;
+import org.codehaus.jettison.json.JSONException;
+import org.codehaus.jettison.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import ezbake.app.sample.thrift.Tweet;
+import ezbake.app.sample.util.ServiceClientsFactory;
+import ezbake.base.thrift.Visibility;
+import ezbake.common.properties.EzProperties;
+import ezbake.frack.api.Worker;
+import ezbake.services.extractor.imagemetadata.thrift.Image;
+
+/**
+ * Runs the pipeline built by {@link TweetPipelineBuilder} in process, with the file generator feeding the Tweet,
+ * relationship and image workers through bounded queues, and the EzBake services replaced by
+ * {@link FakeServiceClients}. Tweets are passed to each worker serialized, as they are between pipeline stages.
+ * <p/>
+ * The corpus is read from {@code tweets.json.file} and {@code tweets.image.dir} when set, and is otherwise generated
+ * with the shape and size configured below. Reports sustained throughput after the warmup Tweets, the latency
+ * percentiles of each stage, of the wait in each worker's queue and of each Tweet from generation until every worker
+ * has processed it, and the backlog of each queue.
+ * <p/>
+ * Configuration is read from the properties file given as the only argument, overridden by system properties.
+ */
+public final class PipelineHarness {
+    /**
+     * Configuration properties for the generated corpus, used when no Tweets file is configured.
+     */
+    public static final String CORPUS_SHAPE_PROP = "sampleapp.harness.corpus.shape";
+    public static final String CORPUS_SIZE_PROP = "sampleapp.harness.corpus.size";
+
+    /**
+     * Configuration property for the capacity of each worker's queue, beyond which the generator waits.
+     */
+    public static final String QUEUE_CAPACITY_PROP = "sampleapp.harness.queue.capacity";
+
+    /**
+     * Configuration property for the number of threads, each with its own worker instance, of each worker.
+     */
+    public static final String WORKER_THREADS_PROP = "sampleapp.harness.worker.threads";
+
+    /**
+     * Configuration property for the number of Tweets completed before throughput is measured.
+     */
+    public static final String WARMUP_TWEETS_PROP = "sampleapp.harness.warmup.tweets";
+
+    /**
+     * Configuration property for how often the queue backlogs are sampled.
+     */
+    public static final String BACKLOG_SAMPLE_MILLIS_PROP = "sampleapp.harness.backlog.sample.millis";
+
+    private static final Logger logger = LoggerFactory.getLogger(PipelineHarness.class);
+
+    private static final String DEFAULT_CORPUS_SHAPE = TweetCorpus.Shape.MIXED.name();
+    private static final int DEFAULT_CORPUS_SIZE = 1000;
+    private static final int DEFAULT_QUEUE_CAPACITY = 1000;
+    private static final int DEFAULT_WORKER_THREADS = 1;
+    private static final int DEFAULT_WARMUP_TWEETS = 100;
+    private static final long DEFAULT_BACKLOG_SAMPLE_MILLIS = 100;
+
+    private static final long CORPUS_SEED = 20140219L;
+    private static final String TWEETS_FILE_NAME = "tweets.json";
+    private static final String IMAGE_DIR_NAME = "tweet_images";
+    private static final double NANOS_PER_SECOND = 1e9;
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+    private static final double MAX_PERCENTILE = 100;
+    private static final String LATENCY_FORMAT = "%-34s %8d %9.2f %9.2f %9.2f %9.2f %9.2f%n";
+
+    /**
+     * Queue entry that tells a worker thread to stop.
+     */
+    private static final Item STOP = new Item(-1, null, null);
+
+    private final Properties props;
+    private final EzProperties config;
+    private final List<Stage> stages = new ArrayList<>();
+    private final LatencyRecorder generatorLatency = new LatencyRecorder();
+    private final LatencyRecorder endToEndLatency = new LatencyRecorder();
+    private final AtomicInteger generatorErrors = new AtomicInteger();
+    private final AtomicInteger completed = new AtomicInteger();
+    private final int warmupTweets;
+
+    /**
+     * Number of workers yet to process each Tweet, and the time each Tweet was generated.
+     */
+    private AtomicIntegerArray remaining;
+    private long[] generatedNanos;
+
+    /**
+     * Time the last warmup Tweet completed.
+     */
+    private volatile long measureStartNanos;
+
+    /**
+     * Constructor.
+     *
+     * @param props Configuration properties
+     */
+    public PipelineHarness(Properties props) {
+        this.props = props;
+        config = new EzProperties(props, false);
+        warmupTweets = config.getInteger(WARMUP_TWEETS_PROP, DEFAULT_WARMUP_TWEETS);
+        if (props.getProperty(ServiceClientsFactory.CLASS_PROP) == null) {
+            props.setProperty(ServiceClientsFactory.CLASS_PROP, FakeServiceClients.class.getName());
+        }
+
+        stages.add(new Stage("tweet-worker", TweetWorker.class));
+        stages.add(new Stage("relationship-worker", RelationshipWorker.class));
+        stages.add(new Stage("image-worker", ImageWorker.class));
+    }
+
+    /**
+     * Runs the harness and prints its report.
+     *
+     * @param args Optional path of a configuration properties file
+     * @throws Exception if the harness could not run
+     */
+    public static void main(String[] args) throws Exception {
+        final Properties props = new Properties();
+        if (args.length > 0) {
+            try (InputStream in = Files.newInputStream(Paths.get(args[0]))) {
+                props.load(in);
+            }
+        }
+
+        props.putAll(System.getProperties());
+        new PipelineHarness(props).run(System.out);
+    }
+
+    /**
+     * Runs the corpus through the pipeline.
+     *
+     * @param report Stream to print the report to
+     * @throws IOException if the corpus could not be written or read
+     * @throws JSONException if the corpus could not be generated
+     * @throws NoSuchAlgorithmException if the image hash algorithm is not available
+     * @throws InterruptedException if interrupted while waiting for the workers
+     */
+    public void run(PrintStream report) throws IOException, JSONException, NoSuchAlgorithmException,
+            InterruptedException {
+        Path corpusDir = null;
+        if (props.getProperty(TweetFileGenerator.TWEETS_JSON_FILE_PROP) == null) {
+            corpusDir = writeCorpus();
+        }
+
+        final ScheduledExecutorService backlogSampler = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("backlog-sampler").setDaemon(true).build());
+
+        try {
+            final TweetFileGenerator generator = new TweetFileGenerator();
+            generator.initialize(props);
+            final int tweetCount = generator.getTweetCount();
+            remaining = new AtomicIntegerArray(tweetCount);
+            generatedNanos = new long[tweetCount];
+
+            final int threads = config.getInteger(WORKER_THREADS_PROP, DEFAULT_WORKER_THREADS);
+            for (final Stage stage : stages) {
+                stage.start(threads);
+            }
+
+            final long sampleMillis = config.getLong(BACKLOG_SAMPLE_MILLIS_PROP, DEFAULT_BACKLOG_SAMPLE_MILLIS);
+            backlogSampler.scheduleAtFixedRate(
+                    new Runnable() {
+                        @Override
+                        public void run() {
+                            for (final Stage stage : stages) {
+                                stage.sampleBacklog();
+                            }
+                        }
+                    }, sampleMillis, sampleMillis, TimeUnit.MILLISECONDS);
+
+            final long startNanos = System.nanoTime();
+            generate(generator, tweetCount);
+            for (final Stage stage : stages) {
+                stage.stop();
+            }
+
+            printReport(report, tweetCount, startNanos, System.nanoTime());
+        } finally {
+            backlogSampler.shutdownNow();
+            if (corpusDir != null) {
+                deleteCorpus(corpusDir);
+            }
+        }
+    }
+
+    /**
+     * Generates every Tweet of the corpus and queues it for each worker, waiting while a queue is full.
+     *
+     * @param generator Initialized generator
+     * @param tweetCount Number of Tweets in the corpus
+     * @throws InterruptedException if interrupted while waiting for a queue
+     */
+    private void generate(TweetFileGenerator generator, int tweetCount) throws InterruptedException {
+        final TSerializer serializer = new TSerializer(new TCompactProtocol.Factory());
+        for (int idx = 0; idx < tweetCount; idx++) {
+            final long start = System.nanoTime();
+            final byte[] tweetBytes;
+            final Visibility visibility;
+            try {
+                final JSONObject tweetJson = generator.getTweetJson(idx);
+                final Tweet tweet = generator.parseTweet(tweetJson);
+                visibility = TweetGenerator.createVisibility(tweetJson);
+                tweetBytes = serializer.serialize(tweet);
+            } catch (JSONException | IOException | NoSuchAlgorithmException | TException | RuntimeException e) {
+                logger.warn("Could not generate Tweet {}", idx, e);
+                generatorErrors.incrementAndGet();
+                continue;
+            }
+
+            final long generated = System.nanoTime();
+            generatorLatency.record(generated - start);
+            generatedNanos[idx] = generated;
+            remaining.set(idx, stages.size());
+            for (final Stage stage : stages) {
+                stage.queue.put(new Item(idx, tweetBytes, new Visibility(visibility)));
+            }
+        }
+    }
+
+    /**
+     * Records that a worker processed a Tweet, and completes the Tweet once every worker has.
+     *
+     * @param idx Index of the Tweet
+     */
+    private void complete(int idx) {
+        if (remaining.decrementAndGet(idx) > 0) {
+            return;
+        }
+
+        final long now = System.nanoTime();
+        endToEndLatency.record(now - generatedNanos[idx]);
+        if (completed.incrementAndGet() == warmupTweets) {
+            measureStartNanos = now;
+        }
+    }
+
+    /**
+     * Writes a generated corpus in the layout read by {@link TweetFileGenerator}, and configures the generator to read
+     * it.
+     *
+     * @return Directory of the corpus
+     * @throws IOException if the corpus could not be written
+     * @throws JSONException if the corpus could not be generated
+     * @throws NoSuchAlgorithmException if the image hash algorithm is not available
+     */
+    private Path writeCorpus() throws IOException, JSONException, NoSuchAlgorithmException {
+        final TweetCorpus.Shape shape =
+                TweetCorpus.Shape.valueOf(props.getProperty(CORPUS_SHAPE_PROP, DEFAULT_CORPUS_SHAPE));
+
+        final int size = config.getInteger(CORPUS_SIZE_PROP, DEFAULT_CORPUS_SIZE);
+        final TweetCorpus corpus = TweetCorpus.generate(shape, size, CORPUS_SEED);
+
+        final Path corpusDir = Files.createTempDirectory("sampleapp-harness");
+        final Path imageDir = Files.createDirectory(corpusDir.resolve(IMAGE_DIR_NAME));
+        final StringBuilder tweetsJson = new StringBuilder("[");
+        for (int idx = 0; idx < corpus.size(); idx++) {
+            if (idx > 0) {
+                tweetsJson.append(',');
+            }
+
+            tweetsJson.append(corpus.getRawJson(idx));
+            for (final Image image : corpus.getImages(idx).values()) {
+                Files.write(imageDir.resolve(image.getFileName()), image.getBlob());
+            }
+        }
+
+        final Path tweetsFile = corpusDir.resolve(TWEETS_FILE_NAME);
+        Files.write(tweetsFile, tweetsJson.append(']').toString().getBytes(StandardCharsets.UTF_8));
+        props.setProperty(TweetFileGenerator.TWEETS_JSON_FILE_PROP, tweetsFile.toString());
+        props.setProperty(TweetFileGenerator.TWEETS_IMAGE_DIR_PROP, imageDir.toString());
+        logger.info("Wrote {} {} Tweets to {}", size, shape, corpusDir);
+        return corpusDir;
+    }
+
+    /**
+     * Deletes a corpus written by {@link #writeCorpus()}.
+     *
+     * @param corpusDir Directory of the corpus
+     * @throws IOException if the corpus could not be deleted
+     */
+    private static void deleteCorpus(Path corpusDir) throws IOException {
+        final Path imageDir = corpusDir.resolve(IMAGE_DIR_NAME);
+        try (DirectoryStream<Path> images = Files.newDirectoryStream(imageDir)) {
+            for (final Path image : images) {
+                Files.delete(image);
+            }
+        }
+
+        Files.delete(imageDir);
+        Files.deleteIfExists(corpusDir.resolve(TWEETS_FILE_NAME));
+        Files.delete(corpusDir);
+    }
+
+    /**
+     * Prints the report of a run.
+     *
+     * @param report Stream to print to
+     * @param tweetCount Number of Tweets in the corpus
+     * @param startNanos Time the run started
+     * @param endNanos Time the run ended
+     */
+    private void printReport(PrintStream report, int tweetCount, long startNanos, long endNanos) {
+        final int done = completed.get();
+        final boolean warmedUp = done > warmupTweets;
+        final int measured = warmedUp ? done - warmupTweets : done;
+        final long measuredNanos = warmedUp ? endNanos - measureStartNanos : endNanos - startNanos;
+        report.printf(
+                "Completed %d of %d Tweets in %.2f s, %d failed in the generator%n", done, tweetCount,
+                (endNanos - startNanos) / NANOS_PER_SECOND, generatorErrors.get());
+
+        report.printf(
+                "Sustained throughput: %.1f Tweets/s over %d Tweets after %d warmup Tweets%n",
+                measured * NANOS_PER_SECOND / Math.max(measuredNanos, 1), measured, warmedUp ? warmupTweets : 0);
+
+        report.println();
+        report.printf(
+                "%-34s %8s %9s %9s %9s %9s %9s%n", "Latency (ms)", "count", "p50", "p90", "p99", "p99.9", "max");
+
+        printLatency(report, "generator", generatorLatency);
+        for (final Stage stage : stages) {
+            printLatency(report, stage.name + " queue wait", stage.queueLatency);
+            printLatency(report, stage.name, stage.serviceLatency);
+        }
+
+        printLatency(report, "end to end", endToEndLatency);
+
+        report.println();
+        report.printf("%-34s %8s %9s %9s%n", "Queue backlog", "peak", "mean", "errors");
+        for (final Stage stage : stages) {
+            stage.printBacklog(report);
+        }
+
+        report.println();
+        final Map<String, Long> errors = FakeServiceClients.getErrors();
+        report.printf("%-34s %8s %9s%n", "Service", "calls", "injected");
+        for (final Map.Entry<String, Long> calls : FakeServiceClients.getCalls().entrySet()) {
+            final Long injected = errors.get(calls.getKey());
+            report.printf("%-34s %8d %9d%n", calls.getKey(), calls.getValue(), injected == null ? 0 : injected);
+        }
+    }
+
+    /**
+     * Prints the percentiles of a latency.
+     *
+     * @param report Stream to print to
+     * @param name Name of the latency
+     * @param recorder Recorded latencies
+     */
+    private static void printLatency(PrintStream report, String name, LatencyRecorder recorder) {
+        final long[] sorted = recorder.getSorted();
+        final double maxMillis = sorted.length == 0 ? 0 : LatencyRecorder.getPercentileMillis(sorted, MAX_PERCENTILE);
+        report.printf(
+                LATENCY_FORMAT, name, sorted.length, LatencyRecorder.getPercentileMillis(sorted, PERCENTILES[0]),
+                LatencyRecorder.getPercentileMillis(sorted, PERCENTILES[1]),
+                LatencyRecorder.getPercentileMillis(sorted, PERCENTILES[2]),
+                LatencyRecorder.getPercentileMillis(sorted, PERCENTILES[3]), maxMillis);
+    }
+
+    /**
+     * Tweet queued for a worker.
+     */
+    private static final class Item {
+        private final int idx;
+        private final byte[] tweetBytes;
+        private final Visibility visibility;
+        private final long queuedNanos = System.nanoTime();
+
+        /**
+         * Constructor.
+         *
+         * @param idx Index of the Tweet in the corpus
+         * @param tweetBytes Serialized Tweet
+         * @param visibility Visibility of the Tweet
+         */
+        Item(int idx, byte[] tweetBytes, Visibility visibility) {
+            this.idx = idx;
+            this.tweetBytes = tweetBytes;
+            this.visibility = visibility;
+        }
+    }
+
+    /**
+     * Worker stage, with its queue, threads and statistics.
+     */
+    private final class Stage {
+        private final String name;
+        private final Class<? extends Worker<Tweet>> workerClass;
+        private final BlockingQueue<Item> queue;
+        private final List<Thread> threads = new ArrayList<>();
+        private final List<Worker<Tweet>> workers = new ArrayList<>();
+        private final LatencyRecorder queueLatency = new LatencyRecorder();
+        private final LatencyRecorder serviceLatency = new LatencyRecorder();
+        private final AtomicInteger errors = new AtomicInteger();
+        private int maxBacklog;
+        private long backlogSum;
+        private int backlogSamples;
+
+        /**
+         * Constructor.
+         *
+         * @param name Name of the stage
+         * @param workerClass Class of the worker
+         */
+        Stage(String name, Class<? extends Worker<Tweet>> workerClass) {
+            this.name = name;
+            this.workerClass = workerClass;
+            queue = new ArrayBlockingQueue<>(config.getInteger(QUEUE_CAPACITY_PROP, DEFAULT_QUEUE_CAPACITY));
+        }
+
+        /**
+         * Initializes the workers and starts their threads.
+         *
+         * @param threadCount Number of threads, each with its own worker
+         */
+        void start(int threadCount) {
+            for (int idx = 0; idx < threadCount; idx++) {
+                final Worker<Tweet> worker;
+                try {
+                    worker = workerClass.newInstance();
+                } catch (InstantiationException | IllegalAccessException e) {
+                    throw new IllegalStateException("Could not create " + workerClass.getName(), e);
+                }
+
+                worker.initialize(props);
+                workers.add(worker);
+
+                final Thread thread = new Thread(
+                        new Runnable() {
+                            @Override
+                            public void run() {
+                                work(worker);
+                            }
+                        }, name + '-' + idx);
+
+                threads.add(thread);
+                thread.start();
+            }
+        }
+
+        /**
+         * Processes queued Tweets with a worker until stopped.
+         *
+         * @param worker Worker of this thread
+         */
+        private void work(Worker<Tweet> worker) {
+            final TDeserializer deserializer = new TDeserializer(new TCompactProtocol.Factory());
+            try {
+                Item item = queue.take();
+                while (item != STOP) {
+                    final long start = System.nanoTime();
+                    queueLatency.record(start - item.queuedNanos);
+                    try {
+                        final Tweet tweet = new Tweet();
+                        deserializer.deserialize(tweet, item.tweetBytes);
+                        worker.process(item.visibility, tweet);
+                    } catch (TException | RuntimeException e) {
+                        logger.debug("{} failed to process Tweet {}", name, item.idx, e);
+                        errors.incrementAndGet();
+                    }
+
+                    serviceLatency.record(System.nanoTime() - start);
+                    complete(item.idx);
+                    item = queue.take();
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * Stops the threads once they have processed every queued Tweet, and cleans up the workers.
+         *
+         * @throws InterruptedException if interrupted while waiting for the threads
+         */
+        void stop() throws InterruptedException {
+            for (int idx = 0; idx < threads.size(); idx++) {
+                queue.put(STOP);
+            }
+
+            for (final Thread thread : threads) {
+                thread.join();
+            }
+
+            for (final Worker<Tweet> worker : workers) {
+                worker.cleanup();
+            }
+        }
+
+        /**
+         * Records the current backlog of the queue.
+         */
+        synchronized void sampleBacklog() {
+            final int backlog = queue.size();
+            maxBacklog = Math.max(maxBacklog, backlog);
+            backlogSum += backlog;
+            backlogSamples++;
+        }
+
+        /**
+         * Prints the backlog of the queue and the errors of the workers.
+         *
+         * @param report Stream to print to
+         */
+        synchronized void printBacklog(PrintStream report) {
+            final double meanBacklog = backlogSamples == 0 ? 0 : (double) backlogSum / backlogSamples;
+            report.printf("%-34s %8d %9.1f %9d%n", name, maxBacklog, meanBacklog, errors.get());
+        }
+    }
+}
@@ -0,0 +1,50 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ezbake.services.graph.thrift.types.Graph;
+
+/**
+ * Benchmarks building the graph of users and relationships that {@link RelationshipWorker} writes for each Tweet.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = BenchmarkSettings.WARMUP_ITERATIONS)
+@Measurement(iterations = BenchmarkSettings.MEASUREMENT_ITERATIONS)
+public class RelationshipWorkerBenchmark {
+    /**
+     * Builds the graph of a Tweet.
+     *
+     * @param state Corpus of Tweets
+     * @return Graph of the Tweet
+     */
+    @Benchmark
+    public Graph parseTweetToGraph(CorpusState state) {
+        final int idx = state.nextIndex();
+        final TweetCorpus corpus = state.getCorpus();
+        return RelationshipWorker.parseTweetToGraph(corpus.getTweet(idx), corpus.getVisibility(idx));
+    }
+}
@@ -0,0 +1,338 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample;
+
+import java.io.IOException;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.codehaus.jettison.json.JSONArray;
+import org.codehaus.jettison.json.JSONException;
+import org.codehaus.jettison.json.JSONObject;
+
+import ezbake.app.sample.thrift.Tweet;
+import ezbake.app.sample.util.TweetParserUtils;
+import ezbake.base.thrift.Visibility;
+import ezbake.services.extractor.imagemetadata.thrift.Image;
+
+/**
+ * Deterministically generated corpus of Tweet JSON shaped like harvested Tweets, with the images, parsed {@link Tweet}
+ * objects and visibilities the pipeline derives from each Tweet. Generating the corpus in process keeps the benchmarks
+ * runnable offline and reproducible across runs.
+ */
+public final class TweetCorpus {
+    /**
+     * Shape of the Tweets in a corpus.
+     */
+    public enum Shape {
+        /**
+         * Tweets with at most one mention.
+         */
+        PLAIN,
+
+        /**
+         * Tweets with one to four photos.
+         */
+        IMAGES,
+
+        /**
+         * Retweets, which mention the author of the retweeted Tweet.
+         */
+        RETWEET,
+
+        /**
+         * Replies, which mention the author of the Tweet replied to.
+         */
+        REPLY,
+
+        /**
+         * Tweets with many mentions.
+         */
+        MENTIONS,
+
+        /**
+         * Tweets of each of the other shapes, chosen at random.
+         */
+        MIXED
+    }
+
+    /**
+     * Programs named in the source of the Tweets, covering each of the visibilities the generator assigns.
+     */
+    private static final String[] SOURCES = {
+            "<a href=\"http://twitter.com/download/iphone\" rel=\"nofollow\">Twitter for iPhone</a>", "web",
+            "<a href=\"http://tapbots.com/tweetbot\" rel=\"nofollow\">Tweetbot for iOS</a>",
+            "<a href=\"http://instagram.com\" rel=\"nofollow\">Instagram</a>",
+            "<a href=\"https://about.twitter.com/products/tweetdeck\" rel=\"nofollow\">TweetDeck</a>",
+            "<a href=\"http://www.facebook.com/twitter\" rel=\"nofollow\">Facebook</a>",
+            "<a href=\"http://www.hootsuite.com\" rel=\"nofollow\">Hootsuite</a>",
+    };
+
+    private static final String ID_STR_KEY = "id_str";
+    private static final String USER_KEY = "user";
+    private static final String TEXT_KEY = "text";
+    private static final String SCREEN_NAME_KEY = "screen_name";
+    private static final String REPLY_TO_TWEET_ID_KEY = "in_reply_to_status_id_str";
+    private static final String REPLY_TO_USER_ID_KEY = "in_reply_to_user_id_str";
+    private static final String REPLY_TO_SCREEN_NAME_KEY = "in_reply_to_screen_name";
+    private static final String IMAGE_EXTENSION = ".jpg";
+
+    private static final long FIRST_TWEET_ID = 436206756168220674L;
+    private static final long FIRST_USER_ID = 1353275904L;
+    private static final long FIRST_IMAGE_ID = 436206700000000000L;
+
+    private static final int USER_COUNT = 1000;
+    private static final int MANY_MENTIONS = 20;
+    private static final int MAX_PHOTOS = 4;
+
+    /**
+     * Images reuse a small set of blobs, so that large corpora of Tweets with images fit in memory. Their IDs still
+     * differ because the file name is hashed with the blob.
+     */
+    private static final int IMAGE_BLOBS = 16;
+    private static final int IMAGE_BYTES = 64 * 1024;
+
+    private final List<String> rawJsons;
+    private final List<JSONObject> tweetJsons;
+    private final List<Map<String, Image>> images;
+    private final List<Tweet> tweets;
+    private final List<Visibility> visibilities;
+
+    /**
+     * Constructor.
+     *
+     * @param size Number of Tweets in the corpus
+     */
+    private TweetCorpus(int size) {
+        rawJsons = new ArrayList<>(size);
+        tweetJsons = new ArrayList<>(size);
+        images = new ArrayList<>(size);
+        tweets = new ArrayList<>(size);
+        visibilities = new ArrayList<>(size);
+    }
+
+    /**
+     * Generates a corpus.
+     *
+     * @param shape Shape of the Tweets
+     * @param size Number of Tweets
+     * @param seed Seed for the choices made while generating, so that equal seeds give equal corpora
+     * @return Generated corpus
+     * @throws JSONException if the Tweet JSON could not be built or parsed
+     * @throws IOException if an image could not be hashed
+     * @throws NoSuchAlgorithmException if the image hash algorithm is not available
+     */
+    static TweetCorpus generate(Shape shape, int size, long seed)
+            throws JSONException, IOException, NoSuchAlgorithmException {
+        final Random random = new Random(seed);
+        final byte[][] blobs = new byte[IMAGE_BLOBS][IMAGE_BYTES];
+        for (final byte[] blob : blobs) {
+            random.nextBytes(blob);
+        }
+
+        final Shape[] tweetShapes = Shape.values();
+        final TweetCorpus corpus = new TweetCorpus(size);
+        for (int idx = 0; idx < size; idx++) {
+            Shape tweetShape = shape;
+            if (tweetShape == Shape.MIXED) {
+                // MIXED is the last shape, so it is never chosen itself
+                tweetShape = tweetShapes[random.nextInt(tweetShapes.length - 1)];
+            }
+
+            final JSONObject tweetJson = buildTweetJson(tweetShape, FIRST_TWEET_ID + idx, random);
+            final Map<String, Image> tweetImages = new HashMap<>();
+            for (final String twitterImageId : TweetParserUtils.getTwitterImageIds(tweetJson)) {
+                final Image image = new Image();
+                image.setBlob(blobs[random.nextInt(IMAGE_BLOBS)]);
+                image.setFileName(twitterImageId + IMAGE_EXTENSION);
+                image.setOriginalDocumentUri("file:///tweet_images/" + image.getFileName());
+                tweetImages.put(TweetGenerator.getImageId(image), image);
+            }
+
+            final String rawJson = tweetJson.toString();
+            corpus.rawJsons.add(rawJson);
+            corpus.tweetJsons.add(tweetJson);
+            corpus.images.add(tweetImages);
+            corpus.tweets.add(TweetGenerator.parseTweet(new JSONObject(rawJson), idx, tweetImages));
+            corpus.visibilities.add(TweetGenerator.createVisibility(tweetJson));
+        }
+
+        return corpus;
+    }
+
+    /**
+     * Builds the JSON of a Tweet.
+     *
+     * @param shape Shape of the Tweet, other than {@link Shape#MIXED}
+     * @param tweetId ID of the Tweet
+     * @param random Source of choices
+     * @return Tweet JSON
+     * @throws JSONException if the JSON could not be built
+     */
+    private static JSONObject buildTweetJson(Shape shape, long tweetId, Random random) throws JSONException {
+        final JSONObject author = buildUserJson(random.nextInt(USER_COUNT));
+        final List<JSONObject> mentions = new ArrayList<>();
+        final JSONObject tweetJson = new JSONObject();
+        tweetJson.put(ID_STR_KEY, String.valueOf(tweetId));
+        tweetJson.put("id", tweetId);
+        tweetJson.put("created_at", "Wed Feb 19 18:32:49 +0000 2014");
+        tweetJson.put("source", SOURCES[random.nextInt(SOURCES.length)]);
+        tweetJson.put("lang", "en");
+        tweetJson.put(USER_KEY, author);
+        tweetJson.put(REPLY_TO_TWEET_ID_KEY, JSONObject.NULL);
+        tweetJson.put(REPLY_TO_USER_ID_KEY, JSONObject.NULL);
+        tweetJson.put(REPLY_TO_SCREEN_NAME_KEY, JSONObject.NULL);
+
+        final JSONObject entities = new JSONObject();
+        entities.put("hashtags", new JSONArray());
+        entities.put("symbols", new JSONArray());
+        entities.put("urls", new JSONArray());
+
+        switch (shape) {
+            case IMAGES:
+                final JSONArray media = new JSONArray();
+                final int photos = 1 + random.nextInt(MAX_PHOTOS);
+                for (int idx = 0; idx < photos; idx++) {
+                    final String imageId = String.valueOf(FIRST_IMAGE_ID + tweetId * MAX_PHOTOS + idx);
+                    final JSONObject photo = new JSONObject();
+                    photo.put(ID_STR_KEY, imageId);
+                    photo.put("type", "photo");
+                    photo.put("media_url", "http://pbs.twimg.com/media/" + imageId + IMAGE_EXTENSION);
+                    media.put(photo);
+                }
+
+                entities.put("media", media);
+                break;
+            case RETWEET:
+                final JSONObject retweeted = buildUserJson(random.nextInt(USER_COUNT));
+                final JSONObject retweetedStatus = new JSONObject();
+                retweetedStatus.put(ID_STR_KEY, String.valueOf(tweetId - 1));
+                retweetedStatus.put(USER_KEY, retweeted);
+                retweetedStatus.put(TEXT_KEY, "Breaking news from the sample corpus");
+                tweetJson.put("retweeted_status", retweetedStatus);
+                mentions.add(retweeted);
+                break;
+            case REPLY:
+                final JSONObject repliedTo = buildUserJson(random.nextInt(USER_COUNT));
+                tweetJson.put(REPLY_TO_TWEET_ID_KEY, String.valueOf(tweetId - 1));
+                tweetJson.put(REPLY_TO_USER_ID_KEY, repliedTo.getString(ID_STR_KEY));
+                tweetJson.put(REPLY_TO_SCREEN_NAME_KEY, repliedTo.getString(SCREEN_NAME_KEY));
+                mentions.add(repliedTo);
+                break;
+            case MENTIONS:
+                for (int idx = 0; idx < MANY_MENTIONS; idx++) {
+                    mentions.add(buildUserJson(random.nextInt(USER_COUNT)));
+                }
+
+                break;
+            default:
+                if (random.nextBoolean()) {
+                    mentions.add(buildUserJson(random.nextInt(USER_COUNT)));
+                }
+
+                break;
+        }
+
+        final StringBuilder text = new StringBuilder();
+        final JSONArray userMentions = new JSONArray();
+        for (final JSONObject mention : mentions) {
+            text.append('@').append(mention.getString(SCREEN_NAME_KEY)).append(' ');
+            userMentions.put(mention);
+        }
+
+        entities.put("user_mentions", userMentions);
+        tweetJson.put("entities", entities);
+        tweetJson.put(TEXT_KEY, text.append("Sample Tweet ").append(tweetId).toString());
+        return tweetJson;
+    }
+
+    /**
+     * Builds the JSON of a user.
+     *
+     * @param userIdx Index of the user among all generated users
+     * @return User JSON
+     * @throws JSONException if the JSON could not be built
+     */
+    private static JSONObject buildUserJson(int userIdx) throws JSONException {
+        final JSONObject user = new JSONObject();
+        user.put(ID_STR_KEY, String.valueOf(FIRST_USER_ID + userIdx));
+        user.put(SCREEN_NAME_KEY, "sampleuser" + userIdx);
+        user.put("name", "Sample User " + userIdx);
+        return user;
+    }
+
+    /**
+     * Returns the number of Tweets in the corpus.
+     *
+     * @return Number of Tweets
+     */
+    int size() {
+        return tweets.size();
+    }
+
+    /**
+     * Returns the JSON text of a Tweet, as it is read from a harvested file.
+     *
+     * @param idx Index of the Tweet
+     * @return Tweet JSON text
+     */
+    String getRawJson(int idx) {
+        return rawJsons.get(idx);
+    }
+
+    /**
+     * Returns the parsed JSON of a Tweet.
+     *
+     * @param idx Index of the Tweet
+     * @return Tweet JSON
+     */
+    JSONObject getTweetJson(int idx) {
+        return tweetJsons.get(idx);
+    }
+
+    /**
+     * Returns the images of a Tweet.
+     *
+     * @param idx Index of the Tweet
+     * @return Map of EzBake image IDs to images
+     */
+    Map<String, Image> getImages(int idx) {
+        return images.get(idx);
+    }
+
+    /**
+     * Returns the {@link Tweet} parsed from a Tweet's JSON.
+     *
+     * @param idx Index of the Tweet
+     * @return Parsed Tweet
+     */
+    Tweet getTweet(int idx) {
+        return tweets.get(idx);
+    }
+
+    /**
+     * Returns the visibility the generator assigns to a Tweet.
+     *
+     * @param idx Index of the Tweet
+     * @return Visibility of the Tweet
+     */
+    Visibility getVisibility(int idx) {
+        return visibilities.get(idx);
+    }
+}
@@ -0,0 +1,66 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample;
+
+import java.util.concurrent.TimeUnit;
+
+import org.codehaus.jettison.json.JSONException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ezbake.app.sample.thrift.Tweet;
+import ezbake.base.thrift.Visibility;
+
+/**
+ * Benchmarks the parsing that {@link TweetGenerator} does for each Tweet before sending it to the workers, without the
+ * provenance service call and image reads that surround it.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = BenchmarkSettings.WARMUP_ITERATIONS)
+@Measurement(iterations = BenchmarkSettings.MEASUREMENT_ITERATIONS)
+public class TweetGeneratorBenchmark {
+    /**
+     * Creates a {@link Tweet} from the JSON of a Tweet and its images.
+     *
+     * @param state Corpus of Tweets
+     * @return Parsed Tweet
+     * @throws JSONException if the Tweet could not be parsed
+     */
+    @Benchmark
+    public Tweet parseTweet(CorpusState state) throws JSONException {
+        final int idx = state.nextIndex();
+        final TweetCorpus corpus = state.getCorpus();
+        return TweetGenerator.parseTweet(corpus.getTweetJson(idx), idx, corpus.getImages(idx));
+    }
+
+    /**
+     * Creates the visibility of a Tweet.
+     *
+     * @param state Corpus of Tweets
+     * @return Visibility of the Tweet
+     * @throws JSONException if the Tweet could not be parsed
+     */
+    @Benchmark
+    public Visibility createVisibility(CorpusState state) throws JSONException {
+        return TweetGenerator.createVisibility(state.getCorpus().getTweetJson(state.nextIndex()));
+    }
+}
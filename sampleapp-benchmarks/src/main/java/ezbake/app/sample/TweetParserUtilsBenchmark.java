@@ -0,0 +1,73 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample;
+
+import java.util.concurrent.TimeUnit;
+
+import org.codehaus.jettison.json.JSONException;
+import org.codehaus.jettison.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import ezbake.app.sample.util.TweetParserUtils;
+
+/**
+ * Benchmarks reading Tweet JSON and extracting the fields the pipeline uses from it with {@link TweetParserUtils}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = BenchmarkSettings.WARMUP_ITERATIONS)
+@Measurement(iterations = BenchmarkSettings.MEASUREMENT_ITERATIONS)
+public class TweetParserUtilsBenchmark {
+    /**
+     * Parses the JSON text of a Tweet.
+     *
+     * @param state Corpus of Tweets
+     * @return Parsed JSON
+     * @throws JSONException if the JSON could not be parsed
+     */
+    @Benchmark
+    public JSONObject parseJson(CorpusState state) throws JSONException {
+        return new JSONObject(state.getCorpus().getRawJson(state.nextIndex()));
+    }
+
+    /**
+     * Extracts every field the generator and workers read from the JSON of a Tweet.
+     *
+     * @param state Corpus of Tweets
+     * @param blackhole Consumer of the extracted fields
+     * @throws JSONException if a field could not be extracted
+     */
+    @Benchmark
+    public void extractFields(CorpusState state, Blackhole blackhole) throws JSONException {
+        final JSONObject tweetJson = state.getCorpus().getTweetJson(state.nextIndex());
+        blackhole.consume(TweetParserUtils.getId(tweetJson));
+        blackhole.consume(TweetParserUtils.getSourceProgramName(tweetJson));
+        blackhole.consume(TweetParserUtils.getAuthor(tweetJson));
+        blackhole.consume(TweetParserUtils.getMentionedUsers(tweetJson));
+        blackhole.consume(TweetParserUtils.getTwitterImageIds(tweetJson));
+        blackhole.consume(TweetParserUtils.getImageUrls(tweetJson));
+        blackhole.consume(TweetParserUtils.getRetweeted(tweetJson));
+        blackhole.consume(TweetParserUtils.getRepliedTo(tweetJson));
+        blackhole.consume(TweetParserUtils.hasImages(tweetJson));
+    }
+}
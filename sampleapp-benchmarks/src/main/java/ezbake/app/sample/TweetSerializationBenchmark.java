@@ -0,0 +1,110 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.thrift.TDeserializer;
+import org.apache.thrift.TException;
+import org.apache.thrift.TSerializer;
+import org.apache.thrift.protocol.TBinaryProtocol;
+import org.apache.thrift.protocol.TCompactProtocol;
+import org.apache.thrift.protocol.TProtocolFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ezbake.app.sample.thrift.Tweet;
+
+/**
+ * Benchmarks the Thrift serialization of {@link Tweet} objects that happens each time a Tweet is passed between the
+ * generator and the workers, with the binary and compact protocols.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = BenchmarkSettings.WARMUP_ITERATIONS)
+@Measurement(iterations = BenchmarkSettings.MEASUREMENT_ITERATIONS)
+public class TweetSerializationBenchmark {
+    @Param({"binary", "compact"})
+    public String protocol;
+
+    private TSerializer serializer;
+    private TDeserializer deserializer;
+    private List<byte[]> serialized;
+
+    /**
+     * Creates the serializers for the protocol and serializes each Tweet of the corpus for deserialization.
+     *
+     * @param state Corpus of Tweets
+     * @throws TException if a Tweet could not be serialized
+     */
+    @Setup(Level.Trial)
+    public void serializeCorpus(CorpusState state) throws TException {
+        final TProtocolFactory protocolFactory;
+        if ("compact".equals(protocol)) {
+            protocolFactory = new TCompactProtocol.Factory();
+        } else {
+            protocolFactory = new TBinaryProtocol.Factory();
+        }
+
+        serializer = new TSerializer(protocolFactory);
+        deserializer = new TDeserializer(protocolFactory);
+
+        final TweetCorpus corpus = state.getCorpus();
+        serialized = new ArrayList<>(corpus.size());
+        for (int idx = 0; idx < corpus.size(); idx++) {
+            serialized.add(serializer.serialize(corpus.getTweet(idx)));
+        }
+    }
+
+    /**
+     * Serializes a Tweet.
+     *
+     * @param state Corpus of Tweets
+     * @return Serialized Tweet
+     * @throws TException if the Tweet could not be serialized
+     */
+    @Benchmark
+    public byte[] serialize(CorpusState state) throws TException {
+        return serializer.serialize(state.getCorpus().getTweet(state.nextIndex()));
+    }
+
+    /**
+     * Deserializes a Tweet.
+     *
+     * @param state Corpus of Tweets
+     * @return Deserialized Tweet
+     * @throws TException if the Tweet could not be deserialized
+     */
+    @Benchmark
+    public Tweet deserialize(CorpusState state) throws TException {
+        final Tweet tweet = new Tweet();
+        deserializer.deserialize(tweet, serialized.get(state.nextIndex()));
+        return tweet;
+    }
+}
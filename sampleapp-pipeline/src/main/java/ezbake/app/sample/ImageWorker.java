@@ -17,8 +17,10 @@ package ezbake.app.sample;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
 import java.util.Set;
@@ -29,13 +31,21 @@ import org.slf4j.LoggerFactory;
 
 import com.google.common.collect.Sets;
 
+import ezbake.app.sample.metrics.Counter;
+import ezbake.app.sample.metrics.MetricNames;
+import ezbake.app.sample.metrics.PipelineMetrics;
 import ezbake.app.sample.thrift.Tweet;
+import ezbake.app.sample.util.Instrumentation;
+import ezbake.app.sample.util.KeyedExecutor;
+import ezbake.app.sample.util.ProvenanceIndex;
+import ezbake.app.sample.util.ProvenanceIndexWriter;
 import ezbake.app.sample.util.SampleAppConstants;
+import ezbake.app.sample.util.ServiceClients;
+import ezbake.app.sample.util.ServiceClientsFactory;
 import ezbake.base.thrift.EzSecurityToken;
 import ezbake.base.thrift.EzSecurityTokenException;
 import ezbake.base.thrift.Visibility;
 import ezbake.frack.api.Worker;
-import ezbake.security.client.EzbakeSecurityClient;
 import ezbake.services.extractor.imagemetadata.thrift.Image;
 import ezbake.services.indexing.image.thrift.Document;
 import ezbake.services.indexing.image.thrift.ImageIndexerService;
@@ -44,9 +54,6 @@ import ezbake.services.indexing.image.thrift.IngestedDocumentInfo;
 import ezbake.services.indexing.image.thrift.IngestedImageInfo;
 import ezbake.services.provenance.thrift.InheritanceInfo;
 import ezbake.services.provenance.thrift.ProvenanceService;
-import ezbake.thrift.ThriftClientPool;
-
-import ezbakehelpers.ezconfigurationhelpers.application.EzBakeApplicationConfigurationHelper;
 
 /**
  * Adds images from Tweets into image indexer service for metadata and similarity searches.
@@ -62,14 +69,29 @@ public final class ImageWorker extends Worker<Tweet> {
     private EzSecurityToken token;
 
     /**
-     * Pool from which to get Thrift clients.
+     * Source of Thrift clients and the security token.
+     */
+    private ServiceClients clients;
+
+    /**
+     * Index of the images ingested from each provenance ID, or null if disabled.
      */
-    private ThriftClientPool pool;
+    private ProvenanceIndexWriter provenanceIndex;
 
     /**
-     * Security client used to get security token.
+     * Timers and traces of process() and of the Thrift calls it makes, and sampled log of the Tweets processed.
      */
-    private EzbakeSecurityClient securityClient;
+    private Instrumentation instrumentation;
+
+    /**
+     * Count of images indexed.
+     */
+    private Counter imageCounter;
+
+    /**
+     * Runs the image indexing, concurrently if configured. Tweets are independent, so they are spread by ID.
+     */
+    private KeyedExecutor lanes;
 
     /**
      * Default constructor.
@@ -95,16 +117,22 @@ public final class ImageWorker extends Worker<Tweet> {
     public void initialize(Properties props) {
         super.initialize(props);
 
-        try {
-            pool = new ThriftClientPool(props);
+        instrumentation = Instrumentation.create(logger, props);
+        imageCounter = PipelineMetrics.get(props).counter(MetricNames.IMAGE_WORKER_IMAGES);
+        lanes = KeyedExecutor.create("image-worker", props);
 
-            securityClient = new EzbakeSecurityClient(props);
-            final String securityId = new EzBakeApplicationConfigurationHelper(props).getSecurityID();
-            token = securityClient.fetchAppToken(securityId);
+        try {
+            clients = ServiceClientsFactory.open(props);
+            token = clients.fetchAppToken();
+            provenanceIndex = ProvenanceIndexWriter.fromProperties(props, "image-worker");
         } catch (final EzSecurityTokenException ex) {
             final String errMsg = "EzSecurity token error";
             logger.error(errMsg, ex);
             throw new RuntimeException(errMsg, ex);
+        } catch (final IOException ex) {
+            final String errMsg = "Unable to open provenance index";
+            logger.error(errMsg, ex);
+            throw new RuntimeException(errMsg, ex);
         }
     }
 
@@ -112,46 +140,102 @@ public final class ImageWorker extends Worker<Tweet> {
     public void cleanup() {
         super.cleanup();
 
-        if (pool != null) {
-            pool.close();
+        // Finish the Tweets already handed to the lanes while the clients are still open
+        if (lanes != null) {
+            try {
+                lanes.close();
+            } catch (final IllegalStateException e) {
+                logger.error("Tweet failed before closing", e);
+            }
+        }
+
+        if (clients != null) {
+            try {
+                clients.close();
+            } catch (final IOException e) {
+                logger.error("Could not close service clients", e);
+            }
         }
 
-        if (securityClient != null) {
+        if (provenanceIndex != null) {
             try {
-                securityClient.close();
+                provenanceIndex.close();
             } catch (final IOException e) {
-                logger.error("Could not close security client", e);
+                logger.error("Could not close provenance index", e);
             }
         }
     }
 
     @Override
-    public void process(Visibility visibility, Tweet tweet) {
+    public void process(final Visibility visibility, final Tweet tweet) {
         if (tweet.getImagesSize() == 0) {
-            logger.info("Tweet {} has no images. Skipping processing", tweet.getId());
+            logger.debug("Tweet {} has no images. Skipping processing", tweet.getId());
             return;
         }
 
-        logger.info("Processing images from tweet {}", tweet.getId());
+        lanes.execute(
+                tweet.getId(), new Runnable() {
+                    @Override
+                    public void run() {
+                        indexImages(visibility, tweet);
+                    }
+                });
+    }
+
+    /**
+     * Registers the images of a Tweet with EzProvenance and indexes them in the image indexer.
+     *
+     * @param visibility Visibility of the Tweet
+     * @param tweet Tweet with images
+     */
+    private void indexImages(final Visibility visibility, final Tweet tweet) {
+        try {
+            instrumentation.trace(
+                    MetricNames.IMAGE_WORKER_PROCESS, tweet.getTraceContext(), new Instrumentation.Call<Void>() {
+                        @Override
+                        public Void call() throws TException {
+                            ingestImages(visibility, tweet);
+                            return null;
+                        }
+                    });
+        } catch (final TException e) {
+            logger.error("Thrift error", e);
+        }
+    }
+
+    /**
+     * Registers the images of a Tweet with EzProvenance, ingests them into the image indexer and records them in the
+     * provenance index.
+     *
+     * @param visibility Visibility of the Tweet
+     * @param tweet Tweet with images
+     * @throws TException if the images could not be registered or ingested
+     */
+    private void ingestImages(Visibility visibility, Tweet tweet) throws TException {
+        logger.debug("Processing images from tweet {}", tweet.getId());
 
         ImageIndexerService.Client imageIndexer = null;
         ProvenanceService.Client provenanceServiceClient = null;
         try {
-            imageIndexer = pool.getClient(ImageIndexerServiceConstants.SERVICE_NAME, ImageIndexerService.Client.class);
+            imageIndexer =
+                    clients.getClient(ImageIndexerServiceConstants.SERVICE_NAME, ImageIndexerService.Client.class);
 
-            provenanceServiceClient = pool.getClient("EzProvenanceService", ProvenanceService.Client.class);
+            provenanceServiceClient = clients.getClient("EzProvenanceService", ProvenanceService.Client.class);
 
             final List<Document> imageDocs = new ArrayList<>(tweet.getImagesSize());
+            final Map<String, Long> imageProvenanceIds = new HashMap<>(tweet.getImagesSize());
             for (final Entry<String, Image> imageEntry : tweet.getImages().entrySet()) {
                 final Image image = imageEntry.getValue();
                 final Document imageDoc = new Document();
                 final Visibility updatedVisibility = new Visibility(visibility);
                 final String imageURI = SampleAppConstants.getImageUri(image.getFileName());
                 final List<InheritanceInfo> inheritanceInfo = getInheritanceInfoFromTweetId(tweet.getId());
-                logger.info("Registering {} with provenance service, inheritance info: {}", imageURI, inheritanceInfo);
-                final long provenanceId = provenanceServiceClient.addDocument(token, imageURI, inheritanceInfo, null);
+                logger.debug(
+                        "Registering {} with provenance service, inheritance info: {}", imageURI, inheritanceInfo);
 
-                logger.info("Registered with provenance service with ID: {}", provenanceId);
+                final long provenanceId = addDocument(provenanceServiceClient, imageURI, inheritanceInfo);
+                logger.debug("Registered with provenance service with ID: {}", provenanceId);
+                imageProvenanceIds.put(imageEntry.getKey(), provenanceId);
 
                 updatedVisibility.getAdvancedMarkings().setId(provenanceId);
 
@@ -162,7 +246,8 @@ public final class ImageWorker extends Worker<Tweet> {
                 imageDocs.add(imageDoc);
             }
 
-            final List<IngestedDocumentInfo> ingestedDocsInfo = imageIndexer.ingestDocuments(imageDocs, token);
+            final List<IngestedDocumentInfo> ingestedDocsInfo = ingestDocuments(imageIndexer, imageDocs);
+            imageCounter.add(imageDocs.size());
 
             final Set<String> ingestedIds = new HashSet<>(ingestedDocsInfo.size());
             for (final IngestedDocumentInfo ingestedDocInfo : ingestedDocsInfo) {
@@ -183,16 +268,80 @@ public final class ImageWorker extends Worker<Tweet> {
                 throw new IllegalStateException(errMsg);
             }
 
-            logger.info("Tweet '{}' has images with EzBake IDs of {}", tweet.getId(), ingestedIds);
-        } catch (final TException e) {
-            logger.error("Thrift error", e);
+            instrumentation.log("Tweet '{}' has images with EzBake IDs of {}", tweet.getId(), ingestedIds);
+            recordProvenance(tweet, imageProvenanceIds);
         } finally {
             if (imageIndexer != null) {
-                pool.returnToPool(imageIndexer);
+                clients.returnToPool(imageIndexer);
             }
             if (provenanceServiceClient != null) {
-                pool.returnToPool(provenanceServiceClient);
+                clients.returnToPool(provenanceServiceClient);
             }
         }
     }
+
+    /**
+     * Registers an image with EzProvenance.
+     *
+     * @param provenanceServiceClient Client of EzProvenance
+     * @param imageURI URI of the image
+     * @param inheritanceInfo Inheritance information linking the image to its Tweet
+     * @return Provenance ID of the image
+     * @throws TException if the image could not be registered
+     */
+    private long addDocument(
+            final ProvenanceService.Client provenanceServiceClient, final String imageURI,
+            final List<InheritanceInfo> inheritanceInfo) throws TException {
+        return instrumentation.call(
+                MetricNames.PROVENANCE_ADD_DOCUMENT, new Instrumentation.Call<Long>() {
+                    @Override
+                    public Long call() throws TException {
+                        return provenanceServiceClient.addDocument(token, imageURI, inheritanceInfo, null);
+                    }
+                });
+    }
+
+    /**
+     * Ingests image documents into the image indexer.
+     *
+     * @param imageIndexer Client of the image indexer
+     * @param imageDocs Documents to ingest
+     * @return Information about the ingested documents
+     * @throws TException if the documents could not be ingested
+     */
+    private List<IngestedDocumentInfo> ingestDocuments(
+            final ImageIndexerService.Client imageIndexer, final List<Document> imageDocs) throws TException {
+        return instrumentation.call(
+                MetricNames.IMAGE_INDEXER_INGEST_DOCUMENTS, new Instrumentation.Call<List<IngestedDocumentInfo>>() {
+                    @Override
+                    public List<IngestedDocumentInfo> call() throws TException {
+                        return imageIndexer.ingestDocuments(imageDocs, token);
+                    }
+                });
+    }
+
+    /**
+     * Records the ingested images in the provenance index under both their own provenance IDs and the provenance ID of
+     * the Tweet they came from, if enabled. Failures are logged rather than thrown as the images have already been
+     * ingested.
+     *
+     * @param tweet Tweet whose images were ingested
+     * @param imageProvenanceIds Provenance IDs of the images keyed by EzBake image ID
+     */
+    private void recordProvenance(Tweet tweet, Map<String, Long> imageProvenanceIds) {
+        if (provenanceIndex == null) {
+            return;
+        }
+
+        try {
+            for (final Entry<String, Long> image : imageProvenanceIds.entrySet()) {
+                provenanceIndex.record(
+                        image.getValue(), ProvenanceIndex.IMAGE_TYPE, Collections.singletonList(image.getKey()));
+            }
+
+            provenanceIndex.record(tweet.getProvenanceId(), ProvenanceIndex.IMAGE_TYPE, imageProvenanceIds.keySet());
+        } catch (final IOException e) {
+            logger.error("Could not record provenance of images from Tweet {}", tweet.getId(), e);
+        }
+    }
 }
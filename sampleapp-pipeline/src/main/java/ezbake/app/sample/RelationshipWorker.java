@@ -14,10 +14,22 @@
 
 package ezbake.app.sample;
 
+import static ezbake.app.sample.util.SampleAppConstants.EDGE_DESCRIPTOR_KEY;
+import static ezbake.app.sample.util.SampleAppConstants.GRAPH_APP_NAME;
+import static ezbake.app.sample.util.SampleAppConstants.GRAPH_NAME;
+import static ezbake.app.sample.util.SampleAppConstants.GRAPH_SERVICE_NAME;
+import static ezbake.app.sample.util.SampleAppConstants.SCREEN_NAME_KEY;
+import static ezbake.app.sample.util.SampleAppConstants.TWEET_ID_KEY;
+import static ezbake.app.sample.util.SampleAppConstants.TWITTER_ID_KEY;
+
 import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 
 import org.apache.thrift.TException;
 import org.slf4j.Logger;
@@ -27,14 +39,25 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 
+import ezbake.app.sample.metrics.Counter;
+import ezbake.app.sample.metrics.MetricNames;
+import ezbake.app.sample.metrics.PipelineMetrics;
 import ezbake.app.sample.thrift.Tweet;
 import ezbake.app.sample.thrift.TwitterUser;
+import ezbake.app.sample.util.GraphChangeLog;
+import ezbake.app.sample.util.Instrumentation;
+import ezbake.app.sample.util.KeyedExecutor;
+import ezbake.app.sample.util.ProvenanceIndex;
+import ezbake.app.sample.util.ProvenanceIndexWriter;
+import ezbake.app.sample.util.SampleAppConstants;
+import ezbake.app.sample.util.ServiceClients;
+import ezbake.app.sample.util.ServiceClientsFactory;
 import ezbake.base.thrift.EzSecurityToken;
 import ezbake.base.thrift.EzSecurityTokenException;
 import ezbake.base.thrift.Visibility;
+import ezbake.common.properties.EzProperties;
 import ezbake.data.common.graph.GraphConverter;
 import ezbake.frack.api.Worker;
-import ezbake.security.client.EzbakeSecurityClient;
 import ezbake.services.graph.thrift.EzGraphService;
 import ezbake.services.graph.thrift.GraphName;
 import ezbake.services.graph.thrift.types.DataType;
@@ -45,9 +68,6 @@ import ezbake.services.graph.thrift.types.Graph;
 import ezbake.services.graph.thrift.types.Property;
 import ezbake.services.graph.thrift.types.PropertyKey;
 import ezbake.services.graph.thrift.types.Vertex;
-import ezbake.thrift.ThriftClientPool;
-
-import ezbakehelpers.ezconfigurationhelpers.application.EzBakeApplicationConfigurationHelper;
 
 /**
  * Adds relationships between Twitter users to EzGraph.
@@ -56,20 +76,6 @@ public final class RelationshipWorker extends Worker<Tweet> {
     private static final long serialVersionUID = 3730754373957871205L;
     private static final Logger logger = LoggerFactory.getLogger(RelationshipWorker.class);
 
-    /**
-     * App and graph names for creating the schema and graph.
-     */
-    private static final String APP_NAME = "sampleApp";
-    private static final String GRAPH_NAME = "sampleGraph";
-
-    /**
-     * Keys for properties that can be used in the graph.
-     */
-    private static final String SCREEN_NAME_KEY = "screenName";
-    private static final String TWITTER_ID_KEY = "twitterId";
-    private static final String TWEET_ID_KEY = "tweetId";
-    private static final String EDGE_DESCRIPTOR_KEY = "edgeName";
-
     /**
      * A list of property keys to be used when writing a schema.
      */
@@ -91,31 +97,58 @@ public final class RelationshipWorker extends Worker<Tweet> {
             new EdgeLabel(TweetRelationship.REPLIED_TO.getReverseLabel()));
 
     /**
-     * Service name for graph service for accessing it's client through ThriftClientPool.
+     * Configuration property for setting the default visibility of the graph.
      */
-    private static final String GRAPH_SERVICE_NAME = "graph-service";
+    private static final String DEFAULT_GRAPH_VISIBILITY_CONF_KEY = "sampleapp.graph.visibility";
 
     /**
-     * Configuration property for setting the default visibility of the graph.
+     * Configuration properties for the log of users written to the graph. The log is disabled if no file is set.
      */
-    private static final String DEFAULT_GRAPH_VISIBILITY_CONF_KEY = "sampleapp.graph.visibility";
+    private static final String CHANGE_LOG_FILE_CONF_KEY = "sampleapp.graph.changelog.file";
+    private static final String CHANGE_LOG_MAX_BYTES_CONF_KEY = "sampleapp.graph.changelog.max.bytes";
+    private static final long DEFAULT_CHANGE_LOG_MAX_BYTES = 64L * 1024 * 1024;
 
     /**
-     * Pool from which to get Thrift clients.
+     * Source of Thrift clients and the security token.
      */
-    private ThriftClientPool pool;
+    private ServiceClients clients;
 
     /**
-     * Security token used to communicate with EzGraphService and the client from which to get the token.
+     * Security token used to communicate with EzGraphService.
      */
     private EzSecurityToken token;
-    private EzbakeSecurityClient securityClient;
 
     /**
      * GraphName object required by EzGraph.
      */
     private GraphName graphName;
 
+    /**
+     * Log of the users written to the graph, or null if disabled.
+     */
+    private GraphChangeLog changeLog;
+
+    /**
+     * Index of the edges written for each provenance ID, or null if disabled.
+     */
+    private ProvenanceIndexWriter provenanceIndex;
+
+    /**
+     * Timers and traces of process() and of EzGraph writes, and sampled log of the Tweets processed.
+     */
+    private Instrumentation instrumentation;
+
+    /**
+     * Count of edges written.
+     */
+    private Counter edgeCounter;
+
+    /**
+     * Runs the graph writes, concurrently if configured. Tweets are keyed by author so that the writes to each author's
+     * vertex and edges are made in order.
+     */
+    private KeyedExecutor lanes;
+
     /**
      * Default constructor.
      */
@@ -133,7 +166,7 @@ public final class RelationshipWorker extends Worker<Tweet> {
      * @param visibility The Visibility of the data to be written.
      * @return A thrift graph that can be written into the EzGraphService.
      */
-    private static Graph parseTweetToGraph(Tweet tweet, Visibility visibility) {
+    static Graph parseTweetToGraph(Tweet tweet, Visibility visibility) {
         final Graph graph = new Graph();
         final TwitterUser author = tweet.getAuthor();
 
@@ -191,7 +224,7 @@ public final class RelationshipWorker extends Worker<Tweet> {
         vid.setLocalId(screenName);
 
         final Map<String, List<Property>> props = getStandardUserProperties(user, visibility);
-        logger.info("Writing user: {} with visiblity {}", screenName, visibility.getFormalVisibility());
+        logger.debug("Writing user: {} with visiblity {}", screenName, visibility.getFormalVisibility());
 
         final Vertex vertex = new Vertex();
         vertex.setId(vid);
@@ -216,7 +249,7 @@ public final class RelationshipWorker extends Worker<Tweet> {
         final Map<String, Property> props = Maps.newHashMap();
         props.put(TWEET_ID_KEY, GraphConverter.convertProperty(tweetId).setVisibility(visibility));
         final Property edgeDescriptorProp = GraphConverter.convertProperty(
-                String.format("%s_%s_%s", authorScreenName, relationship.getLabel(), mentionedScreenName));
+                SampleAppConstants.getEdgeDescriptor(authorScreenName, relationship.getLabel(), mentionedScreenName));
 
         props.put(EDGE_DESCRIPTOR_KEY, edgeDescriptorProp.setVisibility(visibility));
         final ElementId outVertexId = getUserElementId(authorScreenName);
@@ -224,7 +257,7 @@ public final class RelationshipWorker extends Worker<Tweet> {
         graph.addToEdges(buildEdge(props, visibility, relationship.getReverseLabel(), inVertId, outVertexId));
         graph.addToEdges(buildEdge(props, visibility, relationship.getLabel(), outVertexId, inVertId));
 
-        logger.info(
+        logger.debug(
                 "Building new relationship: {} {} {}", authorScreenName, relationship.getLabel(), mentionedScreenName);
     }
 
@@ -291,19 +324,30 @@ public final class RelationshipWorker extends Worker<Tweet> {
         super.initialize(props);
         EzGraphService.Client ezGraphClient = null;
 
-        try {
-            pool = new ThriftClientPool(props);
+        instrumentation = Instrumentation.create(logger, props);
+        edgeCounter = PipelineMetrics.get(props).counter(MetricNames.RELATIONSHIP_WORKER_EDGES);
+        lanes = KeyedExecutor.create("relationship-worker", props);
 
-            securityClient = new EzbakeSecurityClient(props);
-            final String securityId = new EzBakeApplicationConfigurationHelper(props).getSecurityID();
-            token = securityClient.fetchAppToken(securityId);
+        try {
+            clients = ServiceClientsFactory.open(props);
+            token = clients.fetchAppToken();
 
             final Visibility visibility = new Visibility();
             visibility.setFormalVisibility(props.getProperty(DEFAULT_GRAPH_VISIBILITY_CONF_KEY, "U"));
-            ezGraphClient = pool.getClient(GRAPH_SERVICE_NAME, EzGraphService.Client.class);
+            final String changeLogFile = props.getProperty(CHANGE_LOG_FILE_CONF_KEY);
+            if (changeLogFile != null) {
+                final long changeLogMaxBytes = new EzProperties(props, false)
+                        .getLong(CHANGE_LOG_MAX_BYTES_CONF_KEY, DEFAULT_CHANGE_LOG_MAX_BYTES);
+
+                changeLog = new GraphChangeLog(Paths.get(changeLogFile), changeLogMaxBytes);
+            }
+
+            provenanceIndex = ProvenanceIndexWriter.fromProperties(props, "relationship-worker");
+
+            ezGraphClient = clients.getClient(GRAPH_SERVICE_NAME, EzGraphService.Client.class);
             graphName = new GraphName().setName(GRAPH_NAME);
             try {
-                ezGraphClient.createSchema(APP_NAME, visibility, graphName, PROPERTY_KEYS, EDGE_LABELS, token);
+                ezGraphClient.createSchema(GRAPH_APP_NAME, visibility, graphName, PROPERTY_KEYS, EDGE_LABELS, token);
             } catch (final Exception e) {
                 logger.error("Could not write schema - schema has probably already been written");
             }
@@ -315,9 +359,13 @@ public final class RelationshipWorker extends Worker<Tweet> {
             final String errMsg = "Unable to get graph-service thrift client";
             logger.error("errMsg", ex);
             throw new RuntimeException(errMsg, ex);
+        } catch (final IOException ex) {
+            final String errMsg = "Unable to open graph change log or provenance index";
+            logger.error(errMsg, ex);
+            throw new RuntimeException(errMsg, ex);
         } finally {
             if (ezGraphClient != null) {
-                pool.returnToPool(ezGraphClient);
+                clients.returnToPool(ezGraphClient);
             }
         }
     }
@@ -326,33 +374,143 @@ public final class RelationshipWorker extends Worker<Tweet> {
     public void cleanup() {
         super.cleanup();
 
-        if (pool != null) {
-            pool.close();
+        // Finish the Tweets already handed to the lanes while the clients are still open
+        if (lanes != null) {
+            try {
+                lanes.close();
+            } catch (final IllegalStateException e) {
+                logger.error("Tweet failed before closing", e);
+            }
+        }
+
+        if (clients != null) {
+            try {
+                clients.close();
+            } catch (final IOException e) {
+                logger.error("Could not close service clients.", e);
+            }
         }
-        if (securityClient != null) {
+        if (changeLog != null) {
             try {
-                securityClient.close();
+                changeLog.close();
             } catch (final IOException e) {
-                logger.error("Could not close security client.", e);
+                logger.error("Could not close graph change log.", e);
+            }
+        }
+        if (provenanceIndex != null) {
+            try {
+                provenanceIndex.close();
+            } catch (final IOException e) {
+                logger.error("Could not close provenance index.", e);
             }
         }
     }
 
     @Override
-    public void process(Visibility visibility, Tweet tweet) {
-        EzGraphService.Client ezGraphClient = null;
+    public void process(final Visibility visibility, final Tweet tweet) {
+        lanes.execute(
+                tweet.getAuthor().getScreenName(), new Runnable() {
+                    @Override
+                    public void run() {
+                        writeToGraph(visibility, tweet);
+                    }
+                });
+    }
+
+    /**
+     * Writes the users and relationships of a Tweet to the graph and records them in the change log and provenance
+     * index.
+     *
+     * @param visibility Visibility of the Tweet
+     * @param tweet Tweet to write
+     */
+    private void writeToGraph(final Visibility visibility, final Tweet tweet) {
         try {
-            logger.info("Adding tweet with author: {}", tweet.getAuthor());
-            ezGraphClient = pool.getClient(GRAPH_SERVICE_NAME, EzGraphService.Client.class);
-            final Graph subGraph = parseTweetToGraph(tweet, visibility);
-            ezGraphClient.writeGraph(APP_NAME, visibility, graphName, subGraph, token);
+            instrumentation.trace(
+                    MetricNames.RELATIONSHIP_WORKER_PROCESS, tweet.getTraceContext(), new Instrumentation.Call<Void>() {
+                        @Override
+                        public Void call() throws TException {
+                            writeSubGraph(visibility, tweet);
+                            return null;
+                        }
+                    });
         } catch (final TException e) {
             logger.error("Thrift error", e);
             throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Writes the sub-graph of a Tweet to EzGraph and records it in the change log and provenance index.
+     *
+     * @param visibility Visibility of the Tweet
+     * @param tweet Tweet to write
+     * @throws TException if the sub-graph could not be written
+     */
+    private void writeSubGraph(final Visibility visibility, Tweet tweet) throws TException {
+        logger.debug("Adding tweet with author: {}", tweet.getAuthor());
+        final EzGraphService.Client ezGraphClient = clients.getClient(GRAPH_SERVICE_NAME, EzGraphService.Client.class);
+        try {
+            final Graph subGraph = parseTweetToGraph(tweet, visibility);
+            instrumentation.call(
+                    MetricNames.GRAPH_WRITE_GRAPH, new Instrumentation.Call<Void>() {
+                        @Override
+                        public Void call() throws TException {
+                            ezGraphClient.writeGraph(GRAPH_APP_NAME, visibility, graphName, subGraph, token);
+                            return null;
+                        }
+                    });
+
+            edgeCounter.add(subGraph.getEdgesSize());
+            instrumentation.log("Wrote {} edges for Tweet {}", subGraph.getEdgesSize(), tweet.getId());
+
+            recordChanges(subGraph);
+            recordProvenance(tweet);
         } finally {
-            if (ezGraphClient != null) {
-                pool.returnToPool(ezGraphClient);
-            }
+            clients.returnToPool(ezGraphClient);
+        }
+    }
+
+    /**
+     * Records the users written to the graph in the change log, if enabled. Failures are logged rather than thrown as
+     * the graph has already been written.
+     *
+     * @param subGraph Graph that was written
+     */
+    private void recordChanges(Graph subGraph) {
+        if (changeLog == null) {
+            return;
+        }
+
+        final Set<String> screenNames = new HashSet<>(subGraph.getVerticesSize());
+        for (final Vertex vertex : subGraph.getVertices()) {
+            screenNames.add(vertex.getId().getLocalId());
+        }
+
+        try {
+            changeLog.record(screenNames);
+        } catch (final IOException e) {
+            logger.error("Could not record graph changes for users {}", screenNames, e);
+        }
+    }
+
+    /**
+     * Records the edges written for a Tweet in the provenance index, if enabled. Failures are logged rather than thrown
+     * as the graph has already been written.
+     *
+     * @param tweet Tweet whose edges were written
+     */
+    private void recordProvenance(Tweet tweet) {
+        if (provenanceIndex == null) {
+            return;
+        }
+
+        final String edgeKey = ProvenanceIndex.getEdgeKey(tweet.getAuthor().getScreenName(), tweet.getId());
+        try {
+            provenanceIndex.record(
+                    tweet.getProvenanceId(), ProvenanceIndex.EDGE_TYPE, Collections.singletonList(edgeKey));
+        } catch (final IOException e) {
+            logger.error("Could not record provenance of edges for Tweet {}", tweet.getId(), e);
         }
     }
 
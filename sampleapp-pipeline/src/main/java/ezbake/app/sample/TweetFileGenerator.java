@@ -14,9 +14,6 @@
 
 package ezbake.app.sample;
 
-import static ezbake.data.image.frack.utilities.IndexingUtils.bytesToHex;
-import static ezbake.data.image.frack.utilities.IndexingUtils.getHash;
-
 import java.io.File;
 import java.io.FilenameFilter;
 import java.io.IOException;
@@ -43,10 +40,13 @@ import ezbake.services.extractor.imagemetadata.thrift.Image;
  * Generates {@link ezbake.app.sample.thrift.Tweet} objects from a JSON file and sends them to workers.
  */
 public final class TweetFileGenerator extends TweetGenerator {
-    private static final long serialVersionUID = -1218280117602790346L;
+    /**
+     * Configuration properties for the file of Tweet JSON and the directory of the images they reference.
+     */
+    static final String TWEETS_JSON_FILE_PROP = "tweets.json.file";
+    static final String TWEETS_IMAGE_DIR_PROP = "tweets.image.dir";
 
-    private static final String TWEETS_JSON_FILE_PROP = "tweets.json.file";
-    private static final String TWEETS_IMAGE_DIR_PROP = "tweets.image.dir";
+    private static final long serialVersionUID = -1218280117602790346L;
 
     private static final Logger logger = LoggerFactory.getLogger(TweetFileGenerator.class);
 
@@ -94,7 +94,7 @@ public final class TweetFileGenerator extends TweetGenerator {
             image.setOriginalDocumentUri(imagePath.toUri().toString());
             image.setFileName(imagePath.getFileName().toString());
 
-            images.put(bytesToHex(getHash(image.getBlob(), image.getFileName())), image);
+            images.put(getImageId(image), image);
         }
 
         return images;
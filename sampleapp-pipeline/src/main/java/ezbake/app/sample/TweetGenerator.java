@@ -14,6 +14,9 @@
 
 package ezbake.app.sample;
 
+import static ezbake.data.image.frack.utilities.IndexingUtils.bytesToHex;
+import static ezbake.data.image.frack.utilities.IndexingUtils.getHash;
+
 import java.io.IOException;
 import java.security.NoSuchAlgorithmException;
 import java.util.Map;
@@ -26,8 +29,17 @@ import org.codehaus.jettison.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import ezbake.app.sample.metrics.MetricNames;
+import ezbake.app.sample.metrics.PipelineMetrics;
+import ezbake.app.sample.metrics.Timer;
 import ezbake.app.sample.thrift.Tweet;
+import ezbake.app.sample.trace.Span;
+import ezbake.app.sample.trace.TraceContext;
+import ezbake.app.sample.trace.Tracer;
+import ezbake.app.sample.util.EventLogger;
 import ezbake.app.sample.util.SampleAppConstants;
+import ezbake.app.sample.util.ServiceClients;
+import ezbake.app.sample.util.ServiceClientsFactory;
 import ezbake.app.sample.util.TweetParserUtils;
 import ezbake.base.thrift.AdvancedMarkings;
 import ezbake.base.thrift.EzSecurityToken;
@@ -35,16 +47,12 @@ import ezbake.base.thrift.EzSecurityTokenException;
 import ezbake.base.thrift.Visibility;
 import ezbake.common.properties.EzProperties;
 import ezbake.frack.api.Generator;
-import ezbake.security.client.EzbakeSecurityClient;
 import ezbake.services.extractor.imagemetadata.thrift.Image;
 import ezbake.services.provenance.thrift.ProvenanceAgeOffRuleNotFoundException;
 import ezbake.services.provenance.thrift.ProvenanceCircularInheritanceNotAllowedException;
 import ezbake.services.provenance.thrift.ProvenanceDocumentExistsException;
 import ezbake.services.provenance.thrift.ProvenanceParentDocumentNotFoundException;
 import ezbake.services.provenance.thrift.ProvenanceService;
-import ezbake.thrift.ThriftClientPool;
-
-import ezbakehelpers.ezconfigurationhelpers.application.EzBakeApplicationConfigurationHelper;
 
 /**
  * Base class for Tweet pipeline generators.
@@ -63,13 +71,29 @@ public abstract class TweetGenerator extends Generator<Tweet> {
     private EzSecurityToken token;
 
     /**
-     * Pool from which to get the EzProvenance client.
+     * Source of the EzProvenance client and security token.
      */
-    private ThriftClientPool pool;
+    private ServiceClients clients;
     private JSONArray tweetsJson;
     private int nextIndex;
     private int pauseMilliseconds;
 
+    /**
+     * Timers of the generation of each Tweet and of EzProvenance registrations.
+     */
+    private Timer generateTimer;
+    private Timer addDocumentTimer;
+
+    /**
+     * Sampled log of the Tweets generated.
+     */
+    private EventLogger events;
+
+    /**
+     * Tracer that starts a trace for a sample of the Tweets generated.
+     */
+    private Tracer tracer;
+
     /**
      * Creates a {@link Visibility} for a Tweet given its source program name.
      *
@@ -77,7 +101,7 @@ public abstract class TweetGenerator extends Generator<Tweet> {
      * @return {@link Visibility} based on Tweet JSON
      * @throws JSONException if the source program name could not be retrieved
      */
-    private static Visibility createVisibility(JSONObject tweetJson) throws JSONException {
+    static Visibility createVisibility(JSONObject tweetJson) throws JSONException {
         String formalVisibility = null;
         final String sourceProgramName = TweetParserUtils.getSourceProgramName(tweetJson);
         if (sourceProgramName.startsWith("Twitter")) {
@@ -108,17 +132,15 @@ public abstract class TweetGenerator extends Generator<Tweet> {
 
     @Override
     public final void initialize(Properties props) {
-        try {
-            pool = new ThriftClientPool(props);
-            final String securityId = new EzBakeApplicationConfigurationHelper(props).getSecurityID();
+        final PipelineMetrics metrics = PipelineMetrics.get(props);
+        generateTimer = metrics.timer(MetricNames.GENERATOR_GENERATE);
+        addDocumentTimer = metrics.timer(MetricNames.PROVENANCE_ADD_DOCUMENT);
+        events = EventLogger.create(logger, props);
+        tracer = Tracer.get(props);
 
-            try (EzbakeSecurityClient securityClient = new EzbakeSecurityClient(props)) {
-                token = securityClient.fetchAppToken(securityId);
-            } catch (final IOException e) {
-                final String errMsg = "Could not close security client";
-                logger.error(errMsg, e);
-                throw new RuntimeException(errMsg, e);
-            }
+        try {
+            clients = ServiceClientsFactory.open(props);
+            token = clients.fetchAppToken();
         } catch (final EzSecurityTokenException e) {
             final String errMsg = "EzSecurity token error";
             logger.error(errMsg, e);
@@ -133,19 +155,38 @@ public abstract class TweetGenerator extends Generator<Tweet> {
     @Override
     public final void generate() {
         if (nextIndex < tweetsJson.length()) {
-            logger.info("generate() called. nextIndex={}, JSON array length={}", nextIndex, tweetsJson.length());
+            logger.debug("generate() called. nextIndex={}, JSON array length={}", nextIndex, tweetsJson.length());
+            final long start = System.nanoTime();
+            final Span span = tracer.startTrace(MetricNames.GENERATOR_GENERATE);
             try {
                 final JSONObject tweetJson = tweetsJson.getJSONObject(nextIndex);
                 final Tweet tweet = parseTweet(tweetJson);
                 final Visibility visibility = createVisibility(tweetJson);
-                logger.info("Setting Tweet to have formal visibility: {}", visibility.getFormalVisibility());
+                events.log(
+                        "Generated Tweet {} with formal visibility {}", tweet.getId(),
+                        visibility.getFormalVisibility());
+
+                final TraceContext traceContext = span.getContext();
+                if (traceContext != null) {
+                    tweet.setTraceContext(traceContext.encode());
+                }
+
                 outputToPipes(visibility, tweet);
+                generateTimer.record(start);
             } catch (final JSONException e) {
+                generateTimer.recordError(start);
+                span.setError();
                 logger.error("Invalid Tweet JSON", e);
             } catch (final IOException e) {
+                generateTimer.recordError(start);
+                span.setError();
                 logger.error("File I/O error", e);
             } catch (final NoSuchAlgorithmException e) {
+                generateTimer.recordError(start);
+                span.setError();
                 logger.error("Could not create image hash", e);
+            } finally {
+                span.close();
             }
 
             nextIndex++;
@@ -157,6 +198,26 @@ public abstract class TweetGenerator extends Generator<Tweet> {
         pause();
     }
 
+    /**
+     * Returns the number of Tweets the generator was initialized with.
+     *
+     * @return Number of Tweets
+     */
+    final int getTweetCount() {
+        return tweetsJson.length();
+    }
+
+    /**
+     * Returns the JSON of one of the Tweets the generator was initialized with.
+     *
+     * @param idx Index of the Tweet
+     * @return Tweet JSON
+     * @throws JSONException if the Tweet is not a JSON object
+     */
+    final JSONObject getTweetJson(int idx) throws JSONException {
+        return tweetsJson.getJSONObject(idx);
+    }
+
     /**
      * Get Tweets from source and other generator-specific initialization.
      *
@@ -177,6 +238,18 @@ public abstract class TweetGenerator extends Generator<Tweet> {
     protected abstract Map<String, Image> parseImages(JSONObject tweetJson)
             throws JSONException, IOException, NoSuchAlgorithmException;
 
+    /**
+     * Returns the EzBake ID of an image, which is the hex encoded hash of its contents and file name.
+     *
+     * @param image Image read for a Tweet
+     * @return EzBake image ID
+     * @throws IOException if the image could not be read for hashing
+     * @throws NoSuchAlgorithmException if the hash algorithm is not available
+     */
+    static String getImageId(Image image) throws IOException, NoSuchAlgorithmException {
+        return bytesToHex(getHash(image.getBlob(), image.getFileName()));
+    }
+
     /**
      * Parses the JSON of a Tweet and creates a {@link Tweet} object.
      *
@@ -186,10 +259,24 @@ public abstract class TweetGenerator extends Generator<Tweet> {
      * @throws IOException if an image referenced in the Tweet could not be read
      * @throws NoSuchAlgorithmException if an image referenced in the Tweet could not be hashed
      */
-    private Tweet parseTweet(JSONObject tweetJson) throws JSONException, IOException, NoSuchAlgorithmException {
-        final Tweet tweet = new Tweet();
+    Tweet parseTweet(JSONObject tweetJson) throws JSONException, IOException, NoSuchAlgorithmException {
         final long provenanceId = getProvenanceId(tweetJson);
-        tweet.setImages(parseImages(tweetJson));
+        return parseTweet(tweetJson, provenanceId, parseImages(tweetJson));
+    }
+
+    /**
+     * Creates a {@link Tweet} object from the JSON of a Tweet, its provenance ID and its images, and adds the EzBake
+     * provenance and image IDs to the JSON.
+     *
+     * @param tweetJson Tweet JSON
+     * @param provenanceId Provenance ID registered for the Tweet
+     * @param images Map of EzBake image IDs to the images referenced by the Tweet
+     * @return {@link Tweet} object
+     * @throws JSONException if parsing failed
+     */
+    static Tweet parseTweet(JSONObject tweetJson, long provenanceId, Map<String, Image> images) throws JSONException {
+        final Tweet tweet = new Tweet();
+        tweet.setImages(images);
         tweet.setId(TweetParserUtils.getId(tweetJson));
         tweet.setAuthor(TweetParserUtils.getAuthor(tweetJson));
         tweet.setMentionedUsers(TweetParserUtils.getMentionedUsers(tweetJson));
@@ -218,11 +305,24 @@ public abstract class TweetGenerator extends Generator<Tweet> {
         final long provenanceId;
         ProvenanceService.Client provenanceServiceClient = null;
         try {
-            provenanceServiceClient = pool.getClient("EzProvenanceService", ProvenanceService.Client.class);
+            provenanceServiceClient = clients.getClient("EzProvenanceService", ProvenanceService.Client.class);
             final String provenanceURI = SampleAppConstants.getTweetUri(TweetParserUtils.getId(tweetJson));
-            logger.info("Registering {} with provenance service", provenanceURI);
-            provenanceId = provenanceServiceClient.addDocument(token, provenanceURI, null, null);
-            logger.info("Registered {} with provenance service with ID: {}", provenanceURI, provenanceId);
+            logger.debug("Registering {} with provenance service", provenanceURI);
+
+            final long addDocumentStart = System.nanoTime();
+            final Span addDocumentSpan = tracer.startSpan(MetricNames.PROVENANCE_ADD_DOCUMENT);
+            try {
+                provenanceId = provenanceServiceClient.addDocument(token, provenanceURI, null, null);
+                addDocumentTimer.record(addDocumentStart);
+            } catch (final TException e) {
+                addDocumentTimer.recordError(addDocumentStart);
+                addDocumentSpan.setError();
+                throw e;
+            } finally {
+                addDocumentSpan.close();
+            }
+
+            logger.debug("Registered {} with provenance service with ID: {}", provenanceURI, provenanceId);
         } catch (ProvenanceParentDocumentNotFoundException | ProvenanceAgeOffRuleNotFoundException
                 | EzSecurityTokenException | ProvenanceDocumentExistsException
                 | ProvenanceCircularInheritanceNotAllowedException e) {
@@ -235,7 +335,7 @@ public abstract class TweetGenerator extends Generator<Tweet> {
             throw new RuntimeException(errMsg, e);
         } finally {
             if (provenanceServiceClient != null) {
-                pool.returnToPool(provenanceServiceClient);
+                clients.returnToPool(provenanceServiceClient);
             }
         }
 
@@ -14,9 +14,6 @@
 
 package ezbake.app.sample;
 
-import static ezbake.data.image.frack.utilities.IndexingUtils.bytesToHex;
-import static ezbake.data.image.frack.utilities.IndexingUtils.getHash;
-
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
@@ -83,7 +80,7 @@ public final class TweetRestGenerator extends TweetGenerator {
             image.setOriginalDocumentUri(imageURL);
             image.setFileName(FilenameUtils.getName(imageURL));
 
-            images.put(bytesToHex(getHash(image.getBlob(), image.getFileName())), image);
+            images.put(getImageId(image), image);
         }
 
         return images;
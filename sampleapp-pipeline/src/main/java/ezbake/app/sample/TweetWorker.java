@@ -15,23 +15,27 @@
 package ezbake.app.sample;
 
 import java.io.IOException;
+import java.util.Collections;
 import java.util.Properties;
 
 import org.apache.thrift.TException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import ezbake.app.sample.metrics.MetricNames;
 import ezbake.app.sample.thrift.Tweet;
+import ezbake.app.sample.util.Instrumentation;
+import ezbake.app.sample.util.KeyedExecutor;
+import ezbake.app.sample.util.ProvenanceIndex;
+import ezbake.app.sample.util.ProvenanceIndexWriter;
+import ezbake.app.sample.util.ServiceClients;
+import ezbake.app.sample.util.ServiceClientsFactory;
 import ezbake.base.thrift.EzSecurityToken;
 import ezbake.base.thrift.EzSecurityTokenException;
 import ezbake.base.thrift.Visibility;
 import ezbake.data.mongo.thrift.EzMongo;
 import ezbake.data.mongo.thrift.MongoEzbakeDocument;
 import ezbake.frack.api.Worker;
-import ezbake.security.client.EzbakeSecurityClient;
-import ezbake.thrift.ThriftClientPool;
-
-import ezbakehelpers.ezconfigurationhelpers.application.EzBakeApplicationConfigurationHelper;
 
 /**
  * Adds Tweets as separate documents into EzMongo.
@@ -47,14 +51,24 @@ public final class TweetWorker extends Worker<Tweet> {
     private EzSecurityToken token;
 
     /**
-     * Pool from which to get the EzMongo client.
+     * Source of the EzMongo client and security token.
+     */
+    private ServiceClients clients;
+
+    /**
+     * Index of the Tweets ingested from each provenance ID, or null if disabled.
      */
-    private ThriftClientPool pool;
+    private ProvenanceIndexWriter provenanceIndex;
 
     /**
-     * Security client used to get security token.
+     * Timers and traces of process() and of EzMongo inserts, and sampled log of the Tweets processed.
      */
-    private EzbakeSecurityClient securityClient;
+    private Instrumentation instrumentation;
+
+    /**
+     * Runs the inserts, concurrently if configured. Tweets are independent, so they are spread by ID.
+     */
+    private KeyedExecutor lanes;
 
     /**
      * Default constructor.
@@ -67,16 +81,21 @@ public final class TweetWorker extends Worker<Tweet> {
     public void initialize(Properties properties) {
         super.initialize(properties);
 
-        try {
-            pool = new ThriftClientPool(properties);
+        instrumentation = Instrumentation.create(logger, properties);
+        lanes = KeyedExecutor.create("tweet-worker", properties);
 
-            securityClient = new EzbakeSecurityClient(properties);
-            final String securityId = new EzBakeApplicationConfigurationHelper(properties).getSecurityID();
-            token = securityClient.fetchAppToken(securityId);
+        try {
+            clients = ServiceClientsFactory.open(properties);
+            token = clients.fetchAppToken();
+            provenanceIndex = ProvenanceIndexWriter.fromProperties(properties, "tweet-worker");
         } catch (final EzSecurityTokenException ex) {
             final String errMsg = "EzSecurity token error";
             logger.error(errMsg, ex);
             throw new RuntimeException(errMsg, ex);
+        } catch (final IOException ex) {
+            final String errMsg = "Unable to open provenance index";
+            logger.error(errMsg, ex);
+            throw new RuntimeException(errMsg, ex);
         }
     }
 
@@ -84,39 +103,110 @@ public final class TweetWorker extends Worker<Tweet> {
     public void cleanup() {
         super.cleanup();
 
-        if (pool != null) {
-            pool.close();
+        // Finish the Tweets already handed to the lanes while the clients are still open
+        if (lanes != null) {
+            try {
+                lanes.close();
+            } catch (final IllegalStateException e) {
+                logger.error("Tweet failed before closing", e);
+            }
+        }
+
+        if (clients != null) {
+            try {
+                clients.close();
+            } catch (final IOException e) {
+                logger.error("Could not close service clients", e);
+            }
         }
 
-        if (securityClient != null) {
+        if (provenanceIndex != null) {
             try {
-                securityClient.close();
+                provenanceIndex.close();
             } catch (final IOException e) {
-                logger.error("Could not close security client", e);
+                logger.error("Could not close provenance index", e);
             }
         }
     }
 
     @Override
-    public void process(Visibility visibility, Tweet tweet) {
-        logger.info("Received tweet: {}", tweet.getId());
+    public void process(final Visibility visibility, final Tweet tweet) {
+        lanes.execute(
+                tweet.getId(), new Runnable() {
+                    @Override
+                    public void run() {
+                        insert(visibility, tweet);
+                    }
+                });
+    }
+
+    /**
+     * Inserts a Tweet into EzMongo and records it in the provenance index.
+     *
+     * @param visibility Visibility of the Tweet
+     * @param tweet Tweet to insert
+     */
+    private void insert(final Visibility visibility, final Tweet tweet) {
+        try {
+            instrumentation.trace(
+                    MetricNames.TWEET_WORKER_PROCESS, tweet.getTraceContext(), new Instrumentation.Call<Void>() {
+                        @Override
+                        public Void call() throws TException {
+                            insertDocument(visibility, tweet);
+                            return null;
+                        }
+                    });
+        } catch (final TException e) {
+            logger.error("Thrift error", e);
+        }
+    }
+
+    /**
+     * Inserts the document of a Tweet into EzMongo and records it in the provenance index.
+     *
+     * @param visibility Visibility of the Tweet
+     * @param tweet Tweet to insert
+     * @throws TException if the Tweet could not be inserted
+     */
+    private void insertDocument(Visibility visibility, final Tweet tweet) throws TException {
+        logger.debug("Received tweet: {}", tweet.getId());
 
-        EzMongo.Client ezMongoClient = null;
         final Visibility updatedVisibility = new Visibility(visibility);
         updatedVisibility.advancedMarkings.setId(tweet.getProvenanceId());
+        final EzMongo.Client ezMongoClient = clients.getClient("ezmongo", EzMongo.Client.class);
         try {
-            ezMongoClient = pool.getClient("ezmongo", EzMongo.Client.class);
+            final String mongoDocumentId = instrumentation.call(
+                    MetricNames.MONGO_INSERT, new Instrumentation.Call<String>() {
+                        @Override
+                        public String call() throws TException {
+                            return ezMongoClient.insert(
+                                    "tweets", new MongoEzbakeDocument(tweet.getRawJson(), updatedVisibility), token);
+                        }
+                    });
+
+            instrumentation.log("Inserted Tweet {} into MongoDB with ID '{}'", tweet.getId(), mongoDocumentId);
+            recordProvenance(tweet);
+        } finally {
+            clients.returnToPool(ezMongoClient);
+        }
+    }
 
-            final String mongoDocumentId = ezMongoClient
-                    .insert("tweets", new MongoEzbakeDocument(tweet.getRawJson(), updatedVisibility), token);
+    /**
+     * Records the inserted Tweet in the provenance index, if enabled. Failures are logged rather than thrown as the
+     * Tweet has already been inserted.
+     *
+     * @param tweet Tweet that was inserted
+     */
+    private void recordProvenance(Tweet tweet) {
+        if (provenanceIndex == null) {
+            return;
+        }
 
-            logger.info("Inserted Tweet with ID '{}' into MongoDB.", mongoDocumentId);
-        } catch (final TException e) {
-            logger.error("Thrift error", e);
-        } finally {
-            if (ezMongoClient != null) {
-                pool.returnToPool(ezMongoClient);
-            }
+        try {
+            provenanceIndex.record(
+                    tweet.getProvenanceId(), ProvenanceIndex.TWEET_TYPE, Collections.singletonList(tweet.getId()));
+        } catch (final IOException e) {
+            logger.error("Could not record provenance of Tweet {}", tweet.getId(), e);
         }
     }
 }
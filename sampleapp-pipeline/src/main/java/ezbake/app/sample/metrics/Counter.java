@@ -0,0 +1,45 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free count of events, such as the number of edges written.
+ */
+public final class Counter implements CounterMBean {
+    private final AtomicLong count = new AtomicLong();
+
+    /**
+     * Adds one to the counter.
+     */
+    public void increment() {
+        count.incrementAndGet();
+    }
+
+    /**
+     * Adds to the counter.
+     *
+     * @param delta Amount to add
+     */
+    public void add(long delta) {
+        count.addAndGet(delta);
+    }
+
+    @Override
+    public long getCount() {
+        return count.get();
+    }
+}
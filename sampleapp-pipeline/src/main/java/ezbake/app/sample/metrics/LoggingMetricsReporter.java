@@ -0,0 +1,98 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample.metrics;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.HdrHistogram.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Default {@link MetricsReporter}, which logs one summary line per metric at INFO with the number of events since the
+ * last report, so that the pipeline's progress is visible without logging each event.
+ */
+public final class LoggingMetricsReporter implements MetricsReporter {
+    private static final Logger logger = LoggerFactory.getLogger(LoggingMetricsReporter.class);
+
+    private static final double NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final double MEDIAN = 50.0;
+    private static final double PERCENTILE_99 = 99.0;
+    private static final double PERCENTILE_999 = 99.9;
+
+    /**
+     * Counts at the last report, keyed by metric name, for the timers and counters.
+     */
+    private final Map<String, Long> lastCounts = new HashMap<>();
+    private final Map<String, Long> lastErrors = new HashMap<>();
+
+    private long lastReportNanos = System.nanoTime();
+
+    /**
+     * Constructor.
+     *
+     * @param props Configuration properties, unused
+     */
+    public LoggingMetricsReporter(Properties props) {
+    }
+
+    @Override
+    public void report(PipelineMetrics metrics) {
+        final long now = System.nanoTime();
+        final long intervalSeconds = TimeUnit.NANOSECONDS.toSeconds(now - lastReportNanos);
+        lastReportNanos = now;
+
+        for (final Map.Entry<String, Timer> entry : metrics.getTimers().entrySet()) {
+            final Timer timer = entry.getValue();
+            final long count = timer.getCount();
+            final long errors = timer.getErrors();
+            final Histogram histogram = timer.getHistogram();
+            logger.info(
+                    String.format(
+                            "%s: %d in the last %ds (%d errors), total=%d errors=%d mean=%.3fms p50=%.3fms "
+                                    + "p99=%.3fms p99.9=%.3fms max=%.3fms",
+                            entry.getKey(), count - getLast(lastCounts, entry.getKey(), count), intervalSeconds,
+                            errors - getLast(lastErrors, entry.getKey(), errors), count, errors,
+                            histogram.getMean() / NANOS_PER_MILLI,
+                            histogram.getValueAtPercentile(MEDIAN) / NANOS_PER_MILLI,
+                            histogram.getValueAtPercentile(PERCENTILE_99) / NANOS_PER_MILLI,
+                            histogram.getValueAtPercentile(PERCENTILE_999) / NANOS_PER_MILLI,
+                            histogram.getMaxValue() / NANOS_PER_MILLI));
+        }
+
+        for (final Map.Entry<String, Counter> entry : metrics.getCounters().entrySet()) {
+            final long count = entry.getValue().getCount();
+            logger.info(
+                    "{}: {} in the last {}s, total={}", entry.getKey(),
+                    count - getLast(lastCounts, entry.getKey(), count), intervalSeconds, count);
+        }
+    }
+
+    /**
+     * Replaces the count of a metric at the last report.
+     *
+     * @param last Counts at the last report
+     * @param name Name of the metric
+     * @param count Current count
+     * @return Count at the last report, or 0 if not reported before
+     */
+    private static long getLast(Map<String, Long> last, String name, long count) {
+        final Long previous = last.put(name, count);
+        return previous == null ? 0 : previous;
+    }
+}
@@ -0,0 +1,77 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample.metrics;
+
+/**
+ * Names of the pipeline's metrics. Stages are timed as "&lt;stage&gt;.process" and Thrift calls as
+ * "&lt;service&gt;.&lt;method&gt;".
+ */
+public final class MetricNames {
+    /**
+     * Time to generate each Tweet in the generator, including registering it with EzProvenance.
+     */
+    public static final String GENERATOR_GENERATE = "generator.generate";
+
+    /**
+     * Time to process each Tweet in the Tweet worker.
+     */
+    public static final String TWEET_WORKER_PROCESS = "tweet-worker.process";
+
+    /**
+     * Time to process each Tweet in the relationship worker.
+     */
+    public static final String RELATIONSHIP_WORKER_PROCESS = "relationship-worker.process";
+
+    /**
+     * Time to process each Tweet in the image worker.
+     */
+    public static final String IMAGE_WORKER_PROCESS = "image-worker.process";
+
+    /**
+     * Number of edges written to the graph by the relationship worker.
+     */
+    public static final String RELATIONSHIP_WORKER_EDGES = "relationship-worker.edges";
+
+    /**
+     * Number of images indexed by the image worker.
+     */
+    public static final String IMAGE_WORKER_IMAGES = "image-worker.images";
+
+    /**
+     * EzProvenance addDocument calls, from the generator and the image worker.
+     */
+    public static final String PROVENANCE_ADD_DOCUMENT = "ezprovenance.addDocument";
+
+    /**
+     * EzMongo insert calls.
+     */
+    public static final String MONGO_INSERT = "ezmongo.insert";
+
+    /**
+     * EzGraph writeGraph calls.
+     */
+    public static final String GRAPH_WRITE_GRAPH = "ezgraph.writeGraph";
+
+    /**
+     * Image indexer ingestDocuments calls.
+     */
+    public static final String IMAGE_INDEXER_INGEST_DOCUMENTS = "image-indexer.ingestDocuments";
+
+    /**
+     * Do not allow instantiation.
+     */
+    private MetricNames() {
+    }
+}
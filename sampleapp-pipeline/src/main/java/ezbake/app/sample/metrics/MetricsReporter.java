@@ -0,0 +1,29 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample.metrics;
+
+/**
+ * Reports the pipeline's metrics periodically, for example to a log or a monitoring system. Implementations are
+ * configured with {@value PipelineMetrics#REPORTER_CLASS_PROP} and must have a public constructor taking the
+ * configuration {@link java.util.Properties}.
+ */
+public interface MetricsReporter {
+    /**
+     * Reports the current metrics. Called from a single reporting thread.
+     *
+     * @param metrics Metrics to report
+     */
+    void report(PipelineMetrics metrics);
+}
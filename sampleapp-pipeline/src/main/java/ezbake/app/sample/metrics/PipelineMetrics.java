@@ -0,0 +1,216 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Registry of the pipeline's {@link Timer}s and {@link Counter}s, shared by the generator and workers running in the
+ * same JVM. Each metric is registered with JMX under {@value #JMX_DOMAIN} when created, and all metrics are passed to
+ * the configured {@link MetricsReporter} periodically.
+ */
+public final class PipelineMetrics {
+    /**
+     * Domain of the JMX names of the metrics.
+     */
+    public static final String JMX_DOMAIN = "ezbake.app.sample";
+
+    /**
+     * Configuration property for the class of {@link MetricsReporter} to use. Defaults to
+     * {@link LoggingMetricsReporter}.
+     */
+    public static final String REPORTER_CLASS_PROP = "sampleapp.metrics.reporter.class";
+
+    /**
+     * Configuration property for the number of seconds between reports, or 0 to disable reporting.
+     */
+    public static final String REPORT_SECONDS_PROP = "sampleapp.metrics.report.seconds";
+
+    private static final Logger logger = LoggerFactory.getLogger(PipelineMetrics.class);
+
+    private static final long DEFAULT_REPORT_SECONDS = 60;
+
+    /**
+     * Registry for this JVM, created by the first call to {@link #get(Properties)}.
+     */
+    private static PipelineMetrics instance;
+
+    private final ConcurrentMap<String, Timer> timers = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Counter> counters = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor.
+     */
+    private PipelineMetrics() {
+    }
+
+    /**
+     * Gets the registry for this JVM. The first call starts the reporter from the given configuration, and later calls
+     * return the same registry.
+     *
+     * @param props Configuration properties
+     * @return Metrics registry
+     */
+    public static synchronized PipelineMetrics get(Properties props) {
+        if (instance == null) {
+            instance = new PipelineMetrics();
+            instance.startReporter(props);
+        }
+
+        return instance;
+    }
+
+    /**
+     * Gets a timer, creating and registering it if it does not exist.
+     *
+     * @param name Name of the timer, e.g. "ezmongo.insert"
+     * @return Timer
+     */
+    public Timer timer(String name) {
+        Timer timer = timers.get(name);
+        if (timer == null) {
+            final Timer created = new Timer();
+            timer = timers.putIfAbsent(name, created);
+            if (timer == null) {
+                timer = created;
+                register("Timer", name, created);
+            }
+        }
+
+        return timer;
+    }
+
+    /**
+     * Gets a counter, creating and registering it if it does not exist.
+     *
+     * @param name Name of the counter, e.g. "relationship.edges"
+     * @return Counter
+     */
+    public Counter counter(String name) {
+        Counter counter = counters.get(name);
+        if (counter == null) {
+            final Counter created = new Counter();
+            counter = counters.putIfAbsent(name, created);
+            if (counter == null) {
+                counter = created;
+                register("Counter", name, created);
+            }
+        }
+
+        return counter;
+    }
+
+    /**
+     * Gets the timers by name.
+     *
+     * @return Timers sorted by name
+     */
+    public Map<String, Timer> getTimers() {
+        return new TreeMap<>(timers);
+    }
+
+    /**
+     * Gets the counters by name.
+     *
+     * @return Counters sorted by name
+     */
+    public Map<String, Counter> getCounters() {
+        return new TreeMap<>(counters);
+    }
+
+    /**
+     * Registers a metric with JMX. Failures are logged, as the metric is still usable.
+     *
+     * @param type JMX type of the metric
+     * @param name Name of the metric
+     * @param metric Metric to register
+     */
+    private void register(String type, String name, Object metric) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(
+                    metric, new ObjectName(JMX_DOMAIN + ":type=" + type + ",name=" + ObjectName.quote(name)));
+        } catch (final JMException e) {
+            logger.warn("Could not register JMX metric {}", name, e);
+        }
+    }
+
+    /**
+     * Starts reporting the metrics on a daemon thread, unless reporting is disabled.
+     *
+     * @param props Configuration properties
+     */
+    private void startReporter(Properties props) {
+        final long reportSeconds =
+                Long.parseLong(props.getProperty(REPORT_SECONDS_PROP, String.valueOf(DEFAULT_REPORT_SECONDS)));
+        if (reportSeconds <= 0) {
+            return;
+        }
+
+        final MetricsReporter reporter = createReporter(props);
+        final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("metrics-reporter-%d").build());
+        executor.scheduleAtFixedRate(
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            reporter.report(PipelineMetrics.this);
+                        } catch (final RuntimeException e) {
+                            logger.warn("Could not report metrics", e);
+                        }
+                    }
+                }, reportSeconds, reportSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Creates the configured reporter.
+     *
+     * @param props Configuration properties
+     * @return Metrics reporter
+     */
+    private static MetricsReporter createReporter(Properties props) {
+        final String className = props.getProperty(REPORTER_CLASS_PROP);
+        if (className == null) {
+            return new LoggingMetricsReporter(props);
+        }
+
+        try {
+            return Class.forName(className).asSubclass(MetricsReporter.class).getConstructor(Properties.class)
+                    .newInstance(props);
+        } catch (ClassNotFoundException | ClassCastException | NoSuchMethodException | InstantiationException
+                | IllegalAccessException | InvocationTargetException e) {
+            final String errMsg = String.format("Unable to create metrics reporter of class '%s'", className);
+            logger.error(errMsg, e);
+            throw new RuntimeException(errMsg, e);
+        }
+    }
+}
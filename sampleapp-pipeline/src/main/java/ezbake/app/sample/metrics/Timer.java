@@ -0,0 +1,150 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+/**
+ * Counts and records the latency of an operation, such as a Thrift call or a worker's process(). Recording is
+ * lock-free: latencies go to an HdrHistogram {@link Recorder}, which is only locked when the recorded interval is
+ * folded into the total on read.
+ *
+ * <p>Operations are timed as follows:</p>
+ *
+ * <pre>
+ * final long start = System.nanoTime();
+ * try {
+ *     ...
+ *     timer.record(start);
+ * } catch (...) {
+ *     timer.recordError(start);
+ *     ...
+ * }
+ * </pre>
+ */
+public final class Timer implements TimerMBean {
+    /**
+     * Highest latency tracked, above which latencies are recorded as this value.
+     */
+    private static final long HIGHEST_TRACKABLE_NANOS = TimeUnit.MINUTES.toNanos(10);
+
+    private static final int SIGNIFICANT_DIGITS = 3;
+    private static final double NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final double MEDIAN = 50.0;
+    private static final double PERCENTILE_99 = 99.0;
+    private static final double PERCENTILE_999 = 99.9;
+
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final Recorder recorder = new Recorder(HIGHEST_TRACKABLE_NANOS, SIGNIFICANT_DIGITS);
+
+    /**
+     * Latencies of every operation, guarded by this.
+     */
+    private final Histogram total = new Histogram(HIGHEST_TRACKABLE_NANOS, SIGNIFICANT_DIGITS);
+
+    /**
+     * Histogram recycled when taking intervals from the recorder, guarded by this.
+     */
+    private Histogram interval;
+
+    /**
+     * Records an operation that succeeded.
+     *
+     * @param startNanos Value of {@link System#nanoTime()} when the operation started
+     */
+    public void record(long startNanos) {
+        count.incrementAndGet();
+        recordLatency(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Records an operation that failed.
+     *
+     * @param startNanos Value of {@link System#nanoTime()} when the operation started
+     */
+    public void recordError(long startNanos) {
+        errors.incrementAndGet();
+        record(startNanos);
+    }
+
+    /**
+     * Gets a copy of the latencies of every operation since startup.
+     *
+     * @return Latencies in nanoseconds
+     */
+    public synchronized Histogram getHistogram() {
+        return update().copy();
+    }
+
+    @Override
+    public long getCount() {
+        return count.get();
+    }
+
+    @Override
+    public long getErrors() {
+        return errors.get();
+    }
+
+    @Override
+    public synchronized double getMeanMillis() {
+        return update().getMean() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public synchronized double getMedianMillis() {
+        return update().getValueAtPercentile(MEDIAN) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public synchronized double get99thPercentileMillis() {
+        return update().getValueAtPercentile(PERCENTILE_99) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public synchronized double get999thPercentileMillis() {
+        return update().getValueAtPercentile(PERCENTILE_999) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public synchronized double getMaxMillis() {
+        return update().getMaxValue() / NANOS_PER_MILLI;
+    }
+
+    /**
+     * Records a latency, clamped to the trackable range.
+     *
+     * @param nanos Latency in nanoseconds
+     */
+    private void recordLatency(long nanos) {
+        recorder.recordValue(Math.max(0, Math.min(nanos, HIGHEST_TRACKABLE_NANOS)));
+    }
+
+    /**
+     * Folds the latencies recorded since the last update into the total. Must be called while holding the lock.
+     *
+     * @return Latencies of every operation
+     */
+    private Histogram update() {
+        interval = recorder.getIntervalHistogram(interval);
+        total.add(interval);
+        return total;
+    }
+}
@@ -0,0 +1,69 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample.metrics;
+
+/**
+ * JMX view of a {@link Timer}. Latencies cover every operation since startup.
+ */
+public interface TimerMBean {
+    /**
+     * Gets the number of operations timed, including those that failed.
+     *
+     * @return Number of operations
+     */
+    long getCount();
+
+    /**
+     * Gets the number of operations that failed.
+     *
+     * @return Number of failed operations
+     */
+    long getErrors();
+
+    /**
+     * Gets the mean latency.
+     *
+     * @return Mean latency in milliseconds
+     */
+    double getMeanMillis();
+
+    /**
+     * Gets the median latency.
+     *
+     * @return Median latency in milliseconds
+     */
+    double getMedianMillis();
+
+    /**
+     * Gets the 99th percentile latency.
+     *
+     * @return 99th percentile latency in milliseconds
+     */
+    double get99thPercentileMillis();
+
+    /**
+     * Gets the 99.9th percentile latency.
+     *
+     * @return 99.9th percentile latency in milliseconds
+     */
+    double get999thPercentileMillis();
+
+    /**
+     * Gets the highest latency.
+     *
+     * @return Highest latency in milliseconds
+     */
+    double getMaxMillis();
+}
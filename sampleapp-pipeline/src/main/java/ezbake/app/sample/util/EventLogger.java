@@ -0,0 +1,300 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample.util;
+
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import ezbake.app.sample.metrics.Counter;
+import ezbake.app.sample.metrics.PipelineMetrics;
+
+/**
+ * Logs per-event messages, such as one line per Tweet, without making logging a throughput cost. Only every Nth event
+ * is logged, at most a configured number per second, and the sampled messages are handed to a background thread that
+ * formats and logs them, so the caller never waits on an appender. Messages are dropped, and counted in the
+ * {@value #DROPPED_COUNTER} metric, when the background thread falls behind. Totals of the events are left to
+ * {@link PipelineMetrics}, whose reporter logs them each interval.
+ *
+ * <p>Arguments are formatted on the background thread, so they must not be modified after being logged.</p>
+ */
+public final class EventLogger {
+    /**
+     * Configuration property for the sampling interval, where 1 logs every event and 0 logs none. Defaults to 1000.
+     */
+    public static final String SAMPLE_EVERY_PROP = "sampleapp.log.events.sample.every";
+
+    /**
+     * Configuration property for the most events logged per second by each logger, or 0 for no limit. Defaults to 10.
+     */
+    public static final String MAX_PER_SECOND_PROP = "sampleapp.log.events.max.per.second";
+
+    /**
+     * Configuration property for whether events are logged by a background thread. Defaults to true.
+     */
+    public static final String ASYNC_PROP = "sampleapp.log.events.async";
+
+    /**
+     * Configuration property for the number of events that may wait for the background thread. Defaults to 1024.
+     */
+    public static final String QUEUE_CAPACITY_PROP = "sampleapp.log.events.queue.capacity";
+
+    /**
+     * Name of the metric counting the events dropped because the background thread fell behind.
+     */
+    public static final String DROPPED_COUNTER = "log.events.dropped";
+
+    private static final long DEFAULT_SAMPLE_EVERY = 1000;
+    private static final long DEFAULT_MAX_PER_SECOND = 10;
+    private static final int DEFAULT_QUEUE_CAPACITY = 1024;
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * Background thread shared by the loggers in this JVM, created by the first asynchronous logger.
+     */
+    private static Dispatcher dispatcher;
+
+    private final Logger logger;
+    private final long sampleEvery;
+    private final long maxPerSecond;
+
+    /**
+     * Background thread to hand events to, or null to log them on the caller's thread.
+     */
+    private final Dispatcher async;
+
+    private final AtomicLong events = new AtomicLong();
+
+    /**
+     * Start of the current one second window, and events logged in it, guarded by this.
+     */
+    private long windowStartNanos;
+    private long windowEvents;
+
+    /**
+     * Constructor.
+     *
+     * @param logger Logger to log the sampled events to
+     * @param sampleEvery Sampling interval
+     * @param maxPerSecond Most events logged per second, or 0 for no limit
+     * @param async Background thread, or null to log on the caller's thread
+     */
+    private EventLogger(Logger logger, long sampleEvery, long maxPerSecond, Dispatcher async) {
+        this.logger = logger;
+        this.sampleEvery = sampleEvery;
+        this.maxPerSecond = maxPerSecond;
+        this.async = async;
+        windowStartNanos = System.nanoTime();
+    }
+
+    /**
+     * Creates an event logger from configuration.
+     *
+     * @param logger Logger to log the sampled events to
+     * @param props Configuration properties
+     * @return Event logger
+     */
+    public static EventLogger create(Logger logger, Properties props) {
+        final long sampleEvery =
+                Long.parseLong(props.getProperty(SAMPLE_EVERY_PROP, String.valueOf(DEFAULT_SAMPLE_EVERY)));
+
+        final long maxPerSecond =
+                Long.parseLong(props.getProperty(MAX_PER_SECOND_PROP, String.valueOf(DEFAULT_MAX_PER_SECOND)));
+
+        Dispatcher async = null;
+        if (Boolean.parseBoolean(props.getProperty(ASYNC_PROP, Boolean.TRUE.toString()))) {
+            async = getDispatcher(props);
+        }
+
+        return new EventLogger(logger, sampleEvery, maxPerSecond, async);
+    }
+
+    /**
+     * Logs an event at INFO if it is sampled.
+     *
+     * @param format Message format
+     * @param arg Message argument
+     */
+    public void log(String format, Object arg) {
+        if (isSampled()) {
+            emit(format, new Object[] {arg});
+        }
+    }
+
+    /**
+     * Logs an event at INFO if it is sampled.
+     *
+     * @param format Message format
+     * @param arg1 First message argument
+     * @param arg2 Second message argument
+     */
+    public void log(String format, Object arg1, Object arg2) {
+        if (isSampled()) {
+            emit(format, new Object[] {arg1, arg2});
+        }
+    }
+
+    /**
+     * Logs an event at INFO if it is sampled.
+     *
+     * @param format Message format
+     * @param args Message arguments
+     */
+    public void log(String format, Object... args) {
+        if (isSampled()) {
+            emit(format, args);
+        }
+    }
+
+    /**
+     * Decides whether to log the current event.
+     *
+     * @return true if the event is one in every N and within the rate limit
+     */
+    private boolean isSampled() {
+        if (sampleEvery <= 0 || !logger.isInfoEnabled()) {
+            return false;
+        }
+
+        return events.getAndIncrement() % sampleEvery == 0 && tryAcquire();
+    }
+
+    /**
+     * Takes a permit from the current one second window, if there is a limit.
+     *
+     * @return true if the event may be logged
+     */
+    private synchronized boolean tryAcquire() {
+        if (maxPerSecond <= 0) {
+            return true;
+        }
+
+        final long now = System.nanoTime();
+        if (now - windowStartNanos >= NANOS_PER_SECOND) {
+            windowStartNanos = now;
+            windowEvents = 0;
+        }
+
+        if (windowEvents >= maxPerSecond) {
+            return false;
+        }
+
+        windowEvents++;
+        return true;
+    }
+
+    /**
+     * Logs a sampled event, on the background thread if enabled.
+     *
+     * @param format Message format
+     * @param args Message arguments
+     */
+    private void emit(String format, Object[] args) {
+        if (async == null) {
+            logger.info(format, args);
+        } else {
+            async.offer(new Event(logger, format, args));
+        }
+    }
+
+    /**
+     * Gets the background thread for this JVM, starting it if needed.
+     *
+     * @param props Configuration properties
+     * @return Background thread
+     */
+    private static synchronized Dispatcher getDispatcher(Properties props) {
+        if (dispatcher == null) {
+            final int capacity = Integer.parseInt(
+                    props.getProperty(QUEUE_CAPACITY_PROP, String.valueOf(DEFAULT_QUEUE_CAPACITY)));
+
+            dispatcher = new Dispatcher(capacity, PipelineMetrics.get(props).counter(DROPPED_COUNTER));
+            new ThreadFactoryBuilder().setDaemon(true).setNameFormat("event-logger-%d").build().newThread(dispatcher)
+                    .start();
+        }
+
+        return dispatcher;
+    }
+
+    /**
+     * Event waiting to be logged.
+     */
+    private static final class Event {
+        private final Logger logger;
+        private final String format;
+        private final Object[] args;
+
+        /**
+         * Constructor.
+         *
+         * @param logger Logger to log the event to
+         * @param format Message format
+         * @param args Message arguments
+         */
+        Event(Logger logger, String format, Object[] args) {
+            this.logger = logger;
+            this.format = format;
+            this.args = args;
+        }
+    }
+
+    /**
+     * Logs the events handed to it, dropping them when its queue is full.
+     */
+    private static final class Dispatcher implements Runnable {
+        private final BlockingQueue<Event> queue;
+        private final Counter dropped;
+
+        /**
+         * Constructor.
+         *
+         * @param capacity Number of events that may wait to be logged
+         * @param dropped Counter of the events dropped
+         */
+        Dispatcher(int capacity, Counter dropped) {
+            queue = new ArrayBlockingQueue<>(capacity);
+            this.dropped = dropped;
+        }
+
+        /**
+         * Hands an event to the background thread without waiting.
+         *
+         * @param event Event to log
+         */
+        void offer(Event event) {
+            if (!queue.offer(event)) {
+                dropped.increment();
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    final Event event = queue.take();
+                    event.logger.info(event.format, event.args);
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
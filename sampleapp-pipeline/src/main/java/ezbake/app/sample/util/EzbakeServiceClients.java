@@ -0,0 +1,70 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample.util;
+
+import java.io.IOException;
+import java.util.Properties;
+
+import org.apache.thrift.TException;
+import org.apache.thrift.TServiceClient;
+
+import ezbake.base.thrift.EzSecurityToken;
+import ezbake.base.thrift.EzSecurityTokenException;
+import ezbake.security.client.EzbakeSecurityClient;
+import ezbake.thrift.ThriftClientPool;
+
+import ezbakehelpers.ezconfigurationhelpers.application.EzBakeApplicationConfigurationHelper;
+
+/**
+ * Reaches the EzBake services through a {@link ThriftClientPool}, and fetches tokens for the application's security ID
+ * from EzSecurity.
+ */
+public final class EzbakeServiceClients implements ServiceClients {
+    private final ThriftClientPool pool;
+    private final EzbakeSecurityClient securityClient;
+    private final String securityId;
+
+    /**
+     * Constructor.
+     *
+     * @param props Configuration properties
+     */
+    public EzbakeServiceClients(Properties props) {
+        pool = new ThriftClientPool(props);
+        securityClient = new EzbakeSecurityClient(props);
+        securityId = new EzBakeApplicationConfigurationHelper(props).getSecurityID();
+    }
+
+    @Override
+    public <T extends TServiceClient> T getClient(String serviceName, Class<T> clientClass) throws TException {
+        return pool.getClient(serviceName, clientClass);
+    }
+
+    @Override
+    public void returnToPool(TServiceClient client) {
+        pool.returnToPool(client);
+    }
+
+    @Override
+    public EzSecurityToken fetchAppToken() throws EzSecurityTokenException {
+        return securityClient.fetchAppToken(securityId);
+    }
+
+    @Override
+    public void close() throws IOException {
+        pool.close();
+        securityClient.close();
+    }
+}
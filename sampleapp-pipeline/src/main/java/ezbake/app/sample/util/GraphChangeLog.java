@@ -0,0 +1,109 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample.util;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+
+/**
+ * Append-only log of the Twitter users whose vertices or edges were written to the graph. The web services tail the
+ * log to invalidate cached graph expansions that include those users.
+ * <p>
+ * The log is a UTF-8 file with one screen name per line. When the file grows beyond its size limit it is replaced by a
+ * new, empty file, which readers detect from the changed file identity and treat as a signal that any user may have
+ * changed. Replacing rather than truncating in place means readers notice even if the new file has already grown past
+ * the position they had read to.
+ */
+public final class GraphChangeLog implements Closeable {
+    private static final char LINE_SEPARATOR = '\n';
+    private static final String NEW_FILE_SUFFIX = ".new";
+
+    private final Path file;
+    private final long maxBytes;
+    private BufferedWriter writer;
+    private long bytesWritten;
+
+    /**
+     * Constructor.
+     *
+     * @param file Log file, created if necessary
+     * @param maxBytes Size after which the log is replaced
+     * @throws IOException if the log could not be opened
+     */
+    public GraphChangeLog(Path file, long maxBytes) throws IOException {
+        this.file = file;
+        this.maxBytes = maxBytes;
+        open();
+    }
+
+    /**
+     * Records that users were written to the graph. The entries are flushed before returning.
+     *
+     * @param screenNames Screen names of the users
+     * @throws IOException if the entries could not be written
+     */
+    public synchronized void record(Collection<String> screenNames) throws IOException {
+        if (bytesWritten > maxBytes) {
+            writer.close();
+            replace();
+        }
+
+        for (final String screenName : screenNames) {
+            writer.write(screenName);
+            writer.write(LINE_SEPARATOR);
+            bytesWritten += screenName.getBytes(StandardCharsets.UTF_8).length + 1;
+        }
+
+        writer.flush();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        writer.close();
+    }
+
+    /**
+     * Opens the log for appending.
+     *
+     * @throws IOException if the log could not be opened
+     */
+    private void open() throws IOException {
+        writer = Files.newBufferedWriter(
+                file, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+
+        bytesWritten = Files.size(file);
+    }
+
+    /**
+     * Replaces the log with a new, empty file and opens it.
+     *
+     * @throws IOException if the log could not be replaced or opened
+     */
+    private void replace() throws IOException {
+        final Path empty = file.resolveSibling(file.getFileName() + NEW_FILE_SUFFIX);
+        Files.deleteIfExists(empty);
+        Files.createFile(empty);
+        Files.move(empty, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        open();
+    }
+}
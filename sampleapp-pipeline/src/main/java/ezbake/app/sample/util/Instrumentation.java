@@ -0,0 +1,140 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample.util;
+
+import java.util.Properties;
+
+import org.apache.thrift.TException;
+import org.slf4j.Logger;
+
+import ezbake.app.sample.metrics.PipelineMetrics;
+import ezbake.app.sample.metrics.Timer;
+import ezbake.app.sample.trace.Span;
+import ezbake.app.sample.trace.Tracer;
+
+/**
+ * Times and traces the operations of a worker, and logs its sampled events. Each operation is recorded in the
+ * {@link Timer} of its name and in a {@link Span} of the same name, both marked as failed if the operation throws, so
+ * that call sites only supply the operation itself.
+ */
+public final class Instrumentation {
+    private final PipelineMetrics metrics;
+    private final Tracer tracer;
+    private final EventLogger events;
+
+    /**
+     * Constructor.
+     *
+     * @param metrics Registry of the timers
+     * @param tracer Tracer of the sampled items
+     * @param events Log of the sampled events
+     */
+    public Instrumentation(PipelineMetrics metrics, Tracer tracer, EventLogger events) {
+        this.metrics = metrics;
+        this.tracer = tracer;
+        this.events = events;
+    }
+
+    /**
+     * Creates the instrumentation of a worker from configuration.
+     *
+     * @param logger Logger to log the sampled events to
+     * @param props Configuration properties
+     * @return Instrumentation
+     */
+    public static Instrumentation create(Logger logger, Properties props) {
+        return new Instrumentation(PipelineMetrics.get(props), Tracer.get(props), EventLogger.create(logger, props));
+    }
+
+    /**
+     * Runs an operation of the item being traced on this thread, such as a call to a backend service.
+     *
+     * @param operation Name of the timer and span
+     * @param call Operation to run
+     * @param <T> Type of the operation's result
+     * @return Result of the operation
+     * @throws TException if the operation threw it
+     */
+    public <T> T call(String operation, Call<T> call) throws TException {
+        return run(operation, tracer.startSpan(operation), call);
+    }
+
+    /**
+     * Runs the processing of an item that was traced in another thread or process.
+     *
+     * @param operation Name of the timer and span
+     * @param traceContext Encoded trace context carried by the item, may be null
+     * @param call Processing to run
+     * @param <T> Type of the processing's result
+     * @return Result of the processing
+     * @throws TException if the processing threw it
+     */
+    public <T> T trace(String operation, String traceContext, Call<T> call) throws TException {
+        return run(operation, tracer.startSpan(operation, traceContext), call);
+    }
+
+    /**
+     * Logs an event if it is sampled.
+     *
+     * @param format Message format
+     * @param arg1 First message argument
+     * @param arg2 Second message argument
+     * @see EventLogger#log(String, Object, Object)
+     */
+    public void log(String format, Object arg1, Object arg2) {
+        events.log(format, arg1, arg2);
+    }
+
+    /**
+     * Runs an operation, recording it in its timer and span.
+     *
+     * @param operation Name of the timer
+     * @param span Span of the operation, already started
+     * @param call Operation to run
+     * @param <T> Type of the operation's result
+     * @return Result of the operation
+     * @throws TException if the operation threw it
+     */
+    private <T> T run(String operation, Span span, Call<T> call) throws TException {
+        final Timer timer = metrics.timer(operation);
+        final long start = System.nanoTime();
+        try {
+            final T result = call.call();
+            timer.record(start);
+            return result;
+        } catch (final TException | RuntimeException e) {
+            timer.recordError(start);
+            span.setError();
+            throw e;
+        } finally {
+            span.close();
+        }
+    }
+
+    /**
+     * An instrumented operation.
+     *
+     * @param <T> Type of the operation's result
+     */
+    public interface Call<T> {
+        /**
+         * Runs the operation.
+         *
+         * @return Result of the operation
+         * @throws TException if a Thrift call failed
+         */
+        T call() throws TException;
+    }
+}
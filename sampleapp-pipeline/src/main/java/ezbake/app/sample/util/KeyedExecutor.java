@@ -0,0 +1,332 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample.util;
+
+import java.io.Closeable;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import ezbake.app.sample.metrics.Counter;
+import ezbake.app.sample.metrics.PipelineMetrics;
+
+/**
+ * Runs a worker's tasks concurrently on a fixed number of lanes, each a thread with a bounded queue. Tasks with the
+ * same key always go to the same lane, so they run one at a time in the order they were submitted, while tasks with
+ * different keys run in parallel. When a lane's queue is full the caller blocks until there is room, so a worker that
+ * falls behind slows the stage feeding it rather than buffering without limit.
+ *
+ * <p>With no lanes configured, the default, tasks run on the caller's thread as before. Tasks that throw are logged and
+ * counted in the "&lt;name&gt;.lane.failures" metric, and as the caller has already moved on, the first failure is
+ * rethrown by the next call to {@link #execute} or {@link #close}, so that the worker fails rather than silently
+ * dropping the item. A lane whose thread stops before the executor is closed, because it was interrupted or a task
+ * threw an error, is recorded as a failure in the same way, and tasks submitted to it are rejected rather than waiting
+ * for room that never comes. "&lt;name&gt;.lane.blocked" counts the tasks whose caller had to wait for room.</p>
+ */
+public final class KeyedExecutor implements Closeable {
+    /**
+     * Configuration property, formatted with the executor name, for the number of lanes. Defaults to 0, which runs
+     * tasks on the caller's thread.
+     */
+    public static final String THREADS_PROP_FORMAT = "sampleapp.worker.%s.threads";
+
+    /**
+     * Configuration property, formatted with the executor name, for the number of tasks that may wait in each lane.
+     * Defaults to 100.
+     */
+    public static final String QUEUE_CAPACITY_PROP_FORMAT = "sampleapp.worker.%s.queue.capacity";
+
+    private static final Logger logger = LoggerFactory.getLogger(KeyedExecutor.class);
+
+    private static final int DEFAULT_QUEUE_CAPACITY = 100;
+    private static final long CLOSE_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    /**
+     * How often a caller waiting for room in a lane checks that the lane is still running.
+     */
+    private static final long LIVENESS_CHECK_MILLIS = 100;
+
+    /**
+     * Task queued after the last task of a lane when the executor is closed.
+     */
+    private static final Runnable END = new Runnable() {
+        @Override
+        public void run() {
+        }
+    };
+
+    private final String name;
+    private final Lane[] lanes;
+    private final Counter failures;
+    private final Counter blocked;
+
+    /**
+     * First task failure not yet rethrown to a caller, or null.
+     */
+    private final AtomicReference<RuntimeException> failure = new AtomicReference<>();
+
+    /**
+     * Held for reading while submitting a task and for writing while closing, so that no task is queued after the end
+     * of its lane.
+     */
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Whether the executor is closed, guarded by lock.
+     */
+    private boolean closed;
+
+    /**
+     * Constructor.
+     *
+     * @param name Name of the executor, used in thread names
+     * @param threads Number of lanes, or 0 to run tasks on the caller's thread
+     * @param queueCapacity Number of tasks that may wait in each lane
+     * @param failures Counter of the tasks that threw
+     * @param blocked Counter of the tasks whose caller waited for room in a lane
+     */
+    public KeyedExecutor(String name, int threads, int queueCapacity, Counter failures, Counter blocked) {
+        this.name = name;
+        this.failures = failures;
+        this.blocked = blocked;
+
+        final ThreadFactory threadFactory =
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat(name + "-lane-%d").build();
+
+        lanes = new Lane[threads];
+        for (int i = 0; i < threads; i++) {
+            lanes[i] = new Lane(queueCapacity);
+            lanes[i].thread = threadFactory.newThread(lanes[i]);
+            lanes[i].thread.start();
+        }
+    }
+
+    /**
+     * Creates an executor from configuration.
+     *
+     * @param name Name of the executor, used in configuration properties, metric names and thread names
+     * @param props Configuration properties
+     * @return Executor
+     */
+    public static KeyedExecutor create(String name, Properties props) {
+        final int threads = Integer.parseInt(props.getProperty(String.format(THREADS_PROP_FORMAT, name), "0"));
+        final int queueCapacity = Integer.parseInt(
+                props.getProperty(
+                        String.format(QUEUE_CAPACITY_PROP_FORMAT, name), String.valueOf(DEFAULT_QUEUE_CAPACITY)));
+
+        final PipelineMetrics metrics = PipelineMetrics.get(props);
+        return new KeyedExecutor(
+                name, threads, queueCapacity, metrics.counter(name + ".lane.failures"),
+                metrics.counter(name + ".lane.blocked"));
+    }
+
+    /**
+     * Runs a task after the tasks submitted earlier with the same key, blocking while its lane is full.
+     *
+     * @param key Key whose tasks must run in order
+     * @param task Task to run
+     * @throws IllegalStateException if the executor is closed, a task submitted earlier failed or the task's lane has
+     * stopped, in which case this task is not run, or the caller was interrupted while waiting for room
+     */
+    public void execute(Object key, Runnable task) {
+        rethrowFailure();
+
+        lock.readLock().lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException(name + " executor is closed");
+            }
+
+            if (lanes.length > 0) {
+                enqueue(lanes[(key.hashCode() & Integer.MAX_VALUE) % lanes.length], task);
+                return;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        task.run();
+    }
+
+    /**
+     * Runs the tasks already submitted and stops the lanes, waiting up to a minute for them to finish.
+     *
+     * @throws IllegalStateException if a task failed or a lane stopped since the last failure was rethrown
+     */
+    @Override
+    public void close() {
+        try {
+            lock.writeLock().lock();
+            try {
+                if (closed) {
+                    return;
+                }
+
+                closed = true;
+                for (final Lane lane : lanes) {
+                    lane.put(END);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+
+            final long deadline = System.currentTimeMillis() + CLOSE_TIMEOUT_MILLIS;
+            for (final Lane lane : lanes) {
+                lane.thread.join(Math.max(1, deadline - System.currentTimeMillis()));
+                if (lane.thread.isAlive()) {
+                    logger.warn("{} still has {} tasks queued after closing", lane.thread.getName(), lane.queue.size());
+                }
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("Interrupted while closing {} executor", name);
+        }
+
+        rethrowFailure();
+    }
+
+    /**
+     * Queues a task in a lane, blocking while the lane is full and still running.
+     *
+     * @param lane Lane to queue the task in
+     * @param task Task to queue
+     * @throws IllegalStateException if the lane has stopped, or the caller was interrupted while waiting for room
+     */
+    private void enqueue(Lane lane, Runnable task) {
+        if (lane.running && lane.queue.offer(task)) {
+            return;
+        }
+
+        if (lane.running) {
+            blocked.increment();
+            try {
+                if (lane.put(task)) {
+                    return;
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for room in " + name + " executor", e);
+            }
+        }
+
+        rethrowFailure();
+        throw new IllegalStateException(lane.thread.getName() + " has stopped");
+    }
+
+    /**
+     * Rethrows the first task failure that has not been rethrown yet, if any.
+     *
+     * @throws IllegalStateException wrapping the failure
+     */
+    private void rethrowFailure() {
+        final RuntimeException e = failure.getAndSet(null);
+        if (e != null) {
+            throw new IllegalStateException(name + " executor task failed", e);
+        }
+    }
+
+    /**
+     * A thread running the tasks of its queue in order.
+     */
+    private final class Lane implements Runnable {
+        private final BlockingQueue<Runnable> queue;
+        private Thread thread;
+
+        /**
+         * Whether the lane's thread is still taking tasks.
+         */
+        private volatile boolean running = true;
+
+        /**
+         * Constructor.
+         *
+         * @param queueCapacity Number of tasks that may wait in the lane
+         */
+        private Lane(int queueCapacity) {
+            queue = new ArrayBlockingQueue<>(queueCapacity);
+        }
+
+        /**
+         * Queues a task, waiting for room while the lane is running.
+         *
+         * @param task Task to queue
+         * @return false if the lane stopped before there was room for the task
+         * @throws InterruptedException if the caller was interrupted while waiting for room
+         */
+        private boolean put(Runnable task) throws InterruptedException {
+            while (running) {
+                if (queue.offer(task, LIVENESS_CHECK_MILLIS, TimeUnit.MILLISECONDS)) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        @Override
+        public void run() {
+            boolean ended = false;
+            try {
+                ended = runTasks();
+            } finally {
+                running = false;
+                if (!ended) {
+                    failure.compareAndSet(
+                            null, new IllegalStateException(
+                                    thread.getName() + " stopped with " + queue.size() + " tasks queued"));
+                }
+            }
+        }
+
+        /**
+         * Runs tasks until the end of the lane.
+         *
+         * @return true if the end of the lane was reached, false if the thread was interrupted
+         */
+        private boolean runTasks() {
+            while (true) {
+                final Runnable task;
+                try {
+                    task = queue.take();
+                } catch (final InterruptedException e) {
+                    logger.warn("{} interrupted with {} tasks queued", thread.getName(), queue.size());
+                    return false;
+                }
+
+                if (task == END) {
+                    return true;
+                }
+
+                try {
+                    task.run();
+                } catch (final RuntimeException e) {
+                    failure.compareAndSet(null, e);
+                    failures.increment();
+                    logger.error("Task failed in {}", thread.getName(), e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,647 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample.util;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Reverse index from provenance IDs to the artifacts ingested from them, so that purges can find the artifacts of a
+ * provenance ID without scanning the stores.
+ * <p>
+ * The index is a directory of UTF-8 files holding one tab-separated provenance ID, artifact type and artifact key per
+ * line. {@link ProvenanceIndexWriter}s append to their own segment files ending in {@value #ACTIVE_SUFFIX}, which are
+ * renamed to end in {@value #SEALED_SUFFIX} once full. {@link #compact()} merges sealed segments, and active segments
+ * abandoned by a writer that died, into a single file sorted by provenance ID, which lookups binary search. Segments
+ * that have not been compacted yet are scanned.
+ * <p>
+ * Provenance IDs whose artifacts have been purged are listed in {@value #PURGED_FILE_NAME} by
+ * {@link #markPurged(Collection)}, and compaction drops their entries. The list is kept, as segments written before the
+ * purge may still hold entries for them.
+ */
+public final class ProvenanceIndex {
+    /**
+     * Artifact types, named after the stores from which the artifacts are purged.
+     */
+    public static final String TWEET_TYPE = "tweets";
+    public static final String IMAGE_TYPE = "images";
+    public static final String EDGE_TYPE = "edges";
+
+    static final String ACTIVE_SUFFIX = ".log";
+    static final String SEALED_SUFFIX = ".sealed";
+
+    private static final String SORTED_FILE_NAME = "index.sorted";
+    private static final String PURGED_FILE_NAME = "purged.ids";
+    private static final String LOCK_FILE_NAME = "compaction.lock";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private static final char FIELD_SEPARATOR = '\t';
+    private static final char EDGE_KEY_SEPARATOR = '/';
+    private static final byte LINE_SEPARATOR = '\n';
+    private static final int READ_CHUNK_BYTES = 256;
+
+    private final Path dir;
+
+    /**
+     * Constructor.
+     *
+     * @param dir Index directory. A missing directory is treated as an empty index.
+     */
+    public ProvenanceIndex(Path dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * Builds the key of the graph edges written for a Tweet. Every such edge is incident to the vertex of the Tweet's
+     * author and carries the Tweet ID.
+     *
+     * @param authorScreenName Screen name of the Tweet's author
+     * @param tweetId ID of the Tweet
+     * @return Key of the edges
+     */
+    public static String getEdgeKey(String authorScreenName, String tweetId) {
+        return authorScreenName + EDGE_KEY_SEPARATOR + tweetId;
+    }
+
+    /**
+     * Looks up the artifacts ingested from a set of provenance IDs.
+     *
+     * @param provenanceIds Provenance IDs to look up
+     * @return Artifacts keyed by provenance ID. Provenance IDs without artifacts are absent.
+     * @throws IOException if the index could not be read
+     */
+    public Map<Long, List<Entry>> lookup(Collection<Long> provenanceIds) throws IOException {
+        final Map<Long, List<Entry>> found = new TreeMap<>();
+        if (provenanceIds.isEmpty() || !Files.isDirectory(dir)) {
+            return found;
+        }
+
+        // Segments are read before the sorted file so that entries moved by a concurrent compaction are seen in one
+        // or the other
+        final Set<Long> wanted = new TreeSet<>(provenanceIds);
+        for (final Path segment : listSegments()) {
+            for (final Entry entry : readListedSegment(segment)) {
+                if (wanted.contains(entry.getProvenanceId())) {
+                    add(found, entry);
+                }
+            }
+        }
+
+        final Path sortedFile = dir.resolve(SORTED_FILE_NAME);
+        try (FileChannel channel = FileChannel.open(sortedFile, StandardOpenOption.READ)) {
+            for (final long provenanceId : wanted) {
+                long pos = findFirst(channel, provenanceId);
+                while (pos < channel.size()) {
+                    final String line = readLine(channel, pos);
+                    final Entry entry = Entry.parse(line);
+                    if (entry.getProvenanceId() != provenanceId) {
+                        break;
+                    }
+
+                    add(found, entry);
+                    pos += line.getBytes(StandardCharsets.UTF_8).length + 1;
+                }
+            }
+        } catch (final NoSuchFileException e) {
+            // Nothing has been compacted yet
+        }
+
+        return found;
+    }
+
+    /**
+     * Records that the artifacts of provenance IDs have been purged, so that compaction drops their entries.
+     *
+     * @param provenanceIds Purged provenance IDs
+     * @throws IOException if the purged provenance IDs could not be written
+     */
+    public void markPurged(Collection<Long> provenanceIds) throws IOException {
+        if (provenanceIds.isEmpty()) {
+            return;
+        }
+
+        final StringBuilder lines = new StringBuilder();
+        for (final long provenanceId : provenanceIds) {
+            lines.append(provenanceId).append((char) LINE_SEPARATOR);
+        }
+
+        // A single write, so that compaction never reads part of a line other than at the end of the file
+        Files.createDirectories(dir);
+        Files.write(
+                dir.resolve(PURGED_FILE_NAME), lines.toString().getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Merges the sealed and abandoned segments into the sorted file, then deletes them. Entries of purged provenance
+     * IDs are dropped, both from the segments and from the sorted file. Only one compaction runs at a time across all
+     * processes sharing the index.
+     *
+     * @return true if the index was compacted, false if another compaction was in progress
+     * @throws IOException if the index could not be compacted
+     */
+    public boolean compact() throws IOException {
+        Files.createDirectories(dir);
+        try (FileChannel lockChannel = FileChannel.open(
+                dir.resolve(LOCK_FILE_NAME), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            final FileLock lock;
+            try {
+                lock = lockChannel.tryLock();
+            } catch (final OverlappingFileLockException e) {
+                return false;
+            }
+
+            if (lock == null) {
+                return false;
+            }
+
+            try {
+                final Set<Long> purged = readPurged();
+                final List<Path> segments = new ArrayList<>();
+                final Set<Entry> entries = new TreeSet<>();
+                for (final Path segment : listSegments()) {
+                    if (segment.toString().endsWith(SEALED_SUFFIX) || isAbandoned(segment)) {
+                        segments.add(segment);
+                        final List<Entry> segmentEntries = readSegment(segment);
+                        if (segmentEntries != null) {
+                            for (final Entry entry : segmentEntries) {
+                                if (!purged.contains(entry.getProvenanceId())) {
+                                    entries.add(entry);
+                                }
+                            }
+                        }
+                    }
+                }
+
+                if (segments.isEmpty() && purged.isEmpty()) {
+                    return true;
+                }
+
+                merge(entries, purged);
+                for (final Path segment : segments) {
+                    Files.deleteIfExists(segment);
+                }
+
+                return true;
+            } finally {
+                lock.release();
+            }
+        }
+    }
+
+    /**
+     * Counts the sealed segments waiting to be compacted.
+     *
+     * @return Number of sealed segments
+     * @throws IOException if the index directory could not be listed
+     */
+    int countSealedSegments() throws IOException {
+        int count = 0;
+        for (final Path segment : listSegments()) {
+            if (segment.toString().endsWith(SEALED_SUFFIX)) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Writes a new sorted file holding the entries of the current one and the given entries, and replaces the current
+     * one with it atomically.
+     *
+     * @param entries Entries to add, sorted
+     * @param purged Provenance IDs whose entries are dropped from the current sorted file
+     * @throws IOException if the sorted file could not be written
+     */
+    private void merge(Set<Entry> entries, Set<Long> purged) throws IOException {
+        final Path sortedFile = dir.resolve(SORTED_FILE_NAME);
+        final Path tempFile = dir.resolve(SORTED_FILE_NAME + TEMP_SUFFIX);
+        try (BufferedWriter writer = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+            Entry previous = null;
+            final List<Entry> added = new ArrayList<>(entries);
+            int addedIdx = 0;
+            if (Files.exists(sortedFile)) {
+                try (BufferedReader reader = Files.newBufferedReader(sortedFile, StandardCharsets.UTF_8)) {
+                    for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                        final Entry existing = Entry.parse(line);
+                        if (purged.contains(existing.getProvenanceId())) {
+                            continue;
+                        }
+
+                        while (addedIdx < added.size() && added.get(addedIdx).compareTo(existing) < 0) {
+                            previous = write(writer, added.get(addedIdx++), previous);
+                        }
+
+                        previous = write(writer, existing, previous);
+                    }
+                }
+            }
+
+            while (addedIdx < added.size()) {
+                previous = write(writer, added.get(addedIdx++), previous);
+            }
+        }
+
+        Files.move(tempFile, sortedFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Writes an entry to the sorted file unless it repeats the previous one.
+     *
+     * @param writer Writer of the sorted file
+     * @param entry Entry to write
+     * @param previous Previously written entry, or null
+     * @return The entry now last written
+     * @throws IOException if the entry could not be written
+     */
+    private static Entry write(BufferedWriter writer, Entry entry, Entry previous) throws IOException {
+        if (!entry.equals(previous)) {
+            writer.write(entry.toString());
+            writer.write(LINE_SEPARATOR);
+        }
+
+        return entry;
+    }
+
+    /**
+     * Reads the provenance IDs recorded by {@link #markPurged(Collection)}. A partially written last line is ignored.
+     *
+     * @return Purged provenance IDs
+     * @throws IOException if the file could not be read or holds an invalid provenance ID
+     */
+    private Set<Long> readPurged() throws IOException {
+        final byte[] content;
+        try {
+            content = Files.readAllBytes(dir.resolve(PURGED_FILE_NAME));
+        } catch (final NoSuchFileException e) {
+            return Collections.emptySet();
+        }
+
+        final Set<Long> purged = new HashSet<>();
+        int start = 0;
+        for (int idx = 0; idx < content.length; idx++) {
+            if (content[idx] == LINE_SEPARATOR) {
+                final String line = new String(content, start, idx - start, StandardCharsets.UTF_8);
+                try {
+                    purged.add(Long.parseLong(line));
+                } catch (final NumberFormatException e) {
+                    throw new IOException("Invalid purged provenance ID: " + line, e);
+                }
+
+                start = idx + 1;
+            }
+        }
+
+        return purged;
+    }
+
+    /**
+     * Lists the segment files of the index.
+     *
+     * @return Active and sealed segments
+     * @throws IOException if the index directory could not be listed
+     */
+    private List<Path> listSegments() throws IOException {
+        if (!Files.isDirectory(dir)) {
+            return Collections.emptyList();
+        }
+
+        final List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (final Path file : files) {
+                final String name = file.getFileName().toString();
+                if (name.endsWith(ACTIVE_SUFFIX) || name.endsWith(SEALED_SUFFIX)) {
+                    segments.add(file);
+                }
+            }
+        }
+
+        return segments;
+    }
+
+    /**
+     * Gets the name under which an active segment is sealed.
+     *
+     * @param activeSegment Active segment file
+     * @return Sealed segment file
+     */
+    static Path getSealedPath(Path activeSegment) {
+        final String activeName = activeSegment.getFileName().toString();
+        return activeSegment.resolveSibling(
+                activeName.substring(0, activeName.length() - ACTIVE_SUFFIX.length()) + SEALED_SUFFIX);
+    }
+
+    /**
+     * Reads a segment found by listing the index. An active segment that was sealed since it was listed is read under
+     * its sealed name. A sealed segment that was compacted since it was listed reads as empty, as its entries are then
+     * in the sorted file, which lookups read after the segments.
+     *
+     * @param segment Listed segment file
+     * @return Entries of the segment
+     * @throws IOException if the segment could not be read
+     */
+    static List<Entry> readListedSegment(Path segment) throws IOException {
+        List<Entry> entries = readSegment(segment);
+        if (entries == null && segment.toString().endsWith(ACTIVE_SUFFIX)) {
+            entries = readSegment(getSealedPath(segment));
+        }
+
+        return entries == null ? Collections.<Entry>emptyList() : entries;
+    }
+
+    /**
+     * Reads the complete lines of a segment. A partially written last line is ignored.
+     *
+     * @param segment Segment file
+     * @return Entries of the segment, or null if it does not exist, for example because it was renamed or removed
+     * since it was listed
+     * @throws IOException if the segment could not be read
+     */
+    private static List<Entry> readSegment(Path segment) throws IOException {
+        final byte[] content;
+        try {
+            content = Files.readAllBytes(segment);
+        } catch (final NoSuchFileException e) {
+            return null;
+        }
+
+        final List<Entry> entries = new ArrayList<>();
+        int start = 0;
+        for (int idx = 0; idx < content.length; idx++) {
+            if (content[idx] == LINE_SEPARATOR) {
+                entries.add(Entry.parse(new String(content, start, idx - start, StandardCharsets.UTF_8)));
+                start = idx + 1;
+            }
+        }
+
+        return entries;
+    }
+
+    /**
+     * Checks whether an active segment was left behind by a writer that is no longer running. Writers hold a lock on
+     * their active segment for as long as it is open.
+     *
+     * @param segment Active segment
+     * @return true if no writer holds the segment
+     * @throws IOException if the segment could not be opened
+     */
+    private static boolean isAbandoned(Path segment) throws IOException {
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            final FileLock lock = channel.tryLock();
+            if (lock == null) {
+                return false;
+            }
+
+            lock.release();
+            return true;
+        } catch (final OverlappingFileLockException e) {
+            return false;
+        } catch (final NoSuchFileException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Finds the start of the first line of the sorted file with a provenance ID of at least the given one.
+     *
+     * @param channel Sorted file
+     * @param provenanceId Provenance ID to find
+     * @return Position of the line, or the size of the file if there is none
+     * @throws IOException if the file could not be read
+     */
+    private static long findFirst(FileChannel channel, long provenanceId) throws IOException {
+        long low = 0;
+        long high = channel.size();
+        while (low < high) {
+            final long mid = (low + high) >>> 1;
+            final long lineStart = lineStartAtOrAfter(channel, mid);
+            if (lineStart >= channel.size()
+                    || Entry.parse(readLine(channel, lineStart)).getProvenanceId() >= provenanceId) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+
+        return lineStartAtOrAfter(channel, low);
+    }
+
+    /**
+     * Finds the start of the first line that starts at or after a position.
+     *
+     * @param channel File to search
+     * @param pos Position from which to search
+     * @return Position of the line start, or the size of the file if there is none
+     * @throws IOException if the file could not be read
+     */
+    private static long lineStartAtOrAfter(FileChannel channel, long pos) throws IOException {
+        if (pos == 0) {
+            return 0;
+        }
+
+        final ByteBuffer buffer = ByteBuffer.allocate(READ_CHUNK_BYTES);
+        long offset = pos - 1;
+        while (offset < channel.size()) {
+            buffer.clear();
+            final int read = channel.read(buffer, offset);
+            for (int idx = 0; idx < read; idx++) {
+                if (buffer.get(idx) == LINE_SEPARATOR) {
+                    return offset + idx + 1;
+                }
+            }
+
+            offset += read;
+        }
+
+        return channel.size();
+    }
+
+    /**
+     * Reads the line starting at a position.
+     *
+     * @param channel File to read
+     * @param pos Position of the line start
+     * @return The line without its separator
+     * @throws IOException if the file could not be read
+     */
+    private static String readLine(FileChannel channel, long pos) throws IOException {
+        final ByteArrayOutputStream line = new ByteArrayOutputStream();
+        final ByteBuffer buffer = ByteBuffer.allocate(READ_CHUNK_BYTES);
+        long offset = pos;
+        while (offset < channel.size()) {
+            buffer.clear();
+            final int read = channel.read(buffer, offset);
+            for (int idx = 0; idx < read; idx++) {
+                if (buffer.get(idx) == LINE_SEPARATOR) {
+                    line.write(buffer.array(), 0, idx);
+                    return new String(line.toByteArray(), StandardCharsets.UTF_8);
+                }
+            }
+
+            line.write(buffer.array(), 0, read);
+            offset += read;
+        }
+
+        return new String(line.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Adds an entry to the lookup results.
+     *
+     * @param found Results keyed by provenance ID
+     * @param entry Entry to add
+     */
+    private static void add(Map<Long, List<Entry>> found, Entry entry) {
+        List<Entry> entries = found.get(entry.getProvenanceId());
+        if (entries == null) {
+            entries = new ArrayList<>();
+            found.put(entry.getProvenanceId(), entries);
+        }
+
+        if (!entries.contains(entry)) {
+            entries.add(entry);
+        }
+    }
+
+    /**
+     * An artifact ingested from a provenance ID.
+     */
+    public static final class Entry implements Comparable<Entry> {
+        private final long provenanceId;
+        private final String type;
+        private final String key;
+
+        /**
+         * Constructor.
+         *
+         * @param provenanceId Provenance ID from which the artifact was ingested
+         * @param type Type of the artifact, one of the {@code _TYPE} constants of {@link ProvenanceIndex}
+         * @param key Key of the artifact in the store for its type
+         */
+        public Entry(long provenanceId, String type, String key) {
+            this.provenanceId = provenanceId;
+            this.type = type;
+            this.key = key;
+        }
+
+        /**
+         * Parses an entry from a line of the index.
+         *
+         * @param line Line without its separator
+         * @return The entry
+         * @throws IOException if the line is not a valid entry
+         */
+        static Entry parse(String line) throws IOException {
+            final int typeStart = line.indexOf(FIELD_SEPARATOR) + 1;
+            final int keyStart = line.indexOf(FIELD_SEPARATOR, typeStart) + 1;
+            if (typeStart == 0 || keyStart == 0) {
+                throw new IOException("Invalid provenance index entry: " + line);
+            }
+
+            try {
+                return new Entry(
+                        Long.parseLong(line.substring(0, typeStart - 1)), line.substring(typeStart, keyStart - 1),
+                        line.substring(keyStart));
+            } catch (final NumberFormatException e) {
+                throw new IOException("Invalid provenance ID in index entry: " + line, e);
+            }
+        }
+
+        /**
+         * Returns the provenance ID from which the artifact was ingested.
+         *
+         * @return Provenance ID
+         */
+        public long getProvenanceId() {
+            return provenanceId;
+        }
+
+        /**
+         * Returns the type of the artifact.
+         *
+         * @return One of the {@code _TYPE} constants of {@link ProvenanceIndex}
+         */
+        public String getType() {
+            return type;
+        }
+
+        /**
+         * Returns the key of the artifact in the store for its type.
+         *
+         * @return Artifact key
+         */
+        public String getKey() {
+            return key;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            if (provenanceId != other.provenanceId) {
+                return provenanceId < other.provenanceId ? -1 : 1;
+            }
+
+            final int typeOrder = type.compareTo(other.type);
+            return typeOrder != 0 ? typeOrder : key.compareTo(other.key);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Entry)) {
+                return false;
+            }
+
+            final Entry other = (Entry) obj;
+            return provenanceId == other.provenanceId && type.equals(other.type) && key.equals(other.key);
+        }
+
+        @Override
+        public int hashCode() {
+            return (Long.valueOf(provenanceId).hashCode() * 31 + type.hashCode()) * 31 + key.hashCode();
+        }
+
+        /**
+         * Returns the entry as a line of the index, without its separator.
+         *
+         * @return Tab-separated provenance ID, type and key
+         */
+        @Override
+        public String toString() {
+            return Long.toString(provenanceId) + FIELD_SEPARATOR + type + FIELD_SEPARATOR + key;
+        }
+    }
+}
@@ -0,0 +1,241 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample.util;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import ezbake.common.properties.EzProperties;
+
+/**
+ * Appends entries to a {@link ProvenanceIndex}. Each writer appends to its own segment, which it locks while open so
+ * that compaction can tell it from segments abandoned by writers that died. Once the segment has grown beyond its size
+ * limit it is sealed and a new one is started, and the index is compacted when enough sealed segments have built up.
+ * Compaction runs on a background thread, so recording never waits for the index to be merged.
+ */
+public final class ProvenanceIndexWriter implements Closeable {
+    /**
+     * Configuration properties for the index. The index is disabled if no directory is set.
+     */
+    public static final String DIR_PROP = "sampleapp.provenance.index.dir";
+    public static final String SEGMENT_MAX_BYTES_PROP = "sampleapp.provenance.index.segment.max.bytes";
+    public static final String COMPACT_SEGMENTS_PROP = "sampleapp.provenance.index.compact.segments";
+
+    private static final Logger logger = LoggerFactory.getLogger(ProvenanceIndexWriter.class);
+
+    private static final long DEFAULT_SEGMENT_MAX_BYTES = 4L * 1024 * 1024;
+    private static final int DEFAULT_COMPACT_SEGMENTS = 8;
+
+    /**
+     * Time that closing waits for a compaction in progress. A compaction that is cut short is safe, as the sorted file
+     * is replaced atomically and the segments are only deleted once it has been.
+     */
+    private static final long CLOSE_WAIT_SECONDS = 30;
+
+    private static final char FIELD_SEPARATOR = '\t';
+    private static final char LINE_SEPARATOR = '\n';
+
+    private final ProvenanceIndex index;
+    private final Path dir;
+    private final String name;
+    private final long segmentMaxBytes;
+    private final int compactSegments;
+
+    /**
+     * Thread on which the index is compacted.
+     */
+    private final ExecutorService compactor;
+
+    /**
+     * Whether a compaction check has been handed to the compactor and has not started yet.
+     */
+    private final AtomicBoolean compactionPending = new AtomicBoolean();
+
+    private Path segment;
+    private FileLock lock;
+    private BufferedWriter writer;
+    private long bytesWritten;
+
+    /**
+     * Constructor.
+     *
+     * @param dir Index directory, created if necessary
+     * @param name Name of the writer, used as a prefix for its segment files
+     * @param segmentMaxBytes Size after which a segment is sealed
+     * @param compactSegments Number of sealed segments after which the index is compacted
+     * @throws IOException if the first segment could not be opened
+     */
+    public ProvenanceIndexWriter(Path dir, String name, long segmentMaxBytes, int compactSegments)
+            throws IOException {
+        this.dir = dir;
+        this.name = name;
+        this.segmentMaxBytes = segmentMaxBytes;
+        this.compactSegments = compactSegments;
+        index = new ProvenanceIndex(dir);
+
+        Files.createDirectories(dir);
+        open();
+
+        compactor = Executors.newSingleThreadExecutor(
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat(name + "-provenance-compactor").build());
+    }
+
+    /**
+     * Creates a writer from configuration properties.
+     *
+     * @param props Configuration properties
+     * @param name Name of the writer, used as a prefix for its segment files
+     * @return The writer, or null if the index is disabled
+     * @throws IOException if the first segment could not be opened
+     */
+    public static ProvenanceIndexWriter fromProperties(Properties props, String name) throws IOException {
+        final String dir = props.getProperty(DIR_PROP);
+        if (dir == null) {
+            return null;
+        }
+
+        final EzProperties ezProps = new EzProperties(props, false);
+        return new ProvenanceIndexWriter(
+                Paths.get(dir), name, ezProps.getLong(SEGMENT_MAX_BYTES_PROP, DEFAULT_SEGMENT_MAX_BYTES),
+                ezProps.getInteger(COMPACT_SEGMENTS_PROP, DEFAULT_COMPACT_SEGMENTS));
+    }
+
+    /**
+     * Records the artifacts ingested from a provenance ID. The entries are flushed before returning.
+     *
+     * @param provenanceId Provenance ID from which the artifacts were ingested
+     * @param type Type of the artifacts, one of the {@code _TYPE} constants of {@link ProvenanceIndex}
+     * @param keys Keys of the artifacts in the store for their type
+     * @throws IOException if the entries could not be written or a new segment could not be started
+     */
+    public synchronized void record(long provenanceId, String type, Collection<String> keys) throws IOException {
+        for (final String key : keys) {
+            final String line = Long.toString(provenanceId) + FIELD_SEPARATOR + type + FIELD_SEPARATOR + key;
+            writer.write(line);
+            writer.write(LINE_SEPARATOR);
+            bytesWritten += line.getBytes(StandardCharsets.UTF_8).length + 1;
+        }
+
+        writer.flush();
+
+        if (bytesWritten > segmentMaxBytes) {
+            seal();
+            open();
+            compactLater();
+        }
+    }
+
+    /**
+     * Seals the current segment and waits for a compaction in progress to finish.
+     *
+     * @throws IOException if the segment could not be sealed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        seal();
+
+        compactor.shutdown();
+        try {
+            if (!compactor.awaitTermination(CLOSE_WAIT_SECONDS, TimeUnit.SECONDS)) {
+                logger.warn("Provenance index compaction for {} still running after closing", name);
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Compacts the index on the compactor thread if enough sealed segments have built up, unless a check is already
+     * waiting to run.
+     */
+    private void compactLater() {
+        if (!compactionPending.compareAndSet(false, true)) {
+            return;
+        }
+
+        compactor.execute(
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        compactionPending.set(false);
+                        try {
+                            if (index.countSealedSegments() >= compactSegments) {
+                                index.compact();
+                            }
+                        } catch (final IOException e) {
+                            logger.error("Could not compact provenance index in {}", dir, e);
+                        }
+                    }
+                });
+    }
+
+    /**
+     * Starts a new segment.
+     *
+     * @throws IOException if the segment could not be opened
+     */
+    private void open() throws IOException {
+        segment = dir.resolve(name + '-' + UUID.randomUUID() + ProvenanceIndex.ACTIVE_SUFFIX);
+        final FileChannel channel = FileChannel.open(segment, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        lock = channel.lock();
+        writer = new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8.newEncoder(), -1));
+        bytesWritten = 0;
+    }
+
+    /**
+     * Closes the current segment and renames it so that it is compacted. Empty segments are deleted instead.
+     *
+     * @throws IOException if the segment could not be sealed
+     */
+    private void seal() throws IOException {
+        if (writer == null) {
+            return;
+        }
+
+        writer.flush();
+
+        // The segment is renamed before its lock is released so that compaction never mistakes it for abandoned
+        if (bytesWritten == 0) {
+            Files.delete(segment);
+        } else {
+            Files.move(segment, ProvenanceIndex.getSealedPath(segment));
+        }
+
+        lock.release();
+        writer.close();
+        writer = null;
+    }
+}
@@ -21,6 +21,21 @@ public abstract class SampleAppConstants {
     public static final String TWEET_URI = "social://sampleapp/ingest/tweet/";
     public static final String IMAGE_URI = "social://sampleapp/ingest/image/";
 
+    /**
+     * App, graph and service names under which the relationship graph is written.
+     */
+    public static final String GRAPH_APP_NAME = "sampleApp";
+    public static final String GRAPH_NAME = "sampleGraph";
+    public static final String GRAPH_SERVICE_NAME = "graph-service";
+
+    /**
+     * Keys for properties of the vertices and edges in the relationship graph.
+     */
+    public static final String SCREEN_NAME_KEY = "screenName";
+    public static final String TWITTER_ID_KEY = "twitterId";
+    public static final String TWEET_ID_KEY = "tweetId";
+    public static final String EDGE_DESCRIPTOR_KEY = "edgeName";
+
     /**
      * Returns a URI for a tweet ID.
      *
@@ -31,6 +46,18 @@ public abstract class SampleAppConstants {
         return TWEET_URI + tweetId;
     }
 
+    /**
+     * Returns the descriptor stored on the edges of a relationship between two users.
+     *
+     * @param authorScreenName Screen name of the user from which the relationship begins
+     * @param label Label of the relationship
+     * @param otherScreenName Screen name of the user at which the relationship terminates
+     * @return Edge descriptor
+     */
+    public static String getEdgeDescriptor(String authorScreenName, String label, String otherScreenName) {
+        return authorScreenName + '_' + label + '_' + otherScreenName;
+    }
+
     /**
      * Returns a URI for an image ID.
      *
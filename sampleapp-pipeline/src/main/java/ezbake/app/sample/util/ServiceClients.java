@@ -0,0 +1,56 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample.util;
+
+import java.io.Closeable;
+
+import org.apache.thrift.TException;
+import org.apache.thrift.TServiceClient;
+
+import ezbake.base.thrift.EzSecurityToken;
+import ezbake.base.thrift.EzSecurityTokenException;
+
+/**
+ * Source of the Thrift clients and application security token that the generator and workers use to reach EzBake
+ * services. Opened with {@link ServiceClientsFactory#open(java.util.Properties)}, which allows the services to be
+ * replaced, e.g. by in-process stand-ins when measuring the pipeline locally.
+ */
+public interface ServiceClients extends Closeable {
+    /**
+     * Gets a client for a service, which must be returned with {@link #returnToPool(TServiceClient)}.
+     *
+     * @param serviceName Name of the service
+     * @param clientClass Class of the service's client
+     * @param <T> Type of the client
+     * @return Client connected to the service
+     * @throws TException if no client could be created
+     */
+    <T extends TServiceClient> T getClient(String serviceName, Class<T> clientClass) throws TException;
+
+    /**
+     * Returns a client obtained from {@link #getClient(String, Class)}.
+     *
+     * @param client Client to return
+     */
+    void returnToPool(TServiceClient client);
+
+    /**
+     * Fetches a security token for the application.
+     *
+     * @return Application security token
+     * @throws EzSecurityTokenException if the token could not be fetched
+     */
+    EzSecurityToken fetchAppToken() throws EzSecurityTokenException;
+}
@@ -0,0 +1,63 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample.util;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.Properties;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Opens the {@link ServiceClients} used by the pipeline.
+ */
+public final class ServiceClientsFactory {
+    /**
+     * Configuration property for the class of {@link ServiceClients} to open, which must have a public constructor
+     * taking the configuration {@link Properties}. Defaults to {@link EzbakeServiceClients}.
+     */
+    public static final String CLASS_PROP = "sampleapp.pipeline.service.clients.class";
+
+    private static final Logger logger = LoggerFactory.getLogger(ServiceClientsFactory.class);
+
+    /**
+     * Do not allow instantiation.
+     */
+    private ServiceClientsFactory() {
+    }
+
+    /**
+     * Opens the configured service clients.
+     *
+     * @param props Configuration properties
+     * @return Service clients
+     */
+    public static ServiceClients open(Properties props) {
+        final String className = props.getProperty(CLASS_PROP);
+        if (className == null) {
+            return new EzbakeServiceClients(props);
+        }
+
+        try {
+            return Class.forName(className).asSubclass(ServiceClients.class).getConstructor(Properties.class)
+                    .newInstance(props);
+        } catch (ClassNotFoundException | ClassCastException | NoSuchMethodException | InstantiationException
+                | IllegalAccessException | InvocationTargetException e) {
+            final String errMsg = String.format("Unable to open service clients of class '%s'", className);
+            logger.error(errMsg, e);
+            throw new RuntimeException(errMsg, e);
+        }
+    }
+}
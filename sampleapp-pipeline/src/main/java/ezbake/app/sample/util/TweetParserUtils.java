@@ -31,6 +31,12 @@ import ezbake.app.sample.thrift.TwitterUser;
  * Utility methods to parse out information from the JSON from the Twitter API.
  */
 public final class TweetParserUtils {
+    /**
+     * Keys of the Tweet ID and EzBake provenance ID in the stored Tweet JSON, used to query Tweets in EzMongo.
+     */
+    public static final String ID_STR_KEY = "id_str";
+    public static final String PROVENANCE_KEY = "provenance_id";
+
     private static final String MEDIA_TYPE_KEY = "type";
     private static final String PHOTO_TYPE = "photo";
     private static final String EZBAKE_IMAGE_IDS_KEY = "ezbake_image_ids";
@@ -38,8 +44,6 @@ public final class TweetParserUtils {
     private static final String USER_MENTIONS_KEY = "user_mentions";
     private static final String ENTITIES_KEY = "entities";
     private static final String USER_KEY = "user";
-    private static final String ID_STR_KEY = "id_str";
-    private static final String PROVENANCE_KEY = "provenance_id";
     private static final String SOURCE_KEY = "source";
 
     /**
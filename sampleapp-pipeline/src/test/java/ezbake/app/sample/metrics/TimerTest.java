@@ -0,0 +1,73 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.HdrHistogram.Histogram;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link Timer} and {@link PipelineMetrics}.
+ */
+public final class TimerTest {
+    private static final long LATENCY_MILLIS = 5;
+    private static final long COUNTER_DELTA = 3;
+    private static final String TIMER_NAME = "test.timer";
+    private static final String COUNTER_NAME = "test.counter";
+
+    /**
+     * Tests that operations and failures are counted and their latencies recorded.
+     */
+    @Test
+    public void testRecord() {
+        final Timer timer = new Timer();
+        final long start = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(LATENCY_MILLIS);
+        timer.record(start);
+        timer.recordError(start);
+
+        assertEquals(2, timer.getCount());
+        assertEquals(1, timer.getErrors());
+
+        final Histogram histogram = timer.getHistogram();
+        assertEquals(2, histogram.getTotalCount());
+        assertTrue(timer.getMedianMillis() >= LATENCY_MILLIS);
+
+        timer.record(System.nanoTime());
+        assertEquals(3, timer.getHistogram().getTotalCount());
+        assertEquals(2, histogram.getTotalCount());
+    }
+
+    /**
+     * Tests that the registry returns the same metric for the same name.
+     */
+    @Test
+    public void testRegistry() {
+        final Properties props = new Properties();
+        props.setProperty(PipelineMetrics.REPORT_SECONDS_PROP, "0");
+
+        final PipelineMetrics metrics = PipelineMetrics.get(props);
+        assertSame(metrics.timer(TIMER_NAME), metrics.timer(TIMER_NAME));
+        assertSame(metrics.counter(COUNTER_NAME), metrics.counter(COUNTER_NAME));
+
+        metrics.counter(COUNTER_NAME).add(COUNTER_DELTA);
+        assertEquals(COUNTER_DELTA, PipelineMetrics.get(props).getCounters().get(COUNTER_NAME).getCount());
+    }
+}
@@ -0,0 +1,102 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.slf4j.Logger;
+
+/**
+ * Unit tests for {@link EventLogger}.
+ */
+public final class EventLoggerTest {
+    private static final int EVENTS = 100;
+    private static final int SAMPLE_EVERY = 10;
+    private static final int MAX_PER_SECOND = 3;
+    private static final String FORMAT = "Event {}";
+
+    /**
+     * Tests that one in every N events is logged.
+     */
+    @Test
+    public void testSampling() {
+        final AtomicInteger logged = new AtomicInteger();
+        final EventLogger events = EventLogger.create(countingLogger(logged), createProperties(0));
+        for (int i = 0; i < EVENTS; i++) {
+            events.log(FORMAT, i);
+        }
+
+        assertEquals(EVENTS / SAMPLE_EVERY, logged.get());
+    }
+
+    /**
+     * Tests that no more than the limit of sampled events are logged per second.
+     */
+    @Test
+    public void testRateLimit() {
+        final AtomicInteger logged = new AtomicInteger();
+        final EventLogger events = EventLogger.create(countingLogger(logged), createProperties(MAX_PER_SECOND));
+        for (int i = 0; i < EVENTS; i++) {
+            events.log(FORMAT, i);
+        }
+
+        assertEquals(MAX_PER_SECOND, logged.get());
+    }
+
+    /**
+     * Creates the configuration of a synchronous event logger sampling one in {@value #SAMPLE_EVERY} events.
+     *
+     * @param maxPerSecond Most events logged per second, or 0 for no limit
+     * @return Configuration properties
+     */
+    private static Properties createProperties(int maxPerSecond) {
+        final Properties props = new Properties();
+        props.setProperty(EventLogger.SAMPLE_EVERY_PROP, String.valueOf(SAMPLE_EVERY));
+        props.setProperty(EventLogger.MAX_PER_SECOND_PROP, String.valueOf(maxPerSecond));
+        props.setProperty(EventLogger.ASYNC_PROP, Boolean.FALSE.toString());
+        return props;
+    }
+
+    /**
+     * Creates a logger with INFO enabled that counts the messages logged at INFO.
+     *
+     * @param logged Count of messages logged
+     * @return Logger
+     */
+    private static Logger countingLogger(final AtomicInteger logged) {
+        return (Logger) Proxy.newProxyInstance(
+                Logger.class.getClassLoader(), new Class<?>[] {Logger.class}, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if ("isInfoEnabled".equals(method.getName())) {
+                            return true;
+                        }
+
+                        if ("info".equals(method.getName())) {
+                            logged.incrementAndGet();
+                        }
+
+                        return null;
+                    }
+                });
+    }
+}
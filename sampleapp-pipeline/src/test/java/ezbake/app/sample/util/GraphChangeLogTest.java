@@ -0,0 +1,101 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit tests for {@link GraphChangeLog}.
+ */
+public final class GraphChangeLogTest {
+    private static final String FIRST_USER = "first";
+    private static final String SECOND_USER = "second";
+    private static final String THIRD_USER = "third";
+
+    /**
+     * Size limit that the first two entries exceed.
+     */
+    private static final long SMALL_MAX_BYTES = 8;
+
+    private static final long LARGE_MAX_BYTES = 1024;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    /**
+     * Tests that {@link GraphChangeLog#record(java.util.Collection)} appends one line per user, including to a log
+     * left by a previous instance.
+     *
+     * @throws Exception if an error occurred
+     */
+    @Test
+    public void testRecordAppends() throws Exception {
+        final Path file = tempFolder.getRoot().toPath().resolve("changes.log");
+
+        try (GraphChangeLog changeLog = new GraphChangeLog(file, LARGE_MAX_BYTES)) {
+            changeLog.record(Arrays.asList(FIRST_USER, SECOND_USER));
+        }
+
+        try (GraphChangeLog changeLog = new GraphChangeLog(file, LARGE_MAX_BYTES)) {
+            changeLog.record(Arrays.asList(THIRD_USER));
+        }
+
+        assertEquals(
+                Arrays.asList(FIRST_USER, SECOND_USER, THIRD_USER), Files.readAllLines(file, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Tests that the log is replaced by a new file before recording once it has grown beyond its size limit.
+     *
+     * @throws Exception if an error occurred
+     */
+    @Test
+    public void testRecordReplaces() throws Exception {
+        final Path file = tempFolder.getRoot().toPath().resolve("changes.log");
+
+        try (GraphChangeLog changeLog = new GraphChangeLog(file, SMALL_MAX_BYTES)) {
+            changeLog.record(Arrays.asList(FIRST_USER, SECOND_USER));
+            final Object fileKey = getFileKey(file);
+
+            changeLog.record(Arrays.asList(THIRD_USER));
+            assertFalse(getFileKey(file).equals(fileKey));
+        }
+
+        assertEquals(Arrays.asList(THIRD_USER), Files.readAllLines(file, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Gets the identity of a file, which changes when the file is replaced.
+     *
+     * @param file File
+     * @return File key
+     * @throws IOException if the file attributes could not be read
+     */
+    private static Object getFileKey(Path file) throws IOException {
+        return Files.readAttributes(file, BasicFileAttributes.class).fileKey();
+    }
+}
@@ -0,0 +1,178 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Properties;
+
+import org.apache.thrift.TException;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+
+import ezbake.app.sample.metrics.PipelineMetrics;
+import ezbake.app.sample.metrics.Timer;
+import ezbake.app.sample.trace.InMemorySpanCollector;
+import ezbake.app.sample.trace.Span;
+import ezbake.app.sample.trace.TraceContext;
+import ezbake.app.sample.trace.Tracer;
+
+/**
+ * Unit tests for {@link Instrumentation}.
+ */
+public final class InstrumentationTest {
+    private static final int CAPACITY = 10;
+    private static final long TRACE_ID = 1;
+    private static final long PARENT_SPAN_ID = 2;
+    private static final String RESULT = "result";
+
+    private PipelineMetrics metrics;
+    private InMemorySpanCollector spans;
+    private Tracer tracer;
+    private Instrumentation instrumentation;
+    private String operation;
+
+    /**
+     * Creates instrumentation that traces everything, recording to a timer not used by any other test.
+     */
+    @Before
+    public void setUp() {
+        final Properties props = new Properties();
+        props.setProperty(EventLogger.ASYNC_PROP, Boolean.FALSE.toString());
+
+        metrics = PipelineMetrics.get(props);
+        spans = new InMemorySpanCollector(CAPACITY);
+        tracer = new Tracer(1, spans);
+        instrumentation =
+                new Instrumentation(metrics, tracer, EventLogger.create(LoggerFactory.getLogger(getClass()), props));
+
+        operation = "test.instrumentation." + System.nanoTime();
+    }
+
+    /**
+     * Tests that a successful call is timed and traced as a child of the current span, and its result returned.
+     *
+     * @throws Exception if an error occurred
+     */
+    @Test
+    public void testCallRecorded() throws Exception {
+        final Span root = tracer.startTrace("root");
+        try {
+            assertEquals(RESULT, instrumentation.call(operation, returning(RESULT)));
+        } finally {
+            root.close();
+        }
+
+        final Timer timer = metrics.timer(operation);
+        assertEquals(1, timer.getCount());
+        assertEquals(0, timer.getErrors());
+
+        final Span span = spans.getSpans().get(0);
+        assertEquals(operation, span.getName());
+        assertEquals(root.getSpanId(), span.getParentSpanId());
+        assertFalse(span.isError());
+    }
+
+    /**
+     * Tests that processing traced elsewhere is traced as a child of the span it carries.
+     *
+     * @throws Exception if an error occurred
+     */
+    @Test
+    public void testTraceJoinsParent() throws Exception {
+        final String parent = new TraceContext(TRACE_ID, PARENT_SPAN_ID).encode();
+        assertEquals(RESULT, instrumentation.trace(operation, parent, returning(RESULT)));
+
+        assertEquals(1, metrics.timer(operation).getCount());
+
+        final Span span = spans.getSpans().get(0);
+        assertEquals(TRACE_ID, span.getTraceId());
+        assertEquals(PARENT_SPAN_ID, span.getParentSpanId());
+    }
+
+    /**
+     * Tests that a failed Thrift call is recorded as an error and its exception rethrown.
+     */
+    @Test
+    public void testThriftErrorRecorded() {
+        assertErrorRecorded(new TException(RESULT));
+    }
+
+    /**
+     * Tests that a call that fails with a runtime exception is also recorded as an error and its exception rethrown.
+     */
+    @Test
+    public void testRuntimeErrorRecorded() {
+        assertErrorRecorded(new IllegalStateException(RESULT));
+    }
+
+    /**
+     * Checks that a failed call is rethrown and recorded as an error in both its timer and its span.
+     *
+     * @param error Exception the call fails with
+     */
+    private void assertErrorRecorded(Exception error) {
+        try {
+            instrumentation.trace(operation, new TraceContext(TRACE_ID, PARENT_SPAN_ID).encode(), throwing(error));
+            fail("Exception not rethrown");
+        } catch (final TException | RuntimeException e) {
+            assertSame(error, e);
+        }
+
+        final Timer timer = metrics.timer(operation);
+        assertEquals(1, timer.getCount());
+        assertEquals(1, timer.getErrors());
+        assertTrue(spans.getSpans().get(0).isError());
+    }
+
+    /**
+     * Creates a call that returns a value.
+     *
+     * @param result Value to return
+     * @return Call
+     */
+    private static Instrumentation.Call<String> returning(final String result) {
+        return new Instrumentation.Call<String>() {
+            @Override
+            public String call() {
+                return result;
+            }
+        };
+    }
+
+    /**
+     * Creates a call that fails.
+     *
+     * @param error Exception to throw, either a {@link TException} or unchecked
+     * @return Call
+     */
+    private static Instrumentation.Call<String> throwing(final Exception error) {
+        return new Instrumentation.Call<String>() {
+            @Override
+            public String call() throws TException {
+                if (error instanceof TException) {
+                    throw (TException) error;
+                }
+
+                throw (RuntimeException) error;
+            }
+        };
+    }
+}
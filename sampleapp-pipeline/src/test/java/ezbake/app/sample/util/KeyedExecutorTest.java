@@ -0,0 +1,359 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import ezbake.app.sample.metrics.Counter;
+
+/**
+ * Unit tests for {@link KeyedExecutor}.
+ */
+public final class KeyedExecutorTest {
+    private static final String NAME = "test";
+    private static final int LANES = 4;
+    private static final int KEYS = 8;
+    private static final int TASKS_PER_KEY = 100;
+    private static final int QUEUE_CAPACITY = 16;
+    private static final long POLL_MILLIS = 10;
+    private static final long TIMEOUT_MILLIS = 10000;
+    private static final String NOT_RETHROWN = "Failure not rethrown";
+
+    private final Counter failures = new Counter();
+    private final Counter blocked = new Counter();
+
+    /**
+     * Tests that the tasks of each key run in the order they were submitted.
+     */
+    @Test
+    public void testOrderPerKey() {
+        final List<List<Integer>> ran = new ArrayList<>();
+        for (int key = 0; key < KEYS; key++) {
+            ran.add(Collections.synchronizedList(new ArrayList<Integer>()));
+        }
+
+        try (KeyedExecutor executor = new KeyedExecutor(NAME, LANES, QUEUE_CAPACITY, failures, blocked)) {
+            for (int i = 0; i < TASKS_PER_KEY; i++) {
+                for (int key = 0; key < KEYS; key++) {
+                    final List<Integer> keyRan = ran.get(key);
+                    final int task = i;
+                    executor.execute(
+                            key, new Runnable() {
+                                @Override
+                                public void run() {
+                                    keyRan.add(task);
+                                }
+                            });
+                }
+            }
+        }
+
+        final List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < TASKS_PER_KEY; i++) {
+            expected.add(i);
+        }
+
+        for (final List<Integer> keyRan : ran) {
+            assertEquals(expected, keyRan);
+        }
+    }
+
+    /**
+     * Tests that tasks run on the caller's thread when there are no lanes.
+     */
+    @Test
+    public void testInlineWithoutLanes() {
+        final AtomicReference<Thread> ranOn = new AtomicReference<>();
+        try (KeyedExecutor executor = new KeyedExecutor(NAME, 0, QUEUE_CAPACITY, failures, blocked)) {
+            executor.execute(
+                    NAME, new Runnable() {
+                        @Override
+                        public void run() {
+                            ranOn.set(Thread.currentThread());
+                        }
+                    });
+        }
+
+        assertSame(Thread.currentThread(), ranOn.get());
+    }
+
+    /**
+     * Tests that a failed task is counted, does not stop its lane and is rethrown on close.
+     *
+     * @throws Exception if an error occurred
+     */
+    @Test
+    public void testFailureRethrownOnClose() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final IllegalStateException error = new IllegalStateException(NAME);
+        final AtomicInteger ran = new AtomicInteger();
+        final KeyedExecutor executor = new KeyedExecutor(NAME, 1, QUEUE_CAPACITY, failures, blocked);
+        executor.execute(NAME, awaiting(release));
+        executor.execute(NAME, throwing(error));
+        executor.execute(NAME, counting(ran));
+        release.countDown();
+
+        try {
+            executor.close();
+            fail(NOT_RETHROWN);
+        } catch (final IllegalStateException e) {
+            assertSame(error, e.getCause());
+        }
+
+        assertEquals(1, ran.get());
+        assertEquals(1, failures.getCount());
+    }
+
+    /**
+     * Tests that a failed task is rethrown, once, by the next submission, whose task is not run.
+     *
+     * @throws Exception if an error occurred
+     */
+    @Test
+    public void testFailureRethrownOnExecute() throws Exception {
+        final IllegalStateException error = new IllegalStateException(NAME);
+        final AtomicInteger ran = new AtomicInteger();
+        try (KeyedExecutor executor = new KeyedExecutor(NAME, 1, QUEUE_CAPACITY, failures, blocked)) {
+            executor.execute(NAME, throwing(error));
+            while (failures.getCount() == 0) {
+                Thread.sleep(POLL_MILLIS);
+            }
+
+            try {
+                executor.execute(NAME, counting(ran));
+                fail(NOT_RETHROWN);
+            } catch (final IllegalStateException e) {
+                assertSame(error, e.getCause());
+            }
+
+            executor.execute(NAME, counting(ran));
+        }
+
+        assertEquals(1, ran.get());
+    }
+
+    /**
+     * Tests that every task accepted while the executor is being closed runs, and that later ones are rejected.
+     *
+     * @throws Exception if an error occurred
+     */
+    @Test
+    public void testNoTaskLostOnClose() throws Exception {
+        final AtomicInteger accepted = new AtomicInteger();
+        final AtomicInteger ran = new AtomicInteger();
+        final KeyedExecutor executor = new KeyedExecutor(NAME, LANES, QUEUE_CAPACITY, failures, blocked);
+        final List<Thread> callers = new ArrayList<>();
+        for (int key = 0; key < KEYS; key++) {
+            final int callerKey = key;
+            final Thread caller = new Thread(
+                    new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                while (true) {
+                                    executor.execute(callerKey, counting(ran));
+                                    accepted.incrementAndGet();
+                                }
+                            } catch (final IllegalStateException e) {
+                                return;
+                            }
+                        }
+                    });
+
+            caller.start();
+            callers.add(caller);
+        }
+
+        Thread.sleep(POLL_MILLIS);
+        executor.close();
+        for (final Thread caller : callers) {
+            caller.join();
+        }
+
+        assertEquals(accepted.get(), ran.get());
+    }
+
+    /**
+     * Tests that the caller waits while its lane is full, and that its task runs once there is room.
+     *
+     * @throws Exception if an error occurred
+     */
+    @Test
+    public void testBlocksWhenLaneFull() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger ran = new AtomicInteger();
+        final Runnable count = new Runnable() {
+            @Override
+            public void run() {
+                ran.incrementAndGet();
+            }
+        };
+
+        try (KeyedExecutor executor = new KeyedExecutor(NAME, 1, 1, failures, blocked)) {
+            executor.execute(
+                    NAME, new Runnable() {
+                        @Override
+                        public void run() {
+                            started.countDown();
+                            try {
+                                release.await();
+                            } catch (final InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                            }
+                        }
+                    });
+
+            started.await();
+            executor.execute(NAME, count);
+
+            final Thread caller = new Thread(
+                    new Runnable() {
+                        @Override
+                        public void run() {
+                            executor.execute(NAME, count);
+                        }
+                    });
+
+            caller.start();
+            while (blocked.getCount() == 0) {
+                Thread.sleep(POLL_MILLIS);
+            }
+
+            assertEquals(0, ran.get());
+            release.countDown();
+            caller.join();
+        }
+
+        assertEquals(2, ran.get());
+    }
+
+    /**
+     * Tests that a caller waiting for room in a lane whose thread stops is failed rather than left waiting, and that
+     * the executor can still be closed.
+     *
+     * @throws Exception if an error occurred
+     */
+    @Test(timeout = TIMEOUT_MILLIS)
+    public void testStoppedLaneRejectsTasks() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final AtomicReference<Thread> lane = new AtomicReference<>();
+        final AtomicReference<IllegalStateException> rejected = new AtomicReference<>();
+        final AtomicInteger ran = new AtomicInteger();
+        final KeyedExecutor executor = new KeyedExecutor(NAME, 1, 1, failures, blocked);
+        executor.execute(
+                NAME, new Runnable() {
+                    @Override
+                    public void run() {
+                        lane.set(Thread.currentThread());
+                        started.countDown();
+                        awaiting(new CountDownLatch(1)).run();
+                    }
+                });
+
+        started.await();
+        executor.execute(NAME, counting(ran));
+        final Thread caller = new Thread(
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            executor.execute(NAME, counting(ran));
+                        } catch (final IllegalStateException e) {
+                            rejected.set(e);
+                        }
+                    }
+                });
+
+        caller.start();
+        while (blocked.getCount() == 0) {
+            Thread.sleep(POLL_MILLIS);
+        }
+
+        lane.get().interrupt();
+        caller.join();
+        assertNotNull(rejected.get());
+
+        try {
+            executor.execute(NAME, counting(ran));
+            fail("Task accepted by a stopped lane");
+        } catch (final IllegalStateException e) {
+            executor.close();
+        }
+
+        assertEquals(0, ran.get());
+    }
+
+    /**
+     * Creates a task that waits for a latch.
+     *
+     * @param latch Latch to wait for
+     * @return Task
+     */
+    private static Runnable awaiting(final CountDownLatch latch) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    latch.await();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+    }
+
+    /**
+     * Creates a task that counts its runs.
+     *
+     * @param ran Count of runs
+     * @return Task
+     */
+    private static Runnable counting(final AtomicInteger ran) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                ran.incrementAndGet();
+            }
+        };
+    }
+
+    /**
+     * Creates a task that fails.
+     *
+     * @param error Exception to throw
+     * @return Task
+     */
+    private static Runnable throwing(final RuntimeException error) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                throw error;
+            }
+        };
+    }
+}
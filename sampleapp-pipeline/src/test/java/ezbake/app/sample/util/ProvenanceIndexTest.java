@@ -0,0 +1,191 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit tests for {@link ProvenanceIndex} and {@link ProvenanceIndexWriter}.
+ */
+public final class ProvenanceIndexTest {
+    private static final long TWEET_PROVENANCE_ID = 7;
+    private static final long IMAGE_PROVENANCE_ID = 12;
+    private static final long UNKNOWN_PROVENANCE_ID = 9;
+    private static final String TWEET_ID = "100";
+    private static final String IMAGE_ID = "abc";
+    private static final String WRITER_NAME = "test";
+
+    /**
+     * Segment size that every record exceeds, so that each record seals a segment.
+     */
+    private static final long SMALL_SEGMENT_BYTES = 1;
+
+    private static final long LARGE_SEGMENT_BYTES = 1024;
+    private static final int COMPACT_SEGMENTS = 2;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    /**
+     * Tests that entries are found while still in an active segment.
+     *
+     * @throws Exception if an error occurred
+     */
+    @Test
+    public void testLookupActiveSegment() throws Exception {
+        final Path dir = tempFolder.getRoot().toPath();
+        try (ProvenanceIndexWriter writer =
+                     new ProvenanceIndexWriter(dir, WRITER_NAME, LARGE_SEGMENT_BYTES, COMPACT_SEGMENTS)) {
+            writer.record(TWEET_PROVENANCE_ID, ProvenanceIndex.TWEET_TYPE, Collections.singletonList(TWEET_ID));
+
+            final Map<Long, List<ProvenanceIndex.Entry>> found = new ProvenanceIndex(dir)
+                    .lookup(Arrays.asList(TWEET_PROVENANCE_ID, UNKNOWN_PROVENANCE_ID));
+
+            assertEquals(
+                    Collections.singletonMap(
+                            TWEET_PROVENANCE_ID, Collections.singletonList(
+                                    new ProvenanceIndex.Entry(
+                                            TWEET_PROVENANCE_ID, ProvenanceIndex.TWEET_TYPE, TWEET_ID))), found);
+        }
+    }
+
+    /**
+     * Tests that the entries of an active segment that was sealed after the index was listed are still read.
+     *
+     * @throws Exception if an error occurred
+     */
+    @Test
+    public void testSegmentSealedAfterListing() throws Exception {
+        final Path dir = tempFolder.getRoot().toPath();
+        final Path active;
+        try (ProvenanceIndexWriter writer =
+                     new ProvenanceIndexWriter(dir, WRITER_NAME, LARGE_SEGMENT_BYTES, COMPACT_SEGMENTS)) {
+            writer.record(TWEET_PROVENANCE_ID, ProvenanceIndex.TWEET_TYPE, Collections.singletonList(TWEET_ID));
+            try (DirectoryStream<Path> segments = Files.newDirectoryStream(dir, "*" + ProvenanceIndex.ACTIVE_SUFFIX)) {
+                active = segments.iterator().next();
+            }
+        }
+
+        assertFalse(Files.exists(active));
+        assertTrue(Files.exists(ProvenanceIndex.getSealedPath(active)));
+        assertEquals(
+                Collections.singletonList(
+                        new ProvenanceIndex.Entry(TWEET_PROVENANCE_ID, ProvenanceIndex.TWEET_TYPE, TWEET_ID)),
+                ProvenanceIndex.readListedSegment(active));
+    }
+
+    /**
+     * Tests that entries are found in the sorted file after compaction, without duplicates.
+     *
+     * @throws Exception if an error occurred
+     */
+    @Test
+    public void testLookupAfterCompaction() throws Exception {
+        final Path dir = tempFolder.getRoot().toPath();
+        try (ProvenanceIndexWriter writer =
+                     new ProvenanceIndexWriter(dir, WRITER_NAME, SMALL_SEGMENT_BYTES, COMPACT_SEGMENTS)) {
+            writer.record(IMAGE_PROVENANCE_ID, ProvenanceIndex.IMAGE_TYPE, Collections.singletonList(IMAGE_ID));
+            writer.record(TWEET_PROVENANCE_ID, ProvenanceIndex.IMAGE_TYPE, Collections.singletonList(IMAGE_ID));
+            writer.record(TWEET_PROVENANCE_ID, ProvenanceIndex.TWEET_TYPE, Collections.singletonList(TWEET_ID));
+            writer.record(TWEET_PROVENANCE_ID, ProvenanceIndex.TWEET_TYPE, Collections.singletonList(TWEET_ID));
+        }
+
+        final ProvenanceIndex index = new ProvenanceIndex(dir);
+        assertTrue(index.compact());
+        assertEquals(0, index.countSealedSegments());
+
+        final Map<Long, List<ProvenanceIndex.Entry>> found =
+                index.lookup(Arrays.asList(UNKNOWN_PROVENANCE_ID, TWEET_PROVENANCE_ID, IMAGE_PROVENANCE_ID));
+
+        assertEquals(
+                Arrays.asList(
+                        new ProvenanceIndex.Entry(TWEET_PROVENANCE_ID, ProvenanceIndex.IMAGE_TYPE, IMAGE_ID),
+                        new ProvenanceIndex.Entry(TWEET_PROVENANCE_ID, ProvenanceIndex.TWEET_TYPE, TWEET_ID)),
+                found.get(TWEET_PROVENANCE_ID));
+
+        assertEquals(
+                Collections.singletonList(
+                        new ProvenanceIndex.Entry(IMAGE_PROVENANCE_ID, ProvenanceIndex.IMAGE_TYPE, IMAGE_ID)),
+                found.get(IMAGE_PROVENANCE_ID));
+
+        assertEquals(2, found.size());
+    }
+
+    /**
+     * Tests that the writer compacts the index on its own once enough segments are sealed, and that closing waits for
+     * the compaction.
+     *
+     * @throws Exception if an error occurred
+     */
+    @Test
+    public void testCompactedInBackground() throws Exception {
+        final Path dir = tempFolder.getRoot().toPath();
+        try (ProvenanceIndexWriter writer =
+                     new ProvenanceIndexWriter(dir, WRITER_NAME, SMALL_SEGMENT_BYTES, COMPACT_SEGMENTS)) {
+            writer.record(TWEET_PROVENANCE_ID, ProvenanceIndex.TWEET_TYPE, Collections.singletonList(TWEET_ID));
+            writer.record(IMAGE_PROVENANCE_ID, ProvenanceIndex.IMAGE_TYPE, Collections.singletonList(IMAGE_ID));
+        }
+
+        final ProvenanceIndex index = new ProvenanceIndex(dir);
+        assertEquals(0, index.countSealedSegments());
+        assertEquals(2, index.lookup(Arrays.asList(TWEET_PROVENANCE_ID, IMAGE_PROVENANCE_ID)).size());
+    }
+
+    /**
+     * Tests that compaction drops the entries of purged provenance IDs, from segments and from the sorted file.
+     *
+     * @throws Exception if an error occurred
+     */
+    @Test
+    public void testPurgedEntriesDropped() throws Exception {
+        final Path dir = tempFolder.getRoot().toPath();
+        final ProvenanceIndex index = new ProvenanceIndex(dir);
+        try (ProvenanceIndexWriter writer =
+                     new ProvenanceIndexWriter(dir, WRITER_NAME, LARGE_SEGMENT_BYTES, COMPACT_SEGMENTS)) {
+            writer.record(TWEET_PROVENANCE_ID, ProvenanceIndex.TWEET_TYPE, Collections.singletonList(TWEET_ID));
+            writer.record(IMAGE_PROVENANCE_ID, ProvenanceIndex.IMAGE_TYPE, Collections.singletonList(IMAGE_ID));
+        }
+
+        assertTrue(index.compact());
+        index.markPurged(Collections.singletonList(IMAGE_PROVENANCE_ID));
+
+        try (ProvenanceIndexWriter writer =
+                     new ProvenanceIndexWriter(dir, WRITER_NAME, LARGE_SEGMENT_BYTES, COMPACT_SEGMENTS)) {
+            writer.record(UNKNOWN_PROVENANCE_ID, ProvenanceIndex.TWEET_TYPE, Collections.singletonList(TWEET_ID));
+        }
+
+        index.markPurged(Collections.singletonList(UNKNOWN_PROVENANCE_ID));
+        assertTrue(index.compact());
+
+        final Map<Long, List<ProvenanceIndex.Entry>> found =
+                index.lookup(Arrays.asList(UNKNOWN_PROVENANCE_ID, TWEET_PROVENANCE_ID, IMAGE_PROVENANCE_ID));
+
+        assertEquals(Collections.singleton(TWEET_PROVENANCE_ID), found.keySet());
+    }
+}
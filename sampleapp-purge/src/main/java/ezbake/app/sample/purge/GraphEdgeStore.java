@@ -0,0 +1,276 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample.purge;
+
+import static ezbake.app.sample.util.SampleAppConstants.GRAPH_APP_NAME;
+import static ezbake.app.sample.util.SampleAppConstants.GRAPH_SERVICE_NAME;
+import static ezbake.app.sample.util.SampleAppConstants.TWEET_ID_KEY;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.apache.thrift.TException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Iterables;
+
+import ezbake.app.sample.util.ProvenanceIndex;
+import ezbake.app.sample.util.SampleAppConstants;
+import ezbake.base.thrift.EzSecurityToken;
+import ezbake.common.properties.EzProperties;
+import ezbake.services.graph.thrift.EzGraphService;
+import ezbake.services.graph.thrift.GraphName;
+import ezbake.services.graph.thrift.types.Edge;
+import ezbake.services.graph.thrift.types.ElementId;
+import ezbake.services.graph.thrift.types.Vertex;
+import ezbake.thrift.ThriftClientPool;
+
+/**
+ * Deletes the relationship edges written to the graph for purged Tweets, and the user vertices left without any edges.
+ * Every edge written for a Tweet is incident to the vertex of the Tweet's author and carries the Tweet ID as its
+ * {@value SampleAppConstants#TWEET_ID_KEY} property, so keys are the author's screen name and the Tweet ID, built with
+ * {@link ProvenanceIndex#getEdgeKey(String, String)}.
+ * <p/>
+ * The edges of each author are found with one Gremlin query for all of the author's purged Tweets. The query is read a
+ * page at a time, so a viral Tweet with thousands of mentions is never loaded at once, and removed edges are collected
+ * across authors so that each graph write removes as many edges as configured with {@value #EDGES_PER_WRITE_PROP}.
+ * <p/>
+ * If {@value #REMOVE_ORPHANS_PROP} is enabled, every vertex the edges touched is then checked once they are gone, and
+ * those with no edges left are removed in the same batched way. The check and the removal are separate calls to the
+ * graph service, and removing a vertex also removes its edges, so an edge the pipeline writes to the vertex in between
+ * is lost with it and is not written again. Orphan removal is therefore off by default, and should only be enabled
+ * for purges that run while the pipeline is not writing to the graph.
+ */
+public final class GraphEdgeStore implements PurgeStore {
+    /**
+     * Name of the store in a {@link PurgePlan}.
+     */
+    public static final String NAME = ProvenanceIndex.EDGE_TYPE;
+
+    /**
+     * Configuration property for the number of edges read with each page of a query.
+     */
+    public static final String PAGE_SIZE_PROP = "sampleapp.purge.graph.page.size";
+
+    /**
+     * Configuration property for the maximum number of edges or vertices removed with each graph write.
+     */
+    public static final String EDGES_PER_WRITE_PROP = "sampleapp.purge.graph.edges.per.write";
+
+    /**
+     * Configuration property for the maximum number of pages read for one author, which stops a purge from looping if
+     * the graph does not apply removals.
+     */
+    public static final String MAX_PAGES_PROP = "sampleapp.purge.graph.max.pages";
+
+    /**
+     * Configuration property for whether to remove the user vertices left without edges, which races with the pipeline
+     * adding edges to them.
+     */
+    public static final String REMOVE_ORPHANS_PROP = "sampleapp.purge.graph.remove.orphans";
+
+    private static final Logger logger = LoggerFactory.getLogger(GraphEdgeStore.class);
+
+    private static final int DEFAULT_PAGE_SIZE = 500;
+    private static final int DEFAULT_EDGES_PER_WRITE = 500;
+    private static final int DEFAULT_MAX_PAGES = 1000;
+
+    private static final GraphName GRAPH_NAME = new GraphName().setName(SampleAppConstants.GRAPH_NAME);
+
+    /**
+     * Gremlin query for whether a vertex has any edges left.
+     */
+    private static final String ANY_EDGE_QUERY = "_().bothE[0..0]";
+
+    private static final char KEY_SEPARATOR = '/';
+
+    private final ThriftClientPool pool;
+    private final int pageSize;
+    private final int edgesPerWrite;
+    private final int maxPages;
+    private final boolean removeOrphans;
+
+    /**
+     * Constructor.
+     *
+     * @param props Configuration properties
+     * @param pool Pool from which to get the graph service client
+     */
+    public GraphEdgeStore(EzProperties props, ThriftClientPool pool) {
+        this.pool = pool;
+        pageSize = props.getInteger(PAGE_SIZE_PROP, DEFAULT_PAGE_SIZE);
+        edgesPerWrite = props.getInteger(EDGES_PER_WRITE_PROP, DEFAULT_EDGES_PER_WRITE);
+        maxPages = props.getInteger(MAX_PAGES_PROP, DEFAULT_MAX_PAGES);
+        removeOrphans = props.getBoolean(REMOVE_ORPHANS_PROP, false);
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public void delete(List<String> keys, EzSecurityToken token) throws TException {
+        final Map<String, List<String>> tweetIdsByAuthor = new TreeMap<>();
+        for (final String key : keys) {
+            final int separator = key.lastIndexOf(KEY_SEPARATOR);
+            final String author = key.substring(0, separator);
+            List<String> tweetIds = tweetIdsByAuthor.get(author);
+            if (tweetIds == null) {
+                tweetIds = new ArrayList<>();
+                tweetIdsByAuthor.put(author, tweetIds);
+            }
+
+            tweetIds.add(key.substring(separator + 1));
+        }
+
+        EzGraphService.Client graphClient = null;
+        try {
+            graphClient = pool.getClient(GRAPH_SERVICE_NAME, EzGraphService.Client.class);
+            final List<Edge> pending = new ArrayList<>();
+            final Set<String> touched = new TreeSet<>();
+            int removedEdges = 0;
+            for (final Map.Entry<String, List<String>> entry : tweetIdsByAuthor.entrySet()) {
+                final String author = entry.getKey();
+                final Vertex authorVertex = getUserVertex(author);
+                final String query = buildEdgeQuery(entry.getValue());
+                touched.add(author);
+
+                List<Edge> page;
+                int pages = 0;
+                do {
+                    page = graphClient.queryEdges(GRAPH_NAME, authorVertex, query, token);
+                    for (final Edge edge : page) {
+                        pending.add(edge);
+                        touched.add(edge.getOutVertex().getLocalId());
+                        touched.add(edge.getInVertex().getLocalId());
+                    }
+
+                    // A full page means more edges may follow, and they are only returned once these are removed
+                    if (page.size() >= pageSize || pending.size() >= edgesPerWrite) {
+                        removedEdges += removeEdges(graphClient, pending, token);
+                    }
+
+                    pages++;
+                } while (page.size() >= pageSize && pages < maxPages);
+
+                if (page.size() >= pageSize) {
+                    logger.warn("Stopped removing edges of {} after {} pages", author, pages);
+                }
+            }
+
+            removedEdges += removeEdges(graphClient, pending, token);
+            final int removedVertices = removeOrphans ? removeOrphanedVertices(graphClient, touched, token) : 0;
+            logger.info(
+                    "Removed {} edges and {} orphaned vertices of {} purged Tweets from the graph", removedEdges,
+                    removedVertices, keys.size());
+        } finally {
+            if (graphClient != null) {
+                pool.returnToPool(graphClient);
+            }
+        }
+    }
+
+    /**
+     * Removes edges from the graph with as few writes as possible, and clears the list.
+     *
+     * @param graphClient Graph service client
+     * @param edges Edges to remove
+     * @param token Security token for the graph service
+     * @return Number of edges removed
+     * @throws TException if the edges could not be removed
+     */
+    private int removeEdges(EzGraphService.Client graphClient, List<Edge> edges, EzSecurityToken token)
+            throws TException {
+        final int removed = edges.size();
+        for (final List<Edge> batch : Iterables.partition(edges, edgesPerWrite)) {
+            graphClient.removeEdges(GRAPH_APP_NAME, GRAPH_NAME, new ArrayList<>(batch), token);
+        }
+
+        edges.clear();
+        return removed;
+    }
+
+    /**
+     * Removes the vertices of users that no longer have any edges. A vertex that gains an edge after it is checked is
+     * still removed, together with the new edge.
+     *
+     * @param graphClient Graph service client
+     * @param screenNames Screen names of the users whose edges were removed
+     * @param token Security token for the graph service
+     * @return Number of vertices removed
+     * @throws TException if the vertices could not be checked or removed
+     */
+    private int removeOrphanedVertices(
+            EzGraphService.Client graphClient, Set<String> screenNames, EzSecurityToken token) throws TException {
+        final List<Vertex> orphaned = new ArrayList<>();
+        for (final String screenName : screenNames) {
+            final Vertex vertex = getUserVertex(screenName);
+            if (graphClient.queryEdges(GRAPH_NAME, vertex, ANY_EDGE_QUERY, token).isEmpty()) {
+                orphaned.add(vertex);
+            }
+        }
+
+        for (final List<Vertex> batch : Iterables.partition(orphaned, edgesPerWrite)) {
+            graphClient.removeVertices(GRAPH_APP_NAME, GRAPH_NAME, new ArrayList<>(batch), token);
+        }
+
+        return orphaned.size();
+    }
+
+    /**
+     * Returns the vertex of a user, identified by the screen name the relationship worker uses as its local ID.
+     *
+     * @param screenName Screen name of the user
+     * @return Vertex of the user
+     */
+    private static Vertex getUserVertex(String screenName) {
+        return new Vertex().setId(new ElementId().setLocalId(screenName));
+    }
+
+    /**
+     * Builds a Gremlin query for the first page of edges of the start vertex that were parsed from any of a set of
+     * Tweets.
+     *
+     * @param tweetIds IDs of the Tweets
+     * @return Gremlin query text
+     */
+    private String buildEdgeQuery(List<String> tweetIds) {
+        final StringBuilder gremlin = new StringBuilder("_().bothE.has('").append(TWEET_ID_KEY).append("', T.in, [");
+        for (int idx = 0; idx < tweetIds.size(); idx++) {
+            if (idx > 0) {
+                gremlin.append(", ");
+            }
+
+            gremlin.append('\'');
+            for (final char chr : tweetIds.get(idx).toCharArray()) {
+                if (chr == '\'' || chr == '\\') {
+                    gremlin.append('\\');
+                }
+
+                gremlin.append(chr);
+            }
+
+            gremlin.append('\'');
+        }
+
+        return gremlin.append("])[0..").append(pageSize - 1).append(']').toString();
+    }
+}
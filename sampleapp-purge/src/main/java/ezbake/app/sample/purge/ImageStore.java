@@ -0,0 +1,69 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample.purge;
+
+import java.util.List;
+
+import org.apache.thrift.TException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ezbake.app.sample.util.ProvenanceIndex;
+import ezbake.base.thrift.EzSecurityToken;
+import ezbake.services.indexing.image.thrift.ImageIndexerService;
+import ezbake.services.indexing.image.thrift.ImageIndexerServiceConstants;
+import ezbake.thrift.ThriftClientPool;
+
+/**
+ * Deletes images from the image indexer service. Keys are EzBake image IDs.
+ */
+public final class ImageStore implements PurgeStore {
+    /**
+     * Name of the store in a {@link PurgePlan}.
+     */
+    public static final String NAME = ProvenanceIndex.IMAGE_TYPE;
+
+    private static final Logger logger = LoggerFactory.getLogger(ImageStore.class);
+
+    private final ThriftClientPool pool;
+
+    /**
+     * Constructor.
+     *
+     * @param pool Pool from which to get the image indexer client
+     */
+    public ImageStore(ThriftClientPool pool) {
+        this.pool = pool;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public void delete(List<String> keys, EzSecurityToken token) throws TException {
+        ImageIndexerService.Client imageIndexer = null;
+        try {
+            imageIndexer = pool.getClient(ImageIndexerServiceConstants.SERVICE_NAME, ImageIndexerService.Client.class);
+            imageIndexer.removeImages(keys, token);
+            logger.info("Removed {} purged images from the image indexer", keys.size());
+        } finally {
+            if (imageIndexer != null) {
+                pool.returnToPool(imageIndexer);
+            }
+        }
+    }
+}
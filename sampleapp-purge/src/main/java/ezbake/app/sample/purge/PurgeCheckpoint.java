@@ -0,0 +1,196 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample.purge;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Persists the progress of a purge so that it can be resumed after a failure without resolving its artifacts again,
+ * which is impossible once some of them have been deleted.
+ * <p>
+ * Two UTF-8 files are kept per purge in the checkpoint directory. The plan file holds the batch size on its first line
+ * followed by one tab-separated store name and key per line, and is written once before any deletion. The progress
+ * file is appended with the store name and index of each batch as it completes. A partially written last line is
+ * ignored, so a crash can at worst cause one batch to be deleted again.
+ */
+public final class PurgeCheckpoint implements Closeable {
+    private static final char FIELD_SEPARATOR = '\t';
+    private static final char LINE_SEPARATOR = '\n';
+
+    private final Path planFile;
+    private final Path progressFile;
+    private BufferedWriter progress;
+    private boolean closed;
+
+    /**
+     * Constructor.
+     *
+     * @param dir Checkpoint directory, created if necessary
+     * @param purgeId ID of the purge
+     * @throws IOException if the directory could not be created
+     */
+    public PurgeCheckpoint(Path dir, long purgeId) throws IOException {
+        Files.createDirectories(dir);
+        planFile = dir.resolve(purgeId + ".plan");
+        progressFile = dir.resolve(purgeId + ".progress");
+    }
+
+    /**
+     * Reads the plan saved by an earlier run of the purge.
+     *
+     * @return The saved plan, or null if the purge has not been started
+     * @throws IOException if the plan could not be read
+     */
+    public PurgePlan readPlan() throws IOException {
+        if (!Files.exists(planFile)) {
+            return null;
+        }
+
+        final List<String> lines = Files.readAllLines(planFile, StandardCharsets.UTF_8);
+        if (lines.isEmpty()) {
+            throw new IOException("Empty purge plan: " + planFile);
+        }
+
+        final PurgePlan plan;
+        try {
+            plan = new PurgePlan(Integer.parseInt(lines.get(0)));
+        } catch (final IllegalArgumentException e) {
+            throw new IOException("Invalid batch size in purge plan: " + planFile, e);
+        }
+
+        for (final String line : lines.subList(1, lines.size())) {
+            final int separator = line.indexOf(FIELD_SEPARATOR);
+            if (separator < 0) {
+                throw new IOException("Invalid entry in purge plan " + planFile + ": " + line);
+            }
+
+            plan.add(line.substring(0, separator), line.substring(separator + 1));
+        }
+
+        return plan;
+    }
+
+    /**
+     * Saves the plan of the purge. The plan is written to a temporary file that replaces the plan file atomically.
+     *
+     * @param plan Plan to save
+     * @throws IOException if the plan could not be written
+     */
+    public void writePlan(PurgePlan plan) throws IOException {
+        final Path tempFile = planFile.resolveSibling(planFile.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+            writer.write(Integer.toString(plan.getBatchSize()));
+            writer.write(LINE_SEPARATOR);
+            for (final String store : plan.getStores()) {
+                for (final List<String> batch : plan.getBatches(store)) {
+                    for (final String key : batch) {
+                        writer.write(store);
+                        writer.write(FIELD_SEPARATOR);
+                        writer.write(key);
+                        writer.write(LINE_SEPARATOR);
+                    }
+                }
+            }
+        }
+
+        Files.move(tempFile, planFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads the batches recorded as completed by earlier runs of the purge.
+     *
+     * @return Completed batches, as returned by {@link #getBatchId(String, int)}
+     * @throws IOException if the progress could not be read
+     */
+    public Set<String> readCompletedBatches() throws IOException {
+        final Set<String> completed = new HashSet<>();
+        if (!Files.exists(progressFile)) {
+            return completed;
+        }
+
+        final String content = new String(Files.readAllBytes(progressFile), StandardCharsets.UTF_8);
+        int start = 0;
+        for (int end = content.indexOf(LINE_SEPARATOR); end >= 0; end = content.indexOf(LINE_SEPARATOR, start)) {
+            completed.add(content.substring(start, end));
+            start = end + 1;
+        }
+
+        return completed;
+    }
+
+    /**
+     * Records that a batch has been deleted. The record is flushed before returning.
+     *
+     * @param store Name of the store
+     * @param batch Index of the batch within the store's batches
+     * @throws IOException if the progress could not be written or the checkpoint has been closed
+     */
+    public synchronized void markCompleted(String store, int batch) throws IOException {
+        if (closed) {
+            throw new IOException("Purge checkpoint has been closed: " + progressFile);
+        }
+
+        if (progress == null) {
+            progress = Files.newBufferedWriter(
+                    progressFile, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.APPEND);
+        }
+
+        progress.write(getBatchId(store, batch));
+        progress.write(LINE_SEPARATOR);
+        progress.flush();
+    }
+
+    /**
+     * Removes the checkpoint files once the purge has completed.
+     *
+     * @throws IOException if the files could not be deleted
+     */
+    public synchronized void delete() throws IOException {
+        close();
+        Files.deleteIfExists(progressFile);
+        Files.deleteIfExists(planFile);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        closed = true;
+        if (progress != null) {
+            progress.close();
+            progress = null;
+        }
+    }
+
+    /**
+     * Returns the identifier under which a batch is recorded as completed.
+     *
+     * @param store Name of the store
+     * @param batch Index of the batch within the store's batches
+     * @return Batch identifier
+     */
+    public static String getBatchId(String store, int batch) {
+        return store + FIELD_SEPARATOR + batch;
+    }
+}
@@ -0,0 +1,185 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample.purge;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.thrift.TException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import ezbake.base.thrift.EzSecurityToken;
+import ezbake.common.properties.EzProperties;
+
+/**
+ * Deletes the artifacts ingested from purged provenance IDs. A purge is resolved to a {@link PurgePlan} once, then the
+ * batches of every store are deleted in parallel on a shared pool. Progress is checkpointed per batch, so a purge that
+ * failed or was interrupted is resumed by running it again with the same ID, and only the batches that had not
+ * completed are deleted.
+ */
+public final class PurgeEngine implements Closeable {
+    /**
+     * Configuration properties and their defaults.
+     */
+    public static final String THREADS_PROP = "sampleapp.purge.threads";
+    public static final String BATCH_SIZE_PROP = "sampleapp.purge.batch.size";
+    public static final String CHECKPOINT_DIR_PROP = "sampleapp.purge.checkpoint.dir";
+
+    private static final Logger logger = LoggerFactory.getLogger(PurgeEngine.class);
+
+    private static final int DEFAULT_THREADS = 8;
+    private static final int DEFAULT_BATCH_SIZE = 500;
+    private static final String DEFAULT_CHECKPOINT_DIR_NAME = "sampleapp-purge";
+
+    private final PurgeResolver resolver;
+    private final Map<String, PurgeStore> stores = new LinkedHashMap<>();
+    private final ExecutorService pool;
+    private final int batchSize;
+    private final Path checkpointDir;
+
+    /**
+     * Constructor.
+     *
+     * @param props Configuration properties
+     * @param resolver Resolves provenance IDs to the artifacts to delete
+     * @param stores Stores from which artifacts are deleted
+     */
+    public PurgeEngine(EzProperties props, PurgeResolver resolver, PurgeStore... stores) {
+        this.resolver = resolver;
+        for (final PurgeStore store : stores) {
+            this.stores.put(store.getName(), store);
+        }
+
+        batchSize = props.getInteger(BATCH_SIZE_PROP, DEFAULT_BATCH_SIZE);
+        checkpointDir = Paths.get(
+                props.getProperty(
+                        CHECKPOINT_DIR_PROP,
+                        Paths.get(System.getProperty("java.io.tmpdir"), DEFAULT_CHECKPOINT_DIR_NAME).toString()));
+
+        pool = Executors.newFixedThreadPool(
+                props.getInteger(THREADS_PROP, DEFAULT_THREADS),
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("purge-%d").build());
+    }
+
+    /**
+     * Runs a purge, or resumes it if an earlier run did not complete. Once every batch has been deleted the provenance
+     * IDs are reported to the resolver as purged and the checkpoint is removed.
+     *
+     * @param purgeId ID of the purge
+     * @param provenanceIds Provenance IDs to purge. Only resolved by the first run, as a resumed run deletes the
+     * artifacts resolved then.
+     * @param token Security token used to access the stores
+     * @return Outcome of this run
+     * @throws IOException if the checkpoint could not be read or written, or the purge could not be recorded by the
+     * resolver
+     * @throws TException if the provenance IDs could not be resolved
+     * @throws InterruptedException if interrupted while waiting for deletions, which are then cancelled
+     */
+    public PurgeResult purge(long purgeId, Set<Long> provenanceIds, final EzSecurityToken token)
+            throws IOException, TException, InterruptedException {
+        try (PurgeCheckpoint checkpoint = new PurgeCheckpoint(checkpointDir, purgeId)) {
+            PurgePlan plan = checkpoint.readPlan();
+            if (plan == null) {
+                plan = new PurgePlan(batchSize);
+                resolver.resolve(provenanceIds, plan, token);
+                checkpoint.writePlan(plan);
+            } else {
+                logger.info("Resuming purge {}", purgeId);
+            }
+
+            for (final String store : plan.getStores()) {
+                if (!stores.containsKey(store)) {
+                    throw new IllegalStateException("No purge store named " + store);
+                }
+
+                logger.info("Purge {} has {} keys to delete from {}", purgeId, plan.getKeyCount(store), store);
+            }
+
+            final PurgeResult result = new PurgeResult(purgeId);
+            final Set<String> completed = checkpoint.readCompletedBatches();
+            final Map<Future<Integer>, String> deletions = new LinkedHashMap<>();
+            for (final String storeName : plan.getStores()) {
+                final PurgeStore store = stores.get(storeName);
+                final List<List<String>> batches = plan.getBatches(storeName);
+                for (int idx = 0; idx < batches.size(); idx++) {
+                    if (completed.contains(PurgeCheckpoint.getBatchId(storeName, idx))) {
+                        result.addResumed();
+                        continue;
+                    }
+
+                    final int batchIdx = idx;
+                    final List<String> batch = batches.get(idx);
+                    deletions.put(
+                            pool.submit(
+                                    new Callable<Integer>() {
+                                        @Override
+                                        public Integer call() throws TException, IOException {
+                                            store.delete(batch, token);
+                                            checkpoint.markCompleted(store.getName(), batchIdx);
+                                            return batch.size();
+                                        }
+                                    }), storeName);
+                }
+            }
+
+            try {
+                for (final Map.Entry<Future<Integer>, String> deletion : deletions.entrySet()) {
+                    try {
+                        result.addDeleted(deletion.getValue(), deletion.getKey().get());
+                    } catch (final ExecutionException e) {
+                        logger.error(
+                                "Could not delete a batch from {} for purge {}", deletion.getValue(), purgeId,
+                                e.getCause());
+
+                        result.addFailed(deletion.getValue());
+                    }
+                }
+            } catch (final InterruptedException e) {
+                for (final Future<Integer> deletion : deletions.keySet()) {
+                    deletion.cancel(true);
+                }
+
+                throw e;
+            }
+
+            if (result.isComplete()) {
+                resolver.purged(provenanceIds);
+                checkpoint.delete();
+            }
+
+            logger.info("{}", result);
+            return result;
+        }
+    }
+
+    @Override
+    public void close() {
+        pool.shutdownNow();
+    }
+}
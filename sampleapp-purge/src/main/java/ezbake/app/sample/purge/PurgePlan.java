@@ -0,0 +1,120 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample.purge;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * The artifacts to delete for a purge, keyed by the name of the {@link PurgeStore} that holds them. Keys are kept
+ * sorted and split into fixed-size batches so that a resumed purge produces the same batches as the original run.
+ */
+public final class PurgePlan {
+    private final int batchSize;
+    private final Map<String, SortedSet<String>> keys = new TreeMap<>();
+
+    /**
+     * Constructor.
+     *
+     * @param batchSize Maximum number of keys deleted from a store at once
+     */
+    public PurgePlan(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        }
+
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Adds an artifact to delete. Adding the same key twice has no effect.
+     *
+     * @param store Name of the store holding the artifact
+     * @param key Key of the artifact in that store
+     */
+    public void add(String store, String key) {
+        SortedSet<String> storeKeys = keys.get(store);
+        if (storeKeys == null) {
+            storeKeys = new TreeSet<>();
+            keys.put(store, storeKeys);
+        }
+
+        storeKeys.add(key);
+    }
+
+    /**
+     * Returns the maximum number of keys deleted from a store at once.
+     *
+     * @return Batch size
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Returns the names of the stores that have artifacts to delete.
+     *
+     * @return Store names in sorted order
+     */
+    public Set<String> getStores() {
+        return Collections.unmodifiableSet(keys.keySet());
+    }
+
+    /**
+     * Returns the number of artifacts to delete from a store.
+     *
+     * @param store Name of the store
+     * @return Number of keys for the store
+     */
+    public int getKeyCount(String store) {
+        final SortedSet<String> storeKeys = keys.get(store);
+        return storeKeys == null ? 0 : storeKeys.size();
+    }
+
+    /**
+     * Splits the artifacts to delete from a store into batches.
+     *
+     * @param store Name of the store
+     * @return Batches of keys in sorted order, each holding at most the batch size
+     */
+    public List<List<String>> getBatches(String store) {
+        final SortedSet<String> storeKeys = keys.get(store);
+        if (storeKeys == null) {
+            return Collections.emptyList();
+        }
+
+        final List<List<String>> batches = new ArrayList<>((storeKeys.size() + batchSize - 1) / batchSize);
+        List<String> batch = new ArrayList<>(batchSize);
+        for (final String key : storeKeys) {
+            batch.add(key);
+            if (batch.size() == batchSize) {
+                batches.add(batch);
+                batch = new ArrayList<>(batchSize);
+            }
+        }
+
+        if (!batch.isEmpty()) {
+            batches.add(batch);
+        }
+
+        return batches;
+    }
+}
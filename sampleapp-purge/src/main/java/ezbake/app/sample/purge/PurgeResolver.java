@@ -0,0 +1,45 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample.purge;
+
+import java.io.IOException;
+import java.util.Set;
+
+import org.apache.thrift.TException;
+
+import ezbake.base.thrift.EzSecurityToken;
+
+/**
+ * Resolves purged provenance IDs to the artifacts that were ingested from them.
+ */
+public interface PurgeResolver {
+    /**
+     * Adds the artifacts ingested from a set of provenance IDs to a plan.
+     *
+     * @param provenanceIds Provenance IDs being purged
+     * @param plan Plan to which to add the artifacts, keyed by {@link PurgeStore#getName()}
+     * @param token Security token used to look up the artifacts
+     * @throws TException if the artifacts could not be resolved
+     */
+    void resolve(Set<Long> provenanceIds, PurgePlan plan, EzSecurityToken token) throws TException;
+
+    /**
+     * Called once every artifact of a set of provenance IDs has been deleted, so that the resolver can forget them.
+     *
+     * @param provenanceIds Purged provenance IDs
+     * @throws IOException if the purge could not be recorded
+     */
+    void purged(Set<Long> provenanceIds) throws IOException;
+}
@@ -0,0 +1,119 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample.purge;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Outcome of one run of a purge.
+ */
+public final class PurgeResult {
+    private final long purgeId;
+    private final Map<String, Integer> deletedKeys = new TreeMap<>();
+    private final Map<String, Integer> failedBatches = new TreeMap<>();
+    private int resumedBatches;
+
+    /**
+     * Constructor.
+     *
+     * @param purgeId ID of the purge
+     */
+    PurgeResult(long purgeId) {
+        this.purgeId = purgeId;
+    }
+
+    /**
+     * Returns the ID of the purge.
+     *
+     * @return Purge ID
+     */
+    public long getPurgeId() {
+        return purgeId;
+    }
+
+    /**
+     * Returns whether every batch of the purge has been deleted, in this run or an earlier one. An incomplete purge
+     * can be resumed by running it again with the same ID.
+     *
+     * @return true if no batch failed
+     */
+    public boolean isComplete() {
+        return failedBatches.isEmpty();
+    }
+
+    /**
+     * Returns the number of keys deleted in this run.
+     *
+     * @return Number of keys keyed by store name
+     */
+    public Map<String, Integer> getDeletedKeys() {
+        return Collections.unmodifiableMap(deletedKeys);
+    }
+
+    /**
+     * Returns the number of batches that failed in this run.
+     *
+     * @return Number of batches keyed by store name
+     */
+    public Map<String, Integer> getFailedBatches() {
+        return Collections.unmodifiableMap(failedBatches);
+    }
+
+    /**
+     * Returns the number of batches skipped because an earlier run had deleted them.
+     *
+     * @return Number of batches
+     */
+    public int getResumedBatches() {
+        return resumedBatches;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "Purge %d: deleted=%s failedBatches=%s resumedBatches=%d", purgeId, deletedKeys, failedBatches,
+                resumedBatches);
+    }
+
+    /**
+     * Records a deleted batch.
+     *
+     * @param store Name of the store
+     * @param keyCount Number of keys in the batch
+     */
+    void addDeleted(String store, int keyCount) {
+        final Integer count = deletedKeys.get(store);
+        deletedKeys.put(store, count == null ? keyCount : count + keyCount);
+    }
+
+    /**
+     * Records a failed batch.
+     *
+     * @param store Name of the store
+     */
+    void addFailed(String store) {
+        final Integer count = failedBatches.get(store);
+        failedBatches.put(store, count == null ? 1 : count + 1);
+    }
+
+    /**
+     * Records a batch skipped because an earlier run had deleted it.
+     */
+    void addResumed() {
+        resumedBatches++;
+    }
+}
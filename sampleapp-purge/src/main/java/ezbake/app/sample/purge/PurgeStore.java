@@ -0,0 +1,43 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample.purge;
+
+import java.util.List;
+
+import org.apache.thrift.TException;
+
+import ezbake.base.thrift.EzSecurityToken;
+
+/**
+ * A store from which purged artifacts are deleted. Deletions must be idempotent, as a batch is deleted again if a purge
+ * is resumed before the batch was checkpointed.
+ */
+public interface PurgeStore {
+    /**
+     * Returns the name of the store, under which its keys are held in a {@link PurgePlan}.
+     *
+     * @return Name of the store
+     */
+    String getName();
+
+    /**
+     * Deletes a batch of artifacts. Keys that no longer exist are ignored.
+     *
+     * @param keys Keys of the artifacts to delete, in the form added to the plan for this store
+     * @param token Security token used to access the store
+     * @throws TException if the deletion failed
+     */
+    void delete(List<String> keys, EzSecurityToken token) throws TException;
+}
@@ -0,0 +1,101 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample.purge;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Properties;
+import java.util.Set;
+
+import org.apache.thrift.TException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ezbake.app.sample.util.ProvenanceIndex;
+import ezbake.app.sample.util.ProvenanceIndexWriter;
+import ezbake.base.thrift.EzSecurityToken;
+import ezbake.common.properties.EzProperties;
+import ezbake.security.client.EzbakeSecurityClient;
+import ezbake.thrift.ThriftClientPool;
+
+import ezbakehelpers.ezconfigurationhelpers.application.EzBakeApplicationConfigurationHelper;
+
+/**
+ * Purges the Tweets, images and graph edges that the sample app ingested from a set of provenance IDs, removing them
+ * from EzMongo, the image indexer and the graph. When the pipeline maintains a provenance index, configured with
+ * {@value ProvenanceIndexWriter#DIR_PROP}, the artifacts are looked up in the index and EzMongo is only searched for
+ * provenance IDs that are not indexed.
+ */
+public final class SampleAppPurgeService implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(SampleAppPurgeService.class);
+
+    /**
+     * Pool from which to get Thrift clients.
+     */
+    private final ThriftClientPool pool;
+
+    /**
+     * Security client used to get the application's security token, and the application's security ID.
+     */
+    private final EzbakeSecurityClient securityClient;
+    private final String securityId;
+
+    private final PurgeEngine engine;
+
+    /**
+     * Constructor.
+     *
+     * @param props Configuration properties
+     */
+    public SampleAppPurgeService(Properties props) {
+        pool = new ThriftClientPool(props);
+        securityClient = new EzbakeSecurityClient(props);
+        securityId = new EzBakeApplicationConfigurationHelper(props).getSecurityID();
+        PurgeResolver resolver = new TweetProvenanceResolver(pool);
+        final String indexDir = props.getProperty(ProvenanceIndexWriter.DIR_PROP);
+        if (indexDir != null) {
+            resolver = new IndexedProvenanceResolver(new ProvenanceIndex(Paths.get(indexDir)), resolver);
+        }
+
+        final EzProperties ezProps = new EzProperties(props, false);
+        engine = new PurgeEngine(
+                ezProps, resolver, new TweetStore(pool), new ImageStore(pool), new GraphEdgeStore(ezProps, pool));
+    }
+
+    /**
+     * Runs a purge, or resumes it if an earlier run with the same ID did not complete.
+     *
+     * @param purgeId ID of the purge
+     * @param provenanceIds Provenance IDs to purge
+     * @return Outcome of this run
+     * @throws IOException if the purge checkpoint could not be read or written
+     * @throws TException if the security token could not be fetched or the provenance IDs could not be resolved
+     * @throws InterruptedException if interrupted while waiting for deletions
+     */
+    public PurgeResult purge(long purgeId, Set<Long> provenanceIds)
+            throws IOException, TException, InterruptedException {
+        logger.info("Purging {} provenance IDs for purge {}", provenanceIds.size(), purgeId);
+        final EzSecurityToken token = securityClient.fetchAppToken(securityId);
+        return engine.purge(purgeId, provenanceIds, token);
+    }
+
+    @Override
+    public void close() throws IOException {
+        engine.close();
+        pool.close();
+        securityClient.close();
+    }
+}
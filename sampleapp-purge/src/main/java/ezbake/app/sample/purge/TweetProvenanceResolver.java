@@ -0,0 +1,101 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample.purge;
+
+import java.util.List;
+import java.util.Set;
+
+import org.apache.thrift.TException;
+import org.codehaus.jettison.json.JSONException;
+import org.codehaus.jettison.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Iterables;
+
+import ezbake.app.sample.util.ProvenanceIndex;
+import ezbake.app.sample.util.TweetParserUtils;
+import ezbake.base.thrift.EzSecurityToken;
+import ezbake.data.mongo.thrift.EzMongo;
+import ezbake.data.mongo.thrift.MongoFindParams;
+import ezbake.thrift.ThriftClientPool;
+
+/**
+ * Resolves provenance IDs by finding the Tweet documents stored with them in EzMongo. Each Tweet found contributes its
+ * own document, the images recorded in its EzBake image IDs and the edges written for it to the plan. The provenance
+ * IDs are looked up in chunks of the plan's batch size.
+ */
+public final class TweetProvenanceResolver implements PurgeResolver {
+    private static final Logger logger = LoggerFactory.getLogger(TweetProvenanceResolver.class);
+
+    private final ThriftClientPool pool;
+
+    /**
+     * Constructor.
+     *
+     * @param pool Pool from which to get the EzMongo client
+     */
+    public TweetProvenanceResolver(ThriftClientPool pool) {
+        this.pool = pool;
+    }
+
+    @Override
+    public void resolve(Set<Long> provenanceIds, PurgePlan plan, EzSecurityToken token) throws TException {
+        EzMongo.Client ezMongoClient = null;
+        try {
+            ezMongoClient = pool.getClient(TweetStore.MONGO_SERVICE_NAME, EzMongo.Client.class);
+            for (final List<Long> chunk : Iterables.partition(provenanceIds, plan.getBatchSize())) {
+                final MongoFindParams findParams = new MongoFindParams();
+                findParams.setJsonQuery(TweetStore.inQuery(TweetParserUtils.PROVENANCE_KEY, chunk));
+                final List<String> results = ezMongoClient.find(TweetStore.COLLECTION, findParams, token);
+                for (final String result : results) {
+                    addTweet(new JSONObject(result), plan);
+                }
+
+                logger.info("Resolved {} Tweets from {} provenance IDs", results.size(), chunk.size());
+            }
+        } catch (final JSONException e) {
+            final String errMsg = "EzMongo returned an invalid Tweet document";
+            logger.error(errMsg, e);
+            throw new TException(errMsg, e);
+        } finally {
+            if (ezMongoClient != null) {
+                pool.returnToPool(ezMongoClient);
+            }
+        }
+    }
+
+    @Override
+    public void purged(Set<Long> provenanceIds) {
+        // Purged Tweets are deleted from EzMongo, so they are not found again
+    }
+
+    /**
+     * Adds the artifacts of a Tweet to a plan.
+     *
+     * @param tweetJson Stored JSON of the Tweet
+     * @param plan Plan to which to add the artifacts
+     * @throws JSONException if the Tweet could not be parsed
+     */
+    private static void addTweet(JSONObject tweetJson, PurgePlan plan) throws JSONException {
+        final String tweetId = TweetParserUtils.getId(tweetJson);
+        final String authorScreenName = TweetParserUtils.getAuthor(tweetJson).getScreenName();
+        plan.add(TweetStore.NAME, tweetId);
+        plan.add(GraphEdgeStore.NAME, ProvenanceIndex.getEdgeKey(authorScreenName, tweetId));
+        for (final String imageId : TweetParserUtils.getEzBakeImageIds(tweetJson)) {
+            plan.add(ImageStore.NAME, imageId);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample.purge;
+
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.thrift.TException;
+import org.codehaus.jettison.json.JSONArray;
+import org.codehaus.jettison.json.JSONException;
+import org.codehaus.jettison.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ezbake.app.sample.util.ProvenanceIndex;
+import ezbake.app.sample.util.TweetParserUtils;
+import ezbake.base.thrift.EzSecurityToken;
+import ezbake.data.mongo.thrift.EzMongo;
+import ezbake.thrift.ThriftClientPool;
+
+/**
+ * Deletes Tweet documents from the EzMongo "tweets" collection. Keys are Tweet IDs.
+ */
+public final class TweetStore implements PurgeStore {
+    /**
+     * Name of the store in a {@link PurgePlan}.
+     */
+    public static final String NAME = ProvenanceIndex.TWEET_TYPE;
+
+    /**
+     * EzMongo service and collection holding the Tweet documents.
+     */
+    static final String MONGO_SERVICE_NAME = "ezmongo";
+    static final String COLLECTION = "tweets";
+
+    private static final Logger logger = LoggerFactory.getLogger(TweetStore.class);
+
+    private final ThriftClientPool pool;
+
+    /**
+     * Constructor.
+     *
+     * @param pool Pool from which to get the EzMongo client
+     */
+    public TweetStore(ThriftClientPool pool) {
+        this.pool = pool;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public void delete(List<String> keys, EzSecurityToken token) throws TException {
+        EzMongo.Client ezMongoClient = null;
+        try {
+            ezMongoClient = pool.getClient(MONGO_SERVICE_NAME, EzMongo.Client.class);
+            final int removed = ezMongoClient.remove(COLLECTION, inQuery(TweetParserUtils.ID_STR_KEY, keys), token);
+            logger.info("Removed {} of {} purged Tweets from EzMongo", removed, keys.size());
+        } finally {
+            if (ezMongoClient != null) {
+                pool.returnToPool(ezMongoClient);
+            }
+        }
+    }
+
+    /**
+     * Builds a MongoDB query matching the documents whose field has any of a set of values.
+     *
+     * @param field Name of the field
+     * @param values Values to match
+     * @return JSON MongoDB query
+     */
+    static String inQuery(String field, Collection<?> values) {
+        try {
+            return new JSONObject().put(field, new JSONObject().put("$in", new JSONArray(values))).toString();
+        } catch (final JSONException e) {
+            throw new IllegalArgumentException("Could not build query for field " + field, e);
+        }
+    }
+}
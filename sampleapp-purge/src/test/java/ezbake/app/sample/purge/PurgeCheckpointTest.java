@@ -0,0 +1,105 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample.purge;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.collect.ImmutableSet;
+
+import ezbake.app.sample.util.ProvenanceIndex;
+
+/**
+ * Unit tests for {@link PurgeCheckpoint}.
+ */
+public final class PurgeCheckpointTest {
+    private static final long PURGE_ID = 42;
+    private static final int BATCH_SIZE = 2;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    /**
+     * Tests that a saved plan is read back with the same batches.
+     *
+     * @throws Exception if an error occurred
+     */
+    @Test
+    public void testPlanRoundTrip() throws Exception {
+        final PurgePlan plan = new PurgePlan(BATCH_SIZE);
+        plan.add(TweetStore.NAME, "3");
+        plan.add(TweetStore.NAME, "1");
+        plan.add(TweetStore.NAME, "2");
+        plan.add(GraphEdgeStore.NAME, ProvenanceIndex.getEdgeKey("user", "1"));
+
+        final Path dir = tempFolder.getRoot().toPath();
+        try (PurgeCheckpoint checkpoint = new PurgeCheckpoint(dir, PURGE_ID)) {
+            assertNull(checkpoint.readPlan());
+            checkpoint.writePlan(plan);
+        }
+
+        try (PurgeCheckpoint checkpoint = new PurgeCheckpoint(dir, PURGE_ID)) {
+            final PurgePlan read = checkpoint.readPlan();
+            assertEquals(BATCH_SIZE, read.getBatchSize());
+            assertEquals(plan.getStores(), read.getStores());
+            assertEquals(
+                    Arrays.asList(Arrays.asList("1", "2"), Collections.singletonList("3")),
+                    read.getBatches(TweetStore.NAME));
+
+            assertEquals(plan.getBatches(GraphEdgeStore.NAME), read.getBatches(GraphEdgeStore.NAME));
+        }
+    }
+
+    /**
+     * Tests that completed batches are read back and that a partially written last record is ignored.
+     *
+     * @throws Exception if an error occurred
+     */
+    @Test
+    public void testCompletedBatches() throws Exception {
+        final Path dir = tempFolder.getRoot().toPath();
+        try (PurgeCheckpoint checkpoint = new PurgeCheckpoint(dir, PURGE_ID)) {
+            checkpoint.markCompleted(TweetStore.NAME, 0);
+            checkpoint.markCompleted(ImageStore.NAME, 1);
+        }
+
+        Files.write(
+                dir.resolve(PURGE_ID + ".progress"), (TweetStore.NAME + "\t1").getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.APPEND);
+
+        try (PurgeCheckpoint checkpoint = new PurgeCheckpoint(dir, PURGE_ID)) {
+            assertEquals(
+                    ImmutableSet.of(
+                            PurgeCheckpoint.getBatchId(TweetStore.NAME, 0),
+                            PurgeCheckpoint.getBatchId(ImageStore.NAME, 1)), checkpoint.readCompletedBatches());
+
+            checkpoint.delete();
+        }
+
+        assertFalse(Files.exists(dir.resolve(PURGE_ID + ".progress")));
+    }
+}
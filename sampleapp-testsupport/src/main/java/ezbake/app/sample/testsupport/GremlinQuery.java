@@ -0,0 +1,169 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample.testsupport;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The subset of Gremlin queries that the sample app makes from a start vertex: one step to its edges or adjacent
+ * vertices, optionally filtered on a property having one of a set of values, and optionally limited to a range of
+ * results, for example {@code _().bothE.has('tweetId', T.in, ['1', '2'])[0..99]}.
+ */
+final class GremlinQuery {
+    /**
+     * Direction of the step from the start vertex.
+     */
+    enum Direction {
+        OUT, IN, BOTH
+    }
+
+    private static final Pattern STEP = Pattern.compile("_\\(\\)\\.(out|in|both)(E?)");
+    private static final Pattern HAS_IN = Pattern.compile("\\.has\\('([^']*)',\\s*T\\.in,\\s*\\[(.*)\\]\\)");
+    private static final Pattern HAS_EQUAL = Pattern.compile("\\.has\\('([^']*)',\\s*('(?:[^'\\\\]|\\\\.)*')\\)");
+    private static final Pattern RANGE = Pattern.compile("\\[(\\d+)\\.\\.(\\d+)\\]");
+    private static final Pattern STRING = Pattern.compile("'((?:[^'\\\\]|\\\\.)*)'");
+
+    private final Direction direction;
+    private final boolean edges;
+    private final String key;
+    private final Set<String> values = new LinkedHashSet<>();
+    private final int first;
+    private final int last;
+
+    /**
+     * Constructor.
+     *
+     * @param gremlin Gremlin query
+     * @throws IllegalArgumentException if the query is not in the supported subset
+     */
+    GremlinQuery(String gremlin) {
+        final String query = gremlin.trim();
+        final Matcher step = STEP.matcher(query);
+        if (!step.lookingAt()) {
+            throw unsupported(gremlin);
+        }
+
+        direction = Direction.valueOf(step.group(1).toUpperCase());
+        edges = !step.group(2).isEmpty();
+        int end = step.end();
+
+        final Matcher hasIn = HAS_IN.matcher(query).region(end, query.length());
+        final Matcher hasEqual = HAS_EQUAL.matcher(query).region(end, query.length());
+        if (hasIn.lookingAt()) {
+            key = hasIn.group(1);
+            addStrings(hasIn.group(2));
+            end = hasIn.end();
+        } else if (hasEqual.lookingAt()) {
+            key = hasEqual.group(1);
+            addStrings(hasEqual.group(2));
+            end = hasEqual.end();
+        } else {
+            key = null;
+        }
+
+        final Matcher range = RANGE.matcher(query).region(end, query.length());
+        if (range.lookingAt()) {
+            first = Integer.parseInt(range.group(1));
+            last = Integer.parseInt(range.group(2));
+            end = range.end();
+        } else {
+            first = 0;
+            last = Integer.MAX_VALUE;
+        }
+
+        if (end != query.length()) {
+            throw unsupported(gremlin);
+        }
+    }
+
+    /**
+     * Getter for the direction of the step from the start vertex.
+     *
+     * @return Direction
+     */
+    Direction getDirection() {
+        return direction;
+    }
+
+    /**
+     * Checks whether the query returns edges rather than vertices.
+     *
+     * @return true for edges
+     */
+    boolean isEdges() {
+        return edges;
+    }
+
+    /**
+     * Getter for the property that results are filtered on.
+     *
+     * @return Property key, or null if results are not filtered
+     */
+    String getKey() {
+        return key;
+    }
+
+    /**
+     * Getter for the values that the filtered property may have.
+     *
+     * @return Property values
+     */
+    Set<String> getValues() {
+        return values;
+    }
+
+    /**
+     * Getter for the index of the first result to return.
+     *
+     * @return Index of the first result
+     */
+    int getFirst() {
+        return first;
+    }
+
+    /**
+     * Getter for the index of the last result to return, inclusive as in Gremlin.
+     *
+     * @return Index of the last result
+     */
+    int getLast() {
+        return last;
+    }
+
+    /**
+     * Adds the quoted strings of a list to the property values, removing their escapes.
+     *
+     * @param list Comma separated quoted strings
+     */
+    private void addStrings(String list) {
+        final Matcher string = STRING.matcher(list);
+        while (string.find()) {
+            values.add(string.group(1).replaceAll("\\\\(.)", "$1"));
+        }
+    }
+
+    /**
+     * Creates the error for a query outside the supported subset.
+     *
+     * @param gremlin Gremlin query
+     * @return Error
+     */
+    private static IllegalArgumentException unsupported(String gremlin) {
+        return new IllegalArgumentException("Unsupported Gremlin query for the stand-in graph service: " + gremlin);
+    }
+}
@@ -0,0 +1,432 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample.testsupport;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.thrift.TException;
+
+import ezbake.app.sample.util.SampleAppConstants;
+import ezbake.data.common.graph.GraphConverter;
+import ezbake.services.graph.thrift.EzGraphService;
+import ezbake.services.graph.thrift.types.DataType;
+import ezbake.services.graph.thrift.types.Edge;
+import ezbake.services.graph.thrift.types.ElementId;
+import ezbake.services.graph.thrift.types.Graph;
+import ezbake.services.graph.thrift.types.Property;
+import ezbake.services.graph.thrift.types.Vertex;
+
+/**
+ * Stand-in for EzGraph that keeps one graph in memory, with vertices identified by their local IDs. Writing graphs,
+ * finding vertices by property, expanding subgraphs, finding paths, removing edges and vertices, and the Gremlin
+ * queries that {@link GremlinQuery} supports are implemented. Graph names and visibilities are ignored.
+ */
+public final class InMemoryGraph extends StandInService {
+    /**
+     * Vertices keyed by local ID, and the edges incident to each vertex keyed by local ID and then by edge key. Guarded
+     * by this.
+     */
+    private final Map<String, Vertex> vertices = new LinkedHashMap<>();
+    private final Map<String, Map<String, Edge>> incidentEdges = new HashMap<>();
+
+    /**
+     * Constructor.
+     *
+     * @param latency Latency model of the service
+     */
+    public InMemoryGraph(LatencyModel latency) {
+        super(SampleAppConstants.GRAPH_SERVICE_NAME, EzGraphService.class, latency);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected Object call(String method, Object[] args) throws TException {
+        switch (method) {
+            case "writeGraph":
+                writeGraph((Graph) args[3]);
+                return null;
+            case "findVertices":
+                return findVertices((String) args[1], (DataType) args[2]);
+            case "expandSubgraph":
+                return expandSubgraph((Vertex) args[1], (Integer) args[2]);
+            case "findPath":
+                return findPath((Vertex) args[1], (Vertex) args[2], (Integer) args[3]);
+            case "queryEdges":
+                return queryEdges((Vertex) args[1], parse((String) args[2]));
+            case "queryVertices":
+                return queryVertices((Vertex) args[1], parse((String) args[2]));
+            case "removeEdges":
+                removeEdges((List<Edge>) args[2]);
+                return null;
+            case "removeVertices":
+                removeVertices((List<Vertex>) args[2]);
+                return null;
+            default:
+                return UNHANDLED;
+        }
+    }
+
+    /**
+     * Adds the vertices and edges of a graph, replacing vertices with the same ID.
+     *
+     * @param graph Graph to write
+     */
+    private synchronized void writeGraph(Graph graph) {
+        if (graph.isSetVertices()) {
+            for (final Vertex vertex : graph.getVertices()) {
+                vertices.put(vertex.getId().getLocalId(), vertex);
+            }
+        }
+
+        if (graph.isSetEdges()) {
+            for (final Edge edge : graph.getEdges()) {
+                final String key = getKey(edge);
+                getIncidentEdges(edge.getOutVertex().getLocalId()).put(key, edge);
+                getIncidentEdges(edge.getInVertex().getLocalId()).put(key, edge);
+            }
+        }
+    }
+
+    /**
+     * Finds the vertices with a property value.
+     *
+     * @param key Property key
+     * @param value Property value
+     * @return Vertices found
+     */
+    private synchronized List<Vertex> findVertices(String key, DataType value) {
+        final List<Vertex> found = new ArrayList<>();
+        for (final Vertex vertex : vertices.values()) {
+            if (hasValue(vertex, key, Collections.singletonList(value))) {
+                found.add(vertex);
+            }
+        }
+
+        return found;
+    }
+
+    /**
+     * Gets the vertices and edges within a number of hops of a vertex.
+     *
+     * @param start Vertex to start from
+     * @param hops Number of hops
+     * @return Subgraph
+     */
+    private synchronized Graph expandSubgraph(Vertex start, int hops) {
+        final Graph subgraph = new Graph();
+        final Map<String, Edge> edges = new LinkedHashMap<>();
+        final Map<String, Integer> reached = new LinkedHashMap<>();
+        final Deque<String> queue = new ArrayDeque<>();
+        reached.put(start.getId().getLocalId(), 0);
+        queue.add(start.getId().getLocalId());
+        while (!queue.isEmpty()) {
+            final String id = queue.poll();
+            subgraph.addToVertices(getVertex(id));
+            final int distance = reached.get(id);
+            if (distance == hops) {
+                continue;
+            }
+
+            for (final Map.Entry<String, Edge> entry : getIncidentEdges(id).entrySet()) {
+                edges.put(entry.getKey(), entry.getValue());
+                final String other = getOtherEnd(entry.getValue(), id);
+                if (!reached.containsKey(other)) {
+                    reached.put(other, distance + 1);
+                    queue.add(other);
+                }
+            }
+        }
+
+        for (final Edge edge : edges.values()) {
+            subgraph.addToEdges(edge);
+        }
+
+        return subgraph;
+    }
+
+    /**
+     * Finds a shortest path along outgoing edges between two vertices.
+     *
+     * @param start Vertex to start from
+     * @param end Vertex to reach
+     * @param maxHops Most edges in the path
+     * @return Path, or an empty graph if there is none within the number of hops
+     */
+    private synchronized Graph findPath(Vertex start, Vertex end, int maxHops) {
+        final String startId = start.getId().getLocalId();
+        final String endId = end.getId().getLocalId();
+        final Map<String, Edge> reachedBy = new HashMap<>();
+        final Map<String, Integer> distances = new HashMap<>();
+        final Deque<String> queue = new ArrayDeque<>();
+        distances.put(startId, 0);
+        queue.add(startId);
+        while (!queue.isEmpty() && !distances.containsKey(endId)) {
+            final String id = queue.poll();
+            final int distance = distances.get(id);
+            if (distance == maxHops) {
+                continue;
+            }
+
+            for (final Edge edge : getIncidentEdges(id).values()) {
+                final String next = edge.getInVertex().getLocalId();
+                if (edge.getOutVertex().getLocalId().equals(id) && !distances.containsKey(next)) {
+                    distances.put(next, distance + 1);
+                    reachedBy.put(next, edge);
+                    queue.add(next);
+                }
+            }
+        }
+
+        final Graph path = new Graph();
+        if (!distances.containsKey(endId)) {
+            return path;
+        }
+
+        for (String id = endId; !id.equals(startId); id = reachedBy.get(id).getOutVertex().getLocalId()) {
+            path.addToVertices(getVertex(id));
+            path.addToEdges(reachedBy.get(id));
+        }
+
+        path.addToVertices(getVertex(startId));
+        return path;
+    }
+
+    /**
+     * Runs a Gremlin query for edges.
+     *
+     * @param start Vertex to start from
+     * @param query Parsed query
+     * @return Edges found
+     * @throws TException if the query is for vertices
+     */
+    private synchronized List<Edge> queryEdges(Vertex start, GremlinQuery query) throws TException {
+        if (!query.isEdges()) {
+            throw new TException("Query for vertices run as a query for edges");
+        }
+
+        final List<DataType> values = convertValues(query);
+        final List<Edge> found = new ArrayList<>();
+        for (final Edge edge : getEdges(start.getId().getLocalId(), query.getDirection())) {
+            if (values == null || edge.isSetProperties() && edge.getProperties().containsKey(query.getKey())
+                    && values.contains(edge.getProperties().get(query.getKey()).getValue())) {
+                found.add(edge);
+            }
+        }
+
+        return getRange(found, query);
+    }
+
+    /**
+     * Runs a Gremlin query for vertices.
+     *
+     * @param start Vertex to start from
+     * @param query Parsed query
+     * @return Vertices found
+     * @throws TException if the query is for edges
+     */
+    private synchronized List<Vertex> queryVertices(Vertex start, GremlinQuery query) throws TException {
+        if (query.isEdges()) {
+            throw new TException("Query for edges run as a query for vertices");
+        }
+
+        final List<DataType> values = convertValues(query);
+        final String startId = start.getId().getLocalId();
+        final Map<String, Vertex> found = new LinkedHashMap<>();
+        for (final Edge edge : getEdges(startId, query.getDirection())) {
+            final Vertex vertex = getVertex(getOtherEnd(edge, startId));
+            if (values == null || hasValue(vertex, query.getKey(), values)) {
+                found.put(vertex.getId().getLocalId(), vertex);
+            }
+        }
+
+        return getRange(new ArrayList<>(found.values()), query);
+    }
+
+    /**
+     * Removes edges.
+     *
+     * @param edges Edges to remove
+     */
+    private synchronized void removeEdges(Collection<Edge> edges) {
+        for (final Edge edge : edges) {
+            final String key = getKey(edge);
+            getIncidentEdges(edge.getOutVertex().getLocalId()).remove(key);
+            getIncidentEdges(edge.getInVertex().getLocalId()).remove(key);
+        }
+    }
+
+    /**
+     * Removes vertices and their edges.
+     *
+     * @param removed Vertices to remove
+     */
+    private synchronized void removeVertices(Collection<Vertex> removed) {
+        for (final Vertex vertex : removed) {
+            final String id = vertex.getId().getLocalId();
+            vertices.remove(id);
+            removeEdges(new ArrayList<>(getIncidentEdges(id).values()));
+            incidentEdges.remove(id);
+        }
+    }
+
+    /**
+     * Gets the edges incident to a vertex in a direction. Must be called holding the lock of this.
+     *
+     * @param id Local ID of the vertex
+     * @param direction Direction of the edges from the vertex
+     * @return Edges
+     */
+    private List<Edge> getEdges(String id, GremlinQuery.Direction direction) {
+        final List<Edge> edges = new ArrayList<>();
+        for (final Edge edge : getIncidentEdges(id).values()) {
+            final boolean out = edge.getOutVertex().getLocalId().equals(id);
+            final boolean in = edge.getInVertex().getLocalId().equals(id);
+            if (direction == GremlinQuery.Direction.BOTH || direction == GremlinQuery.Direction.OUT && out
+                    || direction == GremlinQuery.Direction.IN && in) {
+                edges.add(edge);
+            }
+        }
+
+        return edges;
+    }
+
+    /**
+     * Gets the edges incident to a vertex, creating the map if needed. Must be called holding the lock of this.
+     *
+     * @param id Local ID of the vertex
+     * @return Edges keyed by edge key
+     */
+    private Map<String, Edge> getIncidentEdges(String id) {
+        Map<String, Edge> edges = incidentEdges.get(id);
+        if (edges == null) {
+            edges = new LinkedHashMap<>();
+            incidentEdges.put(id, edges);
+        }
+
+        return edges;
+    }
+
+    /**
+     * Gets a vertex, or a vertex with just an ID if only edges to it were written. Must be called holding the lock of
+     * this.
+     *
+     * @param id Local ID of the vertex
+     * @return Vertex
+     */
+    private Vertex getVertex(String id) {
+        final Vertex vertex = vertices.get(id);
+        return vertex == null ? new Vertex().setId(new ElementId().setLocalId(id)) : vertex;
+    }
+
+    /**
+     * Checks whether a vertex has a property with one of a set of values.
+     *
+     * @param vertex Vertex to check
+     * @param key Property key
+     * @param values Property values
+     * @return true if the vertex has one of the values
+     */
+    private static boolean hasValue(Vertex vertex, String key, List<DataType> values) {
+        if (!vertex.isSetProperties() || !vertex.getProperties().containsKey(key)) {
+            return false;
+        }
+
+        for (final Property property : vertex.getProperties().get(key)) {
+            if (values.contains(property.getValue())) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Gets the vertex at the other end of an edge.
+     *
+     * @param edge Edge
+     * @param id Local ID of the vertex at one end
+     * @return Local ID of the vertex at the other end
+     */
+    private static String getOtherEnd(Edge edge, String id) {
+        final String out = edge.getOutVertex().getLocalId();
+        return out.equals(id) ? edge.getInVertex().getLocalId() : out;
+    }
+
+    /**
+     * Gets the key identifying an edge. Edges have no ID of their own, so they are identified by their content.
+     *
+     * @param edge Edge
+     * @return Edge key
+     */
+    private static String getKey(Edge edge) {
+        return edge.toString();
+    }
+
+    /**
+     * Converts the property values that a query filters on.
+     *
+     * @param query Parsed query
+     * @return Property values, or null if the query does not filter on a property
+     */
+    private static List<DataType> convertValues(GremlinQuery query) {
+        if (query.getKey() == null) {
+            return null;
+        }
+
+        final List<DataType> values = new ArrayList<>();
+        for (final String value : query.getValues()) {
+            values.add(GraphConverter.convertObject(value));
+        }
+
+        return values;
+    }
+
+    /**
+     * Gets the range of results that a query asks for.
+     *
+     * @param results All results
+     * @param query Parsed query
+     * @param <T> Type of the results
+     * @return Results in the range
+     */
+    private static <T> List<T> getRange(List<T> results, GremlinQuery query) {
+        final int from = Math.min(query.getFirst(), results.size());
+        final int to = (int) Math.min((long) query.getLast() + 1, results.size());
+        return new ArrayList<>(results.subList(from, Math.max(from, to)));
+    }
+
+    /**
+     * Parses a Gremlin query.
+     *
+     * @param gremlin Gremlin query
+     * @return Parsed query
+     * @throws TException if the query is not in the supported subset
+     */
+    private static GremlinQuery parse(String gremlin) throws TException {
+        try {
+            return new GremlinQuery(gremlin);
+        } catch (final IllegalArgumentException e) {
+            throw new TException(e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample.testsupport;
+
+import static ezbake.data.image.frack.utilities.IndexingUtils.bytesToHex;
+import static ezbake.data.image.frack.utilities.IndexingUtils.getHash;
+
+import java.io.IOException;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.thrift.TException;
+
+import ezbake.services.indexing.image.thrift.Document;
+import ezbake.services.indexing.image.thrift.ImageIndexerService;
+import ezbake.services.indexing.image.thrift.ImageIndexerServiceConstants;
+import ezbake.services.indexing.image.thrift.IngestedDocumentInfo;
+import ezbake.services.indexing.image.thrift.IngestedImageInfo;
+
+/**
+ * Stand-in for the image indexer that keeps ingested image documents in memory, identified as the generators identify
+ * them, by the hash of the image and its file name. Ingesting and removing images are implemented. Reads, such as
+ * getting images and thumbnails and searching, answer with empty results.
+ */
+public final class InMemoryImageIndexer extends StandInService {
+    /**
+     * Ingested image documents keyed by image ID.
+     */
+    private final Map<String, Document> images = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor.
+     *
+     * @param latency Latency model of the service
+     */
+    public InMemoryImageIndexer(LatencyModel latency) {
+        super(ImageIndexerServiceConstants.SERVICE_NAME, ImageIndexerService.class, latency);
+    }
+
+    /**
+     * Gets the number of images held.
+     *
+     * @return Number of images
+     */
+    public int getImageCount() {
+        return images.size();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected Object call(String method, Object[] args) throws TException {
+        switch (method) {
+            case "ingestDocuments":
+                return ingestDocuments((List<Document>) args[0]);
+            case "removeImages":
+                images.keySet().removeAll((List<String>) args[0]);
+                return null;
+            default:
+                return UNHANDLED;
+        }
+    }
+
+    /**
+     * Stores image documents, reporting the ID of each image.
+     *
+     * @param documents Image documents
+     * @return Info of the ingested documents
+     * @throws TException if an image could not be hashed
+     */
+    private List<IngestedDocumentInfo> ingestDocuments(List<Document> documents) throws TException {
+        final List<IngestedDocumentInfo> ingested = new ArrayList<>(documents.size());
+        for (final Document document : documents) {
+            final String imageId;
+            try {
+                imageId = bytesToHex(getHash(document.getBlob(), document.getFileName()));
+            } catch (IOException | NoSuchAlgorithmException e) {
+                throw new TException("Could not hash image " + document.getFileName(), e);
+            }
+
+            images.put(imageId, document);
+            ingested.add(
+                    new IngestedDocumentInfo().setIngestedImages(
+                            Collections.singletonList(new IngestedImageInfo().setImageId(imageId))));
+        }
+
+        return ingested;
+    }
+}
@@ -0,0 +1,177 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample.testsupport;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.apache.thrift.TBase;
+import org.apache.thrift.TException;
+import org.apache.thrift.TFieldIdEnum;
+import org.codehaus.jettison.json.JSONException;
+import org.codehaus.jettison.json.JSONObject;
+
+import ezbake.data.mongo.thrift.EzMongo;
+import ezbake.data.mongo.thrift.MongoFindParams;
+
+/**
+ * Stand-in for EzMongo that keeps documents in memory. Inserts, finds and removes are implemented, with the queries
+ * that {@link MongoQuery} supports. Find parameters other than the query, such as projections and sorting, are
+ * ignored, and documents are returned in the order they were inserted.
+ */
+public final class InMemoryMongo extends StandInService {
+    /**
+     * Name of the service.
+     */
+    public static final String SERVICE_NAME = "ezmongo";
+
+    private static final String ID_FIELD = "_id";
+
+    /**
+     * Documents by ID, keyed by collection. Guarded by this.
+     */
+    private final Map<String, Map<String, JSONObject>> collections = new HashMap<>();
+
+    /**
+     * Constructor.
+     *
+     * @param latency Latency model of the service
+     */
+    public InMemoryMongo(LatencyModel latency) {
+        super(SERVICE_NAME, EzMongo.class, latency);
+    }
+
+    @Override
+    protected Object call(String method, Object[] args) throws TException {
+        switch (method) {
+            case "insert":
+                return insert((String) args[0], getJson((TBase<?, ?>) args[1]));
+            case "find":
+                return find((String) args[0], ((MongoFindParams) args[1]).getJsonQuery());
+            case "remove":
+                return remove((String) args[0], (String) args[1]);
+            default:
+                return UNHANDLED;
+        }
+    }
+
+    /**
+     * Inserts a document, giving it an ID.
+     *
+     * @param collection Name of the collection
+     * @param json JSON document
+     * @return ID of the document
+     * @throws TException if the document is not valid JSON
+     */
+    private synchronized String insert(String collection, String json) throws TException {
+        final String id = UUID.randomUUID().toString();
+        try {
+            getCollection(collection).put(id, new JSONObject(json).put(ID_FIELD, id));
+        } catch (final JSONException e) {
+            throw new TException("Invalid JSON document", e);
+        }
+
+        return id;
+    }
+
+    /**
+     * Finds the documents matching a query.
+     *
+     * @param collection Name of the collection
+     * @param jsonQuery JSON MongoDB query
+     * @return JSON documents found
+     * @throws TException if the query is invalid or unsupported
+     */
+    private synchronized List<String> find(String collection, String jsonQuery) throws TException {
+        final MongoQuery query = parse(jsonQuery);
+        final List<String> found = new ArrayList<>();
+        for (final JSONObject document : getCollection(collection).values()) {
+            if (query.matches(document)) {
+                found.add(document.toString());
+            }
+        }
+
+        return found;
+    }
+
+    /**
+     * Removes the documents matching a query.
+     *
+     * @param collection Name of the collection
+     * @param jsonQuery JSON MongoDB query
+     * @return Number of documents removed
+     * @throws TException if the query is invalid or unsupported
+     */
+    private synchronized int remove(String collection, String jsonQuery) throws TException {
+        final MongoQuery query = parse(jsonQuery);
+        int removed = 0;
+        for (final Iterator<JSONObject> documents = getCollection(collection).values().iterator();
+                documents.hasNext();) {
+            if (query.matches(documents.next())) {
+                documents.remove();
+                removed++;
+            }
+        }
+
+        return removed;
+    }
+
+    /**
+     * Gets a collection, creating it if needed. Must be called holding the lock of this.
+     *
+     * @param collection Name of the collection
+     * @return Documents by ID
+     */
+    private Map<String, JSONObject> getCollection(String collection) {
+        Map<String, JSONObject> documents = collections.get(collection);
+        if (documents == null) {
+            documents = new LinkedHashMap<>();
+            collections.put(collection, documents);
+        }
+
+        return documents;
+    }
+
+    /**
+     * Parses a query.
+     *
+     * @param jsonQuery JSON MongoDB query
+     * @return Parsed query
+     * @throws TException if the query is invalid or unsupported
+     */
+    private static MongoQuery parse(String jsonQuery) throws TException {
+        try {
+            return new MongoQuery(jsonQuery);
+        } catch (final JSONException | IllegalArgumentException e) {
+            throw new TException("Invalid or unsupported query: " + jsonQuery, e);
+        }
+    }
+
+    /**
+     * Gets the JSON of an EzMongo document, which is its first field.
+     *
+     * @param document EzMongo document
+     * @param <F> Type of the document's field IDs
+     * @return JSON document
+     */
+    private static <F extends TFieldIdEnum> String getJson(TBase<?, F> document) {
+        return (String) document.getFieldValue(document.fieldForId(1));
+    }
+}
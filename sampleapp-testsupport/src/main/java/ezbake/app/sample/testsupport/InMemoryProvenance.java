@@ -0,0 +1,55 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample.testsupport;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.thrift.TException;
+
+import ezbake.services.provenance.thrift.ProvenanceService;
+
+/**
+ * Stand-in for EzProvenance that hands out a new provenance ID for every document added. Nothing else about the
+ * documents is kept, so every other call answers with an empty result.
+ */
+public final class InMemoryProvenance extends StandInService {
+    /**
+     * Name of the service.
+     */
+    public static final String SERVICE_NAME = "EzProvenanceService";
+
+    /**
+     * Last provenance ID handed out.
+     */
+    private final AtomicLong lastId = new AtomicLong();
+
+    /**
+     * Constructor.
+     *
+     * @param latency Latency model of the service
+     */
+    public InMemoryProvenance(LatencyModel latency) {
+        super(SERVICE_NAME, ProvenanceService.class, latency);
+    }
+
+    @Override
+    protected Object call(String method, Object[] args) throws TException {
+        if ("addDocument".equals(method)) {
+            return lastId.incrementAndGet();
+        }
+
+        return UNHANDLED;
+    }
+}
@@ -0,0 +1,137 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample.testsupport;
+
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.thrift.TException;
+
+/**
+ * Latency and failures of a stand-in service. Service times are log-normally distributed, as those of real services
+ * usually are, with a configured median and 99th percentile, so that most calls are fast and a few are much slower.
+ * Calls fail at random with a configured rate.
+ */
+public final class LatencyModel {
+    /**
+     * Configuration property formats, formatted with the service name, for the median and 99th percentile service
+     * times and the error rate. All default to 0, and the 99th percentile defaults to the median.
+     */
+    public static final String MEDIAN_MILLIS_PROP_FORMAT = "sampleapp.standin.%s.latency.median.millis";
+    public static final String P99_MILLIS_PROP_FORMAT = "sampleapp.standin.%s.latency.p99.millis";
+    public static final String ERROR_RATE_PROP_FORMAT = "sampleapp.standin.%s.error.rate";
+
+    /**
+     * Service name under which to configure all services.
+     */
+    public static final String DEFAULT_SERVICE = "default";
+
+    /**
+     * Number of standard deviations of the 99th percentile of a normal distribution from its mean.
+     */
+    private static final double Z_99 = 2.3263;
+
+    private final double medianMillis;
+    private final double sigma;
+    private final double errorRate;
+
+    /**
+     * Constructor.
+     *
+     * @param medianMillis Median service time in milliseconds, or 0 for none
+     * @param p99Millis 99th percentile of the service time in milliseconds, at least the median
+     * @param errorRate Fraction of calls that fail, from 0 to 1
+     */
+    public LatencyModel(double medianMillis, double p99Millis, double errorRate) {
+        if (medianMillis < 0 || p99Millis < medianMillis) {
+            throw new IllegalArgumentException(
+                    String.format("Invalid latency: median %s ms, 99th percentile %s ms", medianMillis, p99Millis));
+        }
+
+        this.medianMillis = medianMillis;
+        sigma = medianMillis == 0 ? 0 : Math.log(p99Millis / medianMillis) / Z_99;
+        this.errorRate = errorRate;
+    }
+
+    /**
+     * Creates the latency model of a service from configuration, falling back to the configuration of
+     * {@value #DEFAULT_SERVICE} for properties not set for the service.
+     *
+     * @param props Configuration properties
+     * @param serviceName Name of the service
+     * @return Latency model
+     */
+    public static LatencyModel fromProperties(Properties props, String serviceName) {
+        final double median = getDouble(props, MEDIAN_MILLIS_PROP_FORMAT, serviceName, 0);
+        final double p99 = getDouble(props, P99_MILLIS_PROP_FORMAT, serviceName, median);
+        return new LatencyModel(median, p99, getDouble(props, ERROR_RATE_PROP_FORMAT, serviceName, 0));
+    }
+
+    /**
+     * Draws a service time.
+     *
+     * @param random Source of randomness
+     * @return Service time in nanoseconds
+     */
+    public long sampleNanos(Random random) {
+        if (medianMillis == 0) {
+            return 0;
+        }
+
+        final double millis = medianMillis * Math.exp(sigma * random.nextGaussian());
+        return (long) (millis * TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    /**
+     * Waits for a drawn service time, then fails the call at the configured rate.
+     *
+     * @param method Name of the method being called, for the error message
+     * @throws TException if the call is chosen to fail, or the thread is interrupted while waiting
+     */
+    public void apply(String method) throws TException {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        final long nanos = sampleNanos(random);
+        if (nanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(nanos);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new TException("Interrupted while simulating latency of " + method, e);
+            }
+        }
+
+        if (errorRate > 0 && random.nextDouble() < errorRate) {
+            throw new TException("Injected error in " + method);
+        }
+    }
+
+    /**
+     * Gets a property of a service, falling back to the property of {@value #DEFAULT_SERVICE}.
+     *
+     * @param props Configuration properties
+     * @param format Property format
+     * @param serviceName Name of the service
+     * @param defaultValue Value if the property is set for neither
+     * @return Property value
+     */
+    private static double getDouble(Properties props, String format, String serviceName, double defaultValue) {
+        final String value = props.getProperty(
+                String.format(format, serviceName), props.getProperty(String.format(format, DEFAULT_SERVICE)));
+
+        return value == null ? defaultValue : Double.parseDouble(value);
+    }
+}
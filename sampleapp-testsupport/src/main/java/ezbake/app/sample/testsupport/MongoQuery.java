@@ -0,0 +1,183 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample.testsupport;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.codehaus.jettison.json.JSONArray;
+import org.codehaus.jettison.json.JSONException;
+import org.codehaus.jettison.json.JSONObject;
+
+/**
+ * The subset of MongoDB queries that the sample app makes: conditions on fields, which may be dotted paths into
+ * embedded documents, that all must hold. A condition is a value that the field must equal, or a document of
+ * {@value #IN}, {@value #NIN}, {@value #EQ}, {@value #NE} and {@value #EXISTS} operators. Values are compared by their
+ * string form, so that numbers of different types compare equal.
+ */
+final class MongoQuery {
+    private static final String IN = "$in";
+    private static final String NIN = "$nin";
+    private static final String EQ = "$eq";
+    private static final String NE = "$ne";
+    private static final String EXISTS = "$exists";
+
+    private final List<Condition> conditions = new ArrayList<>();
+
+    /**
+     * Constructor.
+     *
+     * @param json JSON MongoDB query
+     * @throws JSONException if the query is not a JSON document
+     * @throws IllegalArgumentException if the query uses an unsupported operator
+     */
+    MongoQuery(String json) throws JSONException {
+        final JSONObject query = new JSONObject(json);
+        final Iterator<?> fields = query.keys();
+        while (fields.hasNext()) {
+            final String field = (String) fields.next();
+            if (field.startsWith("$")) {
+                throw new IllegalArgumentException("Unsupported query operator " + field);
+            }
+
+            final Object condition = query.get(field);
+            if (condition instanceof JSONObject) {
+                final JSONObject operators = (JSONObject) condition;
+                final Iterator<?> names = operators.keys();
+                while (names.hasNext()) {
+                    final String operator = (String) names.next();
+                    conditions.add(new Condition(field, operator, operators.get(operator)));
+                }
+            } else {
+                conditions.add(new Condition(field, EQ, condition));
+            }
+        }
+    }
+
+    /**
+     * Checks whether a document matches the query.
+     *
+     * @param document Document to check
+     * @return true if every condition holds for the document
+     */
+    boolean matches(JSONObject document) {
+        for (final Condition condition : conditions) {
+            if (!condition.holds(document)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Gets the value of a field of a document.
+     *
+     * @param document Document
+     * @param path Name of the field, or dotted path to a field of an embedded document
+     * @return Value of the field, or null if it is missing
+     */
+    private static Object getValue(JSONObject document, String path) {
+        Object value = document;
+        for (final String name : path.split("\\.")) {
+            if (!(value instanceof JSONObject)) {
+                return null;
+            }
+
+            value = ((JSONObject) value).opt(name);
+        }
+
+        return value;
+    }
+
+    /**
+     * Checks whether a value is one of a list of values.
+     *
+     * @param value Value to find
+     * @param values Values to look in
+     * @return true if the value is in the list
+     */
+    private static boolean contains(JSONArray values, Object value) {
+        for (int i = 0; i < values.length(); i++) {
+            if (String.valueOf(values.opt(i)).equals(String.valueOf(value))) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * A condition on one field.
+     */
+    private static final class Condition {
+        private final String path;
+        private final String operator;
+        private final Object operand;
+
+        /**
+         * Constructor.
+         *
+         * @param path Name of or dotted path to the field
+         * @param operator Operator to apply
+         * @param operand Operand of the operator
+         * @throws IllegalArgumentException if the operator is unsupported or its operand is of the wrong type
+         */
+        Condition(String path, String operator, Object operand) {
+            switch (operator) {
+                case IN:
+                case NIN:
+                    if (!(operand instanceof JSONArray)) {
+                        throw new IllegalArgumentException(operator + " needs an array of values");
+                    }
+
+                    break;
+                case EQ:
+                case NE:
+                case EXISTS:
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unsupported query operator " + operator);
+            }
+
+            this.path = path;
+            this.operator = operator;
+            this.operand = operand;
+        }
+
+        /**
+         * Checks whether the condition holds for a document.
+         *
+         * @param document Document to check
+         * @return true if the condition holds
+         */
+        boolean holds(JSONObject document) {
+            final Object value = getValue(document, path);
+            switch (operator) {
+                case IN:
+                    return value != null && contains((JSONArray) operand, value);
+                case NIN:
+                    return value == null || !contains((JSONArray) operand, value);
+                case NE:
+                    return !String.valueOf(operand).equals(String.valueOf(value));
+                case EXISTS:
+                    return (value != null) == Boolean.parseBoolean(String.valueOf(operand));
+                default:
+                    return value != null && String.valueOf(operand).equals(String.valueOf(value));
+            }
+        }
+    }
+}
@@ -0,0 +1,236 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample.testsupport;
+
+import java.io.Closeable;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+import org.apache.thrift.TException;
+import org.apache.thrift.protocol.TBinaryProtocol;
+import org.apache.thrift.server.TServer;
+import org.apache.thrift.server.TThreadPoolServer;
+import org.apache.thrift.transport.TServerSocket;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ezbake.app.sample.util.SampleAppConstants;
+import ezbake.app.sample.util.ServiceClientsFactory;
+import ezbake.services.graph.thrift.EzGraphServiceConstants;
+import ezbake.services.indexing.image.thrift.ImageIndexerServiceConstants;
+
+/**
+ * Serves the in-memory stand-ins for EzMongo, EzGraph, EzProvenance and the image indexer over Thrift sockets, so that
+ * the pipeline, the web services and the purge can run end to end on one machine. Each service listens on its own
+ * port, configured with {@value #PORT_PROP_FORMAT} formatted with the service name, or on an ephemeral port by
+ * default, and serves as many connections at once as {@value #THREADS_PROP_FORMAT} allows (64 by default). Service
+ * times and errors are set per service with the properties of {@link LatencyModel}.
+ * <p/>
+ * {@link #getClientProperties()} gives the properties that connect the pipeline to the stand-ins through
+ * {@link StandInServiceClients}. The web services and the purge get their clients from the Thrift client pool, which
+ * finds services through EzBake service discovery, so there the printed endpoints must be registered with discovery.
+ */
+public final class StandInServers implements Closeable {
+    /**
+     * Configuration property of the host to listen on and connect to.
+     */
+    public static final String HOST_PROP = "sampleapp.standin.host";
+
+    /**
+     * Configuration property formats, formatted with the service name, for each service's port, 0 for an ephemeral
+     * port, and the most connections it serves at once.
+     */
+    public static final String PORT_PROP_FORMAT = "sampleapp.standin.%s.port";
+    public static final String THREADS_PROP_FORMAT = "sampleapp.standin.%s.threads";
+
+    /**
+     * Host used when {@value #HOST_PROP} is not set.
+     */
+    static final String DEFAULT_HOST = "localhost";
+
+    private static final Logger logger = LoggerFactory.getLogger(StandInServers.class);
+
+    private static final int DEFAULT_THREADS = 64;
+
+    private final String host;
+    private final List<StandInService> services;
+
+    /**
+     * Servers and their ports keyed by service name. The graph stand-in's port is also listed under the name the web
+     * services use for EzGraph, if that differs from the pipeline's.
+     */
+    private final Map<String, TServer> servers = new LinkedHashMap<>();
+    private final Map<String, Integer> ports = new LinkedHashMap<>();
+
+    /**
+     * Constructor, starting a server for each service.
+     *
+     * @param props Configuration properties
+     * @throws TException if a server could not be started
+     */
+    public StandInServers(Properties props) throws TException {
+        host = props.getProperty(HOST_PROP, DEFAULT_HOST);
+        services = Arrays.asList(
+                new InMemoryMongo(LatencyModel.fromProperties(props, InMemoryMongo.SERVICE_NAME)),
+                new InMemoryGraph(LatencyModel.fromProperties(props, SampleAppConstants.GRAPH_SERVICE_NAME)),
+                new InMemoryProvenance(LatencyModel.fromProperties(props, InMemoryProvenance.SERVICE_NAME)),
+                new InMemoryImageIndexer(
+                        LatencyModel.fromProperties(props, ImageIndexerServiceConstants.SERVICE_NAME)));
+
+        try {
+            for (final StandInService service : services) {
+                start(service, props);
+            }
+        } catch (final TException e) {
+            close();
+            throw e;
+        }
+
+        ports.put(EzGraphServiceConstants.SERVICE_NAME, ports.get(SampleAppConstants.GRAPH_SERVICE_NAME));
+    }
+
+    /**
+     * Starts the stand-in servers and prints the properties that connect the pipeline to them, then serves until the
+     * process is stopped.
+     *
+     * @param args Optional path of a configuration properties file
+     * @throws Exception if the servers could not be started
+     */
+    public static void main(String[] args) throws Exception {
+        final Properties props = new Properties();
+        if (args.length > 0) {
+            try (InputStream in = Files.newInputStream(Paths.get(args[0]))) {
+                props.load(in);
+            }
+        }
+
+        props.putAll(System.getProperties());
+        final StandInServers servers = new StandInServers(props);
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                logger.info("Stand-in service calls: {}", servers.getCalls());
+                servers.close();
+            }
+        }));
+
+        servers.getClientProperties().store(System.out, "Pipeline properties for the stand-in services");
+        Thread.currentThread().join();
+    }
+
+    /**
+     * Gets the port of a service.
+     *
+     * @param serviceName Name of the service
+     * @return Port the service listens on
+     * @throws IllegalArgumentException if there is no stand-in for the service
+     */
+    public int getPort(String serviceName) {
+        final Integer port = ports.get(serviceName);
+        if (port == null) {
+            throw new IllegalArgumentException("No stand-in for service " + serviceName);
+        }
+
+        return port;
+    }
+
+    /**
+     * Gets the properties that connect the pipeline to the stand-ins.
+     *
+     * @return Configuration properties to add to the pipeline's
+     */
+    public Properties getClientProperties() {
+        final Properties props = new Properties();
+        props.setProperty(ServiceClientsFactory.CLASS_PROP, StandInServiceClients.class.getName());
+        props.setProperty(HOST_PROP, host);
+        for (final Map.Entry<String, Integer> port : ports.entrySet()) {
+            props.setProperty(String.format(PORT_PROP_FORMAT, port.getKey()), String.valueOf(port.getValue()));
+        }
+
+        return props;
+    }
+
+    /**
+     * Gets the number of calls made to each service.
+     *
+     * @return Calls keyed by service name
+     */
+    public Map<String, Long> getCalls() {
+        final Map<String, Long> calls = new TreeMap<>();
+        for (final StandInService service : services) {
+            calls.put(service.getServiceName(), service.getCalls());
+        }
+
+        return calls;
+    }
+
+    @Override
+    public void close() {
+        for (final TServer server : servers.values()) {
+            server.stop();
+        }
+
+        servers.clear();
+    }
+
+    /**
+     * Starts serving a stand-in on a background thread.
+     *
+     * @param service Stand-in to serve
+     * @param props Configuration properties
+     * @throws TException if the server socket could not be opened or the service has no generated processor
+     */
+    private void start(StandInService service, Properties props) throws TException {
+        final String serviceName = service.getServiceName();
+        final int port = Integer.parseInt(props.getProperty(String.format(PORT_PROP_FORMAT, serviceName), "0"));
+        final int threads = Integer.parseInt(
+                props.getProperty(String.format(THREADS_PROP_FORMAT, serviceName), String.valueOf(DEFAULT_THREADS)));
+
+        final TServerSocket socket = new TServerSocket(new InetSocketAddress(host, port));
+        final TServer server;
+        try {
+            server = new TThreadPoolServer(
+                    new TThreadPoolServer.Args(socket)
+                            .processor(service.createProcessor())
+                            .protocolFactory(new TBinaryProtocol.Factory())
+                            .minWorkerThreads(1)
+                            .maxWorkerThreads(threads));
+        } catch (final ReflectiveOperationException e) {
+            socket.close();
+            throw new TException("Could not create processor for stand-in " + serviceName, e);
+        }
+
+        final Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                server.serve();
+            }
+        }, "standin-" + serviceName);
+
+        thread.setDaemon(true);
+        thread.start();
+        servers.put(serviceName, server);
+        ports.put(serviceName, socket.getServerSocket().getLocalPort());
+        logger.info("Serving stand-in {} on {}:{}", serviceName, host, ports.get(serviceName));
+    }
+}
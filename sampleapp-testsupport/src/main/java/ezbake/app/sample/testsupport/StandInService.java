@@ -0,0 +1,184 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample.testsupport;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.thrift.TBase;
+import org.apache.thrift.TException;
+import org.apache.thrift.TProcessor;
+
+/**
+ * In-memory stand-in for an EzBake Thrift service. Subclasses implement the methods that the sample app uses, and the
+ * service's other methods accept every call and answer with an empty result, so that the generated processor can be
+ * served for the whole service interface without implementing it. Every call first waits for a service time drawn
+ * from the service's {@link LatencyModel}, which may also fail it.
+ */
+public abstract class StandInService implements InvocationHandler {
+    /**
+     * Result of {@link #call(String, Object[])} for methods that the stand-in does not implement.
+     */
+    protected static final Object UNHANDLED = new Object();
+
+    private final String serviceName;
+    private final Class<?> serviceClass;
+    private final LatencyModel latency;
+    private final AtomicLong calls = new AtomicLong();
+
+    /**
+     * Constructor.
+     *
+     * @param serviceName Name of the service, under which clients look it up
+     * @param serviceClass Generated class of the service, enclosing its Iface and Processor
+     * @param latency Latency model of the service
+     */
+    protected StandInService(String serviceName, Class<?> serviceClass, LatencyModel latency) {
+        this.serviceName = serviceName;
+        this.serviceClass = serviceClass;
+        this.latency = latency;
+    }
+
+    /**
+     * Getter for the name of the service.
+     *
+     * @return Service name
+     */
+    public final String getServiceName() {
+        return serviceName;
+    }
+
+    /**
+     * Gets the number of calls made to the service.
+     *
+     * @return Calls
+     */
+    public final long getCalls() {
+        return calls.get();
+    }
+
+    /**
+     * Creates the generated processor of the service, calling this stand-in.
+     *
+     * @return Processor
+     * @throws ReflectiveOperationException if the service class does not enclose a generated Iface and Processor
+     */
+    public final TProcessor createProcessor() throws ReflectiveOperationException {
+        final Class<?> ifaceClass = Class.forName(serviceClass.getName() + "$Iface");
+        final Object iface =
+                Proxy.newProxyInstance(ifaceClass.getClassLoader(), new Class<?>[] {ifaceClass}, this);
+
+        return (TProcessor) Class.forName(serviceClass.getName() + "$Processor").getConstructor(ifaceClass)
+                .newInstance(iface);
+    }
+
+    @Override
+    public final Object invoke(Object proxy, Method method, Object[] args) throws TException {
+        if (method.getDeclaringClass() == Object.class) {
+            return invokeObjectMethod(proxy, method, args);
+        }
+
+        calls.incrementAndGet();
+        latency.apply(serviceName + '.' + method.getName());
+
+        final Object result = call(method.getName(), args == null ? new Object[0] : args);
+        if (result != UNHANDLED) {
+            return result;
+        }
+
+        try {
+            return getDefaultValue(method.getReturnType());
+        } catch (final ReflectiveOperationException e) {
+            throw new TException("Could not create result of " + method.getName(), e);
+        }
+    }
+
+    /**
+     * Serves a call to the service.
+     *
+     * @param method Name of the method called
+     * @param args Arguments of the call
+     * @return Result of the call, null for void methods, or {@link #UNHANDLED} to answer with an empty result
+     * @throws TException to fail the call
+     */
+    protected abstract Object call(String method, Object[] args) throws TException;
+
+    /**
+     * Implements the methods of {@link Object} for the service proxy.
+     *
+     * @param proxy Service proxy
+     * @param method Method of {@link Object}
+     * @param args Arguments of the method
+     * @return Result of the method
+     */
+    private Object invokeObjectMethod(Object proxy, Method method, Object[] args) {
+        switch (method.getName()) {
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            default:
+                return serviceName;
+        }
+    }
+
+    /**
+     * Returns a value of a type that a client can read back: an empty collection, string ID, zero or empty struct.
+     * Booleans are true, so that pings succeed.
+     *
+     * @param type Return type of a service method
+     * @return Default value, or null for void
+     * @throws ReflectiveOperationException if a struct could not be created
+     */
+    private static Object getDefaultValue(Class<?> type) throws ReflectiveOperationException {
+        if (type == Void.TYPE) {
+            return null;
+        } else if (type == Boolean.TYPE) {
+            return Boolean.TRUE;
+        } else if (type == Long.TYPE) {
+            return 0L;
+        } else if (type == Integer.TYPE) {
+            return 0;
+        } else if (type == Double.TYPE) {
+            return 0.0;
+        } else if (type == String.class) {
+            return UUID.randomUUID().toString();
+        } else if (type == List.class) {
+            return new ArrayList<>();
+        } else if (type == Set.class) {
+            return new HashSet<>();
+        } else if (type == Map.class) {
+            return new HashMap<>();
+        } else if (type == ByteBuffer.class) {
+            return ByteBuffer.allocate(0);
+        } else if (TBase.class.isAssignableFrom(type)) {
+            return type.newInstance();
+        } else if (type.isEnum()) {
+            return type.getEnumConstants()[0];
+        }
+
+        return null;
+    }
+}
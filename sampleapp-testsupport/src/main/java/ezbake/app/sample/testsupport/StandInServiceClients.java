@@ -0,0 +1,151 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample.testsupport;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.thrift.TException;
+import org.apache.thrift.TServiceClient;
+import org.apache.thrift.protocol.TBinaryProtocol;
+import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.transport.TSocket;
+
+import ezbake.app.sample.util.ServiceClients;
+import ezbake.base.thrift.EzSecurityToken;
+
+/**
+ * Clients for the stand-in services served by {@link StandInServers}, connected over sockets to the host and ports
+ * given by {@value StandInServers#HOST_PROP} and {@value StandInServers#PORT_PROP_FORMAT}. Connections are kept open
+ * and reused between calls. The stand-ins do not check security tokens, so the application token is empty.
+ */
+public final class StandInServiceClients implements ServiceClients {
+    private final Properties props;
+
+    /**
+     * Idle clients keyed by service name, and the service name of each client that is out.
+     */
+    private final Map<String, Deque<TServiceClient>> idleClients = new HashMap<>();
+    private final Map<TServiceClient, String> activeClients = new IdentityHashMap<>();
+
+    /**
+     * Constructor.
+     *
+     * @param props Configuration properties
+     */
+    public StandInServiceClients(Properties props) {
+        this.props = props;
+    }
+
+    @Override
+    public synchronized <T extends TServiceClient> T getClient(String serviceName, Class<T> clientClass)
+            throws TException {
+        final Deque<TServiceClient> idle = idleClients.get(serviceName);
+        TServiceClient client = idle == null ? null : idle.poll();
+        if (client != null && !clientClass.isInstance(client)) {
+            closeClient(client);
+            client = null;
+        }
+
+        if (client == null) {
+            client = createClient(serviceName, clientClass);
+        }
+
+        activeClients.put(client, serviceName);
+        return clientClass.cast(client);
+    }
+
+    @Override
+    public synchronized void returnToPool(TServiceClient client) {
+        final String serviceName = activeClients.remove(client);
+        if (serviceName == null) {
+            return;
+        }
+
+        if (!client.getInputProtocol().getTransport().isOpen()) {
+            return;
+        }
+
+        Deque<TServiceClient> idle = idleClients.get(serviceName);
+        if (idle == null) {
+            idle = new ArrayDeque<>();
+            idleClients.put(serviceName, idle);
+        }
+
+        idle.push(client);
+    }
+
+    @Override
+    public EzSecurityToken fetchAppToken() {
+        return new EzSecurityToken();
+    }
+
+    @Override
+    public synchronized void close() {
+        final List<TServiceClient> clients = new ArrayList<>(activeClients.keySet());
+        for (final Deque<TServiceClient> idle : idleClients.values()) {
+            clients.addAll(idle);
+        }
+
+        for (final TServiceClient client : clients) {
+            closeClient(client);
+        }
+
+        activeClients.clear();
+        idleClients.clear();
+    }
+
+    /**
+     * Creates a client connected to the stand-in for a service.
+     *
+     * @param serviceName Name of the service
+     * @param clientClass Class of the generated client
+     * @param <T> Type of the client
+     * @return Client for the stand-in
+     * @throws TException if the service has no configured port or the client could not connect
+     */
+    private <T extends TServiceClient> T createClient(String serviceName, Class<T> clientClass) throws TException {
+        final String port = props.getProperty(String.format(StandInServers.PORT_PROP_FORMAT, serviceName));
+        if (port == null) {
+            throw new TException(String.format("No stand-in configured for service '%s'", serviceName));
+        }
+
+        final String host = props.getProperty(StandInServers.HOST_PROP, StandInServers.DEFAULT_HOST);
+        final TSocket socket = new TSocket(host, Integer.parseInt(port));
+
+        socket.open();
+        try {
+            return clientClass.getConstructor(TProtocol.class).newInstance(new TBinaryProtocol(socket));
+        } catch (final ReflectiveOperationException e) {
+            socket.close();
+            throw new TException(String.format("Unable to create stand-in client for service '%s'", serviceName), e);
+        }
+    }
+
+    /**
+     * Closes the connection of a client.
+     *
+     * @param client Client to close
+     */
+    private static void closeClient(TServiceClient client) {
+        client.getInputProtocol().getTransport().close();
+    }
+}
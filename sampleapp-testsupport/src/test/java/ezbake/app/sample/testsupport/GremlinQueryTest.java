@@ -0,0 +1,83 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample.testsupport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link GremlinQuery}.
+ */
+public final class GremlinQueryTest {
+    private static final int LAST = 99;
+
+    /**
+     * Tests parsing a step with no filter or range.
+     */
+    @Test
+    public void testStep() {
+        final GremlinQuery query = new GremlinQuery("_().out");
+
+        assertEquals(GremlinQuery.Direction.OUT, query.getDirection());
+        assertFalse(query.isEdges());
+        assertNull(query.getKey());
+        assertEquals(0, query.getFirst());
+        assertEquals(Integer.MAX_VALUE, query.getLast());
+    }
+
+    /**
+     * Tests parsing a step to edges filtered on a set of values, with a range.
+     */
+    @Test
+    public void testHasInWithRange() {
+        final GremlinQuery query = new GremlinQuery(" _().bothE.has('tweetId', T.in, ['1', 'it\\'s'])[0..99] ");
+
+        assertEquals(GremlinQuery.Direction.BOTH, query.getDirection());
+        assertTrue(query.isEdges());
+        assertEquals("tweetId", query.getKey());
+        assertEquals(new LinkedHashSet<>(Arrays.asList("1", "it's")), query.getValues());
+        assertEquals(0, query.getFirst());
+        assertEquals(LAST, query.getLast());
+    }
+
+    /**
+     * Tests parsing a step to vertices filtered on one value.
+     */
+    @Test
+    public void testHasEqual() {
+        final GremlinQuery query = new GremlinQuery("_().in.has('screenName','bob')");
+
+        assertEquals(GremlinQuery.Direction.IN, query.getDirection());
+        assertFalse(query.isEdges());
+        assertEquals("screenName", query.getKey());
+        assertEquals(Collections.singleton("bob"), query.getValues());
+    }
+
+    /**
+     * Tests that queries outside the supported subset are rejected.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnsupported() {
+        new GremlinQuery("_().out.out");
+    }
+}
@@ -0,0 +1,68 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample.testsupport;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.codehaus.jettison.json.JSONObject;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link MongoQuery}.
+ */
+public final class MongoQueryTest {
+    private static final String DOCUMENT =
+            "{\"id\": 100, \"author\": {\"screenName\": \"bob\"}, \"provenanceId\": 7}";
+
+    /**
+     * Tests matching on field values, including dotted paths and numbers of different types.
+     *
+     * @throws Exception if an error occurred
+     */
+    @Test
+    public void testEquality() throws Exception {
+        final JSONObject document = new JSONObject(DOCUMENT);
+
+        assertTrue(new MongoQuery("{\"author.screenName\": \"bob\", \"id\": \"100\"}").matches(document));
+        assertFalse(new MongoQuery("{\"author.screenName\": \"alice\"}").matches(document));
+        assertTrue(new MongoQuery("{}").matches(document));
+    }
+
+    /**
+     * Tests matching with operators.
+     *
+     * @throws Exception if an error occurred
+     */
+    @Test
+    public void testOperators() throws Exception {
+        final JSONObject document = new JSONObject(DOCUMENT);
+
+        assertTrue(new MongoQuery("{\"provenanceId\": {\"$in\": [5, 7]}}").matches(document));
+        assertFalse(new MongoQuery("{\"provenanceId\": {\"$nin\": [5, 7]}}").matches(document));
+        assertTrue(new MongoQuery("{\"id\": {\"$ne\": 101, \"$exists\": true}}").matches(document));
+        assertFalse(new MongoQuery("{\"retweet\": {\"$exists\": true}}").matches(document));
+    }
+
+    /**
+     * Tests that unsupported operators are rejected.
+     *
+     * @throws Exception if an error occurred
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnsupportedOperator() throws Exception {
+        new MongoQuery("{\"id\": {\"$gt\": 1}}");
+    }
+}
@@ -61,6 +61,7 @@ public class Tweet implements org.apache.thrift.TBase<Tweet, Tweet._Fields>, jav
   private static final org.apache.thrift.protocol.TField RETWEETED_FIELD_DESC = new org.apache.thrift.protocol.TField("retweeted", org.apache.thrift.protocol.TType.STRUCT, (short)6);
   private static final org.apache.thrift.protocol.TField REPLIED_TO_FIELD_DESC = new org.apache.thrift.protocol.TField("repliedTo", org.apache.thrift.protocol.TType.STRUCT, (short)7);
   private static final org.apache.thrift.protocol.TField PROVENANCE_ID_FIELD_DESC = new org.apache.thrift.protocol.TField("provenanceId", org.apache.thrift.protocol.TType.I64, (short)8);
+  private static final org.apache.thrift.protocol.TField TRACE_CONTEXT_FIELD_DESC = new org.apache.thrift.protocol.TField("traceContext", org.apache.thrift.protocol.TType.STRING, (short)9);
 
   private static final Map<Class<? extends IScheme>, SchemeFactory> schemes = new HashMap<Class<? extends IScheme>, SchemeFactory>();
   static {
@@ -100,6 +101,10 @@ public class Tweet implements org.apache.thrift.TBase<Tweet, Tweet._Fields>, jav
    * Provenance ID for the tweet
    */
   public long provenanceId; // required
+  /**
+   * Trace context of the tweet, propagated from the generator through the workers when tracing is enabled
+   */
+  public String traceContext; // optional
 
   /** The set of fields this struct contains, along with convenience methods for finding and manipulating them. */
   public enum _Fields implements org.apache.thrift.TFieldIdEnum {
@@ -134,7 +139,11 @@ public class Tweet implements org.apache.thrift.TBase<Tweet, Tweet._Fields>, jav
     /**
      * Provenance ID for the tweet
      */
-    PROVENANCE_ID((short)8, "provenanceId");
+    PROVENANCE_ID((short)8, "provenanceId"),
+    /**
+     * Trace context of the tweet, propagated from the generator through the workers when tracing is enabled
+     */
+    TRACE_CONTEXT((short)9, "traceContext");
 
     private static final Map<String, _Fields> byName = new HashMap<String, _Fields>();
 
@@ -165,6 +174,8 @@ public class Tweet implements org.apache.thrift.TBase<Tweet, Tweet._Fields>, jav
           return REPLIED_TO;
         case 8: // PROVENANCE_ID
           return PROVENANCE_ID;
+        case 9: // TRACE_CONTEXT
+          return TRACE_CONTEXT;
         default:
           return null;
       }
@@ -207,7 +218,7 @@ public class Tweet implements org.apache.thrift.TBase<Tweet, Tweet._Fields>, jav
   // isset id assignments
   private static final int __PROVENANCEID_ISSET_ID = 0;
   private byte __isset_bitfield = 0;
-  private _Fields optionals[] = {_Fields.RETWEETED,_Fields.REPLIED_TO};
+  private _Fields optionals[] = {_Fields.RETWEETED,_Fields.REPLIED_TO,_Fields.TRACE_CONTEXT};
   public static final Map<_Fields, org.apache.thrift.meta_data.FieldMetaData> metaDataMap;
   static {
     Map<_Fields, org.apache.thrift.meta_data.FieldMetaData> tmpMap = new EnumMap<_Fields, org.apache.thrift.meta_data.FieldMetaData>(_Fields.class);
@@ -230,6 +241,8 @@ public class Tweet implements org.apache.thrift.TBase<Tweet, Tweet._Fields>, jav
         new org.apache.thrift.meta_data.StructMetaData(org.apache.thrift.protocol.TType.STRUCT, ReferencedTweet.class)));
     tmpMap.put(_Fields.PROVENANCE_ID, new org.apache.thrift.meta_data.FieldMetaData("provenanceId", org.apache.thrift.TFieldRequirementType.REQUIRED, 
         new org.apache.thrift.meta_data.FieldValueMetaData(org.apache.thrift.protocol.TType.I64)));
+    tmpMap.put(_Fields.TRACE_CONTEXT, new org.apache.thrift.meta_data.FieldMetaData("traceContext", org.apache.thrift.TFieldRequirementType.OPTIONAL, 
+        new org.apache.thrift.meta_data.FieldValueMetaData(org.apache.thrift.protocol.TType.STRING)));
     metaDataMap = Collections.unmodifiableMap(tmpMap);
     org.apache.thrift.meta_data.FieldMetaData.addStructMetaDataMap(Tweet.class, metaDataMap);
   }
@@ -298,6 +311,9 @@ public class Tweet implements org.apache.thrift.TBase<Tweet, Tweet._Fields>, jav
       this.repliedTo = new ReferencedTweet(other.repliedTo);
     }
     this.provenanceId = other.provenanceId;
+    if (other.isSetTraceContext()) {
+      this.traceContext = other.traceContext;
+    }
   }
 
   public Tweet deepCopy() {
@@ -315,6 +331,7 @@ public class Tweet implements org.apache.thrift.TBase<Tweet, Tweet._Fields>, jav
     this.repliedTo = null;
     setProvenanceIdIsSet(false);
     this.provenanceId = 0;
+    this.traceContext = null;
   }
 
   /**
@@ -582,6 +599,36 @@ public class Tweet implements org.apache.thrift.TBase<Tweet, Tweet._Fields>, jav
     __isset_bitfield = EncodingUtils.setBit(__isset_bitfield, __PROVENANCEID_ISSET_ID, value);
   }
 
+  /**
+   * Trace context of the tweet, propagated from the generator through the workers when tracing is enabled
+   */
+  public String getTraceContext() {
+    return this.traceContext;
+  }
+
+  /**
+   * Trace context of the tweet, propagated from the generator through the workers when tracing is enabled
+   */
+  public Tweet setTraceContext(String traceContext) {
+    this.traceContext = traceContext;
+    return this;
+  }
+
+  public void unsetTraceContext() {
+    this.traceContext = null;
+  }
+
+  /** Returns true if field traceContext is set (has been assigned a value) and false otherwise */
+  public boolean isSetTraceContext() {
+    return this.traceContext != null;
+  }
+
+  public void setTraceContextIsSet(boolean value) {
+    if (!value) {
+      this.traceContext = null;
+    }
+  }
+
   public void setFieldValue(_Fields field, Object value) {
     switch (field) {
     case RAW_JSON:
@@ -648,6 +695,14 @@ public class Tweet implements org.apache.thrift.TBase<Tweet, Tweet._Fields>, jav
       }
       break;
 
+    case TRACE_CONTEXT:
+      if (value == null) {
+        unsetTraceContext();
+      } else {
+        setTraceContext((String)value);
+      }
+      break;
+
     }
   }
 
@@ -677,6 +732,9 @@ public class Tweet implements org.apache.thrift.TBase<Tweet, Tweet._Fields>, jav
     case PROVENANCE_ID:
       return Long.valueOf(getProvenanceId());
 
+    case TRACE_CONTEXT:
+      return getTraceContext();
+
     }
     throw new IllegalStateException();
   }
@@ -704,6 +762,8 @@ public class Tweet implements org.apache.thrift.TBase<Tweet, Tweet._Fields>, jav
       return isSetRepliedTo();
     case PROVENANCE_ID:
       return isSetProvenanceId();
+    case TRACE_CONTEXT:
+      return isSetTraceContext();
     }
     throw new IllegalStateException();
   }
@@ -793,6 +853,15 @@ public class Tweet implements org.apache.thrift.TBase<Tweet, Tweet._Fields>, jav
         return false;
     }
 
+    boolean this_present_traceContext = true && this.isSetTraceContext();
+    boolean that_present_traceContext = true && that.isSetTraceContext();
+    if (this_present_traceContext || that_present_traceContext) {
+      if (!(this_present_traceContext && that_present_traceContext))
+        return false;
+      if (!this.traceContext.equals(that.traceContext))
+        return false;
+    }
+
     return true;
   }
 
@@ -840,6 +909,11 @@ public class Tweet implements org.apache.thrift.TBase<Tweet, Tweet._Fields>, jav
     if (present_provenanceId)
       builder.append(provenanceId);
 
+    boolean present_traceContext = true && (isSetTraceContext());
+    builder.append(present_traceContext);
+    if (present_traceContext)
+      builder.append(traceContext);
+
     return builder.toHashCode();
   }
 
@@ -931,6 +1005,16 @@ public class Tweet implements org.apache.thrift.TBase<Tweet, Tweet._Fields>, jav
         return lastComparison;
       }
     }
+    lastComparison = Boolean.valueOf(isSetTraceContext()).compareTo(other.isSetTraceContext());
+    if (lastComparison != 0) {
+      return lastComparison;
+    }
+    if (isSetTraceContext()) {
+      lastComparison = org.apache.thrift.TBaseHelper.compareTo(this.traceContext, other.traceContext);
+      if (lastComparison != 0) {
+        return lastComparison;
+      }
+    }
     return 0;
   }
 
@@ -1014,6 +1098,16 @@ public class Tweet implements org.apache.thrift.TBase<Tweet, Tweet._Fields>, jav
     sb.append("provenanceId:");
     sb.append(this.provenanceId);
     first = false;
+    if (isSetTraceContext()) {
+      if (!first) sb.append(", ");
+      sb.append("traceContext:");
+      if (this.traceContext == null) {
+        sb.append("null");
+      } else {
+        sb.append(this.traceContext);
+      }
+      first = false;
+    }
     sb.append(")");
     return sb.toString();
   }
@@ -1175,6 +1269,14 @@ public class Tweet implements org.apache.thrift.TBase<Tweet, Tweet._Fields>, jav
               org.apache.thrift.protocol.TProtocolUtil.skip(iprot, schemeField.type);
             }
             break;
+          case 9: // TRACE_CONTEXT
+            if (schemeField.type == org.apache.thrift.protocol.TType.STRING) {
+              struct.traceContext = iprot.readString();
+              struct.setTraceContextIsSet(true);
+            } else { 
+              org.apache.thrift.protocol.TProtocolUtil.skip(iprot, schemeField.type);
+            }
+            break;
           default:
             org.apache.thrift.protocol.TProtocolUtil.skip(iprot, schemeField.type);
         }
@@ -1250,6 +1352,13 @@ public class Tweet implements org.apache.thrift.TBase<Tweet, Tweet._Fields>, jav
       oprot.writeFieldBegin(PROVENANCE_ID_FIELD_DESC);
       oprot.writeI64(struct.provenanceId);
       oprot.writeFieldEnd();
+      if (struct.traceContext != null) {
+        if (struct.isSetTraceContext()) {
+          oprot.writeFieldBegin(TRACE_CONTEXT_FIELD_DESC);
+          oprot.writeString(struct.traceContext);
+          oprot.writeFieldEnd();
+        }
+      }
       oprot.writeFieldStop();
       oprot.writeStructEnd();
     }
@@ -1293,13 +1402,19 @@ public class Tweet implements org.apache.thrift.TBase<Tweet, Tweet._Fields>, jav
       if (struct.isSetRepliedTo()) {
         optionals.set(1);
       }
-      oprot.writeBitSet(optionals, 2);
+      if (struct.isSetTraceContext()) {
+        optionals.set(2);
+      }
+      oprot.writeBitSet(optionals, 3);
       if (struct.isSetRetweeted()) {
         struct.retweeted.write(oprot);
       }
       if (struct.isSetRepliedTo()) {
         struct.repliedTo.write(oprot);
       }
+      if (struct.isSetTraceContext()) {
+        oprot.writeString(struct.traceContext);
+      }
     }
 
     @Override
@@ -1340,7 +1455,7 @@ public class Tweet implements org.apache.thrift.TBase<Tweet, Tweet._Fields>, jav
       struct.setMentionedUsersIsSet(true);
       struct.provenanceId = iprot.readI64();
       struct.setProvenanceIdIsSet(true);
-      BitSet incoming = iprot.readBitSet(2);
+      BitSet incoming = iprot.readBitSet(3);
       if (incoming.get(0)) {
         struct.retweeted = new ReferencedTweet();
         struct.retweeted.read(iprot);
@@ -1351,6 +1466,10 @@ public class Tweet implements org.apache.thrift.TBase<Tweet, Tweet._Fields>, jav
         struct.repliedTo.read(iprot);
         struct.setRepliedToIsSet(true);
       }
+      if (incoming.get(2)) {
+        struct.traceContext = iprot.readString();
+        struct.setTraceContextIsSet(true);
+      }
     }
   }
 
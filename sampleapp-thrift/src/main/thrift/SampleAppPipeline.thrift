@@ -96,4 +96,9 @@ struct Tweet {
      * Provenance ID for the tweet
      */
     8: required i64 provenanceId;
+
+    /**
+     * Trace context of the tweet, propagated from the generator through the workers when tracing is enabled
+     */
+    9: optional string traceContext;
 }
@@ -0,0 +1,121 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample.trace;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Appends spans to a local file, one line per span, from a background thread so that callers never wait on disk.
+ * Spans are dropped when the background thread falls behind. Several processes, such as the pipeline's workers, may
+ * write to their own files, which {@link TraceBreakdown} reads together.
+ */
+public final class FileSpanCollector implements SpanCollector {
+    private static final Logger logger = LoggerFactory.getLogger(FileSpanCollector.class);
+
+    private static final long FLUSH_MILLIS = 1000;
+
+    private final Path file;
+    private final BlockingQueue<Span> queue;
+    private final AtomicLong dropped = new AtomicLong();
+    private final Thread writer;
+    private volatile boolean closed;
+
+    /**
+     * Constructor. Starts the background thread.
+     *
+     * @param file File to append the spans to
+     * @param capacity Number of spans that may wait to be written
+     */
+    public FileSpanCollector(Path file, int capacity) {
+        this.file = file;
+        queue = new ArrayBlockingQueue<>(capacity);
+        writer = new Thread(
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        write();
+                    }
+                }, "span-writer");
+
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @Override
+    public void collect(Span span) {
+        if (!queue.offer(span)) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    /**
+     * Gets the number of spans dropped because the background thread fell behind.
+     *
+     * @return Number of dropped spans
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Writes the remaining spans and stops the background thread.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            writer.join();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Writes spans as they are collected, flushing whenever the queue is empty, until closed.
+     */
+    private void write() {
+        try (BufferedWriter out = Files.newBufferedWriter(
+                file, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            while (true) {
+                final Span span = queue.poll(FLUSH_MILLIS, TimeUnit.MILLISECONDS);
+                if (span == null) {
+                    out.flush();
+                    if (closed) {
+                        return;
+                    }
+                } else {
+                    out.write(span.toLine());
+                    out.newLine();
+                }
+            }
+        } catch (final IOException e) {
+            logger.error("Could not write spans to {}, tracing to the file has stopped", file, e);
+        } catch (final InterruptedException e) {
+            logger.warn("Span writer was interrupted, tracing to {} has stopped", file);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample.trace;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Keeps the most recent spans in memory, overwriting the oldest without locking, for a {@link TraceBreakdown} of
+ * recent traffic.
+ */
+public final class InMemorySpanCollector implements SpanCollector {
+    private final AtomicReferenceArray<Span> spans;
+    private final AtomicLong next = new AtomicLong();
+
+    /**
+     * Constructor.
+     *
+     * @param capacity Number of spans to keep
+     */
+    public InMemorySpanCollector(int capacity) {
+        spans = new AtomicReferenceArray<>(capacity);
+    }
+
+    @Override
+    public void collect(Span span) {
+        spans.set((int) (next.getAndIncrement() % spans.length()), span);
+    }
+
+    /**
+     * Gets the spans currently kept.
+     *
+     * @return Recent spans, in no particular order
+     */
+    public List<Span> getSpans() {
+        final List<Span> recent = new ArrayList<>(spans.length());
+        for (int i = 0; i < spans.length(); i++) {
+            final Span span = spans.get(i);
+            if (span != null) {
+                recent.add(span);
+            }
+        }
+
+        return recent;
+    }
+
+    @Override
+    public void close() {
+    }
+}
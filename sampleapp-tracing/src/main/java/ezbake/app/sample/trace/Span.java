@@ -0,0 +1,257 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample.trace;
+
+import java.util.regex.Pattern;
+
+/**
+ * Timed operation within a trace, such as a worker processing a Tweet or a Thrift call. Spans are started by a
+ * {@link Tracer} and passed to its collector when closed, and are meant to be used in try-with-resources blocks.
+ * Spans of operations that are not traced are no-ops.
+ */
+public final class Span implements AutoCloseable {
+    /**
+     * Span returned for operations that are not traced.
+     */
+    static final Span NOOP = new Span(null, null, 0, 0, 0);
+
+    private static final char FIELD_SEPARATOR = '\t';
+    private static final Pattern FIELD_SPLITTER = Pattern.compile("\t");
+    private static final int FIELD_COUNT = 7;
+    private static final int HEX_RADIX = 16;
+    private static final int START_FIELD = 3;
+    private static final int DURATION_FIELD = 4;
+    private static final int ERROR_FIELD = 5;
+    private static final int NAME_FIELD = 6;
+
+    private final Tracer tracer;
+    private final String name;
+    private final long traceId;
+    private final long spanId;
+    private final long parentSpanId;
+    private final long startMillis;
+    private final long startNanos;
+    private long durationNanos;
+    private boolean error;
+    private boolean ended;
+
+    /**
+     * Span that was current on the thread before this one, to restore when this span ends.
+     */
+    private Span previous;
+
+    /**
+     * Constructor for a span being started.
+     *
+     * @param tracer Tracer that started the span, or null for a no-op span
+     * @param name Name of the operation
+     * @param traceId ID of the trace
+     * @param spanId ID of the span
+     * @param parentSpanId ID of the parent span, or 0 for the root of the trace
+     */
+    Span(Tracer tracer, String name, long traceId, long spanId, long parentSpanId) {
+        this.tracer = tracer;
+        this.name = name;
+        this.traceId = traceId;
+        this.spanId = spanId;
+        this.parentSpanId = parentSpanId;
+        startMillis = System.currentTimeMillis();
+        startNanos = System.nanoTime();
+    }
+
+    /**
+     * Constructor for a span that has ended, as read back from a span file.
+     *
+     * @param name Name of the operation
+     * @param traceId ID of the trace
+     * @param spanId ID of the span
+     * @param parentSpanId ID of the parent span, or 0 for the root of the trace
+     * @param startMillis Wall clock time at which the span started
+     * @param durationNanos Duration of the span
+     * @param error Whether the operation failed
+     */
+    Span(String name, long traceId, long spanId, long parentSpanId, long startMillis, long durationNanos,
+            boolean error) {
+        tracer = null;
+        this.name = name;
+        this.traceId = traceId;
+        this.spanId = spanId;
+        this.parentSpanId = parentSpanId;
+        this.startMillis = startMillis;
+        startNanos = 0;
+        this.durationNanos = durationNanos;
+        this.error = error;
+        ended = true;
+    }
+
+    /**
+     * Parses a span written by {@link #toLine()}.
+     *
+     * @param line Line of a span file
+     * @return Span
+     * @throws IllegalArgumentException if the line is not a span
+     */
+    static Span fromLine(String line) {
+        final String[] fields = FIELD_SPLITTER.split(line, FIELD_COUNT);
+        if (fields.length != FIELD_COUNT) {
+            throw new IllegalArgumentException("Not a span: " + line);
+        }
+
+        return new Span(
+                fields[NAME_FIELD], Long.parseLong(fields[0], HEX_RADIX), Long.parseLong(fields[1], HEX_RADIX),
+                Long.parseLong(fields[2], HEX_RADIX), Long.parseLong(fields[START_FIELD]),
+                Long.parseLong(fields[DURATION_FIELD]), Boolean.parseBoolean(fields[ERROR_FIELD]));
+    }
+
+    /**
+     * Gets the context of the span, to start child spans from in another thread or process.
+     *
+     * @return Trace context, or null if the operation is not traced
+     */
+    public TraceContext getContext() {
+        return tracer == null ? null : new TraceContext(traceId, spanId);
+    }
+
+    /**
+     * Checks whether the operation is traced.
+     *
+     * @return true if the span will be collected when closed, false for a no-op span
+     */
+    public boolean isRecording() {
+        return tracer != null;
+    }
+
+    /**
+     * Marks the operation as failed.
+     */
+    public synchronized void setError() {
+        error = true;
+    }
+
+    /**
+     * Ends the span and passes it to the collector. Closing a span more than once, or a no-op span, has no effect.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (tracer == null || ended) {
+                return;
+            }
+
+            ended = true;
+            durationNanos = System.nanoTime() - startNanos;
+        }
+
+        tracer.end(this);
+    }
+
+    /**
+     * Getter for the name of the operation.
+     *
+     * @return Span name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Getter for the ID of the trace.
+     *
+     * @return Trace ID
+     */
+    public long getTraceId() {
+        return traceId;
+    }
+
+    /**
+     * Getter for the ID of the span.
+     *
+     * @return Span ID
+     */
+    public long getSpanId() {
+        return spanId;
+    }
+
+    /**
+     * Getter for the ID of the parent span.
+     *
+     * @return Parent span ID, or 0 for the root of the trace
+     */
+    public long getParentSpanId() {
+        return parentSpanId;
+    }
+
+    /**
+     * Getter for the wall clock time at which the span started, used to line up spans from different processes.
+     *
+     * @return Start time in milliseconds since the epoch
+     */
+    public long getStartMillis() {
+        return startMillis;
+    }
+
+    /**
+     * Getter for the duration of the span.
+     *
+     * @return Duration in nanoseconds, or 0 if the span has not ended
+     */
+    public synchronized long getDurationNanos() {
+        return durationNanos;
+    }
+
+    /**
+     * Getter for whether the operation failed.
+     *
+     * @return true if the operation failed
+     */
+    public synchronized boolean isError() {
+        return error;
+    }
+
+    /**
+     * Formats the span as a line of a span file, with tab-separated trace ID, span ID, parent span ID, start time,
+     * duration, error flag and name.
+     *
+     * @return Line without a line terminator
+     */
+    String toLine() {
+        return new StringBuilder()
+                .append(Long.toHexString(traceId)).append(FIELD_SEPARATOR)
+                .append(Long.toHexString(spanId)).append(FIELD_SEPARATOR)
+                .append(Long.toHexString(parentSpanId)).append(FIELD_SEPARATOR)
+                .append(startMillis).append(FIELD_SEPARATOR)
+                .append(getDurationNanos()).append(FIELD_SEPARATOR)
+                .append(isError()).append(FIELD_SEPARATOR)
+                .append(name).toString();
+    }
+
+    /**
+     * Getter for the span that was current before this one was started.
+     *
+     * @return Previous span, or null if there was none
+     */
+    Span getPrevious() {
+        return previous;
+    }
+
+    /**
+     * Setter for the span that was current before this one was started.
+     *
+     * @param previous Previous span, or null if there was none
+     */
+    void setPrevious(Span previous) {
+        this.previous = previous;
+    }
+}
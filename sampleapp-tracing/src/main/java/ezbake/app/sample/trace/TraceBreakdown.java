@@ -0,0 +1,281 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample.trace;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.HdrHistogram.Histogram;
+
+/**
+ * Latency breakdown of a set of spans: percentiles of each kind of span, and the slowest traces as trees of spans
+ * with the offset of each span from the start of its trace, which shows where the tail latency comes from. Spans from
+ * several processes are lined up by their wall clock start times.
+ */
+public final class TraceBreakdown {
+    private static final long HIGHEST_TRACKABLE_NANOS = TimeUnit.HOURS.toNanos(1);
+    private static final int SIGNIFICANT_DIGITS = 3;
+    private static final double NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final double MEDIAN = 50.0;
+    private static final double PERCENTILE_99 = 99.0;
+    private static final double PERCENTILE_999 = 99.9;
+    private static final int DEFAULT_SLOWEST_TRACES = 10;
+    private static final String INDENT = "  ";
+
+    private final Map<String, Histogram> latencies = new TreeMap<>();
+    private final Map<String, Long> errors = new HashMap<>();
+    private final Map<Long, List<Span>> traces = new HashMap<>();
+
+    /**
+     * Constructor.
+     *
+     * @param spans Spans to break down
+     */
+    public TraceBreakdown(Collection<Span> spans) {
+        for (final Span span : spans) {
+            Histogram histogram = latencies.get(span.getName());
+            if (histogram == null) {
+                histogram = new Histogram(HIGHEST_TRACKABLE_NANOS, SIGNIFICANT_DIGITS);
+                latencies.put(span.getName(), histogram);
+            }
+
+            histogram.recordValue(Math.min(span.getDurationNanos(), HIGHEST_TRACKABLE_NANOS));
+            if (span.isError()) {
+                final Long count = errors.get(span.getName());
+                errors.put(span.getName(), count == null ? 1 : count + 1);
+            }
+
+            List<Span> trace = traces.get(span.getTraceId());
+            if (trace == null) {
+                trace = new ArrayList<>();
+                traces.put(span.getTraceId(), trace);
+            }
+
+            trace.add(span);
+        }
+    }
+
+    /**
+     * Reads the spans in files written by {@link FileSpanCollector}s.
+     *
+     * @param files Span files
+     * @return Spans
+     * @throws IOException if a file could not be read
+     */
+    public static List<Span> readSpans(Collection<String> files) throws IOException {
+        final List<Span> spans = new ArrayList<>();
+        for (final String file : files) {
+            try (BufferedReader in = Files.newBufferedReader(Paths.get(file), StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    if (!line.isEmpty()) {
+                        spans.add(Span.fromLine(line));
+                    }
+                }
+            }
+        }
+
+        return spans;
+    }
+
+    /**
+     * Prints the latency breakdown of span files.
+     *
+     * @param args Span files written by {@link FileSpanCollector}s
+     * @throws IOException if a file could not be read
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: TraceBreakdown <span file>...");
+            return;
+        }
+
+        final List<String> files = new ArrayList<>();
+        Collections.addAll(files, args);
+        System.out.print(new TraceBreakdown(readSpans(files)).format(DEFAULT_SLOWEST_TRACES));
+    }
+
+    /**
+     * Formats the breakdown as text.
+     *
+     * @param slowestTraces Number of slowest traces to show
+     * @return Breakdown
+     */
+    public String format(int slowestTraces) {
+        final StringBuilder out = new StringBuilder();
+        out.append(
+                String.format(
+                        "%-40s %10s %8s %10s %10s %10s %10s %10s%n", "span", "count", "errors", "mean ms", "p50 ms",
+                        "p99 ms", "p99.9 ms", "max ms"));
+
+        for (final Map.Entry<String, Histogram> entry : latencies.entrySet()) {
+            final Histogram histogram = entry.getValue();
+            final Long errorCount = errors.get(entry.getKey());
+            out.append(
+                    String.format(
+                            "%-40s %10d %8d %10.3f %10.3f %10.3f %10.3f %10.3f%n", entry.getKey(),
+                            histogram.getTotalCount(), errorCount == null ? 0 : errorCount,
+                            histogram.getMean() / NANOS_PER_MILLI,
+                            histogram.getValueAtPercentile(MEDIAN) / NANOS_PER_MILLI,
+                            histogram.getValueAtPercentile(PERCENTILE_99) / NANOS_PER_MILLI,
+                            histogram.getValueAtPercentile(PERCENTILE_999) / NANOS_PER_MILLI,
+                            histogram.getMaxValue() / NANOS_PER_MILLI));
+        }
+
+        final List<List<Span>> sorted = new ArrayList<>(traces.values());
+        Collections.sort(
+                sorted, new Comparator<List<Span>>() {
+                    @Override
+                    public int compare(List<Span> first, List<Span> second) {
+                        return Long.compare(getTraceNanos(second), getTraceNanos(first));
+                    }
+                });
+
+        for (final List<Span> trace : sorted.subList(0, Math.min(slowestTraces, sorted.size()))) {
+            out.append(
+                    String.format(
+                            "%ntrace %s: %.3f ms%n", Long.toHexString(trace.get(0).getTraceId()),
+                            getTraceNanos(trace) / NANOS_PER_MILLI));
+
+            formatTree(trace, out);
+        }
+
+        return out.toString();
+    }
+
+    /**
+     * Gets the time from the start of the first span of a trace to the end of the last.
+     *
+     * @param trace Spans of the trace
+     * @return Duration of the trace in nanoseconds
+     */
+    private static long getTraceNanos(List<Span> trace) {
+        final long startMillis = getStartMillis(trace);
+        long endNanos = 0;
+        for (final Span span : trace) {
+            endNanos = Math.max(
+                    endNanos,
+                    TimeUnit.MILLISECONDS.toNanos(span.getStartMillis() - startMillis) + span.getDurationNanos());
+        }
+
+        return endNanos;
+    }
+
+    /**
+     * Gets the time at which the first span of a trace started.
+     *
+     * @param trace Spans of the trace
+     * @return Start time in milliseconds since the epoch
+     */
+    private static long getStartMillis(List<Span> trace) {
+        long start = Long.MAX_VALUE;
+        for (final Span span : trace) {
+            start = Math.min(start, span.getStartMillis());
+        }
+
+        return start;
+    }
+
+    /**
+     * Formats the spans of a trace as a tree. Spans whose parents were not collected are shown as roots.
+     *
+     * @param trace Spans of the trace
+     * @param out Builder to append to
+     */
+    private static void formatTree(List<Span> trace, StringBuilder out) {
+        final Set<Long> spanIds = new HashSet<>();
+        for (final Span span : trace) {
+            spanIds.add(span.getSpanId());
+        }
+
+        final Map<Long, List<Span>> children = new HashMap<>();
+        final List<Span> roots = new ArrayList<>();
+        for (final Span span : trace) {
+            if (spanIds.contains(span.getParentSpanId())) {
+                List<Span> siblings = children.get(span.getParentSpanId());
+                if (siblings == null) {
+                    siblings = new ArrayList<>();
+                    children.put(span.getParentSpanId(), siblings);
+                }
+
+                siblings.add(span);
+            } else {
+                roots.add(span);
+            }
+        }
+
+        final long start = getStartMillis(trace);
+        for (final Span root : sortByStart(roots)) {
+            formatSpan(root, children, start, INDENT, out);
+        }
+    }
+
+    /**
+     * Formats a span and its descendants.
+     *
+     * @param span Span to format
+     * @param children Children of each span, keyed by parent span ID
+     * @param traceStartMillis Time at which the trace started
+     * @param indent Indentation of the span
+     * @param out Builder to append to
+     */
+    private static void formatSpan(
+            Span span, Map<Long, List<Span>> children, long traceStartMillis, String indent, StringBuilder out) {
+        out.append(
+                String.format(
+                        "%s+%d ms %s %.3f ms%s%n", indent, span.getStartMillis() - traceStartMillis, span.getName(),
+                        span.getDurationNanos() / NANOS_PER_MILLI, span.isError() ? " (error)" : ""));
+
+        final List<Span> spanChildren = children.get(span.getSpanId());
+        if (spanChildren != null) {
+            for (final Span child : sortByStart(spanChildren)) {
+                formatSpan(child, children, traceStartMillis, indent + INDENT, out);
+            }
+        }
+    }
+
+    /**
+     * Sorts spans by start time.
+     *
+     * @param spans Spans to sort
+     * @return Sorted spans
+     */
+    private static List<Span> sortByStart(List<Span> spans) {
+        final List<Span> sorted = new ArrayList<>(spans);
+        Collections.sort(
+                sorted, new Comparator<Span>() {
+                    @Override
+                    public int compare(Span first, Span second) {
+                        return Long.compare(first.getStartMillis(), second.getStartMillis());
+                    }
+                });
+
+        return sorted;
+    }
+}
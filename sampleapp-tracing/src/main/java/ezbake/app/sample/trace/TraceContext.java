@@ -0,0 +1,114 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample.trace;
+
+/**
+ * Identifies a span within a trace, so that spans started in another thread or process can be attached to it. The
+ * context is encoded as a string to travel with the data it describes, such as the Tweet in the pipeline.
+ */
+public final class TraceContext {
+    private static final char SEPARATOR = ':';
+    private static final int HEX_RADIX = 16;
+
+    private final long traceId;
+    private final long spanId;
+
+    /**
+     * Constructor.
+     *
+     * @param traceId ID of the trace
+     * @param spanId ID of the span within the trace
+     */
+    public TraceContext(long traceId, long spanId) {
+        this.traceId = traceId;
+        this.spanId = spanId;
+    }
+
+    /**
+     * Decodes a context encoded by {@link #encode()}.
+     *
+     * @param encoded Encoded context, may be null
+     * @return Decoded context, or null if there was no context or it was invalid
+     */
+    public static TraceContext decode(String encoded) {
+        if (encoded == null) {
+            return null;
+        }
+
+        final int separator = encoded.indexOf(SEPARATOR);
+        if (separator < 0) {
+            return null;
+        }
+
+        try {
+            return new TraceContext(
+                    Long.parseLong(encoded.substring(0, separator), HEX_RADIX),
+                    Long.parseLong(encoded.substring(separator + 1), HEX_RADIX));
+        } catch (final NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Encodes the context as a string.
+     *
+     * @return Encoded context
+     */
+    public String encode() {
+        return Long.toHexString(traceId) + SEPARATOR + Long.toHexString(spanId);
+    }
+
+    /**
+     * Getter for the ID of the trace.
+     *
+     * @return Trace ID
+     */
+    public long getTraceId() {
+        return traceId;
+    }
+
+    /**
+     * Getter for the ID of the span.
+     *
+     * @return Span ID
+     */
+    public long getSpanId() {
+        return spanId;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+
+        if (!(obj instanceof TraceContext)) {
+            return false;
+        }
+
+        final TraceContext other = (TraceContext) obj;
+        return traceId == other.traceId && spanId == other.spanId;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.valueOf(traceId).hashCode() * 31 + Long.valueOf(spanId).hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return encode();
+    }
+}
@@ -0,0 +1,267 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample.trace;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Paths;
+import java.util.Properties;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Starts traces and the spans within them. A trace is started for a sample of operations, such as Tweets generated or
+ * web service requests, and spans are started as children of the span current on the thread, or of a
+ * {@link TraceContext} received from another thread or process. Operations that are not sampled get no-op spans, so
+ * instrumented code does not need to check whether it is traced.
+ *
+ * <p>Ended spans go to a local file, if configured with {@value #FILE_PROP}, or otherwise are kept in memory, and
+ * {@link TraceBreakdown} shows where the time of the slowest traces went.</p>
+ */
+public final class Tracer implements Closeable {
+    /**
+     * Configuration property for the fraction of operations to trace, from 0 to 1. Defaults to 0, which disables
+     * tracing.
+     */
+    public static final String SAMPLE_RATE_PROP = "sampleapp.trace.sample.rate";
+
+    /**
+     * Configuration property for the file to append spans to. "%p" is replaced with the ID of the process, so that
+     * processes sharing a configuration write separate files. If not set, spans are kept in memory.
+     */
+    public static final String FILE_PROP = "sampleapp.trace.file";
+
+    /**
+     * Configuration property for the number of spans waiting to be written to the file, or kept in memory.
+     */
+    public static final String CAPACITY_PROP = "sampleapp.trace.capacity";
+
+    private static final int DEFAULT_CAPACITY = 10000;
+    private static final String PROCESS_PLACEHOLDER = "%p";
+
+    /**
+     * Tracer for this JVM, created by the first call to {@link #get(Properties)}.
+     */
+    private static Tracer instance;
+
+    private final double sampleRate;
+    private final SpanCollector collector;
+    private final ThreadLocal<Span> current = new ThreadLocal<>();
+
+    /**
+     * Constructor.
+     *
+     * @param sampleRate Fraction of operations to trace
+     * @param collector Collector of the ended spans
+     */
+    public Tracer(double sampleRate, SpanCollector collector) {
+        this.sampleRate = sampleRate;
+        this.collector = collector;
+    }
+
+    /**
+     * Gets the tracer for this JVM. The first call creates it from the given configuration, and later calls return the
+     * same tracer.
+     *
+     * @param props Configuration properties
+     * @return Tracer
+     */
+    public static synchronized Tracer get(Properties props) {
+        if (instance == null) {
+            final double sampleRate = Double.parseDouble(props.getProperty(SAMPLE_RATE_PROP, "0"));
+            final int capacity =
+                    Integer.parseInt(props.getProperty(CAPACITY_PROP, String.valueOf(DEFAULT_CAPACITY)));
+
+            final String file = props.getProperty(FILE_PROP);
+            final SpanCollector collector;
+            if (file == null) {
+                collector = new InMemorySpanCollector(capacity);
+            } else {
+                final String processName = ManagementFactory.getRuntimeMXBean().getName();
+                collector = new FileSpanCollector(
+                        Paths.get(file.replace(PROCESS_PLACEHOLDER, processName.replaceAll("@.*", ""))), capacity);
+            }
+
+            instance = new Tracer(sampleRate, collector);
+        }
+
+        return instance;
+    }
+
+    /**
+     * Getter for the collector of the ended spans.
+     *
+     * @return Span collector
+     */
+    public SpanCollector getCollector() {
+        return collector;
+    }
+
+    /**
+     * Starts a new trace for a sample of operations, and makes its root span current on this thread.
+     *
+     * @param name Name of the operation
+     * @return Root span, or a no-op span if the operation is not sampled
+     */
+    public Span startTrace(String name) {
+        if (sampleRate <= 0 || sampleRate < 1 && ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+            return Span.NOOP;
+        }
+
+        return start(name, newId(), 0);
+    }
+
+    /**
+     * Starts a span as a child of the span current on this thread, and makes it current.
+     *
+     * @param name Name of the operation
+     * @return Child span, or a no-op span if there is no current span
+     */
+    public Span startSpan(String name) {
+        final Span parent = current.get();
+        if (parent == null) {
+            return Span.NOOP;
+        }
+
+        return start(name, parent.getTraceId(), parent.getSpanId());
+    }
+
+    /**
+     * Starts a span as a child of a span in another thread or process, and makes it current.
+     *
+     * @param name Name of the operation
+     * @param parent Encoded context of the parent span, may be null
+     * @return Child span, or a no-op span if there is no valid parent context
+     */
+    public Span startSpan(String name, String parent) {
+        final TraceContext context = TraceContext.decode(parent);
+        if (context == null) {
+            return Span.NOOP;
+        }
+
+        return start(name, context.getTraceId(), context.getSpanId());
+    }
+
+    /**
+     * Gets the context of the span current on this thread.
+     *
+     * @return Trace context, or null if no span is current
+     */
+    public TraceContext currentContext() {
+        final Span span = current.get();
+        return span == null ? null : span.getContext();
+    }
+
+    /**
+     * Removes the current span from this thread without ending it, so that it can be attached to another thread with
+     * {@link #attach(Span)}.
+     *
+     * @return Detached span, or a no-op span if no span was current
+     */
+    public Span detach() {
+        final Span span = current.get();
+        if (span == null) {
+            return Span.NOOP;
+        }
+
+        setCurrent(span.getPrevious());
+        span.setPrevious(null);
+        return span;
+    }
+
+    /**
+     * Makes a span detached from another thread current on this thread.
+     *
+     * @param span Span to attach
+     */
+    public void attach(Span span) {
+        if (span.isRecording()) {
+            span.setPrevious(current.get());
+            current.set(span);
+        }
+    }
+
+    /**
+     * Forgets any spans current on this thread without ending them, for threads that are reused for unrelated work.
+     */
+    public void reset() {
+        current.remove();
+    }
+
+    /**
+     * Closes the span collector.
+     *
+     * @throws IOException if the collector could not be closed
+     */
+    @Override
+    public void close() throws IOException {
+        collector.close();
+    }
+
+    /**
+     * Collects a span that has ended, and restores the span that was current before it if it is current.
+     *
+     * @param span Span that has ended
+     */
+    void end(Span span) {
+        if (current.get() == span) {
+            setCurrent(span.getPrevious());
+        }
+
+        collector.collect(span);
+    }
+
+    /**
+     * Starts a span and makes it current.
+     *
+     * @param name Name of the operation
+     * @param traceId ID of the trace
+     * @param parentSpanId ID of the parent span, or 0 for a root span
+     * @return Span
+     */
+    private Span start(String name, long traceId, long parentSpanId) {
+        final Span span = new Span(this, name, traceId, newId(), parentSpanId);
+        span.setPrevious(current.get());
+        current.set(span);
+        return span;
+    }
+
+    /**
+     * Sets or clears the current span.
+     *
+     * @param span Span to make current, or null for none
+     */
+    private void setCurrent(Span span) {
+        if (span == null) {
+            current.remove();
+        } else {
+            current.set(span);
+        }
+    }
+
+    /**
+     * Generates a positive, non-zero ID for a trace or span.
+     *
+     * @return ID
+     */
+    private static long newId() {
+        long id;
+        do {
+            id = ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE;
+        } while (id == 0);
+
+        return id;
+    }
+}
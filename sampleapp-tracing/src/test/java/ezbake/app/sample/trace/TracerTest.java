@@ -0,0 +1,126 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample.trace;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit tests for {@link Tracer}, {@link FileSpanCollector} and {@link TraceBreakdown}.
+ */
+public final class TracerTest {
+    private static final int CAPACITY = 16;
+    private static final String ROOT = "root";
+    private static final String CHILD = "child";
+    private static final String REMOTE = "remote";
+
+    /**
+     * Start of a line of the breakdown for a span one level below the root.
+     */
+    private static final String INDENT_CHILD = "    +";
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    /**
+     * Tests that child spans are linked to the current span and to remote contexts, and that the current span is
+     * restored when a child ends.
+     */
+    @Test
+    public void testPropagation() {
+        final InMemorySpanCollector collector = new InMemorySpanCollector(CAPACITY);
+        final Tracer tracer = new Tracer(1, collector);
+
+        final String context;
+        try (Span root = tracer.startTrace(ROOT)) {
+            try (Span child = tracer.startSpan(CHILD)) {
+                assertEquals(child.getContext(), tracer.currentContext());
+            }
+
+            assertEquals(root.getContext(), tracer.currentContext());
+            context = root.getContext().encode();
+        }
+
+        assertNull(tracer.currentContext());
+        try (Span remote = tracer.startSpan(REMOTE, context)) {
+            remote.setError();
+        }
+
+        final List<Span> spans = collector.getSpans();
+        assertEquals(3, spans.size());
+
+        final TraceContext rootContext = TraceContext.decode(context);
+        for (final Span span : spans) {
+            assertEquals(rootContext.getTraceId(), span.getTraceId());
+            if (ROOT.equals(span.getName())) {
+                assertEquals(0, span.getParentSpanId());
+            } else {
+                assertEquals(rootContext.getSpanId(), span.getParentSpanId());
+                assertEquals(REMOTE.equals(span.getName()), span.isError());
+            }
+        }
+    }
+
+    /**
+     * Tests that operations that are not sampled get no-op spans and start no children.
+     */
+    @Test
+    public void testNotSampled() {
+        final InMemorySpanCollector collector = new InMemorySpanCollector(CAPACITY);
+        final Tracer tracer = new Tracer(0, collector);
+
+        try (Span root = tracer.startTrace(ROOT)) {
+            assertFalse(root.isRecording());
+            assertNull(root.getContext());
+            assertFalse(tracer.startSpan(CHILD).isRecording());
+        }
+
+        assertFalse(tracer.startSpan(REMOTE, null).isRecording());
+        assertFalse(tracer.startSpan(REMOTE, "invalid").isRecording());
+        assertTrue(collector.getSpans().isEmpty());
+    }
+
+    /**
+     * Tests that spans written to a file are read back into a breakdown.
+     *
+     * @throws Exception if an error occurred
+     */
+    @Test
+    public void testFileBreakdown() throws Exception {
+        final File file = tempFolder.newFile();
+        try (Tracer tracer = new Tracer(1, new FileSpanCollector(file.toPath(), CAPACITY))) {
+            try (Span root = tracer.startTrace(ROOT)) {
+                tracer.startSpan(CHILD).close();
+            }
+        }
+
+        final List<Span> spans = TraceBreakdown.readSpans(Collections.singletonList(file.getPath()));
+        assertEquals(2, spans.size());
+
+        final String breakdown = new TraceBreakdown(spans).format(1);
+        assertTrue(breakdown.contains(ROOT));
+        assertTrue(breakdown.contains(INDENT_CHILD));
+    }
+}
@@ -0,0 +1,175 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample.rest;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ezbake.app.sample.rest.pool.ClientLeasePool;
+import ezbake.app.sample.rest.security.TokenManager;
+import ezbake.app.sample.trace.Tracer;
+import ezbake.common.properties.EzProperties;
+import ezbake.configuration.EzConfiguration;
+import ezbake.configuration.EzConfigurationLoaderException;
+import ezbake.thrift.ThriftClientPool;
+
+/**
+ * State shared by all SampleApp resources: the EzBake configuration, loaded once, the Thrift client pool, the
+ * security token manager and the tracer. The context is created when the web application starts and closed when it
+ * stops, see {@link SampleAppContextListener}. Resources register the pools and background threads they own with
+ * {@link #register(Closeable)} so that those are stopped with the context.
+ */
+public final class SampleAppContext implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(SampleAppContext.class);
+
+    /**
+     * Context of the running application. Guarded by the class lock.
+     */
+    private static SampleAppContext instance;
+
+    private final EzProperties props;
+    private final ClientLeasePool clients;
+    private final TokenManager tokens;
+    private final Tracer tracer;
+
+    /**
+     * Resources closed with the context, most recently registered first. Guarded by itself.
+     */
+    private final Deque<Closeable> resources = new ArrayDeque<>();
+
+    /**
+     * Constructor.
+     *
+     * @param props EzBake configuration properties
+     */
+    private SampleAppContext(EzProperties props) {
+        this.props = props;
+        clients = new ClientLeasePool("sampleapp", new ThriftClientPool(props), props);
+        tokens = new TokenManager(props);
+        tracer = Tracer.get(props);
+    }
+
+    /**
+     * Gets the context of the running application, creating it on first use.
+     *
+     * @return The application context
+     */
+    public static synchronized SampleAppContext get() {
+        if (instance == null) {
+            try {
+                instance = new SampleAppContext(new EzProperties(new EzConfiguration().getProperties(), true));
+            } catch (final EzConfigurationLoaderException e) {
+                final String errMsg = "Could not read EzBake configuration";
+                logger.error(errMsg, e);
+                throw new WebApplicationException(
+                        e, Response.status(Response.Status.INTERNAL_SERVER_ERROR).entity(errMsg).build());
+            }
+        }
+
+        return instance;
+    }
+
+    /**
+     * Closes the context of the running application, if it was created.
+     */
+    public static synchronized void shutdown() {
+        if (instance != null) {
+            instance.close();
+            instance = null;
+        }
+    }
+
+    /**
+     * Getter for the EzBake configuration.
+     *
+     * @return EzBake configuration properties
+     */
+    public EzProperties getProperties() {
+        return props;
+    }
+
+    /**
+     * Getter for the Thrift client pool shared by all resources.
+     *
+     * @return Client pool
+     */
+    public ClientLeasePool getClients() {
+        return clients;
+    }
+
+    /**
+     * Getter for the security token manager shared by all resources.
+     *
+     * @return Token manager
+     */
+    public TokenManager getTokens() {
+        return tokens;
+    }
+
+    /**
+     * Getter for the tracer of the sampled requests.
+     *
+     * @return Tracer
+     */
+    public Tracer getTracer() {
+        return tracer;
+    }
+
+    /**
+     * Registers a resource to be closed with the context. Registered resources are closed in the reverse order of
+     * registration, before the shared state that they may use.
+     *
+     * @param resource Resource to close
+     * @param <T> Type of the resource
+     * @return The resource
+     */
+    public <T extends Closeable> T register(T resource) {
+        synchronized (resources) {
+            resources.push(resource);
+        }
+
+        return resource;
+    }
+
+    @Override
+    public void close() {
+        synchronized (resources) {
+            while (!resources.isEmpty()) {
+                final Closeable resource = resources.pop();
+                try {
+                    resource.close();
+                } catch (final IOException | RuntimeException e) {
+                    logger.warn("Could not close {}", resource, e);
+                }
+            }
+        }
+
+        tokens.close();
+        clients.close();
+        try {
+            tracer.close();
+        } catch (final IOException e) {
+            logger.warn("Could not close span collector", e);
+        }
+    }
+}
@@ -20,18 +20,35 @@ import javax.ws.rs.core.Application;
 
 import com.google.common.collect.ImmutableSet;
 
+import ezbake.app.sample.rest.encoding.CompressionInterceptor;
+import ezbake.app.sample.rest.encoding.ThriftMessageBodyWriter;
+import ezbake.app.sample.rest.json.JsonBodyReader;
 import ezbake.app.sample.rest.resource.ImageResource;
 import ezbake.app.sample.rest.resource.RelationshipResource;
+import ezbake.app.sample.rest.resource.TraceResource;
 import ezbake.app.sample.rest.resource.TweetResource;
+import ezbake.app.sample.rest.tracing.TracingInterceptor;
 
 /**
  * Web Application composed of SampleApp REST resources.
  */
 public final class SampleWebApp extends Application {
-    private final Set<Object> singletons =
-            ImmutableSet.of(new RelationshipResource(), new TweetResource(), new ImageResource());
-
-    private final Set<Class<?>> classes = ImmutableSet.<Class<?>>of(WebServiceExceptionHandler.class);
+    private final Set<Object> singletons;
+
+    private final Set<Class<?>> classes =
+            ImmutableSet.<Class<?>>of(
+                    WebServiceExceptionHandler.class, JsonBodyReader.class, ThriftMessageBodyWriter.class,
+                    CompressionInterceptor.class, TracingInterceptor.class);
+
+    /**
+     * Constructor. Creates the resources, which share the application context.
+     */
+    public SampleWebApp() {
+        final SampleAppContext context = SampleAppContext.get();
+        singletons = ImmutableSet.<Object>of(
+                new RelationshipResource(context), new TweetResource(context), new ImageResource(context),
+                new TraceResource(context));
+    }
 
     @Override
     public Set<Class<?>> getClasses() {
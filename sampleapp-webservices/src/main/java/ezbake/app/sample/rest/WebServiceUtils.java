@@ -14,12 +14,20 @@
 
 package ezbake.app.sample.rest;
 
+import static javax.ws.rs.core.Response.Status.UNAUTHORIZED;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Set;
+import java.util.TreeSet;
+
 import javax.servlet.http.HttpServletRequest;
 
-import org.apache.commons.lang3.StringUtils;
-import org.codehaus.jettison.json.JSONException;
-import org.codehaus.jettison.json.JSONObject;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 
+import ezbake.base.thrift.Authorizations;
+import ezbake.base.thrift.EzSecurityToken;
 import ezbake.security.client.EzSecurityTokenWrapper;
 import ezbake.security.client.EzbakeSecurityClient;
 
@@ -44,24 +52,51 @@ public final class WebServiceUtils {
     }
 
     /**
-     * Validates that the given string is a valid JSON object.
+     * Computes a fingerprint of the authorizations carried by a security token. Two tokens with the same fingerprint
+     * are able to read exactly the same data, so the fingerprint can be used to scope cached responses to the callers
+     * that are allowed to see them.
      *
-     * @param jsonQuery String which should be a valid JSON object
-     * @return true if the given string is a valid JSON object, false otherwise
+     * @param token Security token whose authorizations to fingerprint
+     * @return Hex-encoded SHA-256 hash of the token's sorted authorization sets
+     * @throws WebServiceException with status 401 if there is no token, so that callers without one never share
+     * cached responses
      */
-    public static boolean isValidJsonObject(String jsonQuery) {
-        if (StringUtils.isEmpty(jsonQuery)) {
-            return false;
+    public static String getAuthorizationsFingerprint(EzSecurityToken token) {
+        if (token == null) {
+            throw new WebServiceException(UNAUTHORIZED, "No security token to fingerprint");
         }
 
-        // Use JSONObject constructor as a validator and ignore object
-        try {
-            // noinspection ResultOfObjectAllocationIgnored
-            new JSONObject(jsonQuery);
-        } catch (final JSONException e) {
-            return false;
+        final Hasher hasher = Hashing.sha256().newHasher();
+        final Authorizations authorizations = token.getAuthorizations();
+        if (authorizations != null) {
+            putSorted(hasher, authorizations.getFormalAuthorizations());
+            putSorted(hasher, authorizations.getExternalCommunityAuthorizations());
+            putSorted(hasher, authorizations.getPlatformObjectAuthorizations());
+        }
+
+        return hasher.hash().toString();
+    }
+
+    /**
+     * Hashes the members of an authorization set in sorted order so that fingerprints do not depend on set ordering.
+     * The set is prefixed with its size and each member with its length, so that no two distinct sets hash the same
+     * input whatever characters their members contain.
+     *
+     * @param hasher Hasher to put the set into
+     * @param auths Authorization set, may be null
+     */
+    private static void putSorted(Hasher hasher, Collection<?> auths) {
+        final Set<String> sorted = new TreeSet<>();
+        if (auths != null) {
+            for (final Object auth : auths) {
+                sorted.add(String.valueOf(auth));
+            }
         }
 
-        return true;
+        hasher.putInt(sorted.size());
+        for (final String auth : sorted) {
+            final byte[] bytes = auth.getBytes(StandardCharsets.UTF_8);
+            hasher.putInt(bytes.length).putBytes(bytes);
+        }
     }
 }
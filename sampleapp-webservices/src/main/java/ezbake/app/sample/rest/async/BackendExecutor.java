@@ -0,0 +1,237 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample.rest.async;
+
+import static javax.ws.rs.core.Response.Status.INTERNAL_SERVER_ERROR;
+import static javax.ws.rs.core.Response.Status.SERVICE_UNAVAILABLE;
+
+import java.io.Closeable;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response;
+
+import org.jboss.resteasy.spi.AsynchronousResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import ezbake.app.sample.rest.WebServiceException;
+import ezbake.app.sample.rest.WebServiceExceptionHandler;
+import ezbake.app.sample.trace.Span;
+import ezbake.app.sample.trace.Tracer;
+import ezbake.common.properties.EzProperties;
+
+/**
+ * Completes suspended requests on a bounded pool dedicated to one backend service, so that container threads are
+ * released while Thrift calls are in progress and a slow backend can only exhaust its own pool. Requests that arrive
+ * while the pool and its queue are full are answered with 503 immediately.
+ * <p>
+ * Work runs outside the request, so anything read from the request, such as the security token, must be read before
+ * the work is submitted. The trace of the request, if it is traced, is moved to the thread that runs the work and
+ * ends when the request is completed.
+ * <p>
+ * Executors are registered with {@link ezbake.app.sample.rest.SampleAppContext#register(Closeable)} by the resource
+ * that creates them, so that their threads are stopped when the application stops.
+ */
+public final class BackendExecutor implements Closeable {
+    /**
+     * Time after which RESTEasy answers a suspended request with 503 if the work has not completed it. Resources pass
+     * it to {@link org.jboss.resteasy.annotations.Suspend}.
+     */
+    public static final long SUSPEND_TIMEOUT_MILLIS = 120000;
+
+    /**
+     * Configuration properties, formatted with the backend name, and their defaults.
+     */
+    public static final String THREADS_PROP_FORMAT = "sampleapp.async.%s.threads";
+    public static final String QUEUE_SIZE_PROP_FORMAT = "sampleapp.async.%s.queue";
+
+    private static final Logger logger = LoggerFactory.getLogger(BackendExecutor.class);
+
+    private static final int DEFAULT_THREADS = 16;
+    private static final int DEFAULT_QUEUE_SIZE = 100;
+
+    private static final WebServiceExceptionHandler EXCEPTION_HANDLER = new WebServiceExceptionHandler();
+
+    private final String backend;
+    private final ThreadPoolExecutor pool;
+    private final Tracer tracer;
+
+    /**
+     * Constructor.
+     *
+     * @param backend Name of the backend service, used in configuration properties and thread names
+     * @param props Configuration properties
+     */
+    public BackendExecutor(String backend, EzProperties props) {
+        this(
+                backend, props.getInteger(String.format(THREADS_PROP_FORMAT, backend), DEFAULT_THREADS),
+                props.getInteger(String.format(QUEUE_SIZE_PROP_FORMAT, backend), DEFAULT_QUEUE_SIZE), props);
+    }
+
+    /**
+     * Constructor for a pool whose size is configured by the caller.
+     *
+     * @param backend Name of the backend service, used in thread names
+     * @param threads Number of threads
+     * @param queueSize Number of requests that may wait for a thread
+     * @param props Configuration properties
+     */
+    public BackendExecutor(String backend, int threads, int queueSize, EzProperties props) {
+        this.backend = backend;
+
+        pool = new ThreadPoolExecutor(
+                threads, threads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(queueSize),
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat(backend + "-backend-%d").build());
+
+        tracer = Tracer.get(props);
+    }
+
+    /**
+     * Runs work for a suspended request and completes the request with its result. {@link WebServiceException}s and
+     * {@link WebApplicationException}s thrown by the work are converted to responses as they would be for a
+     * synchronous resource method.
+     *
+     * @param response Suspended response to complete
+     * @param work Builds the response
+     * @return The submitted work, which can be passed to {@link #cancel(Future)}, or null if the pool was saturated and
+     * the request has been answered with 503
+     */
+    public Future<?> submit(final AsynchronousResponse response, final Callable<Response> work) {
+        final Span span = tracer.detach();
+        final Runnable completion = new Runnable() {
+            @Override
+            public void run() {
+                tracer.attach(span);
+                try {
+                    complete(response, work, span);
+                } finally {
+                    span.close();
+                }
+            }
+        };
+
+        final FutureTask<Void> task = new FutureTask<Void>(completion, null) {
+            @Override
+            protected void done() {
+                if (isCancelled()) {
+                    span.setError();
+                    span.close();
+                }
+            }
+        };
+
+        try {
+            pool.execute(task);
+            return task;
+        } catch (final RejectedExecutionException e) {
+            logger.warn("Rejected request for saturated {} backend", backend);
+            span.setError();
+            span.close();
+            response.setResponse(
+                    Response.status(SERVICE_UNAVAILABLE)
+                            .entity(String.format("The %s service is busy, try again later", backend)).build());
+
+            return null;
+        }
+    }
+
+    /**
+     * Abandons submitted work, dropping it from the queue if it has not started and interrupting it otherwise. The
+     * request is not completed by cancelled work, so the caller must complete it.
+     *
+     * @param work Work returned by {@link #submit(AsynchronousResponse, Callable)}
+     * @return true if the work was cancelled, false if it had already completed
+     */
+    public boolean cancel(Future<?> work) {
+        final boolean cancelled = work.cancel(true);
+        if (cancelled) {
+            pool.remove((Runnable) work);
+        }
+
+        return cancelled;
+    }
+
+    /**
+     * Stops the pool, interrupting running work and cancelling work that has not started.
+     */
+    @Override
+    public void close() {
+        for (final Runnable work : pool.shutdownNow()) {
+            ((Future<?>) work).cancel(false);
+        }
+    }
+
+    /**
+     * Completes a suspended request with the response for an error found on the request thread, before any work was
+     * submitted. Resource methods that suspend their response must use this rather than throwing.
+     *
+     * @param response Suspended response to complete
+     * @param e Error to respond with
+     */
+    public static void fail(AsynchronousResponse response, WebServiceException e) {
+        setResponse(response, EXCEPTION_HANDLER.toResponse(e));
+    }
+
+    /**
+     * Runs work and completes a suspended request with its result.
+     *
+     * @param response Suspended response to complete
+     * @param work Builds the response
+     * @param span Span of the request, marked as failed if the response is a server error
+     */
+    private static void complete(AsynchronousResponse response, Callable<Response> work, Span span) {
+        Response result;
+        try {
+            result = work.call();
+        } catch (final WebServiceException e) {
+            result = EXCEPTION_HANDLER.toResponse(e);
+        } catch (final WebApplicationException e) {
+            result = e.getResponse();
+        } catch (final Exception e) {
+            final String errMsg = "Unexpected error while handling request";
+            logger.error(errMsg, e);
+            result = Response.status(INTERNAL_SERVER_ERROR).entity(errMsg).build();
+        }
+
+        if (result.getStatus() >= INTERNAL_SERVER_ERROR.getStatusCode()) {
+            span.setError();
+        }
+
+        setResponse(response, result);
+    }
+
+    /**
+     * Completes a suspended request.
+     *
+     * @param response Suspended response to complete
+     * @param result Response to send
+     */
+    private static void setResponse(AsynchronousResponse response, Response result) {
+        try {
+            response.setResponse(result);
+        } catch (final RuntimeException e) {
+            logger.warn("Could not complete suspended request, it may have timed out", e);
+        }
+    }
+}
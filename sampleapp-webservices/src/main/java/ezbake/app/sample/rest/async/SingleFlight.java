@@ -0,0 +1,78 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample.rest.async;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+/**
+ * Collapses identical concurrent backend calls into one. The first caller for a key makes the call on its own thread,
+ * and callers that arrive with the same key while it is in progress wait for it and share its result or exception.
+ * Nothing is kept once the call completes, so this does not cache; it only flattens bursts of identical requests.
+ * <p>
+ * Calls are only shared between callers with the same authorizations fingerprint, as the call is made with the
+ * credentials of the first caller.
+ *
+ * @param <V> Type of the call's result, which must be safe to share between threads
+ */
+public final class SingleFlight<V> {
+    private static final char KEY_SEPARATOR = '/';
+
+    /**
+     * Calls in progress keyed by authorizations fingerprint and call key.
+     */
+    private final ConcurrentMap<String, Future<V>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Makes a call, or waits for an identical call already in progress for a caller with the same authorizations.
+     *
+     * @param authsFingerprint Authorizations fingerprint of the caller
+     * @param key Identifies the call, such as the ID of the requested item
+     * @param call Makes the backend call. Only called for the first of a set of concurrent callers, on that caller's
+     * thread.
+     * @return Result of the call
+     * @throws UncheckedExecutionException if the call threw a checked exception. Unchecked exceptions are rethrown
+     * as they are.
+     */
+    public V execute(String authsFingerprint, String key, Callable<V> call) {
+        final String flightKey = authsFingerprint + KEY_SEPARATOR + key;
+        final FutureTask<V> task = new FutureTask<>(call);
+
+        Future<V> flight = inFlight.putIfAbsent(flightKey, task);
+        if (flight == null) {
+            flight = task;
+            try {
+                task.run();
+            } finally {
+                inFlight.remove(flightKey, task);
+            }
+        }
+
+        try {
+            return Uninterruptibles.getUninterruptibly(flight);
+        } catch (final ExecutionException e) {
+            Throwables.propagateIfPossible(e.getCause());
+            throw new UncheckedExecutionException(e.getCause());
+        }
+    }
+}
@@ -0,0 +1,433 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample.rest.cache;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+import javax.ws.rs.core.StreamingOutput;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounded, content-addressed store of binaries on local disk. Entries are keyed by a content hash, so an entry never
+ * changes once written. When the store grows beyond its size limit the least recently read entries are deleted.
+ * <p>
+ * Each store keeps its files in its own subdirectory of the configured directory, which it holds a lock on while open
+ * and removes when closed. Subdirectories left by stores that were not closed are removed when the next store is
+ * created, as their MIME types are not known. Only files named as the store names them are ever deleted, so the
+ * configured directory can be shared with other stores and other applications.
+ */
+public final class DiskContentStore implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(DiskContentStore.class);
+
+    /**
+     * Keys become file names, so only allow characters that cannot escape the store directory.
+     */
+    private static final Pattern VALID_KEY = Pattern.compile("\\p{Alnum}+");
+
+    /**
+     * Names of the subdirectories of stores, their lock files, and the files written in them: stored entries and the
+     * temporary files they are written to before being moved into place.
+     */
+    private static final String STORE_DIR_PREFIX = "content-store-";
+    private static final String LOCK_FILE = "store.lock";
+    private static final String ENTRY_SUFFIX = ".bin";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final Pattern STORE_FILE = Pattern.compile("\\p{Alnum}+(-?\\d+)?\\.(bin|tmp)");
+
+    /**
+     * Subdirectories of the stores open in this JVM. Their locks are not checked, since closing a channel on a lock
+     * file can release the locks held on it through other channels.
+     */
+    private static final Set<Path> OPEN_STORES =
+            Collections.newSetFromMap(new ConcurrentHashMap<Path, Boolean>());
+
+    /**
+     * Default {@link LinkedHashMap} sizing, needed to use its access-order constructor.
+     */
+    private static final int INITIAL_CAPACITY = 16;
+    private static final float LOAD_FACTOR = 0.75f;
+
+    /**
+     * Directory holding the stored files, owned by this store.
+     */
+    private final Path directory;
+
+    /**
+     * Lock on the store's directory, held while the store is open, and the channel it was taken on.
+     */
+    private final FileChannel lockChannel;
+    private final FileLock lock;
+
+    /**
+     * Maximum number of bytes stored before entries are evicted.
+     */
+    private final long maxBytes;
+
+    /**
+     * Entries in access order, so that the first entry is always the least recently used. Guarded by this.
+     */
+    private final Map<String, Entry> entries = new LinkedHashMap<>(INITIAL_CAPACITY, LOAD_FACTOR, true);
+
+    /**
+     * Total size of all entries. Guarded by this.
+     */
+    private long totalBytes;
+
+    /**
+     * Constructor. Creates a subdirectory of the given directory for this store, and removes the subdirectories of
+     * earlier stores that are no longer locked.
+     *
+     * @param parent Directory in which to create the store's subdirectory, created if necessary
+     * @param maxBytes Maximum number of bytes to store
+     * @throws IOException if the store's subdirectory could not be created or locked
+     */
+    public DiskContentStore(Path parent, long maxBytes) throws IOException {
+        Files.createDirectories(parent);
+        removeStaleStores(parent);
+
+        directory = Files.createTempDirectory(parent, STORE_DIR_PREFIX).toAbsolutePath();
+        OPEN_STORES.add(directory);
+        final FileChannel channel;
+        try {
+            channel = FileChannel.open(
+                    directory.resolve(LOCK_FILE), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        } catch (final IOException e) {
+            OPEN_STORES.remove(directory);
+            throw e;
+        }
+
+        lockChannel = channel;
+        lock = lockChannel.lock();
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Gets a stored entry for reading. The file is opened while the store is locked, so an entry that is found can
+     * still be read after it is evicted.
+     *
+     * @param key Content hash of the entry
+     * @return The entry, or null if nothing is stored for the key. It holds its file open until it is written or
+     * closed.
+     */
+    public synchronized StoredContent open(String key) {
+        final Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+
+        try {
+            return new StoredContent(entry, FileChannel.open(entry.path, StandardOpenOption.READ));
+        } catch (final IOException e) {
+            logger.warn("Could not open cached file {}, removing it from the content store", entry.path, e);
+            remove(key);
+            return null;
+        }
+    }
+
+    /**
+     * Stores content under its hash. Content larger than the whole store is not stored.
+     *
+     * @param key Content hash of the entry
+     * @param content Bytes to store
+     * @param mimeType MIME type of the content
+     * @throws IOException if the content could not be written
+     */
+    public void put(String key, byte[] content, String mimeType) throws IOException {
+        if (!VALID_KEY.matcher(key).matches()) {
+            throw new IllegalArgumentException("Invalid content store key: " + key);
+        }
+
+        if (content.length > maxBytes) {
+            return;
+        }
+
+        final Path path = directory.resolve(key + ENTRY_SUFFIX);
+        final Path tempPath = Files.createTempFile(directory, key, TEMP_SUFFIX);
+        try {
+            Files.write(tempPath, content);
+            Files.move(tempPath, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tempPath);
+        }
+
+        synchronized (this) {
+            final Entry previous = entries.put(key, new Entry(path, content.length, mimeType));
+            if (previous != null) {
+                totalBytes -= previous.length;
+            }
+
+            totalBytes += content.length;
+            evict();
+        }
+    }
+
+    /**
+     * Deletes all stored files and the store's subdirectory, and releases its lock.
+     *
+     * @throws IOException if the lock could not be released
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (!lockChannel.isOpen()) {
+            return;
+        }
+
+        entries.clear();
+        totalBytes = 0;
+        deleteStoreFiles(directory);
+        try {
+            lock.release();
+        } finally {
+            lockChannel.close();
+        }
+
+        deleteStoreDirectory(directory);
+        OPEN_STORES.remove(directory);
+    }
+
+    /**
+     * Deletes least recently used entries until the store is within its size limit. Must hold the lock on this.
+     */
+    private void evict() {
+        final Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && iterator.hasNext()) {
+            final Entry eldest = iterator.next().getValue();
+            iterator.remove();
+            totalBytes -= eldest.length;
+            delete(eldest.path);
+        }
+    }
+
+    /**
+     * Removes an entry. Must hold the lock on this.
+     *
+     * @param key Content hash of the entry
+     */
+    private void remove(String key) {
+        final Entry entry = entries.remove(key);
+        if (entry != null) {
+            totalBytes -= entry.length;
+            delete(entry.path);
+        }
+    }
+
+    /**
+     * Removes the subdirectories of stores that were not closed, which are those whose lock is not held.
+     *
+     * @param parent Directory holding the subdirectories of stores
+     * @throws IOException if the directory could not be listed
+     */
+    private static void removeStaleStores(Path parent) throws IOException {
+        try (DirectoryStream<Path> stores = Files.newDirectoryStream(parent, STORE_DIR_PREFIX + '*')) {
+            for (final Path store : stores) {
+                if (Files.isDirectory(store, LinkOption.NOFOLLOW_LINKS)
+                        && Files.isRegularFile(store.resolve(LOCK_FILE), LinkOption.NOFOLLOW_LINKS)
+                        && isStale(store)) {
+                    deleteStoreFiles(store);
+                    deleteStoreDirectory(store);
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks whether a store's subdirectory was left behind, by trying to take its lock.
+     *
+     * @param store Subdirectory of a store
+     * @return true if no open store holds the lock
+     */
+    private static boolean isStale(Path store) {
+        if (OPEN_STORES.contains(store.toAbsolutePath())) {
+            return false;
+        }
+
+        try (FileChannel channel = FileChannel.open(store.resolve(LOCK_FILE), StandardOpenOption.WRITE)) {
+            final FileLock stale = channel.tryLock();
+            if (stale == null) {
+                return false;
+            }
+
+            stale.release();
+            return true;
+        } catch (final OverlappingFileLockException e) {
+            return false;
+        } catch (final IOException e) {
+            logger.warn("Could not check whether content store {} is in use", store, e);
+            return false;
+        }
+    }
+
+    /**
+     * Deletes the stored and temporary files in a store's subdirectory, leaving any other files alone.
+     *
+     * @param store Subdirectory of a store
+     */
+    private static void deleteStoreFiles(Path store) {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(store)) {
+            for (final Path path : files) {
+                if (STORE_FILE.matcher(path.getFileName().toString()).matches()
+                        && Files.isRegularFile(path, LinkOption.NOFOLLOW_LINKS)) {
+                    delete(path);
+                }
+            }
+        } catch (final IOException e) {
+            logger.warn("Could not list content store {}", store, e);
+        }
+    }
+
+    /**
+     * Deletes the lock file and subdirectory of a store. The subdirectory is left if it holds files the store did not
+     * write.
+     *
+     * @param store Subdirectory of a store
+     */
+    private static void deleteStoreDirectory(Path store) {
+        delete(store.resolve(LOCK_FILE));
+        delete(store);
+    }
+
+    /**
+     * Deletes a stored file. Readers that already opened the file can keep reading it.
+     *
+     * @param path File to delete
+     */
+    private static void delete(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (final IOException e) {
+            logger.warn("Could not delete cached file {}", path, e);
+        }
+    }
+
+    /**
+     * Location, size and type of a stored file.
+     */
+    private static final class Entry {
+        private final Path path;
+        private final long length;
+        private final String mimeType;
+
+        /**
+         * Constructor.
+         *
+         * @param path Location of the file
+         * @param length Size of the file in bytes
+         * @param mimeType MIME type of the content
+         */
+        Entry(Path path, long length, String mimeType) {
+            this.path = path;
+            this.length = length;
+            this.mimeType = mimeType;
+        }
+    }
+
+    /**
+     * A stored entry that streams itself to a response with {@link FileChannel#transferTo}, so the content is not
+     * copied through the heap. The file is opened when the entry is looked up and closed once it has been written, so
+     * the entry can be written even if it is evicted in between. An entry that is not written must be closed.
+     */
+    public static final class StoredContent implements StreamingOutput, Closeable {
+        private final Entry entry;
+        private final FileChannel channel;
+
+        /**
+         * Constructor.
+         *
+         * @param entry Stored entry
+         * @param channel Channel open on the entry's file, owned by the new instance
+         */
+        StoredContent(Entry entry, FileChannel channel) {
+            this.entry = entry;
+            this.channel = channel;
+        }
+
+        /**
+         * Getter for the size of the content.
+         *
+         * @return Size of the content in bytes
+         */
+        public long getLength() {
+            return entry.length;
+        }
+
+        /**
+         * Getter for the MIME type of the content.
+         *
+         * @return MIME type of the content
+         */
+        public String getMimeType() {
+            return entry.mimeType;
+        }
+
+        /**
+         * Writes the stored file, then closes it.
+         *
+         * @param output Stream to write to
+         * @throws IOException if the file could not be read, for example because it is shorter than when it was
+         * stored, or it was already written or closed
+         */
+        @Override
+        public void write(OutputStream output) throws IOException {
+            try (FileChannel source = channel) {
+                final WritableByteChannel target = Channels.newChannel(output);
+                long position = 0;
+                while (position < entry.length) {
+                    final long transferred = source.transferTo(position, entry.length - position, target);
+                    if (transferred == 0 && position >= source.size()) {
+                        throw new EOFException(
+                                String.format(
+                                        "Cached file %s ended after %d of %d bytes", entry.path, position,
+                                        entry.length));
+                    }
+
+                    position += transferred;
+                }
+            }
+        }
+
+        /**
+         * Closes the stored file without writing it.
+         *
+         * @throws IOException if the file could not be closed
+         */
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
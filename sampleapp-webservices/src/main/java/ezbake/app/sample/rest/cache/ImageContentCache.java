@@ -0,0 +1,190 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample.rest.cache;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+
+import ezbake.common.properties.EzProperties;
+import ezbake.services.indexing.image.thrift.Thumbnail;
+import ezbake.services.indexing.image.thrift.ThumbnailSize;
+
+/**
+ * Two-tier cache of image content retrieved from the image indexer. Thumbnails are kept in a size-bounded in-memory
+ * LRU cache and full binaries in a {@link DiskContentStore}. Image content is immutable for a given EzBake image ID, so
+ * entries never go stale.
+ * <p>
+ * Content is shared between all users, but it is only served to callers whose authorizations fingerprint has been
+ * granted access to the image. A grant is recorded each time the image indexer returns the image to a caller with that
+ * fingerprint, and expires after a configurable time so that revoked access is not honored forever.
+ */
+public final class ImageContentCache implements Closeable {
+    /**
+     * Configuration properties and their defaults.
+     */
+    public static final String THUMBNAIL_CACHE_BYTES_PROP = "sampleapp.images.cache.thumbnail.bytes";
+    public static final String BINARY_CACHE_DIR_PROP = "sampleapp.images.cache.binary.dir";
+    public static final String BINARY_CACHE_BYTES_PROP = "sampleapp.images.cache.binary.bytes";
+    public static final String GRANT_TTL_SECONDS_PROP = "sampleapp.images.cache.grant.ttl.seconds";
+    public static final String GRANT_MAX_ENTRIES_PROP = "sampleapp.images.cache.grant.max";
+
+    private static final long DEFAULT_THUMBNAIL_CACHE_BYTES = 64L * 1024 * 1024;
+    private static final long DEFAULT_BINARY_CACHE_BYTES = 1024L * 1024 * 1024;
+    private static final long DEFAULT_GRANT_TTL_SECONDS = 300;
+    private static final long DEFAULT_GRANT_MAX_ENTRIES = 100000;
+    private static final String DEFAULT_BINARY_CACHE_DIR = "sampleapp-image-cache";
+
+    private static final char KEY_SEPARATOR = '/';
+
+    /**
+     * Thumbnails keyed by image ID and size.
+     */
+    private final Cache<String, Thumbnail> thumbnails;
+
+    /**
+     * Image binaries keyed by image ID.
+     */
+    private final DiskContentStore binaries;
+
+    /**
+     * Authorization fingerprint and image ID pairs that the image indexer has allowed to read the image.
+     */
+    private final Cache<String, Boolean> grants;
+
+    /**
+     * Constructor.
+     *
+     * @param props Configuration properties
+     * @throws IOException if the on-disk binary store could not be created
+     */
+    public ImageContentCache(EzProperties props) throws IOException {
+        thumbnails = CacheBuilder.newBuilder()
+                .maximumWeight(props.getLong(THUMBNAIL_CACHE_BYTES_PROP, DEFAULT_THUMBNAIL_CACHE_BYTES))
+                .weigher(
+                        new Weigher<String, Thumbnail>() {
+                            @Override
+                            public int weigh(String key, Thumbnail thumbnail) {
+                                return thumbnail.getThumbnailBytes().length;
+                            }
+                        }).build();
+
+        binaries = new DiskContentStore(
+                Paths.get(
+                        props.getProperty(
+                                BINARY_CACHE_DIR_PROP,
+                                Paths.get(System.getProperty("java.io.tmpdir"), DEFAULT_BINARY_CACHE_DIR).toString())),
+                props.getLong(BINARY_CACHE_BYTES_PROP, DEFAULT_BINARY_CACHE_BYTES));
+
+        grants = CacheBuilder.newBuilder()
+                .expireAfterWrite(props.getLong(GRANT_TTL_SECONDS_PROP, DEFAULT_GRANT_TTL_SECONDS), TimeUnit.SECONDS)
+                .maximumSize(props.getLong(GRANT_MAX_ENTRIES_PROP, DEFAULT_GRANT_MAX_ENTRIES)).build();
+    }
+
+    /**
+     * Gets a cached thumbnail.
+     *
+     * @param authsFingerprint Authorizations fingerprint of the caller
+     * @param ezBakeImageId EzBake image ID of the image
+     * @param size Size of the thumbnail
+     * @return The cached thumbnail, or null if it is not cached or the caller has not been granted access to it
+     */
+    public Thumbnail getThumbnail(String authsFingerprint, String ezBakeImageId, ThumbnailSize size) {
+        if (!isGranted(authsFingerprint, ezBakeImageId)) {
+            return null;
+        }
+
+        return thumbnails.getIfPresent(ezBakeImageId + KEY_SEPARATOR + size);
+    }
+
+    /**
+     * Caches a thumbnail that the image indexer returned to a caller.
+     *
+     * @param authsFingerprint Authorizations fingerprint of the caller
+     * @param ezBakeImageId EzBake image ID of the image
+     * @param size Size of the thumbnail
+     * @param thumbnail Thumbnail to cache
+     */
+    public void putThumbnail(String authsFingerprint, String ezBakeImageId, ThumbnailSize size, Thumbnail thumbnail) {
+        thumbnails.put(ezBakeImageId + KEY_SEPARATOR + size, thumbnail);
+        grant(authsFingerprint, ezBakeImageId);
+    }
+
+    /**
+     * Gets a cached image binary.
+     *
+     * @param authsFingerprint Authorizations fingerprint of the caller
+     * @param ezBakeImageId EzBake image ID of the image
+     * @return The cached binary, or null if it is not cached or the caller has not been granted access to it
+     */
+    public DiskContentStore.StoredContent openBinary(String authsFingerprint, String ezBakeImageId) {
+        if (!isGranted(authsFingerprint, ezBakeImageId)) {
+            return null;
+        }
+
+        return binaries.open(ezBakeImageId);
+    }
+
+    /**
+     * Caches an image binary that the image indexer returned to a caller.
+     *
+     * @param authsFingerprint Authorizations fingerprint of the caller
+     * @param ezBakeImageId EzBake image ID of the image
+     * @param blob Image binary
+     * @param mimeType MIME type of the image
+     * @throws IOException if the binary could not be written to disk
+     */
+    public void putBinary(String authsFingerprint, String ezBakeImageId, byte[] blob, String mimeType)
+            throws IOException {
+        binaries.put(ezBakeImageId, blob, mimeType);
+        grant(authsFingerprint, ezBakeImageId);
+    }
+
+    /**
+     * Deletes the cached binaries from disk.
+     *
+     * @throws IOException if the on-disk binary store could not be closed
+     */
+    @Override
+    public void close() throws IOException {
+        binaries.close();
+    }
+
+    /**
+     * Records that callers with the given authorizations may read an image.
+     *
+     * @param authsFingerprint Authorizations fingerprint of the caller
+     * @param ezBakeImageId EzBake image ID of the image
+     */
+    private void grant(String authsFingerprint, String ezBakeImageId) {
+        grants.put(authsFingerprint + KEY_SEPARATOR + ezBakeImageId, Boolean.TRUE);
+    }
+
+    /**
+     * Checks whether callers with the given authorizations have recently been allowed to read an image.
+     *
+     * @param authsFingerprint Authorizations fingerprint of the caller
+     * @param ezBakeImageId EzBake image ID of the image
+     * @return true if access was granted, false otherwise
+     */
+    private boolean isGranted(String authsFingerprint, String ezBakeImageId) {
+        return grants.getIfPresent(authsFingerprint + KEY_SEPARATOR + ezBakeImageId) != null;
+    }
+}
@@ -0,0 +1,141 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample.rest.encoding;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MultivaluedMap;
+
+/**
+ * Buffers the start of an entity and only compresses it once it is known to be larger than a threshold, as small
+ * entities gain nothing from compression. The Content-Encoding header is set when compression starts, which is before
+ * anything has been written to the target stream and so before the response headers are committed.
+ */
+final class CompressingOutputStream extends OutputStream {
+    /**
+     * Content codings that can be produced.
+     */
+    static final String GZIP = "gzip";
+    static final String DEFLATE = "deflate";
+
+    private static final String VARY = "Vary";
+
+    private final OutputStream target;
+    private final MultivaluedMap<String, Object> headers;
+    private final String encoding;
+    private final int minBytes;
+
+    /**
+     * Start of the entity, until it grows past the threshold. Null once compressing.
+     */
+    private ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+    /**
+     * Compressing stream over the target, or null while buffering.
+     */
+    private DeflaterOutputStream compressor;
+
+    /**
+     * Constructor.
+     *
+     * @param target Stream to write the entity to
+     * @param headers Response headers, which must not have been committed yet
+     * @param encoding Content coding to use, {@link #GZIP} or {@link #DEFLATE}
+     * @param minBytes Entities smaller than this are written uncompressed
+     */
+    CompressingOutputStream(
+            OutputStream target, MultivaluedMap<String, Object> headers, String encoding, int minBytes) {
+        this.target = target;
+        this.headers = headers;
+        this.encoding = encoding;
+        this.minBytes = minBytes;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        if (compressor == null) {
+            if (buffer.size() + length < minBytes) {
+                buffer.write(bytes, offset, length);
+                return;
+            }
+
+            startCompressing();
+        }
+
+        compressor.write(bytes, offset, length);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        // Flushing while buffering would commit the headers before the encoding is known
+        if (compressor != null) {
+            compressor.flush();
+        }
+    }
+
+    /**
+     * Writes the rest of the entity: the buffered bytes as they are if the threshold was never reached, or else the
+     * end of the compressed stream. The target stream is left open.
+     *
+     * @throws IOException if the entity could not be written
+     */
+    void finish() throws IOException {
+        if (compressor == null) {
+            buffer.writeTo(target);
+            buffer = null;
+        } else {
+            compressor.close();
+        }
+    }
+
+    /**
+     * Sets the encoding headers and starts compressing, beginning with the buffered bytes.
+     *
+     * @throws IOException if the buffered bytes could not be written
+     */
+    private void startCompressing() throws IOException {
+        headers.putSingle(HttpHeaders.CONTENT_ENCODING, encoding);
+        headers.add(VARY, HttpHeaders.ACCEPT_ENCODING);
+        headers.remove(HttpHeaders.CONTENT_LENGTH);
+
+        // Closing the compressor releases its native memory, so keep that from closing the response stream
+        final OutputStream unclosable = new FilterOutputStream(target) {
+            @Override
+            public void write(byte[] bytes, int offset, int length) throws IOException {
+                out.write(bytes, offset, length);
+            }
+
+            @Override
+            public void close() throws IOException {
+                flush();
+            }
+        };
+
+        compressor = GZIP.equals(encoding) ? new GZIPOutputStream(unclosable) : new DeflaterOutputStream(unclosable);
+        buffer.writeTo(compressor);
+        buffer = null;
+    }
+}
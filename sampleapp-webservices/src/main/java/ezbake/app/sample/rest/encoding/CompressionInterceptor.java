@@ -0,0 +1,186 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample.rest.encoding;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.ext.Provider;
+
+import org.jboss.resteasy.annotations.interception.EncoderPrecedence;
+import org.jboss.resteasy.annotations.interception.ServerInterceptor;
+import org.jboss.resteasy.core.ResteasyProviderFactory;
+import org.jboss.resteasy.spi.interception.MessageBodyWriterContext;
+import org.jboss.resteasy.spi.interception.MessageBodyWriterInterceptor;
+
+import com.google.common.base.Splitter;
+
+import ezbake.app.sample.rest.SampleAppContext;
+import ezbake.common.properties.EzProperties;
+
+/**
+ * Compresses response entities with gzip or deflate when the client accepts it. Only textual entities, such as JSON,
+ * and Thrift binary entities are compressed, as images are already compressed, and entities smaller than a configured
+ * threshold are sent as they are.
+ */
+@Provider
+@ServerInterceptor
+@EncoderPrecedence
+public final class CompressionInterceptor implements MessageBodyWriterInterceptor {
+    /**
+     * Configuration properties and their defaults.
+     */
+    public static final String ENABLED_PROP = "sampleapp.compression.enabled";
+    public static final String MIN_BYTES_PROP = "sampleapp.compression.min.bytes";
+
+    private static final int DEFAULT_MIN_BYTES = 1024;
+
+    private static final Splitter LIST_SPLITTER = Splitter.on(',').trimResults().omitEmptyStrings();
+    private static final Splitter PARAM_SPLITTER = Splitter.on(';').trimResults();
+    private static final String QUALITY_PARAM = "q=";
+    private static final String ANY = "*";
+
+    private final boolean enabled;
+    private final int minBytes;
+
+    /**
+     * Constructor.
+     */
+    public CompressionInterceptor() {
+        final EzProperties props = SampleAppContext.get().getProperties();
+        enabled = props.getBoolean(ENABLED_PROP, true);
+        minBytes = props.getInteger(MIN_BYTES_PROP, DEFAULT_MIN_BYTES);
+    }
+
+    @Override
+    public void write(MessageBodyWriterContext context) throws IOException, WebApplicationException {
+        final String encoding = enabled && isCompressible(context) ? chooseEncoding() : null;
+        if (encoding == null) {
+            context.proceed();
+            return;
+        }
+
+        final OutputStream original = context.getOutputStream();
+        final CompressingOutputStream compressing =
+                new CompressingOutputStream(original, context.getHeaders(), encoding, minBytes);
+
+        context.setOutputStream(compressing);
+        try {
+            context.proceed();
+            compressing.finish();
+        } finally {
+            context.setOutputStream(original);
+        }
+    }
+
+    /**
+     * Checks whether an entity is worth compressing and has not already been encoded.
+     *
+     * @param context Entity being written
+     * @return true if the entity may be compressed
+     */
+    private static boolean isCompressible(MessageBodyWriterContext context) {
+        if (context.getHeaders().containsKey(HttpHeaders.CONTENT_ENCODING)) {
+            return false;
+        }
+
+        final MediaType type = context.getMediaType();
+        if (type == null) {
+            return false;
+        }
+
+        final String subtype = type.getSubtype();
+        return "text".equals(type.getType()) || subtype.endsWith("json") || subtype.endsWith("xml")
+                || ThriftMessageBodyWriter.APPLICATION_THRIFT_TYPE.isCompatible(type);
+    }
+
+    /**
+     * Chooses a content coding from the current request's Accept-Encoding header.
+     *
+     * @return {@link CompressingOutputStream#GZIP}, {@link CompressingOutputStream#DEFLATE}, or null if the client
+     * accepts neither
+     */
+    private static String chooseEncoding() {
+        final HttpHeaders requestHeaders = ResteasyProviderFactory.getContextData(HttpHeaders.class);
+        return chooseEncoding(
+                requestHeaders == null ? null : requestHeaders.getRequestHeader(HttpHeaders.ACCEPT_ENCODING));
+    }
+
+    /**
+     * Chooses a content coding from Accept-Encoding headers, preferring gzip when the client accepts both equally.
+     *
+     * @param acceptEncodings Values of the Accept-Encoding headers, or null if there are none
+     * @return {@link CompressingOutputStream#GZIP}, {@link CompressingOutputStream#DEFLATE}, or null if the client
+     * accepts neither
+     */
+    static String chooseEncoding(List<String> acceptEncodings) {
+        if (acceptEncodings == null) {
+            return null;
+        }
+
+        Float gzipQuality = null;
+        Float deflateQuality = null;
+        float anyQuality = 0;
+        for (final String header : acceptEncodings) {
+            for (final String coding : LIST_SPLITTER.split(header)) {
+                final Iterator<String> parts = PARAM_SPLITTER.split(coding).iterator();
+                final String name = parts.next().toLowerCase();
+                final float quality = getQuality(parts);
+                if (CompressingOutputStream.GZIP.equals(name)) {
+                    gzipQuality = quality;
+                } else if (CompressingOutputStream.DEFLATE.equals(name)) {
+                    deflateQuality = quality;
+                } else if (ANY.equals(name)) {
+                    anyQuality = quality;
+                }
+            }
+        }
+
+        // Codings not listed explicitly take the quality of the wildcard, if any
+        final float gzip = gzipQuality == null ? anyQuality : gzipQuality;
+        final float deflate = deflateQuality == null ? anyQuality : deflateQuality;
+        if (gzip > 0 && gzip >= deflate) {
+            return CompressingOutputStream.GZIP;
+        }
+
+        return deflate > 0 ? CompressingOutputStream.DEFLATE : null;
+    }
+
+    /**
+     * Gets the quality value of a content coding.
+     *
+     * @param params Parameters of the coding
+     * @return Quality from 0 to 1, 1 if not given or invalid
+     */
+    private static float getQuality(Iterator<String> params) {
+        while (params.hasNext()) {
+            final String param = params.next();
+            if (param.startsWith(QUALITY_PARAM)) {
+                try {
+                    return Float.parseFloat(param.substring(QUALITY_PARAM.length()));
+                } catch (final NumberFormatException e) {
+                    return 1;
+                }
+            }
+        }
+
+        return 1;
+    }
+}
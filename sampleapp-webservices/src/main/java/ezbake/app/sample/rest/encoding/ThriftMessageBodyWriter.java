@@ -0,0 +1,68 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample.rest.encoding;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.MessageBodyWriter;
+import javax.ws.rs.ext.Provider;
+
+import org.apache.thrift.TBase;
+import org.apache.thrift.TException;
+import org.apache.thrift.protocol.TBinaryProtocol;
+import org.apache.thrift.transport.TIOStreamTransport;
+
+/**
+ * Writes Thrift structures, such as graphs, in the Thrift binary protocol for clients that accept
+ * {@value #APPLICATION_THRIFT}. The binary encoding is considerably smaller than JSON and can be read directly by
+ * Thrift clients.
+ */
+@Provider
+@Produces(ThriftMessageBodyWriter.APPLICATION_THRIFT)
+public final class ThriftMessageBodyWriter implements MessageBodyWriter<TBase<?, ?>> {
+    /**
+     * Media type of Thrift binary protocol entities.
+     */
+    public static final String APPLICATION_THRIFT = "application/x-thrift";
+    public static final MediaType APPLICATION_THRIFT_TYPE = MediaType.valueOf(APPLICATION_THRIFT);
+
+    @Override
+    public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        return TBase.class.isAssignableFrom(type);
+    }
+
+    @Override
+    public long getSize(
+            TBase<?, ?> entity, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        return -1;
+    }
+
+    @Override
+    public void writeTo(
+            TBase<?, ?> entity, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType,
+            MultivaluedMap<String, Object> httpHeaders, OutputStream entityStream) throws IOException {
+        try {
+            entity.write(new TBinaryProtocol(new TIOStreamTransport(entityStream)));
+        } catch (final TException e) {
+            throw new IOException("Could not write Thrift entity", e);
+        }
+    }
+}
@@ -0,0 +1,230 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample.rest.graph;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.thrift.TUnion;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import ezbake.common.properties.EzProperties;
+import ezbake.services.graph.thrift.types.Graph;
+import ezbake.services.graph.thrift.types.Property;
+import ezbake.services.graph.thrift.types.Vertex;
+
+/**
+ * Caches the results of k-hop subgraph expansions by start user, number of hops and caller authorizations. An entry
+ * is invalidated as soon as any user in it is reported changed by the graph change log, since a new edge on any of
+ * those users can change the expansion. Entries also expire after a configurable time, which bounds staleness when no
+ * change log is available.
+ */
+public final class ExpansionCache implements GraphChangeLogTailer.Listener {
+    /**
+     * Configuration properties and their defaults.
+     */
+    public static final String TTL_SECONDS_PROP = "sampleapp.graph.expansion.cache.ttl.seconds";
+    public static final String MAX_ENTRIES_PROP = "sampleapp.graph.expansion.cache.max";
+
+    private static final long DEFAULT_TTL_SECONDS = 300;
+    private static final long DEFAULT_MAX_ENTRIES = 500;
+
+    private static final char KEY_SEPARATOR = '/';
+
+    /**
+     * Number of recent change batches remembered to check expansions that were computed while changes arrived.
+     */
+    private static final int MAX_CHANGE_HISTORY = 64;
+
+    /**
+     * Property holding the screen name of a user's vertex.
+     */
+    private final String screenNameKey;
+
+    /**
+     * Expansions keyed by authorizations fingerprint, number of hops and start screen name.
+     */
+    private final Cache<String, Expansion> expansions;
+
+    /**
+     * Most recent change batches, newest last. Guarded by this.
+     */
+    private final Deque<Set<String>> recentChanges = new ArrayDeque<>();
+
+    /**
+     * Incremented for each change batch or reset. Guarded by this.
+     */
+    private long version;
+
+    /**
+     * Constructor.
+     *
+     * @param props Configuration properties
+     * @param screenNameKey Property holding the screen name of a user's vertex
+     */
+    public ExpansionCache(EzProperties props, String screenNameKey) {
+        this.screenNameKey = screenNameKey;
+
+        expansions = CacheBuilder.newBuilder()
+                .expireAfterWrite(props.getLong(TTL_SECONDS_PROP, DEFAULT_TTL_SECONDS), TimeUnit.SECONDS)
+                .maximumSize(props.getLong(MAX_ENTRIES_PROP, DEFAULT_MAX_ENTRIES)).build();
+    }
+
+    /**
+     * Gets a cached expansion.
+     *
+     * @param screenName Screen name of the start user
+     * @param numHops Number of hops expanded
+     * @param authsFingerprint Authorizations fingerprint of the caller
+     * @return The expanded graph, or null if it is not cached
+     */
+    public Graph get(String screenName, int numHops, String authsFingerprint) {
+        final Expansion expansion = expansions.getIfPresent(toKey(screenName, numHops, authsFingerprint));
+        return expansion == null ? null : expansion.graph;
+    }
+
+    /**
+     * Gets the current version of the cache, to be passed to {@link #put} once an expansion has been computed.
+     *
+     * @return Current version
+     */
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    /**
+     * Caches an expansion, unless users in it changed after the expansion was started.
+     *
+     * @param screenName Screen name of the start user
+     * @param numHops Number of hops expanded
+     * @param authsFingerprint Authorizations fingerprint of the caller
+     * @param graph The expanded graph
+     * @param startVersion Version of the cache from before the expansion was started
+     */
+    public void put(String screenName, int numHops, String authsFingerprint, Graph graph, long startVersion) {
+        final Set<String> screenNames = getScreenNames(graph);
+        screenNames.add(screenName);
+
+        synchronized (this) {
+            final long changesSince = version - startVersion;
+            if (changesSince > recentChanges.size()) {
+                return;
+            }
+
+            final Iterator<Set<String>> newestFirst = recentChanges.descendingIterator();
+            for (long idx = 0; idx < changesSince; idx++) {
+                if (!Collections.disjoint(newestFirst.next(), screenNames)) {
+                    return;
+                }
+            }
+
+            expansions.put(toKey(screenName, numHops, authsFingerprint), new Expansion(graph, screenNames));
+        }
+    }
+
+    @Override
+    public synchronized void changed(Set<String> screenNames) {
+        version++;
+        recentChanges.addLast(screenNames);
+        if (recentChanges.size() > MAX_CHANGE_HISTORY) {
+            recentChanges.removeFirst();
+        }
+
+        final Iterator<Expansion> iterator = expansions.asMap().values().iterator();
+        while (iterator.hasNext()) {
+            if (!Collections.disjoint(iterator.next().screenNames, screenNames)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    @Override
+    public synchronized void reset() {
+        version++;
+        recentChanges.clear();
+        expansions.invalidateAll();
+    }
+
+    /**
+     * Collects the screen names of the users in a graph.
+     *
+     * @param graph Graph of users
+     * @return Screen names of the users
+     */
+    private Set<String> getScreenNames(Graph graph) {
+        final Set<String> screenNames = new HashSet<>();
+        if (graph.getVertices() == null) {
+            return screenNames;
+        }
+
+        for (final Vertex vertex : graph.getVertices()) {
+            if (vertex.getId() != null && vertex.getId().isSetLocalId()) {
+                screenNames.add(vertex.getId().getLocalId());
+            }
+
+            final Map<String, List<Property>> properties = vertex.getProperties();
+            if (properties != null && properties.containsKey(screenNameKey)) {
+                for (final Property property : properties.get(screenNameKey)) {
+                    final TUnion<?, ?> value = property.getValue();
+                    if (value != null && value.getFieldValue() != null) {
+                        screenNames.add(value.getFieldValue().toString());
+                    }
+                }
+            }
+        }
+
+        return screenNames;
+    }
+
+    /**
+     * Builds a cache key.
+     *
+     * @param screenName Screen name of the start user
+     * @param numHops Number of hops expanded
+     * @param authsFingerprint Authorizations fingerprint of the caller
+     * @return Cache key
+     */
+    private static String toKey(String screenName, int numHops, String authsFingerprint) {
+        return authsFingerprint + KEY_SEPARATOR + numHops + KEY_SEPARATOR + screenName;
+    }
+
+    /**
+     * A cached expansion and the users it contains.
+     */
+    private static final class Expansion {
+        private final Graph graph;
+        private final Set<String> screenNames;
+
+        /**
+         * Constructor.
+         *
+         * @param graph The expanded graph
+         * @param screenNames Screen names of the users in the graph
+         */
+        Expansion(Graph graph, Set<String> screenNames) {
+            this.graph = graph;
+            this.screenNames = screenNames;
+        }
+    }
+}
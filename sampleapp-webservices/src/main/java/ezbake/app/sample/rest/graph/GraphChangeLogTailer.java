@@ -0,0 +1,195 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample.rest.graph;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Follows the graph change log written by the pipeline's relationship worker and reports the users that were written
+ * to the graph. The log is a UTF-8 file with one screen name per line that is replaced by a new file when it grows too
+ * large. A replacement is detected from the changed file key, or from the file being smaller than what was read where
+ * the platform has no file keys, and means that any user may have changed. Entries written before the tailer started
+ * are ignored.
+ */
+public final class GraphChangeLogTailer implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(GraphChangeLogTailer.class);
+
+    /**
+     * If more than this many bytes were appended since the last poll the entries are not parsed and every user is
+     * considered changed.
+     */
+    private static final int MAX_READ_BYTES = 1024 * 1024;
+
+    private static final byte LINE_SEPARATOR = '\n';
+
+    private final Path file;
+    private final Listener listener;
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * Offset of the first unread byte of the log. Only accessed from the scheduler thread.
+     */
+    private long position;
+
+    /**
+     * Identity of the log file that was read, or null if unknown. Only accessed from the scheduler thread.
+     */
+    private Object fileKey;
+
+    /**
+     * Constructor. Starts polling the log.
+     *
+     * @param file Log file
+     * @param pollMillis Time between polls in milliseconds
+     * @param listener Receives changes read from the log
+     */
+    public GraphChangeLogTailer(Path file, long pollMillis, Listener listener) {
+        this.file = file;
+        this.listener = listener;
+
+        try {
+            if (Files.exists(file)) {
+                final BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                position = attributes.size();
+                fileKey = attributes.fileKey();
+            }
+        } catch (final IOException e) {
+            logger.warn("Could not read size of graph change log {}", file, e);
+        }
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("graph-change-log-tailer").build());
+
+        scheduler.scheduleWithFixedDelay(
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        poll();
+                    }
+                }, pollMillis, pollMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Reads the entries appended since the last poll. Called by the scheduler, and directly by tests.
+     */
+    void poll() {
+        try {
+            if (!Files.exists(file)) {
+                return;
+            }
+
+            final BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            final long size = attributes.size();
+            final boolean replaced = fileKey != null && !fileKey.equals(attributes.fileKey());
+            fileKey = attributes.fileKey();
+            if (replaced || size < position) {
+                logger.debug("Graph change log {} was replaced", file);
+                position = 0;
+                listener.reset();
+            }
+
+            if (size - position > MAX_READ_BYTES) {
+                logger.debug("Graph change log {} grew by {} bytes, skipping to the end", file, size - position);
+                position = size;
+                listener.reset();
+            }
+
+            if (size > position) {
+                final Set<String> screenNames = read(size);
+                if (!screenNames.isEmpty()) {
+                    listener.changed(screenNames);
+                }
+            }
+        } catch (final IOException | RuntimeException e) {
+            logger.error("Could not read graph change log {}", file, e);
+        }
+    }
+
+    /**
+     * Reads the complete lines between the current position and the given size, and advances the position past them.
+     * A partially written last line is left to be read on the next poll.
+     *
+     * @param size Size of the log
+     * @return Screen names read
+     * @throws IOException if the log could not be read
+     */
+    private Set<String> read(long size) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate((int) (size - position));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            int read = 0;
+            while (buffer.hasRemaining() && read >= 0) {
+                read = channel.read(buffer, position + buffer.position());
+            }
+        }
+
+        final byte[] bytes = buffer.array();
+        final int length = buffer.position();
+        final Set<String> screenNames = new HashSet<>();
+        int lineStart = 0;
+        for (int idx = 0; idx < length; idx++) {
+            if (bytes[idx] == LINE_SEPARATOR) {
+                final String screenName = new String(bytes, lineStart, idx - lineStart, StandardCharsets.UTF_8).trim();
+                if (!screenName.isEmpty()) {
+                    screenNames.add(screenName);
+                }
+
+                lineStart = idx + 1;
+            }
+        }
+
+        position += lineStart;
+        return screenNames;
+    }
+
+    /**
+     * Receives changes read from the log.
+     */
+    public interface Listener {
+        /**
+         * Called with the users written to the graph since the last poll.
+         *
+         * @param screenNames Screen names of the users
+         */
+        void changed(Set<String> screenNames);
+
+        /**
+         * Called when the changes since the last poll are unknown, so any user may have changed.
+         */
+        void reset();
+    }
+}
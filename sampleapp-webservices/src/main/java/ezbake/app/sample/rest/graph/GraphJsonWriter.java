@@ -0,0 +1,369 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample.rest.graph;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import javax.ws.rs.core.StreamingOutput;
+import javax.xml.bind.DatatypeConverter;
+
+import org.apache.thrift.TBase;
+import org.apache.thrift.TFieldIdEnum;
+import org.apache.thrift.TUnion;
+import org.apache.thrift.meta_data.FieldMetaData;
+
+import com.google.gson.stream.JsonWriter;
+
+import ezbake.services.graph.thrift.types.Edge;
+import ezbake.services.graph.thrift.types.ElementId;
+import ezbake.services.graph.thrift.types.Graph;
+import ezbake.services.graph.thrift.types.Property;
+import ezbake.services.graph.thrift.types.Vertex;
+
+/**
+ * Streams graph elements as compact JSON directly to a response, without building the whole document in memory. Only
+ * the IDs, labels and property values of elements are written; visibilities and other Thrift internals are not.
+ * <p>
+ * Graphs are written as:
+ * <pre>
+ * {
+ *   "vertices": [ { "id": "jack", "properties": { "screenName": [ "jack" ], "twitterId": [ "12" ] } } ],
+ *   "edges": [ { "label": "mentioned", "out": "jack", "in": "biz", "properties": { "tweetId": "20" } } ]
+ * }
+ * </pre>
+ * Vertex properties map to arrays as vertices can have several values per key, while edge properties map to single
+ * values. Binary values are written as Base64 strings, and struct values as objects of their set fields. Element IDs
+ * are the local IDs written by the pipeline. Results of vertex or edge queries are written as a document holding only
+ * the "vertices" or only the "edges" array. Several paths are written as a document holding a "paths" array of graph
+ * objects.
+ */
+public final class GraphJsonWriter {
+    private static final String VERTICES = "vertices";
+    private static final String EDGES = "edges";
+    private static final String PATHS = "paths";
+    private static final String ID = "id";
+    private static final String LABEL = "label";
+    private static final String OUT_VERTEX = "out";
+    private static final String IN_VERTEX = "in";
+    private static final String PROPERTIES = "properties";
+    private static final String INDENT = "  ";
+
+    /**
+     * Do not allow instantiation.
+     */
+    private GraphJsonWriter() {
+    }
+
+    /**
+     * Creates a streaming response entity for a graph.
+     *
+     * @param graph Graph to write
+     * @param pretty true to indent the JSON, false for compact JSON
+     * @return Response entity that writes the graph
+     */
+    public static StreamingOutput stream(Graph graph, boolean pretty) {
+        return stream(graph.getVertices(), graph.getEdges(), pretty);
+    }
+
+    /**
+     * Creates a streaming response entity for a list of vertices.
+     *
+     * @param vertices Vertices to write
+     * @param pretty true to indent the JSON, false for compact JSON
+     * @return Response entity that writes the vertices
+     */
+    public static StreamingOutput streamVertices(List<Vertex> vertices, boolean pretty) {
+        return stream(vertices, null, pretty);
+    }
+
+    /**
+     * Creates a streaming response entity for a list of edges.
+     *
+     * @param edges Edges to write
+     * @param pretty true to indent the JSON, false for compact JSON
+     * @return Response entity that writes the edges
+     */
+    public static StreamingOutput streamEdges(List<Edge> edges, boolean pretty) {
+        return stream(null, edges, pretty);
+    }
+
+    /**
+     * Creates a streaming response entity for several paths.
+     *
+     * @param paths Graphs of the paths to write
+     * @param pretty true to indent the JSON, false for compact JSON
+     * @return Response entity that writes the paths
+     */
+    public static StreamingOutput streamPaths(final List<Graph> paths, final boolean pretty) {
+        return new StreamingOutput() {
+            @Override
+            public void write(OutputStream output) throws IOException {
+                final JsonWriter json = open(output, pretty);
+                json.beginObject();
+                json.name(PATHS).beginArray();
+                for (final Graph path : paths) {
+                    writeGraph(json, path.getVertices(), path.getEdges());
+                }
+                json.endArray();
+                json.endObject();
+                json.flush();
+            }
+        };
+    }
+
+    /**
+     * Writes vertices and edges as a JSON document.
+     *
+     * @param vertices Vertices to write, or null to omit the "vertices" array
+     * @param edges Edges to write, or null to omit the "edges" array
+     * @param pretty true to indent the JSON, false for compact JSON
+     * @param output Stream to write to. It is flushed but not closed.
+     * @throws IOException if the JSON could not be written
+     */
+    public static void write(List<Vertex> vertices, List<Edge> edges, boolean pretty, OutputStream output)
+            throws IOException {
+        final JsonWriter json = open(output, pretty);
+        writeGraph(json, vertices, edges);
+        json.flush();
+    }
+
+    /**
+     * Opens a JSON writer on a stream.
+     *
+     * @param output Stream to write to
+     * @param pretty true to indent the JSON, false for compact JSON
+     * @return JSON writer that must be flushed but not closed
+     */
+    private static JsonWriter open(OutputStream output, boolean pretty) {
+        final JsonWriter json =
+                new JsonWriter(new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8)));
+
+        if (pretty) {
+            json.setIndent(INDENT);
+        }
+
+        return json;
+    }
+
+    /**
+     * Writes vertices and edges as a JSON object.
+     *
+     * @param json Writer to write to
+     * @param vertices Vertices to write, or null to omit the "vertices" array
+     * @param edges Edges to write, or null to omit the "edges" array
+     * @throws IOException if the JSON could not be written
+     */
+    private static void writeGraph(JsonWriter json, List<Vertex> vertices, List<Edge> edges) throws IOException {
+        json.beginObject();
+        if (vertices != null) {
+            json.name(VERTICES).beginArray();
+            for (final Vertex vertex : vertices) {
+                writeVertex(json, vertex);
+            }
+            json.endArray();
+        }
+
+        if (edges != null) {
+            json.name(EDGES).beginArray();
+            for (final Edge edge : edges) {
+                writeEdge(json, edge);
+            }
+            json.endArray();
+        }
+        json.endObject();
+    }
+
+    /**
+     * Creates a streaming response entity for vertices and edges.
+     *
+     * @param vertices Vertices to write, or null to omit the "vertices" array
+     * @param edges Edges to write, or null to omit the "edges" array
+     * @param pretty true to indent the JSON, false for compact JSON
+     * @return Response entity that writes the vertices and edges
+     */
+    private static StreamingOutput stream(final List<Vertex> vertices, final List<Edge> edges, final boolean pretty) {
+        return new StreamingOutput() {
+            @Override
+            public void write(OutputStream output) throws IOException {
+                GraphJsonWriter.write(vertices, edges, pretty, output);
+            }
+        };
+    }
+
+    /**
+     * Writes a vertex.
+     *
+     * @param json Writer to write to
+     * @param vertex Vertex to write
+     * @throws IOException if the JSON could not be written
+     */
+    private static void writeVertex(JsonWriter json, Vertex vertex) throws IOException {
+        json.beginObject();
+        json.name(ID).value(toId(vertex.getId()));
+        json.name(PROPERTIES).beginObject();
+
+        final Map<String, List<Property>> properties = vertex.getProperties();
+        if (properties != null) {
+            for (final Map.Entry<String, List<Property>> property : properties.entrySet()) {
+                json.name(property.getKey()).beginArray();
+                for (final Property value : property.getValue()) {
+                    writeValue(json, value);
+                }
+                json.endArray();
+            }
+        }
+
+        json.endObject();
+        json.endObject();
+    }
+
+    /**
+     * Writes an edge.
+     *
+     * @param json Writer to write to
+     * @param edge Edge to write
+     * @throws IOException if the JSON could not be written
+     */
+    private static void writeEdge(JsonWriter json, Edge edge) throws IOException {
+        json.beginObject();
+        json.name(LABEL).value(edge.getLabel());
+        json.name(OUT_VERTEX).value(toId(edge.getOutVertex()));
+        json.name(IN_VERTEX).value(toId(edge.getInVertex()));
+        json.name(PROPERTIES).beginObject();
+
+        final Map<String, Property> properties =
+                edge.getProperties() == null ? Collections.<String, Property>emptyMap() : edge.getProperties();
+
+        for (final Map.Entry<String, Property> property : properties.entrySet()) {
+            json.name(property.getKey());
+            writeValue(json, property.getValue());
+        }
+
+        json.endObject();
+        json.endObject();
+    }
+
+    /**
+     * Writes the value of a property.
+     *
+     * @param json Writer to write to
+     * @param property Property whose value to write
+     * @throws IOException if the JSON could not be written
+     */
+    private static void writeValue(JsonWriter json, Property property) throws IOException {
+        writeThriftValue(json, property.getValue());
+    }
+
+    /**
+     * Writes a Thrift value. Unions are written as their set value, structs as objects of their set fields, binary
+     * values as Base64 strings, lists and sets as arrays, and maps as objects. Other values are written as JSON
+     * numbers, booleans or strings, except that NaN and infinite doubles, which JSON has no numbers for, are written as
+     * the strings "NaN", "Infinity" and "-Infinity".
+     *
+     * @param json Writer to write to
+     * @param value Value to write, which may be null
+     * @throws IOException if the JSON could not be written
+     */
+    private static void writeThriftValue(JsonWriter json, Object value) throws IOException {
+        if (value == null) {
+            json.nullValue();
+        } else if (value instanceof TUnion) {
+            writeThriftValue(json, ((TUnion<?, ?>) value).getFieldValue());
+        } else if (value instanceof TBase) {
+            writeStruct(json, (TBase<?, ?>) value);
+        } else if (value instanceof Double && isNonFinite((Double) value)) {
+            json.value(value.toString());
+        } else if (value instanceof Number) {
+            json.value((Number) value);
+        } else if (value instanceof Boolean) {
+            json.value((Boolean) value);
+        } else if (value instanceof ByteBuffer) {
+            final ByteBuffer buffer = ((ByteBuffer) value).duplicate();
+            final byte[] bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            json.value(DatatypeConverter.printBase64Binary(bytes));
+        } else if (value instanceof byte[]) {
+            json.value(DatatypeConverter.printBase64Binary((byte[]) value));
+        } else if (value instanceof Collection) {
+            json.beginArray();
+            for (final Object element : (Collection<?>) value) {
+                writeThriftValue(json, element);
+            }
+            json.endArray();
+        } else if (value instanceof Map) {
+            json.beginObject();
+            for (final Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                json.name(String.valueOf(entry.getKey()));
+                writeThriftValue(json, entry.getValue());
+            }
+            json.endObject();
+        } else {
+            json.value(value.toString());
+        }
+    }
+
+    /**
+     * Checks whether a double cannot be written as a JSON number.
+     *
+     * @param value Value to check
+     * @return true if the value is NaN or infinite
+     */
+    private static boolean isNonFinite(double value) {
+        return Double.isNaN(value) || Double.isInfinite(value);
+    }
+
+    /**
+     * Writes a Thrift struct as an object of its set fields.
+     *
+     * @param json Writer to write to
+     * @param struct Struct to write
+     * @param <F> Type of the struct's field IDs
+     * @throws IOException if the JSON could not be written
+     */
+    @SuppressWarnings("unchecked")
+    private static <F extends TFieldIdEnum> void writeStruct(JsonWriter json, TBase<?, F> struct) throws IOException {
+        json.beginObject();
+        for (final TFieldIdEnum field : FieldMetaData.getStructMetaDataMap(struct.getClass()).keySet()) {
+            if (struct.isSet((F) field)) {
+                json.name(field.getFieldName());
+                writeThriftValue(json, struct.getFieldValue((F) field));
+            }
+        }
+        json.endObject();
+    }
+
+    /**
+     * Converts an element ID to the string used in the JSON.
+     *
+     * @param id Element ID
+     * @return The local ID if set, otherwise the Thrift representation of the ID
+     */
+    private static String toId(ElementId id) {
+        if (id == null) {
+            return null;
+        }
+
+        return id.isSetLocalId() ? id.getLocalId() : id.toString();
+    }
+}
@@ -0,0 +1,458 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample.rest.graph;
+
+import static javax.ws.rs.core.Response.Status.CONFLICT;
+import static javax.ws.rs.core.Response.Status.SERVICE_UNAVAILABLE;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.ws.rs.core.Response;
+
+import org.apache.thrift.TException;
+import org.jboss.resteasy.spi.AsynchronousResponse;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import ezbake.app.sample.rest.WebServiceException;
+import ezbake.app.sample.rest.async.BackendExecutor;
+import ezbake.common.properties.EzProperties;
+
+/**
+ * Runs Gremlin requests against the graph service with a deadline, a cap on the number of results and a limit on the
+ * number of queries each user may run at once. Requests are submitted straight from their suspended response to a
+ * bounded pool dedicated to Gremlin queries, and the query runs on the same worker as the rest of the request, so a
+ * slow traversal holds one worker and no web request thread. A running query can be cancelled by the user that
+ * started it, and is abandoned when its request ends early, for example because the client disconnected.
+ * <p>
+ * The result cap is enforced by applying a range filter to the query, so the graph service stops the traversal once
+ * enough results were found. The query must therefore be a single pipeline expression. The graph service cannot abort
+ * a call in progress, so a cancelled, abandoned or timed out query keeps its worker and its user's slot until the
+ * graph service responds; the caller is answered immediately.
+ */
+public final class GremlinExecutor implements Closeable {
+    /**
+     * Configuration properties and their defaults.
+     */
+    public static final String THREADS_PROP = "sampleapp.graph.gremlin.threads";
+    public static final String QUEUE_SIZE_PROP = "sampleapp.graph.gremlin.queue";
+    public static final String PER_USER_PROP = "sampleapp.graph.gremlin.per.user";
+    public static final String DEFAULT_TIMEOUT_MILLIS_PROP = "sampleapp.graph.gremlin.timeout.default.millis";
+    public static final String MAX_TIMEOUT_MILLIS_PROP = "sampleapp.graph.gremlin.timeout.max.millis";
+    public static final String DEFAULT_RESULTS_PROP = "sampleapp.graph.gremlin.results.default";
+    public static final String MAX_RESULTS_PROP = "sampleapp.graph.gremlin.results.max";
+
+    private static final int DEFAULT_THREADS = 8;
+    private static final int DEFAULT_QUEUE_SIZE = 32;
+    private static final int DEFAULT_PER_USER = 2;
+    private static final long DEFAULT_DEFAULT_TIMEOUT_MILLIS = 10000;
+    private static final long DEFAULT_MAX_TIMEOUT_MILLIS = 60000;
+    private static final int DEFAULT_DEFAULT_RESULTS = 500;
+    private static final int DEFAULT_MAX_RESULTS = 5000;
+
+    private static final char KEY_SEPARATOR = '/';
+
+    /**
+     * Pool on which requests and their queries run.
+     */
+    private final BackendExecutor queryPool;
+
+    /**
+     * Answers requests whose queries did not complete before their deadline.
+     */
+    private final ScheduledExecutorService deadlines;
+
+    /**
+     * Query slots of each user. Semaphores are weakly held so that idle users are forgotten, while running queries
+     * keep their user's semaphore reachable.
+     */
+    private final LoadingCache<String, Semaphore> userSlots;
+
+    /**
+     * Running queries keyed by user and query ID.
+     */
+    private final ConcurrentMap<String, Submission> running = new ConcurrentHashMap<>();
+
+    private final long defaultTimeoutMillis;
+    private final long maxTimeoutMillis;
+    private final int defaultResults;
+    private final int maxResults;
+
+    /**
+     * Constructor.
+     *
+     * @param props Configuration properties
+     */
+    public GremlinExecutor(EzProperties props) {
+        defaultTimeoutMillis = props.getLong(DEFAULT_TIMEOUT_MILLIS_PROP, DEFAULT_DEFAULT_TIMEOUT_MILLIS);
+        maxTimeoutMillis = props.getLong(MAX_TIMEOUT_MILLIS_PROP, DEFAULT_MAX_TIMEOUT_MILLIS);
+        defaultResults = props.getInteger(DEFAULT_RESULTS_PROP, DEFAULT_DEFAULT_RESULTS);
+        maxResults = props.getInteger(MAX_RESULTS_PROP, DEFAULT_MAX_RESULTS);
+
+        queryPool = new BackendExecutor(
+                "gremlin", props.getInteger(THREADS_PROP, DEFAULT_THREADS),
+                props.getInteger(QUEUE_SIZE_PROP, DEFAULT_QUEUE_SIZE), props);
+
+        deadlines = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("gremlin-deadlines").build());
+
+        final int perUser = props.getInteger(PER_USER_PROP, DEFAULT_PER_USER);
+        userSlots = CacheBuilder.newBuilder().weakValues().build(
+                new CacheLoader<String, Semaphore>() {
+                    @Override
+                    public Semaphore load(String principal) {
+                        return new Semaphore(perUser);
+                    }
+                });
+    }
+
+    /**
+     * Runs a Gremlin request for a suspended response. The request is answered with 503 if the user already has the
+     * maximum number of queries running, the pool is saturated or the deadline passes, and with 409 if the user
+     * already has a query with the same ID running or cancels the query. Must be called on the request thread.
+     *
+     * @param asyncContext Asynchronous context of the request, whose end abandons the query, or null if the request is
+     * not running asynchronously
+     * @param response Suspended response to complete
+     * @param principal User running the query
+     * @param queryId ID by which the user can cancel the query, or null if it cannot be cancelled
+     * @param timeoutMillis Requested deadline in milliseconds, or null for the default. Capped at the configured
+     * maximum.
+     * @param work Builds the response, running the query through {@link #run(String, Integer, Query)}. Called on a
+     * worker thread.
+     */
+    public void submit(
+            AsyncContext asyncContext, AsynchronousResponse response, String principal, String queryId,
+            Long timeoutMillis, Callable<Response> work) {
+        final long deadlineMillis =
+                Math.max(1, Math.min(timeoutMillis == null ? defaultTimeoutMillis : timeoutMillis, maxTimeoutMillis));
+
+        final Semaphore slots = userSlots.getUnchecked(principal);
+        if (!slots.tryAcquire()) {
+            BackendExecutor.fail(
+                    response, new WebServiceException(
+                            SERVICE_UNAVAILABLE, "Too many Gremlin queries are running, try again later"));
+            return;
+        }
+
+        final String runningKey = queryId == null ? null : principal + KEY_SEPARATOR + queryId;
+        final Submission submission = new Submission(response, slots, runningKey);
+        if (runningKey != null && running.putIfAbsent(runningKey, submission) != null) {
+            slots.release();
+            BackendExecutor.fail(
+                    response,
+                    new WebServiceException(CONFLICT, "A Gremlin query with ID " + queryId + " is already running"));
+            return;
+        }
+
+        if (asyncContext != null) {
+            asyncContext.addListener(submission);
+        }
+
+        submission.start(queryPool.submit(submission, submission.track(work)), deadlineMillis);
+    }
+
+    /**
+     * Runs a query on the current thread, limiting the number of results. Called by the work passed to
+     * {@link #submit}.
+     *
+     * @param gremlin Gremlin query text
+     * @param limit Requested maximum number of results, or null for the default. Capped at the configured maximum.
+     * @param query Sends the query to the graph service
+     * @param <T> Type of the results
+     * @return The results, truncated to the limit
+     * @throws TException if the graph service call failed
+     */
+    public <T> Results<T> run(String gremlin, Integer limit, Query<T> query) throws TException {
+        final int cappedLimit = Math.max(1, Math.min(limit == null ? defaultResults : limit, maxResults));
+        final List<T> results = query.run(withRange(gremlin, cappedLimit + 1));
+        if (results.size() > cappedLimit) {
+            return new Results<>(results.subList(0, cappedLimit), true);
+        }
+
+        return new Results<>(results, false);
+    }
+
+    /**
+     * Cancels a running query. Its request is answered with 409.
+     *
+     * @param principal User that started the query
+     * @param queryId ID of the query
+     * @return true if the query was running and has been cancelled, false otherwise
+     */
+    public boolean cancel(String principal, String queryId) {
+        final Submission submission = running.get(principal + KEY_SEPARATOR + queryId);
+        return submission != null
+                && submission.abort(new WebServiceException(CONFLICT, "Gremlin query was cancelled"));
+    }
+
+    /**
+     * Stops the query pool and the deadline timer.
+     */
+    @Override
+    public void close() {
+        queryPool.close();
+        deadlines.shutdownNow();
+    }
+
+    /**
+     * Applies a range filter to a Gremlin pipeline so that it emits at most the given number of elements. The pipeline
+     * is parenthesized and the filter put on its own line, so that a trailing comment in the query cannot swallow the
+     * filter, and a query that does not end in a pipeline fails rather than running unlimited.
+     *
+     * @param gremlin Gremlin query text
+     * @param count Maximum number of elements to emit
+     * @return The limited query
+     */
+    static String withRange(String gremlin, int count) {
+        return "(" + gremlin + "\n)[0.." + (count - 1) + ']';
+    }
+
+    /**
+     * A submitted request, which is answered once, by its work, its deadline or its cancellation, and which holds one
+     * of its user's slots until its work finishes, or until it is cancelled if the work never started. As a listener of
+     * the request's asynchronous context, it abandons its work if the request ends before the work answered it.
+     */
+    private final class Submission implements AsynchronousResponse, AsyncListener {
+        private final AsynchronousResponse response;
+        private final Semaphore slots;
+        private final String runningKey;
+        private final AtomicBoolean answered = new AtomicBoolean();
+        private final AtomicBoolean started = new AtomicBoolean();
+        private final AtomicBoolean released = new AtomicBoolean();
+        private volatile Future<?> work;
+        private volatile Future<?> deadline;
+
+        /**
+         * Constructor.
+         *
+         * @param response Suspended response of the request
+         * @param slots Slots of the user running the query, one of which has been acquired for this query
+         * @param runningKey Key of the query among the running queries, or null if it cannot be cancelled
+         */
+        Submission(AsynchronousResponse response, Semaphore slots, String runningKey) {
+            this.response = response;
+            this.slots = slots;
+            this.runningKey = runningKey;
+        }
+
+        /**
+         * Answers the request with the response built by the work, unless it was already answered.
+         *
+         * @param result Response built by the work
+         */
+        @Override
+        public void setResponse(Response result) {
+            if (finish()) {
+                response.setResponse(result);
+            }
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            abandon();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            abandon();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            abandon();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+
+        /**
+         * Wraps the work of the request so that its slot is returned when it finishes.
+         *
+         * @param work Builds the response
+         * @return Work to submit
+         */
+        Callable<Response> track(final Callable<Response> work) {
+            return new Callable<Response>() {
+                @Override
+                public Response call() throws Exception {
+                    started.set(true);
+                    try {
+                        return work.call();
+                    } finally {
+                        releaseSlot();
+                    }
+                }
+            };
+        }
+
+        /**
+         * Starts the deadline of submitted work.
+         *
+         * @param submitted Submitted work, or null if the pool was saturated and the request answered
+         * @param deadlineMillis Deadline in milliseconds
+         */
+        void start(Future<?> submitted, long deadlineMillis) {
+            if (submitted == null) {
+                finish();
+                releaseSlot();
+                return;
+            }
+
+            work = submitted;
+            deadline = deadlines.schedule(
+                    new Runnable() {
+                        @Override
+                        public void run() {
+                            abort(
+                                    new WebServiceException(
+                                            SERVICE_UNAVAILABLE, "Gremlin query did not complete in time"));
+                        }
+                    }, deadlineMillis, TimeUnit.MILLISECONDS);
+
+            if (answered.get()) {
+                deadline.cancel(false);
+            }
+        }
+
+        /**
+         * Answers the request with an error, unless it was already answered, and abandons the work.
+         *
+         * @param error Error to answer with
+         * @return true if the request was answered with the error, false if it had already been answered
+         */
+        boolean abort(WebServiceException error) {
+            if (!finish()) {
+                return false;
+            }
+
+            BackendExecutor.fail(response, error);
+            if (work != null && queryPool.cancel(work) && !started.get()) {
+                releaseSlot();
+            }
+
+            return true;
+        }
+
+        /**
+         * Abandons the work of a request that ended before it was answered, such as one whose client disconnected.
+         */
+        private void abandon() {
+            abort(new WebServiceException(SERVICE_UNAVAILABLE, "Gremlin request ended before its query completed"));
+        }
+
+        /**
+         * Returns this query's slot to its user, if not already returned.
+         */
+        void releaseSlot() {
+            if (released.compareAndSet(false, true)) {
+                slots.release();
+            }
+        }
+
+        /**
+         * Marks the request as answered, stops its deadline and forgets it as a running query.
+         *
+         * @return true if the request had not been answered yet
+         */
+        private boolean finish() {
+            if (!answered.compareAndSet(false, true)) {
+                return false;
+            }
+
+            if (deadline != null) {
+                deadline.cancel(false);
+            }
+
+            if (runningKey != null) {
+                running.remove(runningKey, this);
+            }
+
+            return true;
+        }
+    }
+
+    /**
+     * Results of a query.
+     *
+     * @param <T> Type of the results
+     */
+    public static final class Results<T> {
+        private final List<T> elements;
+        private final boolean truncated;
+
+        /**
+         * Constructor.
+         *
+         * @param elements Returned elements
+         * @param truncated true if more elements matched than were returned
+         */
+        Results(List<T> elements, boolean truncated) {
+            this.elements = elements;
+            this.truncated = truncated;
+        }
+
+        /**
+         * Getter for the returned elements.
+         *
+         * @return Returned elements
+         */
+        public List<T> getElements() {
+            return elements;
+        }
+
+        /**
+         * Whether more elements matched than were returned.
+         *
+         * @return true if the results were truncated, false otherwise
+         */
+        public boolean isTruncated() {
+            return truncated;
+        }
+    }
+
+    /**
+     * Sends a query to the graph service.
+     *
+     * @param <T> Type of the results
+     */
+    public interface Query<T> {
+        /**
+         * Sends a query to the graph service.
+         *
+         * @param gremlin Gremlin query text to send, including the result limit
+         * @return Results of the query
+         * @throws TException if the graph service call failed
+         */
+        List<T> run(String gremlin) throws TException;
+    }
+}
@@ -0,0 +1,214 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample.rest.graph;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A named Gremlin query with parameters that are bound to caller-supplied arguments. The template text is parsed once
+ * when it is registered, and arguments are bound as Groovy literals so that they cannot change the structure of the
+ * query.
+ * <p>
+ * Parameters are written as <code>{{name}}</code> for a string, bound as a quoted string literal, or
+ * <code>{{name:int}}</code> for an integer, bound as a number. For example:
+ * <pre>
+ * _().out({{label}})[0..{{count:int}}]
+ * </pre>
+ */
+public final class GremlinTemplate {
+    /**
+     * Types of parameter.
+     */
+    public static final String STRING_TYPE = "string";
+    public static final String INT_TYPE = "int";
+
+    private static final Pattern PARAMETER = Pattern.compile("\\{\\{(\\w+)(?::(\\w+))?\\}\\}");
+
+    private static final String PARAMETER_OPEN = "{{";
+
+    private final String id;
+    private final String type;
+
+    /**
+     * Literal text of the template, with one more element than {@link #references}. Parameter references go between
+     * consecutive literals.
+     */
+    private final List<String> literals = new ArrayList<>();
+
+    /**
+     * Names of the parameters referenced in the template, in order of appearance.
+     */
+    private final List<String> references = new ArrayList<>();
+
+    /**
+     * Types of the parameters keyed by name.
+     */
+    private final Map<String, String> parameters = new LinkedHashMap<>();
+
+    /**
+     * Constructor. Parses the template text.
+     *
+     * @param id Name of the template
+     * @param type Type of the query, either vertex or edge
+     * @param text Template text
+     * @throws IllegalArgumentException if the template text is malformed
+     */
+    public GremlinTemplate(String id, String type, String text) {
+        this.id = id;
+        this.type = type;
+
+        final Matcher matcher = PARAMETER.matcher(text);
+        int literalStart = 0;
+        while (matcher.find()) {
+            final String name = matcher.group(1);
+            final String paramType = matcher.group(2) == null ? STRING_TYPE : matcher.group(2);
+            if (!STRING_TYPE.equals(paramType) && !INT_TYPE.equals(paramType)) {
+                throw new IllegalArgumentException(
+                        String.format("Template %s: parameter %s has unknown type %s", id, name, paramType));
+            }
+
+            final String previousType = parameters.put(name, paramType);
+            if (previousType != null && !previousType.equals(paramType)) {
+                throw new IllegalArgumentException(
+                        String.format("Template %s: parameter %s is used with different types", id, name));
+            }
+
+            addLiteral(text.substring(literalStart, matcher.start()));
+            references.add(name);
+            literalStart = matcher.end();
+        }
+
+        addLiteral(text.substring(literalStart));
+    }
+
+    /**
+     * Getter for the name of the template.
+     *
+     * @return Name of the template
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Getter for the type of the query.
+     *
+     * @return Type of the query, either vertex or edge
+     */
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * Getter for the parameters of the template.
+     *
+     * @return Types of the parameters keyed by name
+     */
+    public Map<String, String> getParameters() {
+        return Collections.unmodifiableMap(parameters);
+    }
+
+    /**
+     * Binds arguments to the parameters of the template.
+     *
+     * @param arguments Arguments keyed by parameter name. Every parameter must have an argument and there must be no
+     * other arguments.
+     * @return Gremlin query text
+     * @throws IllegalArgumentException if an argument is missing, unknown or of the wrong type
+     */
+    public String bind(Map<String, String> arguments) {
+        if (!parameters.keySet().equals(arguments.keySet())) {
+            throw new IllegalArgumentException(
+                    String.format(
+                            "Template %s takes arguments %s but was given %s", id, parameters.keySet(),
+                            arguments.keySet()));
+        }
+
+        final StringBuilder gremlin = new StringBuilder(literals.get(0));
+        for (int idx = 0; idx < references.size(); idx++) {
+            final String name = references.get(idx);
+            final String value = arguments.get(name);
+            if (INT_TYPE.equals(parameters.get(name))) {
+                gremlin.append(toIntLiteral(name, value));
+            } else {
+                appendStringLiteral(gremlin, value);
+            }
+
+            gremlin.append(literals.get(idx + 1));
+        }
+
+        return gremlin.toString();
+    }
+
+    /**
+     * Adds literal template text, rejecting text that looks like a malformed parameter reference.
+     *
+     * @param literal Literal template text
+     * @throws IllegalArgumentException if the text contains an opening parameter brace
+     */
+    private void addLiteral(String literal) {
+        if (literal.contains(PARAMETER_OPEN)) {
+            throw new IllegalArgumentException(
+                    String.format("Template %s: malformed parameter near '%s'", id, literal));
+        }
+
+        literals.add(literal);
+    }
+
+    /**
+     * Converts an argument to a Groovy integer literal.
+     *
+     * @param name Name of the parameter
+     * @param value Argument value
+     * @return Integer literal
+     * @throws IllegalArgumentException if the value is not an integer
+     */
+    private String toIntLiteral(String name, String value) {
+        try {
+            return Long.toString(Long.parseLong(value.trim()));
+        } catch (final NumberFormatException e) {
+            throw new IllegalArgumentException(
+                    String.format("Template %s: argument %s must be an integer", id, name), e);
+        }
+    }
+
+    /**
+     * Appends an argument as a single-quoted Groovy string literal, which is not interpolated.
+     *
+     * @param gremlin Query text being built
+     * @param value Argument value
+     */
+    private static void appendStringLiteral(StringBuilder gremlin, String value) {
+        gremlin.append('\'');
+        for (int idx = 0; idx < value.length(); idx++) {
+            final char chr = value.charAt(idx);
+            if (chr == '\\' || chr == '\'') {
+                gremlin.append('\\').append(chr);
+            } else if (Character.isISOControl(chr)) {
+                gremlin.append(String.format("\\u%04x", (int) chr));
+            } else {
+                gremlin.append(chr);
+            }
+        }
+
+        gremlin.append('\'');
+    }
+}
@@ -0,0 +1,175 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample.rest.graph;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableSet;
+
+import ezbake.common.properties.EzProperties;
+
+/**
+ * Gremlin query templates registered through configuration, and a cache of their recent results. A template is
+ * configured with the properties {@value #TEMPLATE_PROP_PREFIX}&lt;id&gt;{@value #TEMPLATE_TEXT_SUFFIX} holding the
+ * {@link GremlinTemplate} text and {@value #TEMPLATE_PROP_PREFIX}&lt;id&gt;{@value #TEMPLATE_TYPE_SUFFIX} holding the
+ * query type, which defaults to vertex. Malformed templates are logged and not registered.
+ * <p>
+ * Results are cached per template, start user, arguments, result limit and authorizations fingerprint. Template
+ * traversals can reach any part of the graph, so cached results are not invalidated by graph changes and only expire
+ * after a short time.
+ */
+public final class GremlinTemplateRegistry {
+    /**
+     * Configuration properties and their defaults.
+     */
+    public static final String TEMPLATE_PROP_PREFIX = "sampleapp.graph.gremlin.templates.";
+    public static final String TEMPLATE_TEXT_SUFFIX = ".gremlin";
+    public static final String TEMPLATE_TYPE_SUFFIX = ".type";
+    public static final String CACHE_TTL_SECONDS_PROP = "sampleapp.graph.gremlin.results.cache.ttl.seconds";
+    public static final String CACHE_MAX_ENTRIES_PROP = "sampleapp.graph.gremlin.results.cache.max";
+
+    private static final Logger logger = LoggerFactory.getLogger(GremlinTemplateRegistry.class);
+
+    private static final long DEFAULT_CACHE_TTL_SECONDS = 60;
+    private static final long DEFAULT_CACHE_MAX_ENTRIES = 1000;
+
+    private static final char KEY_SEPARATOR = '/';
+
+    private final Map<String, GremlinTemplate> templates = new HashMap<>();
+
+    /**
+     * Results keyed by the template invocation that produced them.
+     */
+    private final Cache<String, GremlinExecutor.Results<?>> results;
+
+    /**
+     * Constructor. Parses all configured templates.
+     *
+     * @param props Configuration properties
+     * @param queryTypes Valid query types
+     * @param defaultType Query type of templates that do not configure one
+     */
+    public GremlinTemplateRegistry(EzProperties props, Set<String> queryTypes, String defaultType) {
+        for (final String key : props.stringPropertyNames()) {
+            if (!key.startsWith(TEMPLATE_PROP_PREFIX) || !key.endsWith(TEMPLATE_TEXT_SUFFIX)) {
+                continue;
+            }
+
+            final String id =
+                    key.substring(TEMPLATE_PROP_PREFIX.length(), key.length() - TEMPLATE_TEXT_SUFFIX.length());
+            final String type = props.getProperty(TEMPLATE_PROP_PREFIX + id + TEMPLATE_TYPE_SUFFIX, defaultType);
+            if (!queryTypes.contains(type)) {
+                logger.error("Gremlin template {} has invalid type {}, expected one of {}", id, type, queryTypes);
+                continue;
+            }
+
+            try {
+                templates.put(id, new GremlinTemplate(id, type, props.getProperty(key)));
+            } catch (final IllegalArgumentException e) {
+                logger.error("Gremlin template {} is malformed", id, e);
+            }
+        }
+
+        logger.info("Registered Gremlin templates {}", templates.keySet());
+
+        results = CacheBuilder.newBuilder()
+                .expireAfterWrite(props.getLong(CACHE_TTL_SECONDS_PROP, DEFAULT_CACHE_TTL_SECONDS), TimeUnit.SECONDS)
+                .maximumSize(props.getLong(CACHE_MAX_ENTRIES_PROP, DEFAULT_CACHE_MAX_ENTRIES)).build();
+    }
+
+    /**
+     * Gets a registered template.
+     *
+     * @param id Name of the template
+     * @return The template, or null if no template is registered with the name
+     */
+    public GremlinTemplate getTemplate(String id) {
+        return templates.get(id);
+    }
+
+    /**
+     * Getter for the registered templates.
+     *
+     * @return Names of the registered templates
+     */
+    public Set<String> getTemplateIds() {
+        return ImmutableSet.copyOf(templates.keySet());
+    }
+
+    /**
+     * Gets cached results of a template invocation.
+     *
+     * @param invocation Key of the invocation from {@link #toKey}
+     * @return The cached results, or null if not cached
+     */
+    public GremlinExecutor.Results<?> getResults(String invocation) {
+        return results.getIfPresent(invocation);
+    }
+
+    /**
+     * Caches the results of a template invocation.
+     *
+     * @param invocation Key of the invocation from {@link #toKey}
+     * @param invocationResults Results of the invocation
+     */
+    public void putResults(String invocation, GremlinExecutor.Results<?> invocationResults) {
+        results.put(invocation, invocationResults);
+    }
+
+    /**
+     * Builds the cache key of a template invocation. Each part is prefixed with its length so that arguments
+     * containing separators cannot collide with other invocations.
+     *
+     * @param authsFingerprint Authorizations fingerprint of the caller
+     * @param templateId Name of the template
+     * @param screenName Screen name of the start user
+     * @param arguments Arguments keyed by parameter name
+     * @param limit Requested maximum number of results, or null for the default
+     * @return Cache key
+     */
+    public static String toKey(
+            String authsFingerprint, String templateId, String screenName, Map<String, String> arguments,
+            Integer limit) {
+        final StringBuilder key = new StringBuilder(authsFingerprint);
+        appendPart(key, templateId);
+        appendPart(key, screenName);
+        appendPart(key, String.valueOf(limit));
+        for (final Map.Entry<String, String> argument : new TreeMap<>(arguments).entrySet()) {
+            appendPart(key, argument.getKey());
+            appendPart(key, argument.getValue());
+        }
+
+        return key.toString();
+    }
+
+    /**
+     * Appends a length-prefixed part to a cache key.
+     *
+     * @param key Key being built
+     * @param part Part to append
+     */
+    private static void appendPart(StringBuilder key, String part) {
+        key.append(KEY_SEPARATOR).append(part.length()).append(KEY_SEPARATOR).append(part);
+    }
+}
@@ -0,0 +1,132 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample.rest.graph;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.thrift.TException;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import ezbake.base.thrift.EzSecurityToken;
+import ezbake.common.properties.EzProperties;
+import ezbake.data.common.graph.GraphConverter;
+import ezbake.services.graph.thrift.EzGraphService;
+import ezbake.services.graph.thrift.GraphName;
+import ezbake.services.graph.thrift.types.Vertex;
+
+/**
+ * Resolves Twitter screen names to the vertices that represent the users in the graph, caching the results for a
+ * short time. Cached vertices are scoped by the authorizations fingerprint of the caller, since the properties of a
+ * vertex that are returned depend on what the caller is allowed to see. Screen names that are not found are not cached
+ * so that newly ingested users become visible immediately.
+ */
+public final class VertexResolver {
+    /**
+     * Configuration properties and their defaults.
+     */
+    public static final String TTL_SECONDS_PROP = "sampleapp.graph.vertex.cache.ttl.seconds";
+    public static final String MAX_ENTRIES_PROP = "sampleapp.graph.vertex.cache.max";
+
+    private static final long DEFAULT_TTL_SECONDS = 60;
+    private static final long DEFAULT_MAX_ENTRIES = 10000;
+
+    private static final char KEY_SEPARATOR = '/';
+
+    /**
+     * Property holding the screen name of a user's vertex.
+     */
+    private final String screenNameKey;
+
+    private final GraphName graphName;
+
+    /**
+     * Vertices keyed by authorizations fingerprint and screen name.
+     */
+    private final Cache<String, Vertex> vertices;
+
+    /**
+     * Constructor.
+     *
+     * @param props Configuration properties
+     * @param graphName Graph holding the user vertices
+     * @param screenNameKey Property holding the screen name of a user's vertex
+     */
+    public VertexResolver(EzProperties props, GraphName graphName, String screenNameKey) {
+        this.graphName = graphName;
+        this.screenNameKey = screenNameKey;
+
+        vertices = CacheBuilder.newBuilder()
+                .expireAfterWrite(props.getLong(TTL_SECONDS_PROP, DEFAULT_TTL_SECONDS), TimeUnit.SECONDS)
+                .maximumSize(props.getLong(MAX_ENTRIES_PROP, DEFAULT_MAX_ENTRIES)).build();
+    }
+
+    /**
+     * Resolves a single screen name.
+     *
+     * @param graphClient Graph client to use for lookups that miss the cache
+     * @param screenName Screen name to resolve
+     * @param token Security token of the caller
+     * @param authsFingerprint Authorizations fingerprint of the caller
+     * @return The user's vertex, or null if no vertex was found
+     * @throws TException if the graph service lookup failed
+     */
+    public Vertex resolve(
+            EzGraphService.Client graphClient, String screenName, EzSecurityToken token, String authsFingerprint)
+            throws TException {
+        final String key = authsFingerprint + KEY_SEPARATOR + screenName;
+        Vertex vertex = vertices.getIfPresent(key);
+        if (vertex == null) {
+            final List<Vertex> found =
+                    graphClient.findVertices(graphName, screenNameKey, GraphConverter.convertObject(screenName), token);
+
+            if (!found.isEmpty()) {
+                vertex = found.get(0);
+                vertices.put(key, vertex);
+            }
+        }
+
+        return vertex;
+    }
+
+    /**
+     * Resolves several screen names at once. Names are served from the cache where possible and each distinct name is
+     * looked up at most once, all through the same client.
+     *
+     * @param graphClient Graph client to use for lookups that miss the cache
+     * @param screenNames Screen names to resolve
+     * @param token Security token of the caller
+     * @param authsFingerprint Authorizations fingerprint of the caller
+     * @return Vertices keyed by screen name in the order given, with null values for names that were not found
+     * @throws TException if a graph service lookup failed
+     */
+    public Map<String, Vertex> resolveAll(
+            EzGraphService.Client graphClient, Collection<String> screenNames, EzSecurityToken token,
+            String authsFingerprint) throws TException {
+        final Map<String, Vertex> resolved = new LinkedHashMap<>(screenNames.size());
+        for (final String screenName : screenNames) {
+            if (!resolved.containsKey(screenName)) {
+                resolved.put(screenName, resolve(graphClient, screenName, token, authsFingerprint));
+            }
+        }
+
+        return resolved;
+    }
+}
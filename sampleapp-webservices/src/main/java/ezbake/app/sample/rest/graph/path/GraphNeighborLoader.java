@@ -0,0 +1,189 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample.rest.graph.path;
+
+import static javax.ws.rs.core.Response.Status.SERVICE_UNAVAILABLE;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.thrift.TException;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import ezbake.app.sample.rest.WebServiceException;
+import ezbake.app.sample.rest.pool.ClientLease;
+import ezbake.app.sample.rest.pool.ClientLeasePool;
+import ezbake.base.thrift.EzSecurityToken;
+import ezbake.common.properties.EzProperties;
+import ezbake.services.graph.thrift.EzGraphService;
+import ezbake.services.graph.thrift.EzGraphServiceConstants;
+import ezbake.services.graph.thrift.GraphName;
+import ezbake.services.graph.thrift.types.ElementId;
+import ezbake.services.graph.thrift.types.Graph;
+import ezbake.services.graph.thrift.types.Vertex;
+
+/**
+ * Loads the neighborhoods of vertices for {@link PathFinder} by expanding each vertex one hop through the graph
+ * service. A batch of vertices is split between several workers, each expanding its share on its own pooled client.
+ * The workers are shared by all requests and only a bounded number of shares may wait for them, so that one large
+ * search cannot queue work ahead of every other request; a batch that does not fit is answered with 503.
+ */
+public final class GraphNeighborLoader implements Closeable {
+    /**
+     * Configuration property for the number of workers expanding neighborhoods, and its default.
+     */
+    public static final String THREADS_PROP = "sampleapp.graph.path.threads";
+
+    /**
+     * Configuration property for the number of shares that may wait for a worker, and its default.
+     */
+    public static final String QUEUE_SIZE_PROP = "sampleapp.graph.path.queue";
+
+    private static final int DEFAULT_THREADS = 4;
+    private static final int DEFAULT_QUEUE_SIZE = 16;
+
+    private final ClientLeasePool clients;
+    private final GraphName graphName;
+    private final ThreadPoolExecutor expandPool;
+    private final int threads;
+
+    /**
+     * Constructor.
+     *
+     * @param props Configuration properties
+     * @param clients Pool from which to lease graph clients
+     * @param graphName Graph to search
+     */
+    public GraphNeighborLoader(EzProperties props, ClientLeasePool clients, GraphName graphName) {
+        this.clients = clients;
+        this.graphName = graphName;
+
+        threads = props.getInteger(THREADS_PROP, DEFAULT_THREADS);
+        expandPool = new ThreadPoolExecutor(
+                threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(props.getInteger(QUEUE_SIZE_PROP, DEFAULT_QUEUE_SIZE)),
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("path-neighbor-loader-%d").build());
+    }
+
+    /**
+     * Creates a loader that expands vertices with a caller's credentials.
+     *
+     * @param token Security token of the caller
+     * @return Neighbor loader for the caller
+     */
+    public PathFinder.NeighborLoader forCaller(final EzSecurityToken token) {
+        return new PathFinder.NeighborLoader() {
+            @Override
+            public Map<ElementId, Graph> load(List<Vertex> vertices) throws TException {
+                return loadAll(vertices, token);
+            }
+        };
+    }
+
+    /**
+     * Stops the workers, interrupting expansions in progress.
+     */
+    @Override
+    public void close() {
+        expandPool.shutdownNow();
+    }
+
+    /**
+     * Expands a batch of vertices in parallel.
+     *
+     * @param vertices Vertices to expand
+     * @param token Security token of the caller
+     * @return One-hop graph of each vertex keyed by its element ID
+     * @throws TException if an expansion failed
+     * @throws WebServiceException with 503 if the workers are saturated
+     */
+    private Map<ElementId, Graph> loadAll(List<Vertex> vertices, final EzSecurityToken token) throws TException {
+        final int shareSize = (vertices.size() + threads - 1) / threads;
+        final List<Future<Map<ElementId, Graph>>> shares = new ArrayList<>(threads);
+        final Map<ElementId, Graph> neighborhoods = new HashMap<>(vertices.size());
+        try {
+            for (final List<Vertex> share : Lists.partition(vertices, shareSize)) {
+                shares.add(
+                        expandPool.submit(
+                                new Callable<Map<ElementId, Graph>>() {
+                                    @Override
+                                    public Map<ElementId, Graph> call() throws TException {
+                                        return expand(share, token);
+                                    }
+                                }));
+            }
+
+            for (final Future<Map<ElementId, Graph>> share : shares) {
+                neighborhoods.putAll(share.get());
+            }
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof TException) {
+                throw (TException) e.getCause();
+            }
+
+            throw new TException("Could not expand vertices", e.getCause());
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TException("Interrupted while expanding vertices", e);
+        } catch (final RejectedExecutionException e) {
+            throw new WebServiceException(SERVICE_UNAVAILABLE, "The path search is busy, try again later");
+        } finally {
+            for (final Future<Map<ElementId, Graph>> share : shares) {
+                if (share.cancel(true)) {
+                    expandPool.remove((Runnable) share);
+                }
+            }
+        }
+
+        return neighborhoods;
+    }
+
+    /**
+     * Expands vertices one at a time on a single client.
+     *
+     * @param vertices Vertices to expand
+     * @param token Security token of the caller
+     * @return One-hop graph of each vertex keyed by its element ID
+     * @throws TException if an expansion failed
+     */
+    private Map<ElementId, Graph> expand(List<Vertex> vertices, EzSecurityToken token) throws TException {
+        final Map<ElementId, Graph> neighborhoods = new HashMap<>(vertices.size());
+        try (ClientLease<EzGraphService.Client> lease =
+                clients.lease(EzGraphServiceConstants.SERVICE_NAME, EzGraphService.Client.class)) {
+            try {
+                for (final Vertex vertex : vertices) {
+                    neighborhoods.put(vertex.getId(), lease.getClient().expandSubgraph(graphName, vertex, 1, token));
+                }
+            } catch (final TException e) {
+                lease.invalidate();
+                throw e;
+            }
+        }
+
+        return neighborhoods;
+    }
+}
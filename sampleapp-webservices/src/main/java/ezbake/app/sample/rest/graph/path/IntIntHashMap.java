@@ -0,0 +1,162 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample.rest.graph.path;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash map from non-negative int keys to int values, used for the visited sets of path searches
+ * without boxing every vertex. Entries cannot be removed.
+ */
+final class IntIntHashMap {
+    private static final int EMPTY = -1;
+    private static final int MIN_CAPACITY = 16;
+
+    /**
+     * Keys and values are kept at most half full so that probe sequences stay short.
+     */
+    private static final int LOAD_DIVISOR = 2;
+
+    /**
+     * Multiplier that spreads sequential interned IDs over the table.
+     */
+    private static final int HASH_MULTIPLIER = 0x9E3779B9;
+
+    /**
+     * Folds the well-mixed high bits of a hash into the low bits used to index the table.
+     */
+    private static final int HASH_SHIFT = 16;
+
+    private int[] keys;
+    private int[] values;
+    private int size;
+
+    /**
+     * Constructor.
+     *
+     * @param expectedSize Number of entries expected
+     */
+    IntIntHashMap(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < expectedSize * LOAD_DIVISOR) {
+            capacity <<= 1;
+        }
+
+        allocate(capacity);
+    }
+
+    /**
+     * Checks whether a key is present.
+     *
+     * @param key Key to look up
+     * @return true if the key has a value, false otherwise
+     */
+    boolean containsKey(int key) {
+        return keys[indexOf(key)] != EMPTY;
+    }
+
+    /**
+     * Gets the value of a key.
+     *
+     * @param key Key to look up
+     * @param missing Value to return if the key is not present
+     * @return The value of the key, or the missing value
+     */
+    int get(int key, int missing) {
+        final int index = indexOf(key);
+        return keys[index] == EMPTY ? missing : values[index];
+    }
+
+    /**
+     * Sets the value of a key.
+     *
+     * @param key Key to set, which must not be negative
+     * @param value Value to set
+     */
+    void put(int key, int value) {
+        if (key < 0) {
+            throw new IllegalArgumentException("Negative key: " + key);
+        }
+
+        int index = indexOf(key);
+        if (keys[index] == EMPTY) {
+            if ((size + 1) * LOAD_DIVISOR > keys.length) {
+                rehash(keys.length << 1);
+                index = indexOf(key);
+            }
+
+            keys[index] = key;
+            size++;
+        }
+
+        values[index] = value;
+    }
+
+    /**
+     * Getter for the number of entries.
+     *
+     * @return Number of entries
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Finds the slot holding a key, or the empty slot where it would be inserted.
+     *
+     * @param key Key to find
+     * @return Index of the slot
+     */
+    private int indexOf(int key) {
+        final int mask = keys.length - 1;
+        final int hash = key * HASH_MULTIPLIER;
+        int index = (hash ^ (hash >>> HASH_SHIFT)) & mask;
+        while (keys[index] != EMPTY && keys[index] != key) {
+            index = (index + 1) & mask;
+        }
+
+        return index;
+    }
+
+    /**
+     * Allocates empty tables.
+     *
+     * @param capacity Number of slots, a power of two
+     */
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+    }
+
+    /**
+     * Moves all entries to larger tables.
+     *
+     * @param capacity New number of slots, a power of two
+     */
+    private void rehash(int capacity) {
+        final int[] oldKeys = keys;
+        final int[] oldValues = values;
+        allocate(capacity);
+
+        for (int idx = 0; idx < oldKeys.length; idx++) {
+            if (oldKeys[idx] != EMPTY) {
+                final int index = indexOf(oldKeys[idx]);
+                keys[index] = oldKeys[idx];
+                values[index] = oldValues[idx];
+            }
+        }
+    }
+}
@@ -0,0 +1,537 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample.rest.graph.path;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.thrift.TException;
+
+import ezbake.services.graph.thrift.types.Edge;
+import ezbake.services.graph.thrift.types.ElementId;
+import ezbake.services.graph.thrift.types.Graph;
+import ezbake.services.graph.thrift.types.Vertex;
+
+/**
+ * Finds shortest paths between two vertices with a bidirectional breadth-first search, expanding the smaller frontier
+ * one level at a time so that a high-degree endpoint does not dominate the search. Each level's neighborhoods are
+ * loaded in one batch and kept for the rest of the search. Vertices are interned to ints so that visited sets are
+ * primitive hash maps. Edges are treated as undirected.
+ * <p>
+ * The k shortest loopless paths are found with Yen's algorithm, whose spur searches mostly reuse neighborhoods that
+ * were already loaded. A finder holds the neighborhoods it loaded, so it is meant for a single request and is not
+ * thread-safe.
+ */
+public final class PathFinder {
+    /**
+     * Configuration property for the maximum number of neighborhoods loaded by one search, and its default. Each
+     * neighborhood is one graph service call, and a search that reaches the limit falls back to a single findPath
+     * call, so the limit bounds how much a miss or a distant pair costs over the graph service's own search.
+     */
+    public static final String MAX_VERTICES_PROP = "sampleapp.graph.path.max.vertices";
+    public static final int DEFAULT_MAX_VERTICES = 300;
+
+    private static final int NO_PARENT = -1;
+    private static final int NOT_VISITED = -1;
+    private static final int EDGE_KEY_SHIFT = 32;
+    private static final long EDGE_KEY_MASK = 0xFFFFFFFFL;
+
+    private final NeighborLoader loader;
+    private final int maxLoadedVertices;
+
+    /**
+     * Interned IDs keyed by element ID.
+     */
+    private final Map<ElementId, Integer> ids = new HashMap<>();
+
+    /**
+     * Vertices indexed by interned ID.
+     */
+    private final List<Vertex> vertices = new ArrayList<>();
+
+    /**
+     * Neighbors indexed by interned ID, null for vertices whose neighborhood has not been loaded.
+     */
+    private final List<int[]> adjacency = new ArrayList<>();
+
+    /**
+     * One edge for each connected pair of vertices, keyed by {@link #edgeKey(int, int)}.
+     */
+    private final Map<Long, Edge> edges = new HashMap<>();
+
+    private int loadedVertices;
+    private boolean limitReached;
+
+    /**
+     * Constructor.
+     *
+     * @param loader Loads the neighborhoods of vertices
+     * @param maxLoadedVertices Maximum number of neighborhoods to load before giving up
+     */
+    public PathFinder(NeighborLoader loader, int maxLoadedVertices) {
+        this.loader = loader;
+        this.maxLoadedVertices = maxLoadedVertices;
+    }
+
+    /**
+     * Finds the shortest paths between two vertices, shortest first.
+     *
+     * @param start Vertex at which paths start
+     * @param end Vertex at which paths end
+     * @param maxHops Maximum number of edges in a path
+     * @param count Maximum number of paths to find
+     * @return Up to the given number of paths, each a graph of its vertices and one edge per hop. Empty if the
+     * vertices are not connected within the given number of hops, or if the search reached its limit before finding
+     * a path.
+     * @throws TException if a neighborhood could not be loaded
+     */
+    public List<Graph> findPaths(Vertex start, Vertex end, int maxHops, int count) throws TException {
+        final int source = intern(start.getId(), start);
+        final int target = intern(end.getId(), end);
+
+        final List<int[]> found = new ArrayList<>(count);
+        final int[] shortest =
+                shortestPath(source, target, maxHops, new IntIntHashMap(0), Collections.<Long>emptySet());
+        if (shortest != null) {
+            found.add(shortest);
+        }
+
+        final List<int[]> candidates = new ArrayList<>();
+        while (!found.isEmpty() && found.size() < count && !limitReached) {
+            final int[] previous = found.get(found.size() - 1);
+            for (int spurIdx = 0; spurIdx < previous.length - 1 && !limitReached; spurIdx++) {
+                final int[] spurPath = findSpurPath(found, previous, spurIdx, target, maxHops);
+                if (spurPath != null) {
+                    final int[] candidate = Arrays.copyOf(previous, spurIdx + spurPath.length);
+                    System.arraycopy(spurPath, 0, candidate, spurIdx, spurPath.length);
+                    if (!containsPath(found, candidate) && !containsPath(candidates, candidate)) {
+                        candidates.add(candidate);
+                    }
+                }
+            }
+
+            if (candidates.isEmpty()) {
+                break;
+            }
+
+            found.add(removeShortest(candidates));
+        }
+
+        final List<Graph> paths = new ArrayList<>(found.size());
+        for (final int[] path : found) {
+            paths.add(toGraph(path));
+        }
+
+        return paths;
+    }
+
+    /**
+     * Whether the last search gave up because it would have loaded too many neighborhoods. Paths found before the
+     * limit was reached are still returned.
+     *
+     * @return true if the search reached its limit, false otherwise
+     */
+    public boolean isLimitReached() {
+        return limitReached;
+    }
+
+    /**
+     * Finds the shortest deviation from a path that leaves it at a given vertex, avoiding the edges that found paths
+     * with the same root take from that vertex.
+     *
+     * @param found Paths found so far
+     * @param previous Path to deviate from
+     * @param spurIdx Index in the path of the vertex at which to deviate
+     * @param target Vertex at which paths end
+     * @param maxHops Maximum number of edges in a whole path
+     * @return The spur path from the deviating vertex to the target, or null if there is none
+     * @throws TException if a neighborhood could not be loaded
+     */
+    private int[] findSpurPath(List<int[]> found, int[] previous, int spurIdx, int target, int maxHops)
+            throws TException {
+        final IntIntHashMap blockedVertices = new IntIntHashMap(spurIdx);
+        for (int idx = 0; idx < spurIdx; idx++) {
+            blockedVertices.put(previous[idx], 0);
+        }
+
+        final Set<Long> blockedEdges = new HashSet<>();
+        for (final int[] path : found) {
+            if (path.length > spurIdx + 1 && hasSameRoot(path, previous, spurIdx)) {
+                blockedEdges.add(edgeKey(path[spurIdx], path[spurIdx + 1]));
+            }
+        }
+
+        return shortestPath(previous[spurIdx], target, maxHops - spurIdx, blockedVertices, blockedEdges);
+    }
+
+    /**
+     * Finds a shortest path with a bidirectional breadth-first search.
+     *
+     * @param source Interned ID of the first vertex
+     * @param target Interned ID of the last vertex
+     * @param maxHops Maximum number of edges in the path
+     * @param blockedVertices Vertices the path may not visit
+     * @param blockedEdges Edges the path may not use, keyed by {@link #edgeKey(int, int)}
+     * @return Interned IDs of the vertices along the path, or null if there is no path or the search reached its
+     * limit
+     * @throws TException if a neighborhood could not be loaded
+     */
+    private int[] shortestPath(
+            int source, int target, int maxHops, IntIntHashMap blockedVertices, Set<Long> blockedEdges)
+            throws TException {
+        if (source == target) {
+            return new int[] {source};
+        }
+
+        final Search forward = new Search(source);
+        final Search backward = new Search(target);
+        int meeting = NOT_VISITED;
+        int meetingHops = Integer.MAX_VALUE;
+
+        while (meeting == NOT_VISITED && forward.depth + backward.depth < maxHops && !forward.frontier.isEmpty()
+                && !backward.frontier.isEmpty()) {
+            final boolean expandForward = forward.frontier.size() <= backward.frontier.size();
+            final Search expanding = expandForward ? forward : backward;
+            final Search other = expandForward ? backward : forward;
+
+            if (!load(expanding.frontier)) {
+                return null;
+            }
+
+            final IntList next = new IntList();
+            final int depth = expanding.depth + 1;
+            for (int idx = 0; idx < expanding.frontier.size(); idx++) {
+                final int vertex = expanding.frontier.get(idx);
+                for (final int neighbor : adjacency.get(vertex)) {
+                    if (expanding.parents.containsKey(neighbor) || blockedVertices.containsKey(neighbor)
+                            || blockedEdges.contains(edgeKey(vertex, neighbor))) {
+                        continue;
+                    }
+
+                    expanding.parents.put(neighbor, vertex);
+                    expanding.depths.put(neighbor, depth);
+                    next.add(neighbor);
+
+                    final int otherDepth = other.depths.get(neighbor, NOT_VISITED);
+                    if (otherDepth != NOT_VISITED && depth + otherDepth < meetingHops) {
+                        meeting = neighbor;
+                        meetingHops = depth + otherDepth;
+                    }
+                }
+            }
+
+            expanding.frontier = next;
+            expanding.depth = depth;
+        }
+
+        if (meeting == NOT_VISITED) {
+            return null;
+        }
+
+        final int[] path = new int[meetingHops + 1];
+        int idx = forward.depths.get(meeting, 0);
+        for (int vertex = meeting; vertex != NO_PARENT; vertex = forward.parents.get(vertex, NO_PARENT)) {
+            path[idx--] = vertex;
+        }
+
+        idx = forward.depths.get(meeting, 0);
+        for (int vertex = meeting; vertex != NO_PARENT; vertex = backward.parents.get(vertex, NO_PARENT)) {
+            path[idx++] = vertex;
+        }
+
+        return path;
+    }
+
+    /**
+     * Loads the neighborhoods of the vertices in a frontier that have not been loaded yet.
+     *
+     * @param frontier Interned IDs of the vertices
+     * @return true if all neighborhoods are loaded, false if loading them would exceed the limit
+     * @throws TException if a neighborhood could not be loaded
+     */
+    private boolean load(IntList frontier) throws TException {
+        final IntList missing = new IntList();
+        final List<Vertex> toLoad = new ArrayList<>();
+        for (int idx = 0; idx < frontier.size(); idx++) {
+            final int vertex = frontier.get(idx);
+            if (adjacency.get(vertex) == null) {
+                missing.add(vertex);
+                toLoad.add(vertices.get(vertex));
+            }
+        }
+
+        if (toLoad.isEmpty()) {
+            return true;
+        }
+
+        if (loadedVertices + toLoad.size() > maxLoadedVertices) {
+            limitReached = true;
+            return false;
+        }
+
+        loadedVertices += toLoad.size();
+        final Map<ElementId, Graph> neighborhoods = loader.load(toLoad);
+        for (int idx = 0; idx < missing.size(); idx++) {
+            final int vertex = missing.get(idx);
+            final Graph neighborhood = neighborhoods.get(vertices.get(vertex).getId());
+            adjacency.set(vertex, neighborhood == null ? new int[0] : addNeighborhood(vertex, neighborhood));
+        }
+
+        return true;
+    }
+
+    /**
+     * Interns the vertices of a neighborhood and records the edges incident to its center.
+     *
+     * @param center Interned ID of the vertex whose neighborhood this is
+     * @param neighborhood Graph of the vertex and its neighbors
+     * @return Interned IDs of the neighbors
+     */
+    private int[] addNeighborhood(int center, Graph neighborhood) {
+        final Map<ElementId, Vertex> neighborVertices = new HashMap<>();
+        if (neighborhood.getVertices() != null) {
+            for (final Vertex vertex : neighborhood.getVertices()) {
+                neighborVertices.put(vertex.getId(), vertex);
+            }
+        }
+
+        final IntList neighbors = new IntList();
+        if (neighborhood.getEdges() != null) {
+            for (final Edge edge : neighborhood.getEdges()) {
+                final int out = intern(edge.getOutVertex(), neighborVertices.get(edge.getOutVertex()));
+                final int in = intern(edge.getInVertex(), neighborVertices.get(edge.getInVertex()));
+                final int neighbor = out == center ? in : out;
+                if ((out == center || in == center) && neighbor != center) {
+                    neighbors.add(neighbor);
+                    final Long key = edgeKey(center, neighbor);
+                    if (!edges.containsKey(key)) {
+                        edges.put(key, edge);
+                    }
+                }
+            }
+        }
+
+        return neighbors.toArray();
+    }
+
+    /**
+     * Gets the interned ID of a vertex, interning it if necessary.
+     *
+     * @param id Element ID of the vertex
+     * @param vertex The vertex with its properties, or null if only the ID is known
+     * @return Interned ID
+     */
+    private int intern(ElementId id, Vertex vertex) {
+        final Integer interned = ids.get(id);
+        if (interned != null) {
+            if (vertex != null && vertex.isSetProperties() && !vertices.get(interned).isSetProperties()) {
+                vertices.set(interned, vertex);
+            }
+
+            return interned;
+        }
+
+        final int next = vertices.size();
+        ids.put(id, next);
+        vertices.add(vertex == null ? new Vertex().setId(id) : vertex);
+        adjacency.add(null);
+        return next;
+    }
+
+    /**
+     * Converts a path to a graph.
+     *
+     * @param path Interned IDs of the vertices along the path
+     * @return Graph of the vertices and one edge per hop
+     */
+    private Graph toGraph(int[] path) {
+        final List<Vertex> pathVertices = new ArrayList<>(path.length);
+        final List<Edge> pathEdges = new ArrayList<>(path.length);
+        for (int idx = 0; idx < path.length; idx++) {
+            pathVertices.add(vertices.get(path[idx]));
+            if (idx > 0) {
+                pathEdges.add(edges.get(edgeKey(path[idx - 1], path[idx])));
+            }
+        }
+
+        return new Graph().setVertices(pathVertices).setEdges(pathEdges);
+    }
+
+    /**
+     * Builds the key of an undirected edge.
+     *
+     * @param first Interned ID of one end of the edge
+     * @param second Interned ID of the other end of the edge
+     * @return Key that is the same for both directions
+     */
+    private static long edgeKey(int first, int second) {
+        final long low = Math.min(first, second);
+        final long high = Math.max(first, second);
+        return (high << EDGE_KEY_SHIFT) | (low & EDGE_KEY_MASK);
+    }
+
+    /**
+     * Checks whether two paths start with the same vertices.
+     *
+     * @param path Path to compare
+     * @param other Other path to compare
+     * @param lastIdx Index of the last vertex to compare
+     * @return true if the paths are the same up to and including the last index
+     */
+    private static boolean hasSameRoot(int[] path, int[] other, int lastIdx) {
+        for (int idx = 0; idx <= lastIdx; idx++) {
+            if (path[idx] != other[idx]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Checks whether a list holds a path.
+     *
+     * @param paths Paths to search
+     * @param path Path to find
+     * @return true if the path is in the list, false otherwise
+     */
+    private static boolean containsPath(List<int[]> paths, int[] path) {
+        for (final int[] existing : paths) {
+            if (Arrays.equals(existing, path)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Removes the path with the fewest hops from a list, the earliest one if several are equally short.
+     *
+     * @param paths Non-empty list of paths
+     * @return The removed path
+     */
+    private static int[] removeShortest(List<int[]> paths) {
+        int shortestIdx = 0;
+        for (int idx = 1; idx < paths.size(); idx++) {
+            if (paths.get(idx).length < paths.get(shortestIdx).length) {
+                shortestIdx = idx;
+            }
+        }
+
+        return paths.remove(shortestIdx);
+    }
+
+    /**
+     * State of one direction of a bidirectional search.
+     */
+    private static final class Search {
+        private final IntIntHashMap parents = new IntIntHashMap(0);
+        private final IntIntHashMap depths = new IntIntHashMap(0);
+        private IntList frontier = new IntList();
+        private int depth;
+
+        /**
+         * Constructor.
+         *
+         * @param origin Interned ID of the vertex from which this direction searches
+         */
+        Search(int origin) {
+            parents.put(origin, NO_PARENT);
+            depths.put(origin, 0);
+            frontier.add(origin);
+        }
+    }
+
+    /**
+     * Growable list of ints.
+     */
+    private static final class IntList {
+        private static final int INITIAL_CAPACITY = 8;
+
+        private int[] elements = new int[INITIAL_CAPACITY];
+        private int size;
+
+        /**
+         * Appends an element.
+         *
+         * @param element Element to append
+         */
+        void add(int element) {
+            if (size == elements.length) {
+                elements = Arrays.copyOf(elements, size << 1);
+            }
+
+            elements[size++] = element;
+        }
+
+        /**
+         * Gets an element.
+         *
+         * @param idx Index of the element
+         * @return The element
+         */
+        int get(int idx) {
+            return elements[idx];
+        }
+
+        /**
+         * Getter for the number of elements.
+         *
+         * @return Number of elements
+         */
+        int size() {
+            return size;
+        }
+
+        /**
+         * Checks whether the list is empty.
+         *
+         * @return true if the list has no elements, false otherwise
+         */
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        /**
+         * Copies the elements to an array.
+         *
+         * @return Array of the elements
+         */
+        int[] toArray() {
+            return Arrays.copyOf(elements, size);
+        }
+    }
+
+    /**
+     * Loads the neighborhoods of vertices from the graph.
+     */
+    public interface NeighborLoader {
+        /**
+         * Loads the neighborhoods of vertices.
+         *
+         * @param vertices Vertices whose neighborhoods to load
+         * @return Graph of each vertex, its neighbors and the edges to them, keyed by the vertex's element ID
+         * @throws TException if a neighborhood could not be loaded
+         */
+        Map<ElementId, Graph> load(List<Vertex> vertices) throws TException;
+    }
+}
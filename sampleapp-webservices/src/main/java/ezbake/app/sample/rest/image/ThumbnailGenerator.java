@@ -0,0 +1,346 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample.rest.image;
+
+import static javax.ws.rs.core.Response.Status.INTERNAL_SERVER_ERROR;
+import static javax.ws.rs.core.Response.Status.SERVICE_UNAVAILABLE;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.imageio.ImageIO;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import ezbake.app.sample.rest.WebServiceException;
+import ezbake.common.properties.EzProperties;
+import ezbake.services.indexing.image.thrift.IndexedImage;
+import ezbake.services.indexing.image.thrift.Thumbnail;
+import ezbake.services.indexing.image.thrift.ThumbnailSize;
+
+/**
+ * Generates thumbnails from original images when the image indexer does not have a thumbnail of the requested size.
+ * Resizing runs on a bounded worker pool, and concurrent requests for the same thumbnail are collapsed so that the
+ * original is fetched and resized only once.
+ * <p>
+ * Requests are only collapsed when they come from callers with the same authorizations fingerprint, as the original
+ * is fetched with the credentials of the first caller. All collapsed callers see the outcome of the first: its
+ * thumbnail, or the same error status when the pool is saturated or the resize times out.
+ */
+public final class ThumbnailGenerator implements Closeable {
+    /**
+     * Configuration properties and their defaults.
+     */
+    public static final String THREADS_PROP = "sampleapp.images.thumbnail.threads";
+    public static final String QUEUE_SIZE_PROP = "sampleapp.images.thumbnail.queue";
+    public static final String TIMEOUT_SECONDS_PROP = "sampleapp.images.thumbnail.timeout.seconds";
+    public static final String PIXELS_PROP_PREFIX = "sampleapp.images.thumbnail.pixels.";
+
+    private static final Logger logger = LoggerFactory.getLogger(ThumbnailGenerator.class);
+
+    private static final int DEFAULT_THREADS = 2;
+    private static final int DEFAULT_QUEUE_SIZE = 64;
+    private static final int DEFAULT_TIMEOUT_SECONDS = 30;
+    private static final int DEFAULT_SMALL_PIXELS = 100;
+    private static final int DEFAULT_MEDIUM_PIXELS = 250;
+    private static final int DEFAULT_LARGE_PIXELS = 500;
+
+    private static final String PNG_FORMAT = "png";
+    private static final String PNG_MIME_TYPE = "image/png";
+    private static final String JPEG_FORMAT = "jpeg";
+    private static final String JPEG_MIME_TYPE = "image/jpeg";
+
+    private static final char KEY_SEPARATOR = '/';
+
+    /**
+     * Pool on which images are decoded, resized and encoded.
+     */
+    private final ExecutorService resizePool;
+
+    /**
+     * Generations in progress keyed by authorizations fingerprint, image ID and thumbnail size.
+     */
+    private final ConcurrentMap<String, Future<Thumbnail>> inFlight = new ConcurrentHashMap<>();
+
+    private final EzProperties props;
+    private final long timeoutSeconds;
+
+    /**
+     * Constructor.
+     *
+     * @param props Configuration properties
+     */
+    public ThumbnailGenerator(EzProperties props) {
+        this(props, createResizePool(props));
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param props Configuration properties
+     * @param resizePool Pool on which to decode, resize and encode images
+     */
+    ThumbnailGenerator(EzProperties props, ExecutorService resizePool) {
+        this.props = props;
+        this.resizePool = resizePool;
+        timeoutSeconds = props.getInteger(TIMEOUT_SECONDS_PROP, DEFAULT_TIMEOUT_SECONDS);
+    }
+
+    /**
+     * Generates a thumbnail, or waits for a generation of the same thumbnail already in progress for a caller with the
+     * same authorizations.
+     *
+     * @param authsFingerprint Authorizations fingerprint of the caller
+     * @param ezBakeImageId EzBake image ID of the image
+     * @param size Size of the thumbnail
+     * @param originalLoader Loads the original image with its binary using the caller's credentials. Only called for
+     * the first of a set of concurrent callers, on that caller's thread.
+     * @return The generated thumbnail
+     * @throws WebServiceException with the status thrown by the loader, 503 if the resize pool is saturated, the
+     * thumbnail was not generated in time or the caller was interrupted, or 500 if the thumbnail could not be generated
+     */
+    public Thumbnail generate(
+            String authsFingerprint, String ezBakeImageId, ThumbnailSize size, Callable<IndexedImage> originalLoader) {
+        final String errMsg = String.format(
+                "Could not generate thumbnail of size '%s' for image with EzBake image ID '%s'", size, ezBakeImageId);
+
+        try {
+            return generateOrJoin(
+                    authsFingerprint + KEY_SEPARATOR + ezBakeImageId + KEY_SEPARATOR + size, size, originalLoader);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof WebServiceException) {
+                throw (WebServiceException) e.getCause();
+            }
+
+            logger.error(errMsg, e.getCause());
+            throw new WebServiceException(INTERNAL_SERVER_ERROR, errMsg);
+        } catch (final RejectedExecutionException | TimeoutException e) {
+            logger.error(errMsg, e);
+            throw new WebServiceException(SERVICE_UNAVAILABLE, errMsg);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.error(errMsg, e);
+            throw new WebServiceException(SERVICE_UNAVAILABLE, errMsg);
+        }
+    }
+
+    /**
+     * Stops the resize pool, interrupting resizes in progress.
+     */
+    @Override
+    public void close() {
+        resizePool.shutdownNow();
+    }
+
+    /**
+     * Generates a thumbnail as the first caller, sharing the outcome with the callers that join it, or joins a
+     * generation already in progress.
+     *
+     * @param key Key of the generation
+     * @param size Size of the thumbnail
+     * @param originalLoader Loads the original image with its binary
+     * @return The generated thumbnail
+     * @throws ExecutionException if loading the original or resizing it failed
+     * @throws TimeoutException if the thumbnail was not generated in time
+     * @throws InterruptedException if interrupted while waiting for the thumbnail
+     * @throws RejectedExecutionException if the resize pool is saturated
+     */
+    private Thumbnail generateOrJoin(String key, ThumbnailSize size, Callable<IndexedImage> originalLoader)
+            throws ExecutionException, TimeoutException, InterruptedException {
+        final SettableFuture<Thumbnail> generation = SettableFuture.create();
+        final Future<Thumbnail> existing = inFlight.putIfAbsent(key, generation);
+        if (existing != null) {
+            return join(existing);
+        }
+
+        try {
+            final Thumbnail thumbnail = generateNow(size, originalLoader);
+            generation.set(thumbnail);
+            return thumbnail;
+        } catch (final Exception e) {
+            generation.setException(e instanceof ExecutionException ? e.getCause() : e);
+            throw e;
+        } finally {
+            inFlight.remove(key, generation);
+        }
+    }
+
+    /**
+     * Loads the original on the caller's thread and resizes it on the resize pool. A resize that does not finish in
+     * time is cancelled, so that it does not hold on to a pool thread.
+     *
+     * @param size Size of the thumbnail
+     * @param originalLoader Loads the original image with its binary
+     * @return The generated thumbnail
+     * @throws ExecutionException if loading the original or resizing it failed
+     * @throws TimeoutException if the thumbnail was not generated in time
+     * @throws InterruptedException if interrupted while waiting for the thumbnail
+     * @throws RejectedExecutionException if the resize pool is saturated
+     */
+    private Thumbnail generateNow(final ThumbnailSize size, Callable<IndexedImage> originalLoader)
+            throws ExecutionException, TimeoutException, InterruptedException {
+        final IndexedImage original;
+        try {
+            original = originalLoader.call();
+        } catch (final Exception e) {
+            throw new ExecutionException(e);
+        }
+
+        final Future<Thumbnail> resize = resizePool.submit(
+                new Callable<Thumbnail>() {
+                    @Override
+                    public Thumbnail call() throws IOException {
+                        return resize(original, getMaxPixels(size));
+                    }
+                });
+
+        try {
+            return resize.get(timeoutSeconds, TimeUnit.SECONDS);
+        } catch (final TimeoutException | InterruptedException e) {
+            resize.cancel(true);
+            throw e;
+        }
+    }
+
+    /**
+     * Waits for a generation started by another caller. Failures to get the resize pool to run the generation, or to
+     * generate in time, are reported as they were to the first caller.
+     *
+     * @param generation Generation in progress
+     * @return The generated thumbnail
+     * @throws ExecutionException if loading the original or resizing it failed
+     * @throws TimeoutException if the thumbnail was not generated in time
+     * @throws InterruptedException if interrupted while waiting for the thumbnail
+     * @throws RejectedExecutionException if the resize pool was saturated
+     */
+    private Thumbnail join(Future<Thumbnail> generation)
+            throws ExecutionException, TimeoutException, InterruptedException {
+        try {
+            return generation.get(timeoutSeconds, TimeUnit.SECONDS);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof RejectedExecutionException) {
+                throw new RejectedExecutionException("Joined thumbnail generation was rejected", e.getCause());
+            }
+
+            if (e.getCause() instanceof TimeoutException) {
+                final TimeoutException timeout = new TimeoutException("Joined thumbnail generation timed out");
+                timeout.initCause(e.getCause());
+                throw timeout;
+            }
+
+            throw e;
+        }
+    }
+
+    /**
+     * Creates the pool on which images are resized.
+     *
+     * @param props Configuration properties
+     * @return Resize pool
+     */
+    private static ThreadPoolExecutor createResizePool(EzProperties props) {
+        final int threads = props.getInteger(THREADS_PROP, DEFAULT_THREADS);
+        return new ThreadPoolExecutor(
+                threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(props.getInteger(QUEUE_SIZE_PROP, DEFAULT_QUEUE_SIZE)),
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("thumbnail-generator-%d").build());
+    }
+
+    /**
+     * Gets the maximum width and height of a thumbnail size.
+     *
+     * @param size Size of the thumbnail
+     * @return Maximum width and height in pixels
+     */
+    private int getMaxPixels(ThumbnailSize size) {
+        final int defaultPixels;
+        switch (size) {
+            case SMALL:
+                defaultPixels = DEFAULT_SMALL_PIXELS;
+                break;
+            case MEDIUM:
+                defaultPixels = DEFAULT_MEDIUM_PIXELS;
+                break;
+            default:
+                defaultPixels = DEFAULT_LARGE_PIXELS;
+                break;
+        }
+
+        return props.getInteger(PIXELS_PROP_PREFIX + size.name().toLowerCase(), defaultPixels);
+    }
+
+    /**
+     * Scales an image down to fit within a square, preserving its aspect ratio. Images that already fit are re-encoded
+     * without scaling. JPEG originals produce JPEG thumbnails and all other formats produce PNG.
+     *
+     * @param original Original image with its binary
+     * @param maxPixels Maximum width and height of the thumbnail
+     * @return The thumbnail
+     * @throws IOException if the image could not be decoded or encoded
+     */
+    private static Thumbnail resize(IndexedImage original, int maxPixels) throws IOException {
+        final BufferedImage source = ImageIO.read(new ByteArrayInputStream(original.getImageData().getBlob()));
+        if (source == null) {
+            throw new IOException("Unsupported image format: " + original.getImageData().getMimeType());
+        }
+
+        final double scale = Math.min(1.0, (double) maxPixels / Math.max(source.getWidth(), source.getHeight()));
+        final int width = Math.max(1, (int) Math.round(source.getWidth() * scale));
+        final int height = Math.max(1, (int) Math.round(source.getHeight() * scale));
+        final boolean jpeg = JPEG_MIME_TYPE.equals(original.getImageData().getMimeType());
+
+        final BufferedImage scaled =
+                new BufferedImage(width, height, jpeg ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
+
+        final Graphics2D graphics = scaled.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(source, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        if (!ImageIO.write(scaled, jpeg ? JPEG_FORMAT : PNG_FORMAT, bytes)) {
+            throw new IOException("No image writer available for thumbnail");
+        }
+
+        final Thumbnail thumbnail = new Thumbnail();
+        thumbnail.setThumbnailBytes(bytes.toByteArray());
+        thumbnail.setMimeType(jpeg ? JPEG_MIME_TYPE : PNG_MIME_TYPE);
+        return thumbnail;
+    }
+}
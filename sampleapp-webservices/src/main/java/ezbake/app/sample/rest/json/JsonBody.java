@@ -0,0 +1,61 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample.rest.json;
+
+import org.codehaus.jettison.json.JSONObject;
+
+/**
+ * A request body that has been parsed and validated as a JSON object by {@link JsonBodyReader}. The original text is
+ * kept alongside the parsed object so that it can be passed on to services that take JSON strings without being
+ * serialized again.
+ */
+public final class JsonBody {
+    private final String text;
+    private final JSONObject object;
+
+    /**
+     * Constructor.
+     *
+     * @param text Request body as sent by the client
+     * @param object Request body parsed as a JSON object
+     */
+    public JsonBody(String text, JSONObject object) {
+        this.text = text;
+        this.object = object;
+    }
+
+    /**
+     * Getter for the request body as sent by the client.
+     *
+     * @return Request body text
+     */
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * Getter for the parsed request body.
+     *
+     * @return Request body as a JSON object
+     */
+    public JSONObject getObject() {
+        return object;
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+}
@@ -0,0 +1,159 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample.rest.json;
+
+import static javax.ws.rs.core.Response.Status.BAD_REQUEST;
+import static javax.ws.rs.core.Response.Status.REQUEST_ENTITY_TOO_LARGE;
+import static javax.ws.rs.core.Response.Status.UNSUPPORTED_MEDIA_TYPE;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import javax.ws.rs.Consumes;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.MessageBodyReader;
+import javax.ws.rs.ext.Provider;
+
+import org.codehaus.jettison.json.JSONException;
+import org.codehaus.jettison.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ezbake.app.sample.rest.SampleAppContext;
+import ezbake.app.sample.rest.WebServiceException;
+
+/**
+ * Reads JSON request bodies into {@link JsonBody} objects, so that resources receive a body that has been parsed and
+ * validated exactly once. Bodies larger than a configured size are rejected, from their Content-Length when the client
+ * sends one and otherwise as soon as the limit is passed while reading, so oversized queries are never parsed.
+ */
+@Provider
+@Consumes(MediaType.APPLICATION_JSON)
+public final class JsonBodyReader implements MessageBodyReader<JsonBody> {
+    /**
+     * Configuration properties and their defaults.
+     */
+    public static final String MAX_BYTES_PROP = "sampleapp.json.max.bytes";
+
+    private static final Logger logger = LoggerFactory.getLogger(JsonBodyReader.class);
+
+    private static final int DEFAULT_MAX_BYTES = 1024 * 1024;
+    private static final int BUFFER_SIZE = 8192;
+
+    private static final String CHARSET_PARAM = "charset";
+    private static final String INVALID_BODY_ERR_MSG = "Request body must be a valid JSON object";
+
+    /**
+     * Largest request body accepted, in bytes.
+     */
+    private final int maxBytes;
+
+    /**
+     * Constructor.
+     */
+    public JsonBodyReader() {
+        this(SampleAppContext.get().getProperties().getInteger(MAX_BYTES_PROP, DEFAULT_MAX_BYTES));
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param maxBytes Largest request body accepted, in bytes
+     */
+    JsonBodyReader(int maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    @Override
+    public boolean isReadable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        return JsonBody.class.equals(type);
+    }
+
+    @Override
+    public JsonBody readFrom(
+            Class<JsonBody> type, Type genericType, Annotation[] annotations, MediaType mediaType,
+            MultivaluedMap<String, String> httpHeaders, InputStream entityStream) throws IOException {
+        final String contentLength = httpHeaders.getFirst(HttpHeaders.CONTENT_LENGTH);
+        if (contentLength != null) {
+            try {
+                if (Long.parseLong(contentLength) > maxBytes) {
+                    throw tooLarge();
+                }
+            } catch (final NumberFormatException e) {
+                logger.debug("Ignoring invalid Content-Length: {}", contentLength);
+            }
+        }
+
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[BUFFER_SIZE];
+        int read;
+        while ((read = entityStream.read(buffer)) != -1) {
+            if (body.size() + read > maxBytes) {
+                throw tooLarge();
+            }
+
+            body.write(buffer, 0, read);
+        }
+
+        if (body.size() == 0) {
+            throw new WebServiceException(BAD_REQUEST, INVALID_BODY_ERR_MSG);
+        }
+
+        final String text = new String(body.toByteArray(), getCharset(mediaType));
+        try {
+            return new JsonBody(text, new JSONObject(text));
+        } catch (final JSONException e) {
+            logger.error(INVALID_BODY_ERR_MSG, e);
+            throw new WebServiceException(BAD_REQUEST, INVALID_BODY_ERR_MSG + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Gets the charset of a request body, defaulting to UTF-8 as JSON requires.
+     *
+     * @param mediaType Media type of the request body
+     * @return Charset with which to decode the body
+     */
+    private static Charset getCharset(MediaType mediaType) {
+        final String charset = mediaType == null ? null : mediaType.getParameters().get(CHARSET_PARAM);
+        if (charset == null) {
+            return StandardCharsets.UTF_8;
+        }
+
+        try {
+            return Charset.forName(charset);
+        } catch (final IllegalArgumentException e) {
+            throw new WebServiceException(UNSUPPORTED_MEDIA_TYPE, "Unsupported request charset: " + charset);
+        }
+    }
+
+    /**
+     * Builds the error for a request body over the size limit.
+     *
+     * @return Exception to throw
+     */
+    private WebServiceException tooLarge() {
+        final String errMsg = String.format("Request body is larger than %d bytes", maxBytes);
+        logger.error(errMsg);
+        return new WebServiceException(REQUEST_ENTITY_TOO_LARGE, errMsg);
+    }
+}
@@ -0,0 +1,110 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample.rest.pool;
+
+import org.apache.thrift.TServiceClient;
+
+import ezbake.app.sample.trace.Span;
+
+/**
+ * A Thrift client borrowed from a {@link ClientLeasePool}. Leases are meant to be used in try-with-resources blocks so
+ * that the client is always returned to the pool, however the block exits. A call that fails may leave the client's
+ * connection part way through a message, so callers invalidate the lease when a call throws:
+ *
+ * <pre>
+ * try (ClientLease&lt;EzGraphService.Client&gt; lease = pool.lease(...)) {
+ *     try {
+ *         return lease.getClient().findPath(...);
+ *     } catch (final TException e) {
+ *         lease.invalidate();
+ *         throw e;
+ *     }
+ * }
+ * </pre>
+ *
+ * @param <T> Type of the Thrift client
+ */
+public final class ClientLease<T extends TServiceClient> implements AutoCloseable {
+    private final ClientLeasePool owner;
+    private final String serviceName;
+    private final T client;
+    private final long leasedAtNanos;
+    private final Span span;
+    private boolean broken;
+    private boolean closed;
+
+    /**
+     * Constructor.
+     *
+     * @param owner Pool that the client was borrowed from
+     * @param serviceName Name of the service that the client connects to
+     * @param client Borrowed client
+     * @param span Span timing the calls made with the client while it is leased
+     */
+    ClientLease(ClientLeasePool owner, String serviceName, T client, Span span) {
+        this.owner = owner;
+        this.serviceName = serviceName;
+        this.client = client;
+        this.span = span;
+        leasedAtNanos = System.nanoTime();
+    }
+
+    /**
+     * Getter for the borrowed client. The client must not be used after the lease is closed.
+     *
+     * @return The borrowed client
+     */
+    public T getClient() {
+        return client;
+    }
+
+    /**
+     * Getter for the name of the service that the client connects to.
+     *
+     * @return Service name
+     */
+    public String getServiceName() {
+        return serviceName;
+    }
+
+    /**
+     * Marks the client as no longer usable, for example after a transport error, so that it is discarded instead of
+     * being returned to the pool when the lease is closed.
+     */
+    public void invalidate() {
+        broken = true;
+    }
+
+    /**
+     * Returns the client to the pool, or discards it if it was invalidated or the leasing thread was interrupted, since
+     * an interrupted call may have abandoned a response. Closing a lease more than once has no effect.
+     */
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            if (Thread.currentThread().isInterrupted()) {
+                broken = true;
+            }
+
+            if (broken) {
+                span.setError();
+            }
+
+            span.close();
+            owner.release(this, System.nanoTime() - leasedAtNanos, broken);
+        }
+    }
+}
@@ -0,0 +1,487 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample.rest.pool;
+
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import org.apache.thrift.TException;
+import org.apache.thrift.TServiceClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import ezbake.app.sample.trace.Tracer;
+import ezbake.base.thrift.EzBakeBaseService;
+import ezbake.common.properties.EzProperties;
+import ezbake.thrift.ThriftClientPool;
+
+/**
+ * Hands out Thrift clients from a {@link ThriftClientPool} as {@link ClientLease}s, which guarantee that clients are
+ * returned to the pool, and records how many clients are out and for how long. The statistics are published over JMX
+ * under {@value #JMX_DOMAIN}.
+ * <p>
+ * One pool is shared by the whole application. Each service has its own limit on the number of clients leased at
+ * once, so that one slow service cannot take every connection. Services registered with
+ * {@link #register(String, String, Class)} are warmed up when registered and then pinged periodically, and clients
+ * that fail the health check are discarded rather than returned to the pool.
+ * <p>
+ * When the leasing thread is part of a trace, each lease is recorded as a span named after the service, so that the
+ * trace shows the time spent in every Thrift call that the request made.
+ */
+public final class ClientLeasePool implements ClientLeasePoolMBean, Closeable {
+    /**
+     * Configuration properties, formatted with the service name where noted, and their defaults.
+     */
+    public static final String MAX_CLIENTS_PROP_FORMAT = "sampleapp.thrift.%s.max.clients";
+    public static final String WARM_UP_CLIENTS_PROP_FORMAT = "sampleapp.thrift.%s.warmup";
+    public static final String LEASE_TIMEOUT_MILLIS_PROP = "sampleapp.thrift.lease.timeout.millis";
+    public static final String HEALTH_CHECK_SECONDS_PROP = "sampleapp.thrift.health.interval.seconds";
+
+    private static final Logger logger = LoggerFactory.getLogger(ClientLeasePool.class);
+
+    private static final String JMX_DOMAIN = "ezbake.app.sample";
+
+    private static final int DEFAULT_MAX_CLIENTS = 32;
+    private static final int DEFAULT_WARM_UP_CLIENTS = 1;
+    private static final long DEFAULT_LEASE_TIMEOUT_MILLIS = 5000;
+    private static final long DEFAULT_HEALTH_CHECK_SECONDS = 30;
+
+    /**
+     * Leases held longer than this are counted and logged as they usually indicate a slow or stuck service.
+     */
+    private static final long LONG_LEASE_MILLIS = 1000;
+
+    private final String name;
+    private final ClientSource pool;
+    private final EzProperties props;
+    private final long leaseTimeoutMillis;
+    private final ObjectName objectName;
+    private final Tracer tracer;
+
+    /**
+     * Permits limiting the number of clients leased at once, keyed by service name.
+     */
+    private final ConcurrentMap<String, Semaphore> limits = new ConcurrentHashMap<>();
+
+    /**
+     * Services that are health checked, keyed by service name.
+     */
+    private final ConcurrentMap<String, Service<?>> services = new ConcurrentHashMap<>();
+
+    /**
+     * Runs the health checks.
+     */
+    private final ScheduledExecutorService healthChecker;
+
+    private final AtomicInteger activeLeases = new AtomicInteger();
+    private final AtomicInteger peakActiveLeases = new AtomicInteger();
+    private final AtomicLong totalLeases = new AtomicLong();
+    private final AtomicLong failedLeases = new AtomicLong();
+    private final AtomicLong longLeases = new AtomicLong();
+    private final AtomicLong totalLeaseNanos = new AtomicLong();
+    private final AtomicLong maxLeaseNanos = new AtomicLong();
+    private final AtomicLong failedHealthChecks = new AtomicLong();
+
+    /**
+     * Constructor. Registers the pool's statistics with the platform MBean server and starts the health checks.
+     *
+     * @param name Name of the pool, used to identify it over JMX
+     * @param pool Pool to borrow clients from, which is closed with this pool
+     * @param props Configuration properties
+     */
+    public ClientLeasePool(String name, ThriftClientPool pool, EzProperties props) {
+        this(name, new ThriftClientSource(pool), props);
+    }
+
+    /**
+     * Constructor for leasing clients from another source.
+     *
+     * @param name Name of the pool, used to identify it over JMX
+     * @param pool Source to borrow clients from, which is closed with this pool
+     * @param props Configuration properties
+     */
+    ClientLeasePool(String name, ClientSource pool, EzProperties props) {
+        this.name = name;
+        this.pool = pool;
+        this.props = props;
+        leaseTimeoutMillis = props.getLong(LEASE_TIMEOUT_MILLIS_PROP, DEFAULT_LEASE_TIMEOUT_MILLIS);
+        tracer = Tracer.get(props);
+
+        ObjectName registered = null;
+        try {
+            registered = new ObjectName(JMX_DOMAIN + ":type=ClientLeasePool,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, registered);
+        } catch (final JMException e) {
+            logger.warn("Could not register JMX statistics for client pool {}", name, e);
+            registered = null;
+        }
+
+        objectName = registered;
+
+        final long healthCheckSeconds = props.getLong(HEALTH_CHECK_SECONDS_PROP, DEFAULT_HEALTH_CHECK_SECONDS);
+        healthChecker = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("client-health-check-%d").build());
+        healthChecker.scheduleWithFixedDelay(
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        checkHealth();
+                    }
+                }, healthCheckSeconds, healthCheckSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Registers a service used by the application. The configured number of clients is leased and returned straight
+     * away so that connections are open before the first request, and the service is health checked from then on.
+     * Warm-up failures are logged, as the service may simply not be up yet.
+     *
+     * @param appName Name of the application that the service belongs to, or null for a common service
+     * @param serviceName Name of the service
+     * @param clientClass Class of the Thrift client
+     * @param <T> Type of the Thrift client
+     */
+    public <T extends TServiceClient> void register(String appName, String serviceName, Class<T> clientClass) {
+        final Service<T> service = new Service<>(appName, serviceName, clientClass);
+        if (services.putIfAbsent(serviceName, service) != null) {
+            return;
+        }
+
+        final int warmUpClients = props.getInteger(
+                String.format(WARM_UP_CLIENTS_PROP_FORMAT, serviceName), DEFAULT_WARM_UP_CLIENTS);
+
+        final List<ClientLease<T>> leases = new ArrayList<>(warmUpClients);
+        try {
+            for (int i = 0; i < warmUpClients; i++) {
+                leases.add(lease(service));
+            }
+        } catch (final TException | RuntimeException e) {
+            logger.warn("Could not warm up clients for {}", serviceName, e);
+        } finally {
+            for (final ClientLease<T> lease : leases) {
+                lease.close();
+            }
+        }
+
+        logger.info("Warmed up {} client(s) for {}", leases.size(), serviceName);
+    }
+
+    /**
+     * Leases a client for a common service.
+     *
+     * @param serviceName Name of the common service
+     * @param clientClass Class of the Thrift client
+     * @param <T> Type of the Thrift client
+     * @return Lease of the client, which must be closed
+     * @throws TException if a client could not be borrowed from the pool, or none became available in time
+     */
+    public <T extends TServiceClient> ClientLease<T> lease(String serviceName, Class<T> clientClass)
+            throws TException {
+        return lease(new Service<>(null, serviceName, clientClass));
+    }
+
+    /**
+     * Leases a client for an application service.
+     *
+     * @param appName Name of the application that the service belongs to
+     * @param serviceName Name of the service
+     * @param clientClass Class of the Thrift client
+     * @param <T> Type of the Thrift client
+     * @return Lease of the client, which must be closed
+     * @throws TException if a client could not be borrowed from the pool, or none became available in time
+     */
+    public <T extends TServiceClient> ClientLease<T> lease(String appName, String serviceName, Class<T> clientClass)
+            throws TException {
+        return lease(new Service<>(appName, serviceName, clientClass));
+    }
+
+    /**
+     * Stops the health checks, unregisters the pool from JMX and closes the underlying pool.
+     */
+    @Override
+    public void close() {
+        healthChecker.shutdownNow();
+
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (final JMException e) {
+                logger.warn("Could not unregister JMX statistics for client pool {}", name, e);
+            }
+        }
+
+        pool.close();
+    }
+
+    @Override
+    public int getActiveLeases() {
+        return activeLeases.get();
+    }
+
+    @Override
+    public int getPeakActiveLeases() {
+        return peakActiveLeases.get();
+    }
+
+    @Override
+    public long getTotalLeases() {
+        return totalLeases.get();
+    }
+
+    @Override
+    public long getFailedLeases() {
+        return failedLeases.get();
+    }
+
+    @Override
+    public long getLongLeases() {
+        return longLeases.get();
+    }
+
+    @Override
+    public double getAverageLeaseMillis() {
+        final long completed = totalLeases.get() - activeLeases.get();
+        return completed <= 0 ? 0 : (double) TimeUnit.NANOSECONDS.toMillis(totalLeaseNanos.get()) / completed;
+    }
+
+    @Override
+    public long getMaxLeaseMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(maxLeaseNanos.get());
+    }
+
+    @Override
+    public long getFailedHealthChecks() {
+        return failedHealthChecks.get();
+    }
+
+    /**
+     * Returns a leased client to the pool and records the lease's duration.
+     *
+     * @param lease Lease being closed
+     * @param leaseNanos How long the client was leased for
+     * @param broken true if the client is no longer usable and must be discarded
+     */
+    void release(ClientLease<?> lease, long leaseNanos, boolean broken) {
+        try {
+            if (broken) {
+                pool.returnBrokenToPool(lease.getClient());
+            } else {
+                pool.returnToPool(lease.getClient());
+            }
+        } finally {
+            getLimit(lease.getServiceName()).release();
+        }
+
+        activeLeases.decrementAndGet();
+        totalLeaseNanos.addAndGet(leaseNanos);
+
+        long max = maxLeaseNanos.get();
+        while (leaseNanos > max && !maxLeaseNanos.compareAndSet(max, leaseNanos)) {
+            max = maxLeaseNanos.get();
+        }
+
+        final long leaseMillis = TimeUnit.NANOSECONDS.toMillis(leaseNanos);
+        if (leaseMillis > LONG_LEASE_MILLIS) {
+            longLeases.incrementAndGet();
+            logger.warn("Client for {} from pool {} was leased for {} ms", lease.getServiceName(), name, leaseMillis);
+        }
+    }
+
+    /**
+     * Leases a client once the service is below its limit.
+     *
+     * @param service Service to lease a client for
+     * @param <T> Type of the Thrift client
+     * @return Lease of the client
+     * @throws TException if a client could not be borrowed from the pool, or none became available in time
+     */
+    private <T extends TServiceClient> ClientLease<T> lease(Service<T> service) throws TException {
+        final Semaphore limit = getLimit(service.serviceName);
+        try {
+            if (!limit.tryAcquire(leaseTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                failedLeases.incrementAndGet();
+                throw new TException(
+                        String.format(
+                                "No %s client became available within %d ms", service.serviceName,
+                                leaseTimeoutMillis));
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failedLeases.incrementAndGet();
+            throw new TException("Interrupted while waiting for a client for " + service.serviceName, e);
+        }
+
+        try {
+            final T client = pool.getClient(service.appName, service.serviceName, service.clientClass);
+            return leased(service.serviceName, client);
+        } catch (final TException | RuntimeException e) {
+            limit.release();
+            failedLeases.incrementAndGet();
+            throw e;
+        }
+    }
+
+    /**
+     * Gets the permits limiting the number of clients leased for a service.
+     *
+     * @param serviceName Name of the service
+     * @return The service's permits
+     */
+    private Semaphore getLimit(String serviceName) {
+        Semaphore limit = limits.get(serviceName);
+        if (limit == null) {
+            final Semaphore created = new Semaphore(
+                    props.getInteger(String.format(MAX_CLIENTS_PROP_FORMAT, serviceName), DEFAULT_MAX_CLIENTS), true);
+
+            limit = limits.putIfAbsent(serviceName, created);
+            if (limit == null) {
+                limit = created;
+            }
+        }
+
+        return limit;
+    }
+
+    /**
+     * Wraps a borrowed client in a lease and records it.
+     *
+     * @param serviceName Name of the service that the client connects to
+     * @param client Borrowed client
+     * @param <T> Type of the Thrift client
+     * @return Lease of the client
+     */
+    private <T extends TServiceClient> ClientLease<T> leased(String serviceName, T client) {
+        totalLeases.incrementAndGet();
+        final int active = activeLeases.incrementAndGet();
+
+        int peak = peakActiveLeases.get();
+        while (active > peak && !peakActiveLeases.compareAndSet(peak, active)) {
+            peak = peakActiveLeases.get();
+        }
+
+        return new ClientLease<>(this, serviceName, client, tracer.startSpan(serviceName));
+    }
+
+    /**
+     * Pings one client of each registered service that is not fully leased, discarding clients that do not answer.
+     */
+    private void checkHealth() {
+        for (final Service<?> service : services.values()) {
+            if (getLimit(service.serviceName).availablePermits() == 0) {
+                // Every client is in use, so the service is being exercised by requests anyway
+                continue;
+            }
+
+            final ClientLease<?> lease;
+            try {
+                lease = lease(service);
+            } catch (final TException | RuntimeException e) {
+                failedHealthChecks.incrementAndGet();
+                logger.warn("Health check could not get a client for {}", service.serviceName, e);
+                continue;
+            }
+
+            try {
+                if (lease.getClient() instanceof EzBakeBaseService.Client
+                        && !((EzBakeBaseService.Client) lease.getClient()).ping()) {
+                    throw new TException(service.serviceName + " answered ping with false");
+                }
+            } catch (final TException | RuntimeException e) {
+                failedHealthChecks.incrementAndGet();
+                lease.invalidate();
+                logger.warn("Health check failed for {}, discarding client", service.serviceName, e);
+            } finally {
+                lease.close();
+            }
+        }
+    }
+
+    /**
+     * A service and the client class used to talk to it.
+     *
+     * @param <T> Type of the Thrift client
+     */
+    private static final class Service<T extends TServiceClient> {
+        private final String appName;
+        private final String serviceName;
+        private final Class<T> clientClass;
+
+        /**
+         * Constructor.
+         *
+         * @param appName Name of the application that the service belongs to, or null for a common service
+         * @param serviceName Name of the service
+         * @param clientClass Class of the Thrift client
+         */
+        Service(String appName, String serviceName, Class<T> clientClass) {
+            this.appName = appName;
+            this.serviceName = serviceName;
+            this.clientClass = clientClass;
+        }
+    }
+
+    /**
+     * Borrows clients from a {@link ThriftClientPool}.
+     */
+    private static final class ThriftClientSource implements ClientSource {
+        private final ThriftClientPool pool;
+
+        /**
+         * Constructor.
+         *
+         * @param pool Pool to borrow clients from
+         */
+        ThriftClientSource(ThriftClientPool pool) {
+            this.pool = pool;
+        }
+
+        @Override
+        public <T extends TServiceClient> T getClient(String appName, String serviceName, Class<T> clientClass)
+                throws TException {
+            return appName == null
+                    ? pool.getClient(serviceName, clientClass)
+                    : pool.getClient(appName, serviceName, clientClass);
+        }
+
+        @Override
+        public void returnToPool(TServiceClient client) {
+            pool.returnToPool(client);
+        }
+
+        @Override
+        public void returnBrokenToPool(TServiceClient client) {
+            pool.returnBrokenToPool(client);
+        }
+
+        @Override
+        public void close() {
+            pool.close();
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample.rest.pool;
+
+/**
+ * JMX view of the usage of a {@link ClientLeasePool}.
+ */
+public interface ClientLeasePoolMBean {
+    /**
+     * Gets the number of clients currently leased.
+     *
+     * @return Number of outstanding leases
+     */
+    int getActiveLeases();
+
+    /**
+     * Gets the highest number of clients leased at the same time.
+     *
+     * @return Peak number of outstanding leases
+     */
+    int getPeakActiveLeases();
+
+    /**
+     * Gets the number of clients leased since startup.
+     *
+     * @return Total number of leases
+     */
+    long getTotalLeases();
+
+    /**
+     * Gets the number of times a client could not be borrowed from the pool.
+     *
+     * @return Number of failed leases
+     */
+    long getFailedLeases();
+
+    /**
+     * Gets the number of leases held for longer than the long lease threshold.
+     *
+     * @return Number of long leases
+     */
+    long getLongLeases();
+
+    /**
+     * Gets the average time that clients were leased for.
+     *
+     * @return Average lease duration in milliseconds
+     */
+    double getAverageLeaseMillis();
+
+    /**
+     * Gets the longest time that a client was leased for.
+     *
+     * @return Maximum lease duration in milliseconds
+     */
+    long getMaxLeaseMillis();
+
+    /**
+     * Gets the number of health checks that could not get a client or whose client did not answer a ping.
+     *
+     * @return Number of failed health checks
+     */
+    long getFailedHealthChecks();
+}
@@ -0,0 +1,56 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample.rest.pool;
+
+import org.apache.thrift.TException;
+import org.apache.thrift.TServiceClient;
+
+/**
+ * Source of the Thrift clients leased by a {@link ClientLeasePool}. In the application this is a
+ * {@link ezbake.thrift.ThriftClientPool}.
+ */
+interface ClientSource {
+    /**
+     * Borrows a client.
+     *
+     * @param appName Name of the application that the service belongs to, or null for a common service
+     * @param serviceName Name of the service
+     * @param clientClass Class of the Thrift client
+     * @param <T> Type of the Thrift client
+     * @return Borrowed client
+     * @throws TException if a client could not be borrowed
+     */
+    <T extends TServiceClient> T getClient(String appName, String serviceName, Class<T> clientClass)
+            throws TException;
+
+    /**
+     * Returns a borrowed client.
+     *
+     * @param client Client to return
+     */
+    void returnToPool(TServiceClient client);
+
+    /**
+     * Returns a borrowed client that is no longer usable, so that it is discarded.
+     *
+     * @param client Client to discard
+     */
+    void returnBrokenToPool(TServiceClient client);
+
+    /**
+     * Closes the source and the clients it holds.
+     */
+    void close();
+}
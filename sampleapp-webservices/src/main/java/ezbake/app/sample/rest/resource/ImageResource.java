@@ -18,10 +18,8 @@ import static javax.ws.rs.core.Response.Status.BAD_REQUEST;
 import static javax.ws.rs.core.Response.Status.INTERNAL_SERVER_ERROR;
 import static javax.ws.rs.core.Response.Status.NOT_FOUND;
 
-import static ezbake.app.sample.rest.WebServiceUtils.getSecurityToken;
-import static ezbake.app.sample.rest.WebServiceUtils.isValidJsonObject;
-
-import java.util.Properties;
+import java.io.IOException;
+import java.util.concurrent.Callable;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.Consumes;
@@ -32,16 +30,29 @@ import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 
 import org.apache.thrift.TException;
+import org.jboss.resteasy.annotations.Suspend;
+import org.jboss.resteasy.spi.AsynchronousResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import ezbake.app.sample.rest.SampleAppContext;
 import ezbake.app.sample.rest.WebServiceException;
-import ezbake.configuration.EzConfiguration;
-import ezbake.configuration.EzConfigurationLoaderException;
+import ezbake.app.sample.rest.async.BackendExecutor;
+import ezbake.app.sample.rest.async.SingleFlight;
+import ezbake.app.sample.rest.cache.DiskContentStore;
+import ezbake.app.sample.rest.cache.ImageContentCache;
+import ezbake.app.sample.rest.image.ThumbnailGenerator;
+import ezbake.app.sample.rest.json.JsonBody;
+import ezbake.app.sample.rest.pool.ClientLease;
+import ezbake.app.sample.rest.pool.ClientLeasePool;
+import ezbake.app.sample.rest.security.TokenManager;
+import ezbake.base.thrift.EzSecurityToken;
+import ezbake.common.properties.EzProperties;
 import ezbake.data.elastic.thrift.MalformedQueryException;
 import ezbake.data.image.frack.utilities.pojo.ImageSearchPojo;
 import ezbake.data.image.frack.utilities.pojo.IndexedImagePojo;
@@ -56,7 +67,6 @@ import ezbake.services.indexing.image.thrift.MaybeThumbnail;
 import ezbake.services.indexing.image.thrift.SearchResults;
 import ezbake.services.indexing.image.thrift.Thumbnail;
 import ezbake.services.indexing.image.thrift.ThumbnailSize;
-import ezbake.thrift.ThriftClientPool;
 
 /**
  * REST endpoint to get and query images associated with Tweets.
@@ -66,9 +76,34 @@ public final class ImageResource {
     private static final Logger logger = LoggerFactory.getLogger(ImageResource.class);
 
     /**
-     * Client pool used to create connections to the Image Indexer Thrift common service.
+     * Shared client pool used to create connections to the Image Indexer Thrift common service.
+     */
+    private final ClientLeasePool clients;
+
+    /**
+     * Cache of thumbnails and binaries previously retrieved from the image indexer.
+     */
+    private final ImageContentCache imageCache;
+
+    /**
+     * Generates thumbnails of sizes that the image indexer does not have.
+     */
+    private final ThumbnailGenerator thumbnailGenerator;
+
+    /**
+     * Pool on which image indexer requests are completed.
+     */
+    private final BackendExecutor imageExecutor;
+
+    /**
+     * Collapses concurrent metadata lookups of the same image.
+     */
+    private final SingleFlight<String> metadataLookups = new SingleFlight<>();
+
+    /**
+     * Resolves the security token and authorizations fingerprint of the caller.
      */
-    private final ThriftClientPool pool;
+    private final TokenManager tokens;
 
     /**
      * The current request.
@@ -78,124 +113,250 @@ public final class ImageResource {
 
     /**
      * Constructor.
+     *
+     * @param context State shared by all resources
      */
-    public ImageResource() {
+    public ImageResource(SampleAppContext context) {
+        final EzProperties props = context.getProperties();
+        tokens = context.getTokens();
+        clients = context.getClients();
+        thumbnailGenerator = context.register(new ThumbnailGenerator(props));
+        imageExecutor = context.register(new BackendExecutor("imageindexer", props));
+
         try {
-            final Properties props = new EzConfiguration().getProperties();
-            pool = new ThriftClientPool(props);
-        } catch (final EzConfigurationLoaderException e) {
-            final String errMsg = "Could not read EzBake configuration";
+            imageCache = context.register(new ImageContentCache(props));
+        } catch (final IOException e) {
+            final String errMsg = "Could not create image cache";
             logger.error(errMsg, e);
             throw new WebApplicationException(
                     e, Response.status(INTERNAL_SERVER_ERROR).entity(errMsg).build());
         }
+
+        clients.register(null, ImageIndexerServiceConstants.SERVICE_NAME, ImageIndexerService.Client.class);
     }
 
     /**
-     * Retrieves an image by its EzBake image ID.
+     * Retrieves an image by its EzBake image ID. Cached binaries are returned without waiting for the image indexer.
      *
      * @param ezBakeImageId EzBake image ID of the image to retrieve
-     * @return Response containing the binary and MIME type of the image
+     * @param response Suspended response, completed with the binary and MIME type of the image
      */
     @GET
     @Path("binary/{ezBakeImageId : \\p{Alnum}{64}}")
-    public Response getBinary(@PathParam("ezBakeImageId") String ezBakeImageId) {
-        final IndexedImage image = retrieveImage(ezBakeImageId, true);
-        return Response.ok(image.getImageData().getBlob(), image.getImageData().getMimeType()).build();
+    public void getBinary(
+            @PathParam("ezBakeImageId") final String ezBakeImageId,
+            @Suspend(BackendExecutor.SUSPEND_TIMEOUT_MILLIS) AsynchronousResponse response) {
+        final EzSecurityToken token;
+        try {
+            token = tokens.getToken(httpRequest);
+        } catch (final WebServiceException e) {
+            BackendExecutor.fail(response, e);
+            return;
+        }
+
+        final String authsFingerprint = tokens.getAuthorizationsFingerprint(token);
+        final DiskContentStore.StoredContent cached = imageCache.openBinary(authsFingerprint, ezBakeImageId);
+        if (cached != null) {
+            response.setResponse(
+                    Response.ok(cached, cached.getMimeType()).header(HttpHeaders.CONTENT_LENGTH, cached.getLength())
+                            .build());
+            return;
+        }
+
+        imageExecutor.submit(
+                response, new Callable<Response>() {
+                    @Override
+                    public Response call() {
+                        final IndexedImage image = retrieveImage(ezBakeImageId, true, token);
+                        final byte[] blob = image.getImageData().getBlob();
+                        final String mimeType = image.getImageData().getMimeType();
+                        try {
+                            imageCache.putBinary(authsFingerprint, ezBakeImageId, blob, mimeType);
+                        } catch (final IOException e) {
+                            logger.warn("Could not cache binary for image with EzBake image ID '{}'", ezBakeImageId, e);
+                        }
+
+                        return Response.ok(blob, mimeType).build();
+                    }
+                });
     }
 
     /**
      * Retrieves an image's metadata by its EzBake image ID.
      *
      * @param ezBakeImageId EzBake image ID of the image whose metadata to retrieve
-     * @return JSON string of the metadata
+     * @param response Suspended response, completed with the JSON string of the metadata
      */
     @GET
     @Path("metadata/{ezBakeImageId : \\p{Alnum}{64}}")
     @Produces(MediaType.APPLICATION_JSON)
-    public String getMetadata(@PathParam("ezBakeImageId") String ezBakeImageId) {
-        final IndexedImage image = retrieveImage(ezBakeImageId, false);
-
+    public void getMetadata(
+            @PathParam("ezBakeImageId") final String ezBakeImageId,
+            @Suspend(BackendExecutor.SUSPEND_TIMEOUT_MILLIS) AsynchronousResponse response) {
+        final EzSecurityToken token;
         try {
-            return IndexedImagePojo.fromThrift(image).toJson(true, false);
-        } catch (final TException e) {
-            final String errMsg = String.format(
-                    "Could not convert image metadata for image with EzBake image ID of '%s' to JSON", ezBakeImageId);
-
-            logger.error(errMsg, e);
-            throw new WebServiceException(INTERNAL_SERVER_ERROR, errMsg);
+            token = tokens.getToken(httpRequest);
+        } catch (final WebServiceException e) {
+            BackendExecutor.fail(response, e);
+            return;
         }
+
+        imageExecutor.submit(
+                response, new Callable<Response>() {
+                    @Override
+                    public Response call() {
+                        return Response.ok(toMetadataJson(ezBakeImageId, token), MediaType.APPLICATION_JSON_TYPE)
+                                .build();
+                    }
+                });
     }
 
     /**
-     * Retrieves an image's thumbnail of the specified size.
+     * Retrieves an image's thumbnail of the specified size. If the image indexer does not have a thumbnail of that
+     * size, one is generated from the original image. Cached thumbnails are returned without waiting for the image
+     * indexer.
      *
      * @param ezBakeImageId EzBake image ID of the image whose thumbnail to retrieve
      * @param size Size of the thumbnail (can be "small", "medium", or "large")
-     * @return Response containing the binary and MIME type of the thumbnail
+     * @param response Suspended response, completed with the binary and MIME type of the thumbnail
      */
     @GET
     @Path("thumbnail/{size}/{ezBakeImageId : \\p{Alnum}{64}}")
-    public Response getThumbnail(@PathParam("ezBakeImageId") String ezBakeImageId, @PathParam("size") String size) {
-        ImageIndexerService.Client client = null;
+    public void getThumbnail(
+            @PathParam("ezBakeImageId") final String ezBakeImageId, @PathParam("size") String size,
+            @Suspend(BackendExecutor.SUSPEND_TIMEOUT_MILLIS) AsynchronousResponse response) {
+        final ThumbnailSize thumbnailSize;
         try {
-            client = getImageIndexerClient();
+            thumbnailSize = ThumbnailSize.valueOf(size.toUpperCase());
+        } catch (final IllegalArgumentException e) {
+            response.setResponse(Response.status(BAD_REQUEST).entity("Invalid thumbnail size: " + size).build());
+            return;
+        }
 
-            final MaybeThumbnail maybeThumbnail = client.getThumbnail(
-                    ezBakeImageId, ThumbnailSize.valueOf(size.toUpperCase()), getSecurityToken(httpRequest));
+        final EzSecurityToken token;
+        try {
+            token = tokens.getToken(httpRequest);
+        } catch (final WebServiceException e) {
+            BackendExecutor.fail(response, e);
+            return;
+        }
 
-            if (!maybeThumbnail.isSetThumbnail()) {
-                throw new WebServiceException(
-                        NOT_FOUND, String.format(
-                        "Thumbnail of size '%s' for EzBake image ID '%s' could not be found", size, ezBakeImageId));
-            }
+        final String authsFingerprint = tokens.getAuthorizationsFingerprint(token);
+        final Thumbnail cached = imageCache.getThumbnail(authsFingerprint, ezBakeImageId, thumbnailSize);
+        if (cached != null) {
+            response.setResponse(Response.ok(cached.getThumbnailBytes(), cached.getMimeType()).build());
+            return;
+        }
 
-            final Thumbnail thumbnail = maybeThumbnail.getThumbnail();
-            return Response.ok(thumbnail.getThumbnailBytes(), thumbnail.getMimeType()).build();
-        } catch (final TException e) {
-            final String errMsg = String.format(
-                    "Thrift error when trying to retrieve thumbnail of size '%s' for image with EzBake image ID '%s'",
-                    size, ezBakeImageId);
+        imageExecutor.submit(
+                response, new Callable<Response>() {
+                    @Override
+                    public Response call() {
+                        Thumbnail thumbnail = fetchThumbnail(ezBakeImageId, thumbnailSize, token);
+                        if (thumbnail == null) {
+                            thumbnail = generateThumbnail(ezBakeImageId, thumbnailSize, token, authsFingerprint);
+                        }
 
-            logger.error(errMsg, e);
-            throw new WebServiceException(INTERNAL_SERVER_ERROR, errMsg);
-        } finally {
-            if (client != null) {
-                pool.returnToPool(client);
-            }
-        }
+                        imageCache.putThumbnail(authsFingerprint, ezBakeImageId, thumbnailSize, thumbnail);
+                        return Response.ok(thumbnail.getThumbnailBytes(), thumbnail.getMimeType()).build();
+                    }
+                });
     }
 
     /**
      * Search images by metadata or similarity via a JSON query.
      *
-     * @param jsonQuery JSON image query
-     * @return JSON string of the search results
+     * @param jsonQuery JSON image query, parsed and validated by {@link ezbake.app.sample.rest.json.JsonBodyReader}
+     * @param response Suspended response, completed with the JSON string of the search results
      */
     @POST
     @Path("search")
     @Consumes(MediaType.APPLICATION_JSON)
     @Produces(MediaType.APPLICATION_JSON)
-    public String searchImages(String jsonQuery) {
-        if (!isValidJsonObject(jsonQuery)) {
-            final String errMsg = "Image search query must be a valid JSON object";
-            logger.error(errMsg);
-            throw new WebServiceException(BAD_REQUEST, errMsg);
+    public void searchImages(
+            final JsonBody jsonQuery, @Suspend(BackendExecutor.SUSPEND_TIMEOUT_MILLIS) AsynchronousResponse response) {
+        final EzSecurityToken token;
+        try {
+            token = tokens.getToken(httpRequest);
+        } catch (final WebServiceException e) {
+            BackendExecutor.fail(response, e);
+            return;
         }
 
+        imageExecutor.submit(
+                response, new Callable<Response>() {
+                    @Override
+                    public Response call() {
+                        return Response.ok(search(jsonQuery, token), MediaType.APPLICATION_JSON_TYPE).build();
+                    }
+                });
+    }
+
+    /**
+     * Retrieves an image's metadata as JSON, sharing the image indexer call with concurrent lookups of the same image
+     * by callers with the same authorizations.
+     *
+     * @param ezBakeImageId EzBake image ID of the image whose metadata to retrieve
+     * @param token Security token of the caller
+     * @return JSON string of the metadata
+     */
+    private String toMetadataJson(final String ezBakeImageId, final EzSecurityToken token) {
+        return metadataLookups.execute(
+                tokens.getAuthorizationsFingerprint(token), ezBakeImageId, new Callable<String>() {
+                    @Override
+                    public String call() {
+                        return retrieveMetadataJson(ezBakeImageId, token);
+                    }
+                });
+    }
+
+    /**
+     * Retrieves an image's metadata from the image indexer and converts it to JSON.
+     *
+     * @param ezBakeImageId EzBake image ID of the image whose metadata to retrieve
+     * @param token Security token of the caller
+     * @return JSON string of the metadata
+     */
+    private String retrieveMetadataJson(String ezBakeImageId, EzSecurityToken token) {
+        final IndexedImage image = retrieveImage(ezBakeImageId, false, token);
+
+        try {
+            return IndexedImagePojo.fromThrift(image).toJson(true, false);
+        } catch (final TException e) {
+            final String errMsg = String.format(
+                    "Could not convert image metadata for image with EzBake image ID of '%s' to JSON", ezBakeImageId);
+
+            logger.error(errMsg, e);
+            throw new WebServiceException(INTERNAL_SERVER_ERROR, errMsg);
+        }
+    }
+
+    /**
+     * Searches images through the image indexing service.
+     *
+     * @param jsonQuery JSON image query
+     * @param token Security token of the caller
+     * @return JSON string of the search results
+     */
+    private String search(JsonBody jsonQuery, EzSecurityToken token) {
         ImageSearch search = null;
         try {
-            search = ImageSearchPojo.fromJson(jsonQuery).toThrift();
+            search = ImageSearchPojo.fromJson(jsonQuery.getText()).toThrift();
         } catch (final TException e) {
             final String errMsg = "JSON object is not a valid image search query";
             logger.error(errMsg, e);
             throw new WebServiceException(BAD_REQUEST, errMsg);
         }
 
-        ImageIndexerService.Client client = null;
-        try {
-            client = getImageIndexerClient();
-            final SearchResults results = client.searchImages(search, getSecurityToken(httpRequest));
+        try (ClientLease<ImageIndexerService.Client> lease = leaseImageIndexerClient()) {
+            final SearchResults results;
+            try {
+                results = lease.getClient().searchImages(search, token);
+            } catch (final TException e) {
+                lease.invalidate();
+                throw e;
+            }
+
             return SearchResultsPojo.fromThrift(results).toJson();
         } catch (final MalformedQueryException e) {
             final String errMsg = "Malformed image search query";
@@ -205,29 +366,79 @@ public final class ImageResource {
             final String errMsg = "Thrift error when trying to search images with query: " + jsonQuery;
             logger.error(errMsg, e);
             throw new WebServiceException(INTERNAL_SERVER_ERROR, errMsg);
-        } finally {
-            if (client != null) {
-                pool.returnToPool(client);
+        }
+    }
+
+    /**
+     * Retrieves a thumbnail from the image indexing service.
+     *
+     * @param ezBakeImageId EzBake image ID of the image whose thumbnail to retrieve
+     * @param size Size of the thumbnail
+     * @param token Security token of the caller
+     * @return The thumbnail, or null if the image indexer does not have a thumbnail of that size
+     */
+    private Thumbnail fetchThumbnail(String ezBakeImageId, ThumbnailSize size, EzSecurityToken token) {
+        try (ClientLease<ImageIndexerService.Client> lease = leaseImageIndexerClient()) {
+            final MaybeThumbnail maybeThumbnail;
+            try {
+                maybeThumbnail = lease.getClient().getThumbnail(ezBakeImageId, size, token);
+            } catch (final TException e) {
+                lease.invalidate();
+                throw e;
             }
+
+            return maybeThumbnail.isSetThumbnail() ? maybeThumbnail.getThumbnail() : null;
+        } catch (final TException e) {
+            final String errMsg = String.format(
+                    "Thrift error when trying to retrieve thumbnail of size '%s' for image with EzBake image ID '%s'",
+                    size, ezBakeImageId);
+
+            logger.error(errMsg, e);
+            throw new WebServiceException(INTERNAL_SERVER_ERROR, errMsg);
         }
     }
 
+    /**
+     * Generates a thumbnail from the original image when the image indexer does not have one of the requested size.
+     *
+     * @param ezBakeImageId EzBake image ID of the image whose thumbnail to generate
+     * @param size Size of the thumbnail
+     * @param token Security token of the caller
+     * @param authsFingerprint Authorizations fingerprint of the caller
+     * @return The generated thumbnail
+     */
+    private Thumbnail generateThumbnail(
+            final String ezBakeImageId, ThumbnailSize size, final EzSecurityToken token, String authsFingerprint) {
+        return thumbnailGenerator.generate(
+                authsFingerprint, ezBakeImageId, size, new Callable<IndexedImage>() {
+                    @Override
+                    public IndexedImage call() {
+                        return retrieveImage(ezBakeImageId, true, token);
+                    }
+                });
+    }
+
     /**
      * Retrieves an image from the image indexing service.
      *
      * @param ezBakeImageId EzBake image ID of the image to retrieve
      * @param withBinary true to retrieve binary along with metadata, false for just metadata
+     * @param token Security token of the caller
      * @return Retrieved image
      */
-    private IndexedImage retrieveImage(String ezBakeImageId, boolean withBinary) {
-        ImageIndexerService.Client client = null;
-        try {
-            client = getImageIndexerClient();
+    private IndexedImage retrieveImage(String ezBakeImageId, boolean withBinary, EzSecurityToken token) {
+        try (ClientLease<ImageIndexerService.Client> lease = leaseImageIndexerClient()) {
+            final ImageIndexerService.Client client = lease.getClient();
             MaybeIndexedImage maybeImage = null;
-            if (withBinary) {
-                maybeImage = client.getImageWithBinary(ezBakeImageId, getSecurityToken(httpRequest));
-            } else {
-                maybeImage = client.getImage(ezBakeImageId, getSecurityToken(httpRequest));
+            try {
+                if (withBinary) {
+                    maybeImage = client.getImageWithBinary(ezBakeImageId, token);
+                } else {
+                    maybeImage = client.getImage(ezBakeImageId, token);
+                }
+            } catch (final TException e) {
+                lease.invalidate();
+                throw e;
             }
 
             if (!maybeImage.isSetIndexedImage()) {
@@ -248,20 +459,16 @@ public final class ImageResource {
 
             logger.error(errMsg, e);
             throw new WebServiceException(INTERNAL_SERVER_ERROR, errMsg);
-        } finally {
-            if (client != null) {
-                pool.returnToPool(client);
-            }
         }
     }
 
     /**
-     * Gets an image indexer service client from the Thrift client pool.
+     * Leases an image indexer service client from the Thrift client pool.
      *
-     * @return An image indexer service client
+     * @return A lease of an image indexer service client, which must be closed to return the client
      * @throws TException if the client could not be retrieved from the pool
      */
-    private ImageIndexerService.Client getImageIndexerClient() throws TException {
-        return pool.getClient(ImageIndexerServiceConstants.SERVICE_NAME, ImageIndexerService.Client.class);
+    private ClientLease<ImageIndexerService.Client> leaseImageIndexerClient() throws TException {
+        return clients.lease(ImageIndexerServiceConstants.SERVICE_NAME, ImageIndexerService.Client.class);
     }
 }
@@ -16,47 +16,73 @@ package ezbake.app.sample.rest.resource;
 
 import static javax.ws.rs.core.Response.Status.BAD_REQUEST;
 import static javax.ws.rs.core.Response.Status.INTERNAL_SERVER_ERROR;
+import static javax.ws.rs.core.Response.Status.NOT_ACCEPTABLE;
 import static javax.ws.rs.core.Response.Status.NOT_FOUND;
 
-import static ezbake.app.sample.rest.WebServiceUtils.getSecurityToken;
-
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
 
+import javax.servlet.AsyncContext;
 import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.Consumes;
+import javax.ws.rs.DELETE;
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
-import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import javax.ws.rs.core.Variant;
 
 import org.apache.thrift.TException;
 import org.codehaus.jettison.json.JSONException;
 import org.codehaus.jettison.json.JSONObject;
+import org.jboss.resteasy.annotations.Suspend;
+import org.jboss.resteasy.spi.AsynchronousResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Range;
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 
+import ezbake.app.sample.rest.SampleAppContext;
 import ezbake.app.sample.rest.WebServiceException;
+import ezbake.app.sample.rest.async.BackendExecutor;
+import ezbake.app.sample.rest.async.SingleFlight;
+import ezbake.app.sample.rest.encoding.ThriftMessageBodyWriter;
+import ezbake.app.sample.rest.graph.ExpansionCache;
+import ezbake.app.sample.rest.graph.GraphChangeLogTailer;
+import ezbake.app.sample.rest.graph.GraphJsonWriter;
+import ezbake.app.sample.rest.graph.GremlinExecutor;
+import ezbake.app.sample.rest.graph.GremlinTemplate;
+import ezbake.app.sample.rest.graph.GremlinTemplateRegistry;
+import ezbake.app.sample.rest.graph.VertexResolver;
+import ezbake.app.sample.rest.graph.path.GraphNeighborLoader;
+import ezbake.app.sample.rest.graph.path.PathFinder;
+import ezbake.app.sample.rest.json.JsonBody;
+import ezbake.app.sample.rest.pool.ClientLease;
+import ezbake.app.sample.rest.pool.ClientLeasePool;
+import ezbake.app.sample.rest.security.TokenManager;
 import ezbake.base.thrift.EzSecurityToken;
 import ezbake.common.properties.EzProperties;
-import ezbake.configuration.EzConfiguration;
-import ezbake.configuration.EzConfigurationLoaderException;
-import ezbake.data.common.graph.GraphConverter;
 import ezbake.services.graph.thrift.EzGraphService;
 import ezbake.services.graph.thrift.EzGraphServiceConstants;
 import ezbake.services.graph.thrift.GraphName;
 import ezbake.services.graph.thrift.types.Edge;
 import ezbake.services.graph.thrift.types.Graph;
 import ezbake.services.graph.thrift.types.Vertex;
-import ezbake.thrift.ThriftClientPool;
 
 /**
  * REST endpoints for accessing data stored via the EzGraph Service.
@@ -66,18 +92,25 @@ public final class RelationshipResource {
     private static final Logger logger = LoggerFactory.getLogger(RelationshipResource.class);
 
     /**
-     * Range for the number of hops for {@link #expandSubGraph(String, int)} methods.
+     * Range for the number of hops for {@link #expandSubGraph(String, int, boolean, AsynchronousResponse)} methods.
      */
     private static final Range<Integer> EXPAND_HOPS_RANGE = Range.closed(0, 8);
 
     /**
-     * Range for the number of hops for {@link #findPath(String, String, int)}.
+     * Range for the number of hops for {@link #findPath(String, String, int, int, boolean, AsynchronousResponse)}.
      */
     private static final Range<Integer> FIND_HOPS_RANGE = Range.closed(1, 8);
 
+    /**
+     * Range for the number of paths for {@link #findPath(String, String, int, int, boolean, AsynchronousResponse)}.
+     */
+    private static final Range<Integer> PATH_COUNT_RANGE = Range.closed(1, 10);
+
     private static final String THRIFT_ERROR_MSG =
             "An error occurred while accessing a Thrift resource. The thrift service may be unavailable.";
 
+    private static final String JSON_PARSE_ERR_MSG = "Could not parse JSON in request";
+
     private static final String USER_NOT_FOUND_MSG = "No user found with name: ";
 
     private static final String NUMHOPS_ERR_MSG =
@@ -96,26 +129,141 @@ public final class RelationshipResource {
     private static final String EDGE = "edge";
     private static final String VERTEX = "vertex";
 
-    private final ThriftClientPool pool;
-    private final Gson gson;
+    /**
+     * Query parameter to choose between indented and compact JSON.
+     */
+    private static final String PRETTY_PARAM = "pretty";
+
+    /**
+     * Encodings in which graphs can be returned, in order of preference when the client accepts several.
+     */
+    private static final List<Variant> GRAPH_VARIANTS = Variant.mediaTypes(
+            MediaType.APPLICATION_JSON_TYPE, ThriftMessageBodyWriter.APPLICATION_THRIFT_TYPE).add().build();
+
+    /**
+     * Field of a Gremlin query request holding the query type.
+     */
+    private static final String TYPE_FIELD = "type";
+
+    /**
+     * Optional fields of a Gremlin query request.
+     */
+    private static final String QUERY_ID = "queryId";
+    private static final String TIMEOUT_MILLIS = "timeoutMillis";
+    private static final String LIMIT = "limit";
+
+    /**
+     * Field of a Gremlin template request holding the template arguments.
+     */
+    private static final String TEMPLATE_ARGS = "args";
+
+    /**
+     * Response header set to true when a Gremlin query matched more results than were returned.
+     */
+    private static final String TRUNCATED_HEADER = "X-Results-Truncated";
+
+    /**
+     * Configuration properties for following the graph change log written by the pipeline.
+     */
+    private static final String CHANGE_LOG_FILE_PROP = "sampleapp.graph.changelog.file";
+    private static final String CHANGE_LOG_POLL_MILLIS_PROP = "sampleapp.graph.changelog.poll.millis";
+    private static final long DEFAULT_CHANGE_LOG_POLL_MILLIS = 1000;
+
+    /**
+     * Separates the parts of the keys under which concurrent expansions are collapsed.
+     */
+    private static final char KEY_SEPARATOR = '/';
+
+    private final ClientLeasePool clients;
+
+    /**
+     * Resolves screen names to user vertices, caching the results.
+     */
+    private final VertexResolver vertexResolver;
+
+    /**
+     * Caches expanded subgraphs, invalidated by changes read from the graph change log.
+     */
+    private final ExpansionCache expansionCache;
+
+    /**
+     * Follows the graph change log, or null if the change log is not configured.
+     */
+    private final GraphChangeLogTailer changeLogTailer;
+
+    /**
+     * Runs Gremlin queries with deadlines, result caps and per-user limits.
+     */
+    private final GremlinExecutor gremlinExecutor;
+
+    /**
+     * Gremlin query templates and their cached results.
+     */
+    private final GremlinTemplateRegistry gremlinTemplates;
+
+    /**
+     * Loads neighborhoods of users for path searches.
+     */
+    private final GraphNeighborLoader neighborLoader;
+
+    /**
+     * Pool on which graph service requests are completed.
+     */
+    private final BackendExecutor graphExecutor;
+
+    /**
+     * Collapses concurrent expansions of the same user and number of hops.
+     */
+    private final SingleFlight<Graph> expansions = new SingleFlight<>();
+
+    /**
+     * Maximum number of neighborhoods loaded by one path search.
+     */
+    private final int maxPathVertices;
+
+    /**
+     * Resolves the security token and authorizations fingerprint of the caller.
+     */
+    private final TokenManager tokens;
 
     @Context
     private HttpServletRequest httpRequest;
 
+    /**
+     * The current request, used for content negotiation.
+     */
+    @Context
+    private Request request;
+
     /**
      * Constructor.
+     *
+     * @param context State shared by all resources
      */
-    public RelationshipResource() {
-        final EzProperties props;
-        try {
-            props = new EzProperties(new EzConfiguration().getProperties(), true);
-            pool = new ThriftClientPool(props);
-            gson = new GsonBuilder().setPrettyPrinting().create();
-        } catch (final EzConfigurationLoaderException e) {
-            final String errMsg = "Could not read EzBake configuration";
-            logger.error(errMsg, e);
-            throw new WebApplicationException(
-                    e, Response.status(INTERNAL_SERVER_ERROR).entity(errMsg).build());
+    public RelationshipResource(SampleAppContext context) {
+        final EzProperties props = context.getProperties();
+        tokens = context.getTokens();
+        clients = context.getClients();
+        vertexResolver = new VertexResolver(props, GRAPH_NAME, SCREEN_NAME);
+        expansionCache = new ExpansionCache(props, SCREEN_NAME);
+        gremlinExecutor = context.register(new GremlinExecutor(props));
+        gremlinTemplates = new GremlinTemplateRegistry(props, ImmutableSet.of(VERTEX, EDGE), VERTEX);
+        neighborLoader = context.register(new GraphNeighborLoader(props, clients, GRAPH_NAME));
+        graphExecutor = context.register(new BackendExecutor("graph", props));
+        maxPathVertices = props.getInteger(PathFinder.MAX_VERTICES_PROP, PathFinder.DEFAULT_MAX_VERTICES);
+
+        clients.register(null, EzGraphServiceConstants.SERVICE_NAME, EzGraphService.Client.class);
+
+        final String changeLogFile = props.getProperty(CHANGE_LOG_FILE_PROP);
+        if (changeLogFile == null) {
+            logger.warn("{} is not set, expanded subgraphs will only expire by age", CHANGE_LOG_FILE_PROP);
+            changeLogTailer = null;
+        } else {
+            changeLogTailer = context.register(
+                    new GraphChangeLogTailer(
+                            Paths.get(changeLogFile),
+                            props.getLong(CHANGE_LOG_POLL_MILLIS_PROP, DEFAULT_CHANGE_LOG_POLL_MILLIS),
+                            expansionCache));
         }
     }
 
@@ -129,12 +277,19 @@ public final class RelationshipResource {
      * @return The Vertex associated with the passed in screen name.
      * @throws TException if there is an error while making the thrift request on the EzGraph client..
      */
-    private static Vertex getUserVertex(EzGraphService.Client graphClient, String screenName, EzSecurityToken token)
+    private Vertex getUserVertex(EzGraphService.Client graphClient, String screenName, EzSecurityToken token)
             throws TException {
-        final List<Vertex> foundVertices =
-                graphClient.findVertices(GRAPH_NAME, SCREEN_NAME, GraphConverter.convertObject(screenName), token);
+        return vertexResolver.resolve(graphClient, screenName, token, tokens.getAuthorizationsFingerprint(token));
+    }
 
-        return foundVertices.isEmpty() ? null : foundVertices.get(0);
+    /**
+     * Gets the name of the user a security token was issued to.
+     *
+     * @param token Security token of the caller
+     * @return Principal of the token
+     */
+    private static String getPrincipal(EzSecurityToken token) {
+        return token.getTokenPrincipal().getPrincipal();
     }
 
     /**
@@ -143,72 +298,147 @@ public final class RelationshipResource {
      * to get all edges connected to the vertex specified by 'screenName' or "_().out("mentioned")" on a vertex query to
      * get all vertices (users) mentioned by the user specified by 'screenName'. These examples are not yet escaped.
      * Query params are passed in the post body.
+     * <p>
+     * Queries run with a deadline and a cap on the number of results, and each user may only run a few queries at
+     * once. If more results matched than were returned, the {@value #TRUNCATED_HEADER} response header is set to true.
      *
-     * @param jsonQuery A string representation of a JSON object with fields 'type' (valued either 'vertex' or 'edge'),
+     * @param jsonQuery A JSON object with fields 'type' (valued either 'vertex' or 'edge'),
      * '{@link #SCREEN_NAME}' (valued any Twitter screen name expected to be stored in graph) and 'gremlin' (valued at
-     * any valid gremlin query).
-     * @return Gremlin query data in JSON form.
+     * any valid gremlin query). Optional fields are '{@value #QUERY_ID}' (an ID with which the query can be cancelled
+     * through {@link #cancelQuery(String)}), '{@value #TIMEOUT_MILLIS}' (deadline for the query in milliseconds) and
+     * '{@value #LIMIT}' (maximum number of results).
+     * @param pretty true to indent the returned JSON
+     * @param response Suspended response, completed with Gremlin query data in the JSON form described by
+     * {@link GraphJsonWriter}.
      */
     @POST
     @Path("gremlin-query")
     @Produces(MediaType.APPLICATION_JSON)
     @Consumes(MediaType.APPLICATION_JSON)
-    public String queryGraph(String jsonQuery) {
-        final JSONObject json;
-        final String type;
-        final String screenName;
-        final String gremlinQuery;
+    public void queryGraph(
+            JsonBody jsonQuery, @QueryParam(PRETTY_PARAM) @DefaultValue("true") final boolean pretty,
+            @Suspend(BackendExecutor.SUSPEND_TIMEOUT_MILLIS) AsynchronousResponse response) {
+        final EzSecurityToken token;
+        final GremlinRequest query;
         try {
-            json = new JSONObject(jsonQuery);
+            token = tokens.getToken(httpRequest);
+
+            final JSONObject json = jsonQuery.getObject();
+            try {
+                query = new GremlinRequest(json.getString(TYPE_FIELD), json.getString("gremlin"), json);
+            } catch (final JSONException e) {
+                logger.error(JSON_PARSE_ERR_MSG, e);
+                throw new WebServiceException(BAD_REQUEST, JSON_PARSE_ERR_MSG);
+            }
 
-            type = json.getString("type");
-            screenName = json.getString(SCREEN_NAME);
-            gremlinQuery = json.getString("gremlin");
+            if (!EDGE.equals(query.type) && !VERTEX.equals(query.type)) {
+                final String errMsg = String.format("Invalid query: 'type' must be either '%s' or '%s'", EDGE, VERTEX);
+                throw new WebServiceException(BAD_REQUEST, errMsg);
+            }
+        } catch (final WebServiceException e) {
+            BackendExecutor.fail(response, e);
+            return;
+        }
+
+        gremlinExecutor.submit(
+                getAsyncContext(), response, getPrincipal(token), query.queryId, query.timeoutMillis,
+                new Callable<Response>() {
+                    @Override
+                    public Response call() {
+                        return toResponse(query.type, executeGremlin(query, token), pretty);
+                    }
+                });
+    }
+
+    /**
+     * Lists the Gremlin query templates that can be run through
+     * {@link #queryTemplate(String, JsonBody, boolean, AsynchronousResponse)}.
+     *
+     * @return JSON object keyed by template name, whose values hold the query 'type' and the template 'parameters'
+     * with their types
+     */
+    @GET
+    @Path("gremlin-template")
+    @Produces(MediaType.APPLICATION_JSON)
+    public String listTemplates() {
+        final JSONObject json = new JSONObject();
+        try {
+            for (final String templateId : gremlinTemplates.getTemplateIds()) {
+                final GremlinTemplate template = gremlinTemplates.getTemplate(templateId);
+                json.put(
+                        templateId,
+                        new JSONObject().put(TYPE_FIELD, template.getType())
+                                .put("parameters", new JSONObject(template.getParameters())));
+            }
         } catch (final JSONException e) {
-            final String errMsg = "Could not parse JSON in request";
+            final String errMsg = "Could not build Gremlin template list";
             logger.error(errMsg, e);
-            throw new WebServiceException(BAD_REQUEST, errMsg);
+            throw new WebServiceException(INTERNAL_SERVER_ERROR, errMsg);
         }
 
-        EzGraphService.Client graphClient = null;
+        return json.toString();
+    }
+
+    /**
+     * Runs a Gremlin query template registered in configuration, binding the given arguments to its parameters.
+     * Results are cached for a short time per template, start user, arguments and limit, so repeated requests do not
+     * reach the graph service. Deadlines, result caps and cancellation work as for
+     * {@link #queryGraph(JsonBody, boolean, AsynchronousResponse)}.
+     *
+     * @param templateId Name of the template
+     * @param jsonArgs A JSON object with field '{@link #SCREEN_NAME}' (the start user),
+     * optional field '{@value #TEMPLATE_ARGS}' (an object holding the template arguments keyed by parameter name) and
+     * the optional fields of {@link #queryGraph(JsonBody, boolean, AsynchronousResponse)}.
+     * @param pretty true to indent the returned JSON
+     * @param response Suspended response, completed with Gremlin query data in the JSON form described by
+     * {@link GraphJsonWriter}.
+     */
+    @POST
+    @Path("gremlin-template/{templateId}")
+    @Produces(MediaType.APPLICATION_JSON)
+    @Consumes(MediaType.APPLICATION_JSON)
+    public void queryTemplate(
+            @PathParam("templateId") final String templateId, JsonBody jsonArgs,
+            @QueryParam(PRETTY_PARAM) @DefaultValue("true") final boolean pretty,
+            @Suspend(BackendExecutor.SUSPEND_TIMEOUT_MILLIS) AsynchronousResponse response) {
+        final EzSecurityToken token;
+        final Map<String, String> arguments = new HashMap<>();
+        final GremlinRequest query;
         try {
-            final EzSecurityToken token = getSecurityToken(httpRequest);
-            graphClient = getGraphDbClient();
+            token = tokens.getToken(httpRequest);
 
-            final Vertex startVertex = getUserVertex(graphClient, screenName, token);
-            if (startVertex == null) {
-                throw new WebServiceException(NOT_FOUND, USER_NOT_FOUND_MSG + screenName);
+            final GremlinTemplate template = gremlinTemplates.getTemplate(templateId);
+            if (template == null) {
+                throw new WebServiceException(NOT_FOUND, "No Gremlin template with name: " + templateId);
             }
 
-            switch (type) {
-                case VERTEX:
-                    final List<Vertex> vertexResults =
-                            graphClient.queryVertices(GRAPH_NAME, startVertex, gremlinQuery, token);
-
-                    return gson.toJson(vertexResults);
-                case EDGE:
-                    final List<Edge> edgeResults = graphClient.queryEdges(GRAPH_NAME, startVertex, gremlinQuery, token);
-                    return gson.toJson(edgeResults);
-                default:
-                    final String errMsg =
-                            String.format("Invalid query: 'type' must be either '%s' or '%s'", EDGE, VERTEX);
+            query = bindTemplate(template, jsonArgs.getObject(), arguments);
+        } catch (final WebServiceException e) {
+            BackendExecutor.fail(response, e);
+            return;
+        }
 
-                    throw new WebServiceException(BAD_REQUEST, errMsg);
-            }
-        } catch (final TException e) {
-            logger.error(
-                    "Thrift error when attempting to perform Gremlin query. screenName={} type={} query={}.",
-                    screenName, type, gremlinQuery, e);
+        gremlinExecutor.submit(
+                getAsyncContext(), response, getPrincipal(token), query.queryId, query.timeoutMillis,
+                new Callable<Response>() {
+                    @Override
+                    public Response call() {
+                        return runGremlinTemplate(templateId, arguments, query, pretty, token);
+                    }
+                });
+    }
 
-            throw new WebServiceException(
-                    INTERNAL_SERVER_ERROR,
-                    "An error occurred while accessing a thrift resource. Issues that could cause this include the "
-                            + "Thrift resource being unavailable, a malformed Gremlin query, or the query attempted "
-                            + "did not return the type expected ('vertex' or 'edge').");
-        } finally {
-            if (graphClient != null) {
-                pool.returnToPool(graphClient);
-            }
+    /**
+     * Cancels a running Gremlin query started by the caller.
+     *
+     * @param queryId ID given to the query when it was started through
+     * {@link #queryGraph(JsonBody, boolean, AsynchronousResponse)}
+     */
+    @DELETE
+    @Path("gremlin-query/{queryId}")
+    public void cancelQuery(@PathParam(QUERY_ID) String queryId) {
+        if (!gremlinExecutor.cancel(getPrincipal(tokens.getToken(httpRequest)), queryId)) {
+            throw new WebServiceException(NOT_FOUND, "No running Gremlin query with ID: " + queryId);
         }
     }
 
@@ -217,12 +447,142 @@ public final class RelationshipResource {
      *
      * @param screenName The name of the user used to find the start vertex for the expanded graph.
      * @param numHops The number of hops to expand the graph, up to a specified maximum.
-     * @return A graph with the vertices and edges 'numHops' from the start vertex.
+     * @param pretty true to indent the returned JSON
+     * @param response Suspended response, completed with a graph with the vertices and edges 'numHops' from the start
+     * vertex, in the JSON form described by {@link GraphJsonWriter}, or as a Thrift binary {@link Graph} if the client
+     * accepts {@value ThriftMessageBodyWriter#APPLICATION_THRIFT}.
      */
     @GET
     @Path("expand/{screenName}/{numHops}")
-    @Produces(MediaType.APPLICATION_JSON)
-    public String expandSubGraph(@PathParam(SCREEN_NAME) String screenName, @PathParam("numHops") int numHops) {
+    @Produces({MediaType.APPLICATION_JSON, ThriftMessageBodyWriter.APPLICATION_THRIFT})
+    public void expandSubGraph(
+            @PathParam(SCREEN_NAME) final String screenName, @PathParam("numHops") final int numHops,
+            @QueryParam(PRETTY_PARAM) @DefaultValue("true") final boolean pretty,
+            @Suspend(BackendExecutor.SUSPEND_TIMEOUT_MILLIS) AsynchronousResponse response) {
+        final EzSecurityToken token;
+        try {
+            token = tokens.getToken(httpRequest);
+        } catch (final WebServiceException e) {
+            BackendExecutor.fail(response, e);
+            return;
+        }
+
+        final MediaType type = selectGraphType();
+        graphExecutor.submit(
+                response, new Callable<Response>() {
+                    @Override
+                    public Response call() {
+                        return graphResponse(expand(screenName, numHops, token), pretty, type);
+                    }
+                });
+    }
+
+    /**
+     * Finds the shortest paths between two vertices up to a specified number of hops away. Paths are found with a
+     * bidirectional search over the neighborhoods of the users, treating edges as undirected. If a single path is
+     * requested and the search grows too large, the graph service's own path search is used instead. If several paths
+     * are requested and the search grows too large, the paths found so far are returned with the
+     * {@value #TRUNCATED_HEADER} response header set to true.
+     *
+     * @param startScreenName The user from which to find a path.
+     * @param endScreenName The user to find a path to.
+     * @param maxHops The maximum number of hops that can be searched to connect users.
+     * @param count The number of shortest paths to find
+     * @param pretty true to indent the returned JSON
+     * @param response Suspended response, completed with the graph of the path between two users' vertices, in the
+     * JSON form described by {@link GraphJsonWriter} or as a Thrift binary {@link Graph}. If more than one path is
+     * requested, a JSON document holding the graphs of the paths found, shortest first.
+     */
+    @GET
+    @Path("find/{screenName}/{endScreenName}/{maxHops}")
+    @Produces({MediaType.APPLICATION_JSON, ThriftMessageBodyWriter.APPLICATION_THRIFT})
+    public void findPath(
+            @PathParam(SCREEN_NAME) final String startScreenName,
+            @PathParam("endScreenName") final String endScreenName, @PathParam("maxHops") final int maxHops,
+            @QueryParam("k") @DefaultValue("1") final int count,
+            @QueryParam(PRETTY_PARAM) @DefaultValue("true") final boolean pretty,
+            @Suspend(BackendExecutor.SUSPEND_TIMEOUT_MILLIS) AsynchronousResponse response) {
+        final EzSecurityToken token;
+        try {
+            token = tokens.getToken(httpRequest);
+        } catch (final WebServiceException e) {
+            BackendExecutor.fail(response, e);
+            return;
+        }
+
+        final MediaType type = selectGraphType();
+        graphExecutor.submit(
+                response, new Callable<Response>() {
+                    @Override
+                    public Response call() {
+                        return searchPaths(startScreenName, endScreenName, maxHops, count, pretty, type, token);
+                    }
+                });
+    }
+
+    /**
+     * Reads the arguments of a Gremlin query template and binds them to the template.
+     *
+     * @param template Template to bind
+     * @param json JSON arguments, as for {@link #queryTemplate}
+     * @param arguments Receives the template arguments keyed by parameter name
+     * @return The bound query
+     */
+    private static GremlinRequest bindTemplate(
+            GremlinTemplate template, JSONObject json, Map<String, String> arguments) {
+        try {
+            final JSONObject args = json.optJSONObject(TEMPLATE_ARGS);
+            if (args != null) {
+                final Iterator<?> names = args.keys();
+                while (names.hasNext()) {
+                    final String name = (String) names.next();
+                    arguments.put(name, args.getString(name));
+                }
+            }
+
+            return new GremlinRequest(template.getType(), template.bind(arguments), json);
+        } catch (final JSONException e) {
+            logger.error(JSON_PARSE_ERR_MSG, e);
+            throw new WebServiceException(BAD_REQUEST, JSON_PARSE_ERR_MSG);
+        } catch (final IllegalArgumentException e) {
+            throw new WebServiceException(BAD_REQUEST, e.getMessage());
+        }
+    }
+
+    /**
+     * Runs a bound Gremlin query template, or returns its cached results.
+     *
+     * @param templateId Name of the template
+     * @param arguments Template arguments keyed by parameter name
+     * @param query The bound query
+     * @param pretty true to indent the returned JSON
+     * @param token Security token of the caller
+     * @return Gremlin query data in the JSON form described by {@link GraphJsonWriter}.
+     */
+    private Response runGremlinTemplate(
+            String templateId, Map<String, String> arguments, GremlinRequest query, boolean pretty,
+            EzSecurityToken token) {
+        final String invocation = GremlinTemplateRegistry.toKey(
+                tokens.getAuthorizationsFingerprint(token), templateId, query.screenName, arguments, query.limit);
+
+        GremlinExecutor.Results<?> results = gremlinTemplates.getResults(invocation);
+        if (results == null) {
+            results = executeGremlin(query, token);
+            gremlinTemplates.putResults(invocation, results);
+        }
+
+        return toResponse(query.type, results, pretty);
+    }
+
+    /**
+     * Expands the graph around a user, or returns a cached expansion.
+     *
+     * @param screenName The name of the user used to find the start vertex
+     * @param numHops The number of hops to expand the graph
+     * @param token Security token of the caller
+     * @return A graph with the vertices and edges 'numHops' from the start vertex
+     */
+    private Graph expand(final String screenName, final int numHops, final EzSecurityToken token) {
         if (!EXPAND_HOPS_RANGE.contains(numHops)) {
             final String errMsg = String.format(
                     NUMHOPS_ERR_MSG, EXPAND_HOPS_RANGE.lowerEndpoint(), EXPAND_HOPS_RANGE.upperEndpoint(), numHops);
@@ -230,18 +590,48 @@ public final class RelationshipResource {
             throw new WebServiceException(BAD_REQUEST, errMsg);
         }
 
-        final EzGraphService.Client graphClient;
-        try {
-            final EzSecurityToken token = getSecurityToken(httpRequest);
-            graphClient = getGraphDbClient();
+        final String authsFingerprint = tokens.getAuthorizationsFingerprint(token);
 
-            final Vertex startVertex = getUserVertex(graphClient, screenName, token);
-            if (startVertex == null) {
-                throw new WebServiceException(NOT_FOUND, USER_NOT_FOUND_MSG + screenName);
-            }
+        final Graph cached = expansionCache.get(screenName, numHops, authsFingerprint);
+        if (cached != null) {
+            return cached;
+        }
+
+        return expansions.execute(
+                authsFingerprint, screenName + KEY_SEPARATOR + numHops, new Callable<Graph>() {
+                    @Override
+                    public Graph call() {
+                        return fetchExpansion(screenName, numHops, token, authsFingerprint);
+                    }
+                });
+    }
 
-            final Graph graph = graphClient.expandSubgraph(GRAPH_NAME, startVertex, numHops, token);
-            return gson.toJson(graph);
+    /**
+     * Expands the graph around a user through the graph service and caches the expansion.
+     *
+     * @param screenName The name of the user used to find the start vertex
+     * @param numHops The number of hops to expand the graph
+     * @param token Security token of the caller
+     * @param authsFingerprint Authorizations fingerprint of the caller
+     * @return A graph with the vertices and edges 'numHops' from the start vertex
+     */
+    private Graph fetchExpansion(String screenName, int numHops, EzSecurityToken token, String authsFingerprint) {
+        final long cacheVersion = expansionCache.getVersion();
+        try (ClientLease<EzGraphService.Client> lease = leaseGraphDbClient()) {
+            final EzGraphService.Client graphClient = lease.getClient();
+            try {
+                final Vertex startVertex = vertexResolver.resolve(graphClient, screenName, token, authsFingerprint);
+                if (startVertex == null) {
+                    throw new WebServiceException(NOT_FOUND, USER_NOT_FOUND_MSG + screenName);
+                }
+
+                final Graph graph = graphClient.expandSubgraph(GRAPH_NAME, startVertex, numHops, token);
+                expansionCache.put(screenName, numHops, authsFingerprint, graph, cacheVersion);
+                return graph;
+            } catch (final TException e) {
+                lease.invalidate();
+                throw e;
+            }
         } catch (final TException e) {
             logger.error(THRIFT_ERROR_MSG, e);
             throw new WebServiceException(INTERNAL_SERVER_ERROR, THRIFT_ERROR_MSG);
@@ -249,19 +639,22 @@ public final class RelationshipResource {
     }
 
     /**
-     * Finds the path between two vertices up to a specified number of hops away.
+     * Finds the shortest paths between two users.
      *
-     * @param startScreenName The user from which to find a path.
-     * @param endScreenName The user to find a path to.
-     * @param maxHops The maximum number of hops that can be searched to connect users.
-     * @return The graph of the path between two users' vertices.
+     * @param startScreenName The user from which to find a path
+     * @param endScreenName The user to find a path to
+     * @param maxHops The maximum number of hops in a path
+     * @param count The number of shortest paths to find
+     * @param pretty true to indent the returned JSON
+     * @param type Negotiated media type of the response
+     * @param token Security token of the caller
+     * @return The graph of the path between two users' vertices, in the JSON form described by
+     * {@link GraphJsonWriter} or as a Thrift binary {@link Graph}. If more than one path is requested, a JSON document
+     * holding the graphs of the paths found, shortest first.
      */
-    @GET
-    @Path("find/{screenName}/{endScreenName}/{maxHops}")
-    @Produces(MediaType.APPLICATION_JSON)
-    public String findPath(
-            @PathParam(SCREEN_NAME) String startScreenName, @PathParam("endScreenName") String endScreenName,
-            @PathParam("maxHops") int maxHops) {
+    private Response searchPaths(
+            String startScreenName, String endScreenName, int maxHops, int count, boolean pretty, MediaType type,
+            EzSecurityToken token) {
         if (!FIND_HOPS_RANGE.contains(maxHops)) {
             final String errMsg = String.format(
                     NUMHOPS_ERR_MSG, FIND_HOPS_RANGE.lowerEndpoint(), FIND_HOPS_RANGE.upperEndpoint(), maxHops);
@@ -269,24 +662,79 @@ public final class RelationshipResource {
             throw new WebServiceException(BAD_REQUEST, errMsg);
         }
 
-        final EzGraphService.Client graphClient;
+        if (count > 1 && !MediaType.APPLICATION_JSON_TYPE.isCompatible(type)) {
+            throw new WebServiceException(NOT_ACCEPTABLE, "Multiple paths can only be returned as JSON");
+        }
+
+        if (!PATH_COUNT_RANGE.contains(count)) {
+            final String errMsg = String.format(
+                    "The number of paths must be from %d to %d. You entered: %d", PATH_COUNT_RANGE.lowerEndpoint(),
+                    PATH_COUNT_RANGE.upperEndpoint(), count);
+
+            throw new WebServiceException(BAD_REQUEST, errMsg);
+        }
+
+        final Map<String, Vertex> endpoints;
+        try (ClientLease<EzGraphService.Client> lease = leaseGraphDbClient()) {
+            try {
+                endpoints = vertexResolver.resolveAll(
+                        lease.getClient(), Arrays.asList(startScreenName, endScreenName), token,
+                        tokens.getAuthorizationsFingerprint(token));
+            } catch (final TException e) {
+                lease.invalidate();
+                throw e;
+            }
+        } catch (final TException e) {
+            logger.error(THRIFT_ERROR_MSG, e);
+            throw new WebServiceException(INTERNAL_SERVER_ERROR, THRIFT_ERROR_MSG);
+        }
+
+        final Vertex startVertex = endpoints.get(startScreenName);
+        final Vertex endVertex = endpoints.get(endScreenName);
+
+        if (startVertex == null) {
+            throw new WebServiceException(NOT_FOUND, USER_NOT_FOUND_MSG + startScreenName);
+        }
+
+        if (endVertex == null) {
+            throw new WebServiceException(NOT_FOUND, USER_NOT_FOUND_MSG + endScreenName);
+        }
+
         try {
-            final EzSecurityToken token = getSecurityToken(httpRequest);
-            graphClient = getGraphDbClient();
+            final PathFinder pathFinder = new PathFinder(neighborLoader.forCaller(token), maxPathVertices);
+            final List<Graph> paths = pathFinder.findPaths(startVertex, endVertex, maxHops, count);
+            if (count > 1) {
+                return Response.ok(GraphJsonWriter.streamPaths(paths, pretty), MediaType.APPLICATION_JSON_TYPE)
+                        .header(TRUNCATED_HEADER, pathFinder.isLimitReached()).build();
+            }
+
+            if (!paths.isEmpty()) {
+                return graphResponse(paths.get(0), pretty, type);
+            }
 
-            final Vertex startVertex = getUserVertex(graphClient, startScreenName, token);
-            final Vertex endVertex = getUserVertex(graphClient, endScreenName, token);
+            if (!pathFinder.isLimitReached()) {
+                final Graph noPath = new Graph()
+                        .setVertices(Collections.<Vertex>emptyList())
+                        .setEdges(Collections.<Edge>emptyList());
 
-            if (startVertex == null) {
-                throw new WebServiceException(NOT_FOUND, USER_NOT_FOUND_MSG + startScreenName);
+                return graphResponse(noPath, pretty, type);
             }
 
-            if (endVertex == null) {
-                throw new WebServiceException(NOT_FOUND, USER_NOT_FOUND_MSG + endScreenName);
+            logger.info(
+                    "Path search from {} to {} reached its limit, using the graph service", startScreenName,
+                    endScreenName);
+
+            final Graph graph;
+            try (ClientLease<EzGraphService.Client> lease = leaseGraphDbClient()) {
+                try {
+                    graph = lease.getClient().findPath(GRAPH_NAME, startVertex, endVertex, maxHops, token);
+                } catch (final TException e) {
+                    lease.invalidate();
+                    throw e;
+                }
             }
 
-            final Graph graph = graphClient.findPath(GRAPH_NAME, startVertex, endVertex, maxHops, token);
-            return gson.toJson(graph);
+            return graphResponse(graph, pretty, type);
         } catch (final TException e) {
             logger.error(THRIFT_ERROR_MSG, e);
             throw new WebServiceException(INTERNAL_SERVER_ERROR, THRIFT_ERROR_MSG);
@@ -294,12 +742,165 @@ public final class RelationshipResource {
     }
 
     /**
-     * Gets the graph client for the specified resource.
+     * Chooses the encoding of a graph response from the request's Accept header. Must be called on the request thread.
+     *
+     * @return Media type in which to return graphs
+     */
+    private MediaType selectGraphType() {
+        final Variant variant = request.selectVariant(GRAPH_VARIANTS);
+        return variant == null ? MediaType.APPLICATION_JSON_TYPE : variant.getMediaType();
+    }
+
+    /**
+     * Builds a response holding a graph in the negotiated encoding.
+     *
+     * @param graph Graph to return
+     * @param pretty true to indent the returned JSON
+     * @param type Negotiated media type, JSON or Thrift binary
+     * @return Response with the graph as its entity
+     */
+    private static Response graphResponse(Graph graph, boolean pretty, MediaType type) {
+        if (ThriftMessageBodyWriter.APPLICATION_THRIFT_TYPE.isCompatible(type)) {
+            return Response.ok(graph, ThriftMessageBodyWriter.APPLICATION_THRIFT_TYPE).build();
+        }
+
+        return Response.ok(GraphJsonWriter.stream(graph, pretty), MediaType.APPLICATION_JSON_TYPE).build();
+    }
+
+    /**
+     * Runs a Gremlin query from a user's vertex through the {@link GremlinExecutor}, on the current thread.
      *
-     * @return An EzGraphService.Client on which thrift requests for graph data can be made.
+     * @param query Query to run
+     * @param token Security token of the caller
+     * @return Results of the query, vertices or edges depending on the type
+     */
+    private GremlinExecutor.Results<?> executeGremlin(GremlinRequest query, final EzSecurityToken token) {
+        final Vertex startVertex;
+        try (ClientLease<EzGraphService.Client> lease = leaseGraphDbClient()) {
+            try {
+                startVertex = getUserVertex(lease.getClient(), query.screenName, token);
+            } catch (final TException e) {
+                lease.invalidate();
+                throw e;
+            }
+        } catch (final TException e) {
+            logger.error(THRIFT_ERROR_MSG, e);
+            throw new WebServiceException(INTERNAL_SERVER_ERROR, THRIFT_ERROR_MSG);
+        }
+
+        if (startVertex == null) {
+            throw new WebServiceException(NOT_FOUND, USER_NOT_FOUND_MSG + query.screenName);
+        }
+
+        try {
+            if (VERTEX.equals(query.type)) {
+                return gremlinExecutor.run(
+                        query.gremlin, query.limit, new GremlinExecutor.Query<Vertex>() {
+                            @Override
+                            public List<Vertex> run(String gremlin) throws TException {
+                                try (ClientLease<EzGraphService.Client> lease = leaseGraphDbClient()) {
+                                    try {
+                                        return lease.getClient().queryVertices(GRAPH_NAME, startVertex, gremlin, token);
+                                    } catch (final TException e) {
+                                        lease.invalidate();
+                                        throw e;
+                                    }
+                                }
+                            }
+                        });
+            }
+
+            return gremlinExecutor.run(
+                    query.gremlin, query.limit, new GremlinExecutor.Query<Edge>() {
+                        @Override
+                        public List<Edge> run(String gremlin) throws TException {
+                            try (ClientLease<EzGraphService.Client> lease = leaseGraphDbClient()) {
+                                try {
+                                    return lease.getClient().queryEdges(GRAPH_NAME, startVertex, gremlin, token);
+                                } catch (final TException e) {
+                                    lease.invalidate();
+                                    throw e;
+                                }
+                            }
+                        }
+                    });
+        } catch (final TException e) {
+            logger.error(
+                    "Gremlin query failed. screenName={} type={} queryId={} query={}", query.screenName, query.type,
+                    query.queryId, query.gremlin, e);
+
+            throw new WebServiceException(
+                    INTERNAL_SERVER_ERROR,
+                    "An error occurred while accessing a thrift resource. Issues that could cause this include the "
+                            + "Thrift resource being unavailable, a malformed Gremlin query, or the query attempted "
+                            + "did not return the type expected ('vertex' or 'edge').");
+        }
+    }
+
+    /**
+     * Builds the response to a Gremlin query.
+     *
+     * @param type Type of the query, either {@value #VERTEX} or {@value #EDGE}
+     * @param results Results of the query, vertices or edges depending on the type
+     * @param pretty true to indent the returned JSON
+     * @return Response streaming the results in the JSON form described by {@link GraphJsonWriter}
+     */
+    @SuppressWarnings("unchecked")
+    private static Response toResponse(String type, GremlinExecutor.Results<?> results, boolean pretty) {
+        final StreamingOutput entity = VERTEX.equals(type)
+                ? GraphJsonWriter.streamVertices((List<Vertex>) results.getElements(), pretty)
+                : GraphJsonWriter.streamEdges((List<Edge>) results.getElements(), pretty);
+
+        return Response.ok(entity).header(TRUNCATED_HEADER, results.isTruncated()).build();
+    }
+
+    /**
+     * Gets the asynchronous context of the current request, through which the end of a suspended request is seen.
+     *
+     * @return Asynchronous context, or null if the request is not running asynchronously
+     */
+    private AsyncContext getAsyncContext() {
+        return httpRequest.isAsyncStarted() ? httpRequest.getAsyncContext() : null;
+    }
+
+    /**
+     * Leases a graph client from the pool.
+     *
+     * @return A lease of an EzGraphService.Client on which thrift requests for graph data can be made. The lease must
+     * be closed to return the client.
      * @throws TException if there is a problem retrieving the client from the pool.
      */
-    private EzGraphService.Client getGraphDbClient() throws TException {
-        return pool.getClient(EzGraphServiceConstants.SERVICE_NAME, EzGraphService.Client.class);
+    private ClientLease<EzGraphService.Client> leaseGraphDbClient() throws TException {
+        return clients.lease(EzGraphServiceConstants.SERVICE_NAME, EzGraphService.Client.class);
+    }
+
+    /**
+     * A Gremlin query read from a request body, with the options that ad hoc queries and templates share.
+     */
+    private static final class GremlinRequest {
+        private final String type;
+        private final String gremlin;
+        private final String screenName;
+        private final String queryId;
+        private final Long timeoutMillis;
+        private final Integer limit;
+
+        /**
+         * Constructor.
+         *
+         * @param type Type of the query, either {@value #VERTEX} or {@value #EDGE}
+         * @param gremlin Gremlin query text
+         * @param json JSON request body holding '{@link #SCREEN_NAME}' and the optional '{@value #QUERY_ID}',
+         * '{@value #TIMEOUT_MILLIS}' and '{@value #LIMIT}' fields
+         * @throws JSONException if the body does not hold the fields in the expected types
+         */
+        GremlinRequest(String type, String gremlin, JSONObject json) throws JSONException {
+            this.type = type;
+            this.gremlin = gremlin;
+            screenName = json.getString(SCREEN_NAME);
+            queryId = json.has(QUERY_ID) ? json.getString(QUERY_ID) : null;
+            timeoutMillis = json.has(TIMEOUT_MILLIS) ? json.getLong(TIMEOUT_MILLIS) : null;
+            limit = json.has(LIMIT) ? json.getInt(LIMIT) : null;
+        }
     }
 }
@@ -0,0 +1,85 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample.rest.resource;
+
+import static javax.ws.rs.core.Response.Status.NOT_FOUND;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.MediaType;
+
+import ezbake.app.sample.rest.SampleAppContext;
+import ezbake.app.sample.rest.WebServiceException;
+import ezbake.app.sample.rest.security.TokenManager;
+import ezbake.app.sample.trace.InMemorySpanCollector;
+import ezbake.app.sample.trace.SpanCollector;
+import ezbake.app.sample.trace.TraceBreakdown;
+import ezbake.app.sample.trace.Tracer;
+
+/**
+ * REST endpoint showing where the time of the traced web service requests went, when spans are kept in memory. Spans
+ * written to a file are read with {@link TraceBreakdown#main(String[])} instead.
+ */
+@Path("traces")
+@Produces(MediaType.TEXT_PLAIN)
+public final class TraceResource {
+    private final Tracer tracer;
+
+    /**
+     * Resolves the security token of the caller.
+     */
+    private final TokenManager tokens;
+
+    /**
+     * The current request.
+     */
+    @Context
+    private HttpServletRequest httpRequest;
+
+    /**
+     * Constructor.
+     *
+     * @param context State shared by all resources
+     */
+    public TraceResource(SampleAppContext context) {
+        tracer = context.getTracer();
+        tokens = context.getTokens();
+    }
+
+    /**
+     * Returns the latency breakdown of the spans held in memory, per operation, and the slowest traces.
+     *
+     * @param slowest Number of slowest traces to show
+     * @return Breakdown as a text table
+     */
+    @GET
+    public String getBreakdown(@QueryParam("slowest") @DefaultValue("10") int slowest) {
+        // Only callers with a valid session may see what the application has been doing
+        tokens.getToken(httpRequest);
+
+        final SpanCollector collector = tracer.getCollector();
+        if (!(collector instanceof InMemorySpanCollector)) {
+            throw new WebServiceException(
+                    NOT_FOUND, "Spans are not kept in memory, see " + Tracer.FILE_PROP + " in the configuration");
+        }
+
+        return new TraceBreakdown(((InMemorySpanCollector) collector).getSpans()).format(slowest);
+    }
+}
@@ -19,21 +19,19 @@ import static javax.ws.rs.core.Response.Status.FORBIDDEN;
 import static javax.ws.rs.core.Response.Status.INTERNAL_SERVER_ERROR;
 import static javax.ws.rs.core.Response.Status.NOT_FOUND;
 
-import static ezbake.app.sample.rest.WebServiceUtils.getSecurityToken;
-import static ezbake.app.sample.rest.WebServiceUtils.isValidJsonObject;
-
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Properties;
+import java.util.concurrent.Callable;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.Consumes;
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
-import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
@@ -42,17 +40,24 @@ import org.apache.thrift.TException;
 import org.codehaus.jettison.json.JSONArray;
 import org.codehaus.jettison.json.JSONException;
 import org.codehaus.jettison.json.JSONObject;
+import org.jboss.resteasy.annotations.Suspend;
+import org.jboss.resteasy.spi.AsynchronousResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import ezbake.app.sample.rest.SampleAppContext;
 import ezbake.app.sample.rest.WebServiceException;
+import ezbake.app.sample.rest.async.BackendExecutor;
+import ezbake.app.sample.rest.async.SingleFlight;
+import ezbake.app.sample.rest.json.JsonBody;
+import ezbake.app.sample.rest.pool.ClientLease;
+import ezbake.app.sample.rest.pool.ClientLeasePool;
+import ezbake.app.sample.rest.security.TokenManager;
+import ezbake.base.thrift.EzSecurityToken;
 import ezbake.base.thrift.EzSecurityTokenException;
-import ezbake.configuration.EzConfiguration;
-import ezbake.configuration.EzConfigurationLoaderException;
 import ezbake.data.mongo.thrift.EzMongo;
 import ezbake.data.mongo.thrift.EzMongoBaseException;
 import ezbake.data.mongo.thrift.MongoFindParams;
-import ezbake.thrift.ThriftClientPool;
 
 import ezbakehelpers.ezconfigurationhelpers.application.EzBakeApplicationConfigurationHelper;
 
@@ -69,15 +74,45 @@ public final class TweetResource {
      */
     private static final int JSON_INDENT = 2;
 
+    /**
+     * Query parameter to choose between indented and compact JSON.
+     */
+    private static final String PRETTY_PARAM = "pretty";
+
+    /**
+     * Field of a Tweet document holding the Tweet ID as a string.
+     */
+    private static final String ID_STR_KEY = "id_str";
+
+    /**
+     * Name of the EzMongo service, which is also used to name its executor.
+     */
+    private static final String MONGO_SERVICE_NAME = "ezmongo";
+
     /**
      * Application name.
      */
     private final String appName;
 
     /**
-     * Client pool used to create connections to the EzMongo Thrift service.
+     * Shared client pool used to create connections to the EzMongo Thrift service.
      */
-    private final ThriftClientPool pool;
+    private final ClientLeasePool clients;
+
+    /**
+     * Pool on which EzMongo requests are completed.
+     */
+    private final BackendExecutor mongoExecutor;
+
+    /**
+     * Collapses concurrent lookups of the same Tweet.
+     */
+    private final SingleFlight<JSONObject> tweetLookups = new SingleFlight<>();
+
+    /**
+     * Resolves the security token and authorizations fingerprint of the caller.
+     */
+    private final TokenManager tokens;
 
     /**
      * The current request.
@@ -87,33 +122,128 @@ public final class TweetResource {
 
     /**
      * Constructor.
+     *
+     * @param context State shared by all resources
      */
-    public TweetResource() {
-        try {
-            final Properties props = new EzConfiguration().getProperties();
+    public TweetResource(SampleAppContext context) {
+        tokens = context.getTokens();
+        clients = context.getClients();
+        appName = new EzBakeApplicationConfigurationHelper(context.getProperties()).getApplicationName();
+        mongoExecutor = context.register(new BackendExecutor(MONGO_SERVICE_NAME, context.getProperties()));
 
-            appName = new EzBakeApplicationConfigurationHelper(props).getApplicationName();
-            pool = new ThriftClientPool(props);
-        } catch (final EzConfigurationLoaderException e) {
-            final String errMsg = "Could not read EzBake configuration";
-            logger.error(errMsg, e);
-            throw new WebApplicationException(
-                    e, Response.status(INTERNAL_SERVER_ERROR).entity(errMsg).build());
-        }
+        clients.register(appName, MONGO_SERVICE_NAME, EzMongo.Client.class);
     }
 
     /**
      * Returns the JSON string of a Tweet document found by its ID.
      *
      * @param tweetId Tweet ID to find
-     * @return JSON string of the Tweet document
+     * @param pretty true to indent the returned JSON, false for compact JSON
+     * @param response Suspended response, completed with the JSON string of the Tweet document
      */
     @GET
     @Path("{tweetId}")
-    public String getTweet(@PathParam("tweetId") String tweetId) {
+    public void getTweet(
+            @PathParam("tweetId") final String tweetId,
+            @QueryParam(PRETTY_PARAM) @DefaultValue("true") final boolean pretty,
+            @Suspend(BackendExecutor.SUSPEND_TIMEOUT_MILLIS) AsynchronousResponse response) {
         logger.info("Called getTweet() with ID {}", tweetId);
 
-        final List<JSONObject> results = doQuery(String.format("{ \"id_str\": \"%s\" }", tweetId));
+        final EzSecurityToken token;
+        try {
+            token = tokens.getToken(httpRequest);
+        } catch (final WebServiceException e) {
+            BackendExecutor.fail(response, e);
+            return;
+        }
+
+        mongoExecutor.submit(
+                response, new Callable<Response>() {
+                    @Override
+                    public Response call() {
+                        return Response.ok(findTweet(tweetId, pretty, token), MediaType.APPLICATION_JSON_TYPE).build();
+                    }
+                });
+    }
+
+    /**
+     * Queries the Tweet documents with a MongoDB query.
+     *
+     * @param jsonQuery JSON MongoDB query, parsed and validated by {@link ezbake.app.sample.rest.json.JsonBodyReader}
+     * @param pretty true to indent the returned JSON, false for compact JSON
+     * @param response Suspended response, completed with the JSON string of the returned Tweet documents
+     */
+    @POST
+    @Path("query")
+    @Consumes(MediaType.APPLICATION_JSON)
+    public void queryTweets(
+            final JsonBody jsonQuery, @QueryParam(PRETTY_PARAM) @DefaultValue("true") final boolean pretty,
+            @Suspend(BackendExecutor.SUSPEND_TIMEOUT_MILLIS) AsynchronousResponse response) {
+        logger.info("Called queryTweets with query: {}", jsonQuery);
+
+        final EzSecurityToken token;
+        try {
+            token = tokens.getToken(httpRequest);
+        } catch (final WebServiceException e) {
+            BackendExecutor.fail(response, e);
+            return;
+        }
+
+        mongoExecutor.submit(
+                response, new Callable<Response>() {
+                    @Override
+                    public Response call() {
+                        return Response.ok(findTweets(jsonQuery, pretty, token), MediaType.APPLICATION_JSON_TYPE)
+                                .build();
+                    }
+                });
+    }
+
+    /**
+     * Finds a Tweet document by its ID, sharing the EzMongo query with concurrent lookups of the same Tweet by callers
+     * with the same authorizations.
+     *
+     * @param tweetId Tweet ID to find
+     * @param pretty true to indent the returned JSON
+     * @param token Security token of the caller
+     * @return JSON string of the Tweet document
+     */
+    private String findTweet(final String tweetId, boolean pretty, final EzSecurityToken token) {
+        final JSONObject tweet = tweetLookups.execute(
+                tokens.getAuthorizationsFingerprint(token), tweetId, new Callable<JSONObject>() {
+                    @Override
+                    public JSONObject call() {
+                        return queryTweet(tweetId, token);
+                    }
+                });
+
+        try {
+            return pretty ? tweet.toString(JSON_INDENT) : tweet.toString();
+        } catch (final JSONException e) {
+            final String errMsg = "Could not convert Tweet to JSON string";
+            logger.error(errMsg, e);
+            throw new WebServiceException(INTERNAL_SERVER_ERROR, errMsg);
+        }
+    }
+
+    /**
+     * Queries EzMongo for a Tweet document by its ID.
+     *
+     * @param tweetId Tweet ID to find
+     * @param token Security token of the caller
+     * @return The Tweet document
+     */
+    private JSONObject queryTweet(String tweetId, EzSecurityToken token) {
+        final String query;
+        try {
+            query = new JSONObject().put(ID_STR_KEY, tweetId).toString();
+        } catch (final JSONException e) {
+            final String errMsg = "Could not build query for Tweet ID " + tweetId;
+            logger.error(errMsg, e);
+            throw new WebServiceException(INTERNAL_SERVER_ERROR, errMsg);
+        }
+
+        final List<JSONObject> results = doQuery(query, token);
         if (results.isEmpty()) {
             final String errMsg = "Could not find Tweet with ID " + tweetId;
             logger.error(errMsg);
@@ -124,29 +254,21 @@ public final class TweetResource {
             throw new WebServiceException(INTERNAL_SERVER_ERROR, errMsg);
         }
 
-        try {
-            return results.get(0).toString(JSON_INDENT);
-        } catch (final JSONException e) {
-            final String errMsg = "Could not convert Tweet to JSON string";
-            logger.error(errMsg, e);
-            throw new WebServiceException(INTERNAL_SERVER_ERROR, errMsg);
-        }
+        return results.get(0);
     }
 
     /**
-     * Queries the Tweet documents with a MongoDB query.
+     * Finds the Tweet documents matching a MongoDB query.
      *
      * @param jsonQuery JSON MongoDB query
+     * @param pretty true to indent the returned JSON
+     * @param token Security token of the caller
      * @return JSON string of the returned Tweet documents
      */
-    @POST
-    @Path("query")
-    @Consumes(MediaType.APPLICATION_JSON)
-    public String queryTweets(String jsonQuery) {
-        logger.info("Called queryTweets with query: {}", jsonQuery);
-
+    private String findTweets(JsonBody jsonQuery, boolean pretty, EzSecurityToken token) {
+        final JSONArray tweets = new JSONArray(doQuery(jsonQuery.getText(), token));
         try {
-            return new JSONArray(doQuery(jsonQuery)).toString(JSON_INDENT);
+            return pretty ? tweets.toString(JSON_INDENT) : tweets.toString();
         } catch (final JSONException e) {
             final String errMsg = "Could not convert Tweets to JSON string";
             logger.error(errMsg, e);
@@ -157,23 +279,22 @@ public final class TweetResource {
     /**
      * Perform the actual query to EzMongo and convert the results into a list of JSON objects (one for each document).
      *
-     * @param jsonQuery JSON MongoDB query
+     * @param jsonQuery JSON MongoDB query, already validated
+     * @param token Security token of the caller
      * @return List of JSON objects (one for each document)
      */
-    private List<JSONObject> doQuery(String jsonQuery) {
-        if (!isValidJsonObject(jsonQuery)) {
-            final String errMsg = "Query must be a valid JSON object";
-            logger.error(errMsg);
-            throw new WebServiceException(BAD_REQUEST, errMsg);
-        }
-
-        EzMongo.Client client = null;
-        try {
-            client = pool.getClient(appName, "ezmongo", EzMongo.Client.class);
-
+    private List<JSONObject> doQuery(String jsonQuery, EzSecurityToken token) {
+        try (ClientLease<EzMongo.Client> lease = clients.lease(appName, MONGO_SERVICE_NAME, EzMongo.Client.class)) {
             final MongoFindParams findParams = new MongoFindParams();
             findParams.setJsonQuery(jsonQuery);
-            final List<String> results = client.find("tweets", findParams, getSecurityToken(httpRequest));
+            final List<String> results;
+            try {
+                results = lease.getClient().find("tweets", findParams, token);
+            } catch (final TException e) {
+                lease.invalidate();
+                throw e;
+            }
+
             final List<JSONObject> resultObjs = new ArrayList<>(results.size());
             for (final String resultStr : results) {
                 resultObjs.add(new JSONObject(resultStr));
@@ -196,10 +317,6 @@ public final class TweetResource {
             final String errMsg = "EzMongo returned invalid JSON";
             logger.error(errMsg, e);
             throw new WebServiceException(INTERNAL_SERVER_ERROR, errMsg);
-        } finally {
-            if (client != null) {
-                pool.returnToPool(client);
-            }
         }
     }
 }
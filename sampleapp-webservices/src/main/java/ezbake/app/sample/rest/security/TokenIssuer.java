@@ -0,0 +1,43 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample.rest.security;
+
+import java.io.Closeable;
+
+import ezbake.base.thrift.EzSecurityToken;
+import ezbake.base.thrift.EzSecurityTokenException;
+
+/**
+ * Validates and refreshes the security tokens managed by a {@link TokenManager}. In the application this is the
+ * {@link ezbake.security.client.EzbakeSecurityClient}.
+ */
+interface TokenIssuer extends Closeable {
+    /**
+     * Validates a token received from the login filter.
+     *
+     * @param token Token to validate
+     * @throws EzSecurityTokenException if the token is invalid
+     */
+    void validate(EzSecurityToken token) throws EzSecurityTokenException;
+
+    /**
+     * Gets a fresh token with the same principal and authorizations as an existing one.
+     *
+     * @param token Token to refresh
+     * @return The refreshed token
+     * @throws EzSecurityTokenException if the security service would not issue a new token
+     */
+    EzSecurityToken refresh(EzSecurityToken token) throws EzSecurityTokenException;
+}
@@ -0,0 +1,356 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample.rest.security;
+
+import static javax.ws.rs.core.Response.Status.FORBIDDEN;
+import static javax.ws.rs.core.Response.Status.UNAUTHORIZED;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import ezbake.app.sample.rest.WebServiceException;
+import ezbake.app.sample.rest.WebServiceUtils;
+import ezbake.base.thrift.EzSecurityToken;
+import ezbake.base.thrift.EzSecurityTokenException;
+import ezbake.common.properties.EzProperties;
+import ezbake.security.client.EzbakeSecurityClient;
+
+import ezbakehelpers.ezconfigurationhelpers.application.EzBakeApplicationConfigurationHelper;
+
+/**
+ * Resolves the security token of the caller's session, shared by all resources. The token placed in the session by
+ * the login filter is validated once and then cached per session. Tokens that are close to expiry are refreshed in the
+ * background, so Thrift calls are not made with tokens that are about to be rejected, and the refreshed token is used
+ * for the rest of the session.
+ * <p>
+ * The authorizations fingerprint of each token is also computed once and cached, for response caches to key on.
+ */
+public final class TokenManager implements Closeable {
+    /**
+     * Configuration properties and their defaults.
+     */
+    public static final String REFRESH_WINDOW_SECONDS_PROP = "sampleapp.token.refresh.window.seconds";
+    public static final String REFRESH_THREADS_PROP = "sampleapp.token.refresh.threads";
+    public static final String REFRESH_QUEUE_SIZE_PROP = "sampleapp.token.refresh.queue";
+    public static final String SESSION_IDLE_SECONDS_PROP = "sampleapp.token.cache.idle.seconds";
+    public static final String MAX_SESSIONS_PROP = "sampleapp.token.cache.max";
+
+    private static final Logger logger = LoggerFactory.getLogger(TokenManager.class);
+
+    private static final long DEFAULT_REFRESH_WINDOW_SECONDS = 60;
+    private static final int DEFAULT_REFRESH_THREADS = 2;
+    private static final int DEFAULT_REFRESH_QUEUE_SIZE = 1000;
+    private static final long DEFAULT_SESSION_IDLE_SECONDS = 1800;
+    private static final long DEFAULT_MAX_SESSIONS = 10000;
+
+    private final TokenIssuer issuer;
+    private final long refreshWindowMillis;
+
+    /**
+     * Tokens keyed by HTTP session ID. Sessions that have not made requests for a while are dropped.
+     */
+    private final Cache<String, SessionToken> sessions;
+
+    /**
+     * Authorizations fingerprints keyed by token identity.
+     */
+    private final Cache<EzSecurityToken, String> fingerprints;
+
+    /**
+     * Pool on which tokens are refreshed ahead of expiry.
+     */
+    private final ThreadPoolExecutor refreshPool;
+
+    /**
+     * Constructor.
+     *
+     * @param props EzBake configuration properties
+     */
+    public TokenManager(Properties props) {
+        this(new EzProperties(props, true), new SecurityClientIssuer(props));
+    }
+
+    /**
+     * Constructor for managing tokens issued by another source.
+     *
+     * @param ezProps Configuration properties
+     * @param issuer Validates and refreshes tokens, and is closed with this manager
+     */
+    TokenManager(EzProperties ezProps, TokenIssuer issuer) {
+        this.issuer = issuer;
+        refreshWindowMillis = TimeUnit.SECONDS.toMillis(
+                ezProps.getLong(REFRESH_WINDOW_SECONDS_PROP, DEFAULT_REFRESH_WINDOW_SECONDS));
+
+        final long maxSessions = ezProps.getLong(MAX_SESSIONS_PROP, DEFAULT_MAX_SESSIONS);
+        sessions = CacheBuilder.newBuilder()
+                .expireAfterAccess(
+                        ezProps.getLong(SESSION_IDLE_SECONDS_PROP, DEFAULT_SESSION_IDLE_SECONDS), TimeUnit.SECONDS)
+                .maximumSize(maxSessions).build();
+
+        fingerprints = CacheBuilder.newBuilder().weakKeys().maximumSize(maxSessions).build();
+
+        final int threads = ezProps.getInteger(REFRESH_THREADS_PROP, DEFAULT_REFRESH_THREADS);
+        refreshPool = new ThreadPoolExecutor(
+                threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(
+                        ezProps.getInteger(REFRESH_QUEUE_SIZE_PROP, DEFAULT_REFRESH_QUEUE_SIZE)),
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("token-refresh-%d").build());
+    }
+
+    /**
+     * Provides the security token of the caller's session, which can be passed along to a thrift service. Must be
+     * called on the request thread.
+     *
+     * @param httpRequest Http request from which thrift calls that require a security token are being made
+     * @return The validated, unexpired security token of the session
+     * @throws WebServiceException with status 403 if the session has no token, or its token is invalid or has expired
+     * and could not be refreshed
+     */
+    public EzSecurityToken getToken(HttpServletRequest httpRequest) {
+        return getToken(httpRequest.getSession().getId(), WebServiceUtils.getSecurityToken(httpRequest));
+    }
+
+    /**
+     * Provides the security token of a session.
+     *
+     * @param sessionId ID of the HTTP session
+     * @param sessionToken Token placed in the session by the login filter, or null if there is none
+     * @return The validated, unexpired security token of the session
+     * @throws WebServiceException with status 403 if the session has no token, or its token is invalid or has expired
+     * and could not be refreshed
+     */
+    EzSecurityToken getToken(String sessionId, EzSecurityToken sessionToken) {
+        if (sessionToken == null) {
+            throw new WebServiceException(FORBIDDEN, "No security token in session");
+        }
+
+        SessionToken managed = sessions.getIfPresent(sessionId);
+        if (managed == null || managed.source != sessionToken) {
+            managed = new SessionToken(validate(sessionToken));
+            sessions.put(sessionId, managed);
+        }
+
+        final long remainingMillis = getExpiry(managed.current) - System.currentTimeMillis();
+        if (remainingMillis <= 0) {
+            return refreshNow(managed);
+        }
+
+        if (remainingMillis <= refreshWindowMillis) {
+            refreshLater(managed);
+        }
+
+        return managed.current;
+    }
+
+    /**
+     * Gets the authorizations fingerprint of a token, as computed by
+     * {@link WebServiceUtils#getAuthorizationsFingerprint(EzSecurityToken)}, computing it only once per token.
+     *
+     * @param token Security token whose authorizations to fingerprint
+     * @return Hex-encoded fingerprint of the token's authorizations
+     * @throws WebServiceException with status 401 if there is no token
+     */
+    public String getAuthorizationsFingerprint(EzSecurityToken token) {
+        if (token == null) {
+            throw new WebServiceException(UNAUTHORIZED, "No security token to fingerprint");
+        }
+
+        String fingerprint = fingerprints.getIfPresent(token);
+        if (fingerprint == null) {
+            fingerprint = WebServiceUtils.getAuthorizationsFingerprint(token);
+            fingerprints.put(token, fingerprint);
+        }
+
+        return fingerprint;
+    }
+
+    /**
+     * Stops background refreshes and closes the token issuer.
+     */
+    @Override
+    public void close() {
+        refreshPool.shutdownNow();
+
+        try {
+            issuer.close();
+        } catch (final IOException e) {
+            logger.error("Could not close security client", e);
+        }
+    }
+
+    /**
+     * Validates a token received from the login filter.
+     *
+     * @param token Token to validate
+     * @return The token
+     */
+    private EzSecurityToken validate(EzSecurityToken token) {
+        try {
+            issuer.validate(token);
+            return token;
+        } catch (final EzSecurityTokenException e) {
+            final String errMsg = "Invalid security token in session";
+            logger.error(errMsg, e);
+            throw new WebServiceException(FORBIDDEN, errMsg);
+        }
+    }
+
+    /**
+     * Refreshes an expired token on the caller's thread, unless another request already has.
+     *
+     * @param managed Token of the session
+     * @return The refreshed token
+     */
+    private EzSecurityToken refreshNow(SessionToken managed) {
+        synchronized (managed) {
+            if (getExpiry(managed.current) > System.currentTimeMillis()) {
+                return managed.current;
+            }
+
+            try {
+                managed.current = refresh(managed.current);
+                return managed.current;
+            } catch (final EzSecurityTokenException e) {
+                final String errMsg = "Security token expired and could not be refreshed";
+                logger.error(errMsg, e);
+                throw new WebServiceException(FORBIDDEN, errMsg);
+            }
+        }
+    }
+
+    /**
+     * Refreshes a token that is close to expiry in the background, unless a refresh is already in progress. If the
+     * refresh pool is saturated the refresh is skipped and tried again on the next request.
+     *
+     * @param managed Token of the session
+     */
+    private void refreshLater(final SessionToken managed) {
+        if (!managed.refreshing.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            refreshPool.execute(
+                    new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                synchronized (managed) {
+                                    managed.current = refresh(managed.current);
+                                }
+                            } catch (final EzSecurityTokenException e) {
+                                logger.warn("Could not refresh security token ahead of expiry", e);
+                            } finally {
+                                managed.refreshing.set(false);
+                            }
+                        }
+                    });
+        } catch (final RejectedExecutionException e) {
+            managed.refreshing.set(false);
+            logger.debug("Token refresh pool is saturated, will retry on a later request");
+        }
+    }
+
+    /**
+     * Gets a fresh token with the same principal and authorizations as an existing one.
+     *
+     * @param token Token to refresh
+     * @return The refreshed token
+     * @throws EzSecurityTokenException if the security service would not issue a new token
+     */
+    private EzSecurityToken refresh(EzSecurityToken token) throws EzSecurityTokenException {
+        final EzSecurityToken refreshed = issuer.refresh(token);
+        logger.debug("Refreshed security token for {}", refreshed.getTokenPrincipal().getPrincipal());
+        return refreshed;
+    }
+
+    /**
+     * Gets the time at which a token expires.
+     *
+     * @param token Security token
+     * @return Expiry time in milliseconds since the epoch
+     */
+    private static long getExpiry(EzSecurityToken token) {
+        return token.getValidity().getNotAfter();
+    }
+
+    /**
+     * Issuer backed by the EzBake security service.
+     */
+    private static final class SecurityClientIssuer implements TokenIssuer {
+        private final EzbakeSecurityClient securityClient;
+        private final String securityId;
+
+        /**
+         * Constructor.
+         *
+         * @param props EzBake configuration properties
+         */
+        SecurityClientIssuer(Properties props) {
+            securityClient = new EzbakeSecurityClient(props);
+            securityId = new EzBakeApplicationConfigurationHelper(props).getSecurityID();
+        }
+
+        @Override
+        public void validate(EzSecurityToken token) throws EzSecurityTokenException {
+            securityClient.validateReceivedToken(token);
+        }
+
+        @Override
+        public EzSecurityToken refresh(EzSecurityToken token) throws EzSecurityTokenException {
+            return securityClient.fetchDerivedTokenForApp(token, securityId);
+        }
+
+        @Override
+        public void close() throws IOException {
+            securityClient.close();
+        }
+    }
+
+    /**
+     * Token of one session: the token placed in the session by the login filter and the token currently in use, which
+     * differs once it has been refreshed.
+     */
+    private static final class SessionToken {
+        private final EzSecurityToken source;
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+        private volatile EzSecurityToken current;
+
+        /**
+         * Constructor.
+         *
+         * @param source Validated token placed in the session by the login filter
+         */
+        SessionToken(EzSecurityToken source) {
+            this.source = source;
+            current = source;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample.rest.tracing;
+
+import static javax.ws.rs.core.Response.Status.INTERNAL_SERVER_ERROR;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.ext.Provider;
+
+import org.jboss.resteasy.annotations.interception.ServerInterceptor;
+import org.jboss.resteasy.core.ResourceMethod;
+import org.jboss.resteasy.core.ResteasyProviderFactory;
+import org.jboss.resteasy.core.ServerResponse;
+import org.jboss.resteasy.spi.Failure;
+import org.jboss.resteasy.spi.HttpRequest;
+import org.jboss.resteasy.spi.interception.PostProcessInterceptor;
+import org.jboss.resteasy.spi.interception.PreProcessInterceptor;
+
+import ezbake.app.sample.rest.SampleAppContext;
+import ezbake.app.sample.trace.Span;
+import ezbake.app.sample.trace.TraceContext;
+import ezbake.app.sample.trace.Tracer;
+
+/**
+ * Starts a trace for a sample of requests, named after the resource class and method that handles them. Synchronous
+ * requests end their trace once the resource method returns. Suspended requests hand their trace to the
+ * {@link ezbake.app.sample.rest.async.BackendExecutor} that completes them, which ends it with the request.
+ */
+@Provider
+@ServerInterceptor
+public final class TracingInterceptor implements PreProcessInterceptor, PostProcessInterceptor {
+    /**
+     * Request attribute holding the root span of the request.
+     */
+    private static final String SPAN_ATTRIBUTE = TracingInterceptor.class.getName() + ".span";
+
+    private final Tracer tracer;
+
+    /**
+     * Constructor.
+     */
+    public TracingInterceptor() {
+        tracer = SampleAppContext.get().getTracer();
+    }
+
+    @Override
+    public ServerResponse preProcess(HttpRequest request, ResourceMethod method)
+            throws Failure, WebApplicationException {
+        // Container threads are reused, so forget any span left behind by an earlier request
+        tracer.reset();
+
+        final Span span = tracer.startTrace(
+                method.getResourceClass().getSimpleName() + '.' + method.getMethod().getName());
+
+        if (span.isRecording()) {
+            request.setAttribute(SPAN_ATTRIBUTE, span);
+        }
+
+        return null;
+    }
+
+    @Override
+    public void postProcess(ServerResponse response) {
+        final HttpRequest request = ResteasyProviderFactory.getContextData(HttpRequest.class);
+        final Object attribute = request == null ? null : request.getAttribute(SPAN_ATTRIBUTE);
+        if (!(attribute instanceof Span)) {
+            return;
+        }
+
+        // A span that is no longer current was handed to another thread, which ends it
+        final Span span = (Span) attribute;
+        final TraceContext context = span.getContext();
+        if (context.equals(tracer.currentContext())) {
+            if (response.getStatus() >= INTERNAL_SERVER_ERROR.getStatusCode()) {
+                span.setError();
+            }
+
+            span.close();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import javax.ws.rs.core.Response;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableSet;
+
+import ezbake.base.thrift.Authorizations;
+import ezbake.base.thrift.EzSecurityToken;
+
+/**
+ * Unit tests for {@link WebServiceUtils}.
+ */
+public final class WebServiceUtilsTest {
+    private static final String FIRST_AUTH = "A";
+    private static final String SECOND_AUTH = "B";
+
+    /**
+     * Tests that fingerprinting the missing token of a session without one is rejected as unauthorized.
+     */
+    @Test
+    public void testFingerprintWithoutToken() {
+        try {
+            WebServiceUtils.getAuthorizationsFingerprint(null);
+            fail("Fingerprint computed without a token");
+        } catch (final WebServiceException e) {
+            assertEquals(Response.Status.UNAUTHORIZED, e.getStatus());
+        }
+    }
+
+    /**
+     * Tests that fingerprints do not depend on the order of authorizations, and that an authorization containing a
+     * separator character is not confused with two authorizations.
+     */
+    @Test
+    public void testFingerprintDistinguishesAuths() {
+        final String joined = WebServiceUtils.getAuthorizationsFingerprint(createToken(FIRST_AUTH + ',' + SECOND_AUTH));
+        final String split = WebServiceUtils.getAuthorizationsFingerprint(createToken(FIRST_AUTH, SECOND_AUTH));
+
+        assertEquals(split, WebServiceUtils.getAuthorizationsFingerprint(createToken(SECOND_AUTH, FIRST_AUTH)));
+        assertFalse(joined.equals(split));
+    }
+
+    /**
+     * Creates a security token with formal authorizations.
+     *
+     * @param auths Formal authorizations of the token
+     * @return The token
+     */
+    private static EzSecurityToken createToken(String... auths) {
+        final EzSecurityToken token = new EzSecurityToken();
+        token.setAuthorizations(new Authorizations().setFormalAuthorizations(ImmutableSet.copyOf(auths)));
+        return token;
+    }
+}
@@ -0,0 +1,230 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample.rest.async;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+/**
+ * Unit tests for {@link SingleFlight}.
+ */
+public final class SingleFlightTest {
+    private static final String FINGERPRINT = "fingerprint";
+    private static final String KEY = "key";
+    private static final String RESULT = "result";
+
+    private final SingleFlight<String> flights = new SingleFlight<>();
+
+    /**
+     * Tests that a caller that arrives while a call is in progress shares its result without calling again.
+     *
+     * @throws Exception if an error occurred
+     */
+    @Test
+    public void testConcurrentCallersShareResult() throws Exception {
+        final BlockingCall call = new BlockingCall(null);
+        final CountingCall joinedCall = new CountingCall();
+
+        final Outcome first = startCaller(FINGERPRINT, call);
+        call.started.await();
+        final Outcome joined = startJoinedCaller(joinedCall);
+        call.release.countDown();
+
+        assertEquals(RESULT, awaitOutcome(first));
+        assertEquals(RESULT, awaitOutcome(joined));
+        assertEquals(0, joinedCall.calls.get());
+    }
+
+    /**
+     * Tests that a caller that arrives while a call is in progress gets the same unchecked exception as the first.
+     *
+     * @throws Exception if an error occurred
+     */
+    @Test
+    public void testConcurrentCallersShareException() throws Exception {
+        final IllegalStateException failure = new IllegalStateException(RESULT);
+        final BlockingCall call = new BlockingCall(failure);
+        final CountingCall joinedCall = new CountingCall();
+
+        final Outcome first = startCaller(FINGERPRINT, call);
+        call.started.await();
+        final Outcome joined = startJoinedCaller(joinedCall);
+        call.release.countDown();
+
+        assertSame(failure, awaitOutcome(first));
+        assertSame(failure, awaitOutcome(joined));
+        assertEquals(0, joinedCall.calls.get());
+    }
+
+    /**
+     * Tests that a checked exception thrown by the call is wrapped.
+     */
+    @Test
+    public void testCheckedExceptionWrapped() {
+        final IOException failure = new IOException(RESULT);
+        try {
+            flights.execute(
+                    FINGERPRINT, KEY, new Callable<String>() {
+                        @Override
+                        public String call() throws IOException {
+                            throw failure;
+                        }
+                    });
+
+            fail("Call succeeded");
+        } catch (final UncheckedExecutionException e) {
+            assertSame(failure, e.getCause());
+        }
+    }
+
+    /**
+     * Tests that calls are not shared between callers with different authorizations, and that a completed call is
+     * not reused.
+     *
+     * @throws Exception if an error occurred
+     */
+    @Test
+    public void testNotSharedAcrossAuthsOrOverTime() throws Exception {
+        final BlockingCall call = new BlockingCall(null);
+        final CountingCall otherAuthsCall = new CountingCall();
+
+        final Outcome first = startCaller(FINGERPRINT, call);
+        call.started.await();
+        assertEquals(RESULT, flights.execute("otherFingerprint", KEY, otherAuthsCall));
+        call.release.countDown();
+        assertEquals(RESULT, awaitOutcome(first));
+
+        final CountingCall laterCall = new CountingCall();
+        assertEquals(RESULT, flights.execute(FINGERPRINT, KEY, laterCall));
+        assertEquals(1, otherAuthsCall.calls.get());
+        assertEquals(1, laterCall.calls.get());
+    }
+
+    /**
+     * Starts a caller on a new thread, recording its result or exception.
+     *
+     * @param authsFingerprint Authorizations fingerprint of the caller
+     * @param call Call to make
+     * @return Outcome of the caller
+     */
+    private Outcome startCaller(final String authsFingerprint, final Callable<String> call) {
+        final Outcome outcome = new Outcome();
+        outcome.thread = new Thread(
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            outcome.value = flights.execute(authsFingerprint, KEY, call);
+                        } catch (final RuntimeException e) {
+                            outcome.value = e;
+                        }
+                    }
+                });
+
+        outcome.thread.start();
+        return outcome;
+    }
+
+    /**
+     * Starts a caller for the same key and authorizations as a call in progress, and waits for it to join the call.
+     *
+     * @param call Call that the caller would make if it did not join
+     * @return Outcome of the caller
+     */
+    private Outcome startJoinedCaller(Callable<String> call) {
+        final Outcome outcome = startCaller(FINGERPRINT, call);
+        while (outcome.thread.getState() != Thread.State.WAITING) {
+            Thread.yield();
+        }
+
+        return outcome;
+    }
+
+    /**
+     * Waits for a caller to finish.
+     *
+     * @param outcome Outcome of the caller
+     * @return Result or exception of the caller
+     * @throws InterruptedException if interrupted while waiting
+     */
+    private static Object awaitOutcome(Outcome outcome) throws InterruptedException {
+        outcome.thread.join();
+        return outcome.value;
+    }
+
+    /**
+     * Outcome of a caller and the thread it runs on.
+     */
+    private static final class Outcome {
+        private Thread thread;
+
+        /**
+         * Result or exception of the caller, read once the thread has finished.
+         */
+        private Object value;
+    }
+
+    /**
+     * Call that counts how often it is made.
+     */
+    private static final class CountingCall implements Callable<String> {
+        private final AtomicInteger calls = new AtomicInteger();
+
+        @Override
+        public String call() {
+            calls.incrementAndGet();
+            return RESULT;
+        }
+    }
+
+    /**
+     * Call that waits to be released and then returns or throws.
+     */
+    private static final class BlockingCall implements Callable<String> {
+        private final CountDownLatch started = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+        private final RuntimeException failure;
+
+        /**
+         * Constructor.
+         *
+         * @param failure Exception to throw, or null to return a result
+         */
+        BlockingCall(RuntimeException failure) {
+            this.failure = failure;
+        }
+
+        @Override
+        public String call() throws InterruptedException {
+            started.countDown();
+            release.await();
+            if (failure != null) {
+                throw failure;
+            }
+
+            return RESULT;
+        }
+    }
+}
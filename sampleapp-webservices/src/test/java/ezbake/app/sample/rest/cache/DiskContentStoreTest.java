@@ -0,0 +1,213 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample.rest.cache;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit tests for {@link DiskContentStore}.
+ */
+public final class DiskContentStoreTest {
+    private static final String FIRST_KEY = "aaaa";
+    private static final String SECOND_KEY = "bbbb";
+    private static final String THIRD_KEY = "cccc";
+    private static final String FIRST_FILE = FIRST_KEY + ".bin";
+    private static final String MIME_TYPE = "image/png";
+    private static final byte[] CONTENT = "1234".getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * Size limit that holds two entries but not three.
+     */
+    private static final long MAX_BYTES = 10;
+
+    /**
+     * Time after which a write that never ends fails the test.
+     */
+    private static final long TIMEOUT_MILLIS = 10000;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    /**
+     * Tests that stored content is written back unchanged.
+     *
+     * @throws Exception if an error occurred
+     */
+    @Test
+    public void testPutAndWrite() throws Exception {
+        try (DiskContentStore store = new DiskContentStore(tempFolder.getRoot().toPath(), MAX_BYTES)) {
+            store.put(FIRST_KEY, CONTENT, MIME_TYPE);
+
+            final DiskContentStore.StoredContent stored = store.open(FIRST_KEY);
+            assertEquals(MIME_TYPE, stored.getMimeType());
+            assertEquals(CONTENT.length, stored.getLength());
+            assertArrayEquals(CONTENT, write(stored));
+            assertNull(store.open(SECOND_KEY));
+        }
+    }
+
+    /**
+     * Tests that the least recently read entry is evicted once the store exceeds its size limit.
+     *
+     * @throws Exception if an error occurred
+     */
+    @Test
+    public void testEvictsLeastRecentlyRead() throws Exception {
+        try (DiskContentStore store = new DiskContentStore(tempFolder.getRoot().toPath(), MAX_BYTES)) {
+            store.put(FIRST_KEY, CONTENT, MIME_TYPE);
+            store.put(SECOND_KEY, CONTENT, MIME_TYPE);
+            assertTrue(isStored(store, FIRST_KEY));
+            store.put(THIRD_KEY, CONTENT, MIME_TYPE);
+
+            assertTrue(isStored(store, FIRST_KEY));
+            assertFalse(isStored(store, SECOND_KEY));
+            assertTrue(isStored(store, THIRD_KEY));
+        }
+    }
+
+    /**
+     * Tests that an entry that was looked up can still be written after it is evicted.
+     *
+     * @throws Exception if an error occurred
+     */
+    @Test
+    public void testWriteAfterEviction() throws Exception {
+        try (DiskContentStore store = new DiskContentStore(tempFolder.getRoot().toPath(), MAX_BYTES)) {
+            store.put(FIRST_KEY, CONTENT, MIME_TYPE);
+            final DiskContentStore.StoredContent stored = store.open(FIRST_KEY);
+            store.put(SECOND_KEY, CONTENT, MIME_TYPE);
+            store.put(THIRD_KEY, CONTENT, MIME_TYPE);
+
+            assertFalse(isStored(store, FIRST_KEY));
+            assertArrayEquals(CONTENT, write(stored));
+        }
+    }
+
+    /**
+     * Tests that writing an entry whose file has become shorter fails rather than waiting for the missing bytes.
+     *
+     * @throws Exception if an error occurred
+     */
+    @Test(expected = EOFException.class, timeout = TIMEOUT_MILLIS)
+    public void testWriteTruncatedFile() throws Exception {
+        final Path parent = tempFolder.getRoot().toPath();
+        try (DiskContentStore store = new DiskContentStore(parent, MAX_BYTES)) {
+            store.put(FIRST_KEY, CONTENT, MIME_TYPE);
+            final DiskContentStore.StoredContent stored = store.open(FIRST_KEY);
+            Files.write(findEntryFile(parent), new byte[1]);
+            write(stored);
+        }
+    }
+
+    /**
+     * Tests that creating a store removes the files of stores that were not closed, and leaves alone stores that are
+     * open and files that no store wrote.
+     *
+     * @throws Exception if an error occurred
+     */
+    @Test
+    public void testRemovesOnlyStaleStoreFiles() throws Exception {
+        final Path parent = tempFolder.getRoot().toPath();
+        final Path foreignFile = Files.createFile(parent.resolve("notes.txt"));
+        final Path foreignDir = Files.createDirectories(parent.resolve("other"));
+        Files.createFile(foreignDir.resolve(FIRST_FILE));
+
+        final Path staleStore = Files.createDirectories(parent.resolve("content-store-stale"));
+        Files.createFile(staleStore.resolve("store.lock"));
+        Files.createFile(staleStore.resolve(FIRST_FILE));
+
+        try (DiskContentStore open = new DiskContentStore(parent, MAX_BYTES)) {
+            open.put(FIRST_KEY, CONTENT, MIME_TYPE);
+            assertFalse(Files.exists(staleStore));
+
+            try (DiskContentStore other = new DiskContentStore(parent, MAX_BYTES)) {
+                assertNull(other.open(FIRST_KEY));
+                assertArrayEquals(CONTENT, write(open.open(FIRST_KEY)));
+            }
+        }
+
+        assertTrue(Files.exists(foreignFile));
+        assertTrue(Files.exists(foreignDir.resolve(FIRST_FILE)));
+        assertNull(findEntryFile(parent));
+    }
+
+    /**
+     * Checks whether an entry is stored, closing it without writing it.
+     *
+     * @param store Store to look in
+     * @param key Content hash of the entry
+     * @return true if the entry is stored
+     * @throws IOException if the entry could not be closed
+     */
+    private static boolean isStored(DiskContentStore store, String key) throws IOException {
+        final DiskContentStore.StoredContent stored = store.open(key);
+        if (stored == null) {
+            return false;
+        }
+
+        stored.close();
+        return true;
+    }
+
+    /**
+     * Writes stored content to memory.
+     *
+     * @param stored Stored content
+     * @return Bytes written
+     * @throws IOException if the content could not be written
+     */
+    private static byte[] write(DiskContentStore.StoredContent stored) throws IOException {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        stored.write(output);
+        return output.toByteArray();
+    }
+
+    /**
+     * Finds the file of a stored entry.
+     *
+     * @param parent Directory holding the subdirectories of stores
+     * @return File of the first entry found, or null if there is none
+     * @throws IOException if the directories could not be listed
+     */
+    private static Path findEntryFile(Path parent) throws IOException {
+        try (DirectoryStream<Path> stores = Files.newDirectoryStream(parent, "content-store-*")) {
+            for (final Path store : stores) {
+                try (DirectoryStream<Path> entries = Files.newDirectoryStream(store, "*.bin")) {
+                    for (final Path entry : entries) {
+                        return entry;
+                    }
+                }
+            }
+        }
+
+        return null;
+    }
+}
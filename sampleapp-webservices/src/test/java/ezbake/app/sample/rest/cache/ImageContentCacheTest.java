@@ -0,0 +1,107 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample.rest.cache;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import ezbake.common.properties.EzProperties;
+import ezbake.services.indexing.image.thrift.Thumbnail;
+import ezbake.services.indexing.image.thrift.ThumbnailSize;
+
+/**
+ * Unit tests for {@link ImageContentCache}.
+ */
+public final class ImageContentCacheTest {
+    private static final String IMAGE_ID = "abcd";
+    private static final String GRANTED = "granted";
+    private static final String OTHER = "other";
+    private static final String MIME_TYPE = "image/png";
+    private static final byte[] CONTENT = "image".getBytes(StandardCharsets.UTF_8);
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    /**
+     * Tests that cached content is only served to callers with the authorizations it was fetched with.
+     *
+     * @throws Exception if an error occurred
+     */
+    @Test
+    public void testServedOnlyToGrantedCallers() throws Exception {
+        final Thumbnail thumbnail = new Thumbnail().setThumbnailBytes(CONTENT).setMimeType(MIME_TYPE);
+
+        try (ImageContentCache cache = new ImageContentCache(createProperties(null))) {
+            cache.putThumbnail(GRANTED, IMAGE_ID, ThumbnailSize.SMALL, thumbnail);
+            cache.putBinary(GRANTED, IMAGE_ID, CONTENT, MIME_TYPE);
+
+            assertSame(thumbnail, cache.getThumbnail(GRANTED, IMAGE_ID, ThumbnailSize.SMALL));
+            assertNull(cache.getThumbnail(GRANTED, IMAGE_ID, ThumbnailSize.LARGE));
+            assertNull(cache.getThumbnail(OTHER, IMAGE_ID, ThumbnailSize.SMALL));
+
+            final DiskContentStore.StoredContent binary = cache.openBinary(GRANTED, IMAGE_ID);
+            assertNotNull(binary);
+            final ByteArrayOutputStream output = new ByteArrayOutputStream();
+            binary.write(output);
+            assertArrayEquals(CONTENT, output.toByteArray());
+            assertNull(cache.openBinary(OTHER, IMAGE_ID));
+        }
+    }
+
+    /**
+     * Tests that content is no longer served once its grant has expired.
+     *
+     * @throws Exception if an error occurred
+     */
+    @Test
+    public void testGrantExpires() throws Exception {
+        try (ImageContentCache cache = new ImageContentCache(createProperties("0"))) {
+            cache.putThumbnail(
+                    GRANTED, IMAGE_ID, ThumbnailSize.SMALL,
+                    new Thumbnail().setThumbnailBytes(CONTENT).setMimeType(MIME_TYPE));
+
+            cache.putBinary(GRANTED, IMAGE_ID, CONTENT, MIME_TYPE);
+
+            assertNull(cache.getThumbnail(GRANTED, IMAGE_ID, ThumbnailSize.SMALL));
+            assertNull(cache.openBinary(GRANTED, IMAGE_ID));
+        }
+    }
+
+    /**
+     * Creates the configuration of a cache storing binaries in the temporary folder.
+     *
+     * @param grantTtlSeconds Grant time to live, or null for the default
+     * @return Configuration properties
+     */
+    private EzProperties createProperties(String grantTtlSeconds) {
+        final Properties props = new Properties();
+        props.setProperty(ImageContentCache.BINARY_CACHE_DIR_PROP, tempFolder.getRoot().getPath());
+        if (grantTtlSeconds != null) {
+            props.setProperty(ImageContentCache.GRANT_TTL_SECONDS_PROP, grantTtlSeconds);
+        }
+
+        return new EzProperties(props, true);
+    }
+}
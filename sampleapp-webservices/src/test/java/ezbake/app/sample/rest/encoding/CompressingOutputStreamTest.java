@@ -0,0 +1,135 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample.rest.encoding;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MultivaluedMap;
+
+import org.jboss.resteasy.specimpl.MultivaluedMapImpl;
+import org.junit.Test;
+
+import com.google.common.io.ByteStreams;
+
+/**
+ * Unit tests for {@link CompressingOutputStream}.
+ */
+public final class CompressingOutputStreamTest {
+    private static final int MIN_BYTES = 64;
+
+    private final ByteArrayOutputStream target = new ByteArrayOutputStream();
+    private final MultivaluedMap<String, Object> headers = new MultivaluedMapImpl<>();
+
+    /**
+     * Tests that an entity below the threshold is written as it is, without encoding headers.
+     *
+     * @throws Exception if an error occurred
+     */
+    @Test
+    public void testSmallEntityUncompressed() throws Exception {
+        final byte[] entity = createEntity(MIN_BYTES - 1);
+        headers.putSingle(HttpHeaders.CONTENT_LENGTH, entity.length);
+
+        write(CompressingOutputStream.GZIP, entity);
+
+        assertArrayEquals(entity, target.toByteArray());
+        assertFalse(headers.containsKey(HttpHeaders.CONTENT_ENCODING));
+        assertTrue(headers.containsKey(HttpHeaders.CONTENT_LENGTH));
+    }
+
+    /**
+     * Tests that an entity over the threshold is gzipped, with the encoding headers set and the length dropped.
+     *
+     * @throws Exception if an error occurred
+     */
+    @Test
+    public void testLargeEntityGzipped() throws Exception {
+        final byte[] entity = createEntity(MIN_BYTES * 2);
+        headers.putSingle(HttpHeaders.CONTENT_LENGTH, entity.length);
+
+        write(CompressingOutputStream.GZIP, entity);
+
+        assertArrayEquals(entity, ByteStreams.toByteArray(new GZIPInputStream(compressed())));
+        assertEquals(Arrays.<Object>asList(CompressingOutputStream.GZIP), headers.get(HttpHeaders.CONTENT_ENCODING));
+        assertEquals(Arrays.<Object>asList(HttpHeaders.ACCEPT_ENCODING), headers.get("Vary"));
+        assertFalse(headers.containsKey(HttpHeaders.CONTENT_LENGTH));
+    }
+
+    /**
+     * Tests that an entity over the threshold is deflated.
+     *
+     * @throws Exception if an error occurred
+     */
+    @Test
+    public void testLargeEntityDeflated() throws Exception {
+        final byte[] entity = createEntity(MIN_BYTES * 2);
+
+        write(CompressingOutputStream.DEFLATE, entity);
+
+        assertArrayEquals(entity, ByteStreams.toByteArray(new InflaterInputStream(compressed())));
+        assertEquals(
+                Arrays.<Object>asList(CompressingOutputStream.DEFLATE), headers.get(HttpHeaders.CONTENT_ENCODING));
+    }
+
+    /**
+     * Writes an entity a byte and then a block at a time, so that the threshold is passed part way through.
+     *
+     * @param encoding Content coding to use
+     * @param entity Entity to write
+     * @throws IOException if the entity could not be written
+     */
+    private void write(String encoding, byte[] entity) throws IOException {
+        final CompressingOutputStream stream = new CompressingOutputStream(target, headers, encoding, MIN_BYTES);
+        stream.write(entity[0]);
+        stream.write(entity, 1, entity.length - 1);
+        stream.finish();
+    }
+
+    /**
+     * Gets the bytes written to the target.
+     *
+     * @return Stream of the written bytes
+     */
+    private InputStream compressed() {
+        return new ByteArrayInputStream(target.toByteArray());
+    }
+
+    /**
+     * Creates an entity.
+     *
+     * @param length Length of the entity
+     * @return Entity bytes
+     */
+    private static byte[] createEntity(int length) {
+        final byte[] entity = new byte[length];
+        for (int i = 0; i < length; i++) {
+            entity[i] = (byte) i;
+        }
+
+        return entity;
+    }
+}
@@ -0,0 +1,89 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample.rest.encoding;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for the content coding negotiation of {@link CompressionInterceptor}.
+ */
+public final class CompressionInterceptorTest {
+    private static final String GZIP = CompressingOutputStream.GZIP;
+    private static final String DEFLATE = CompressingOutputStream.DEFLATE;
+
+    /**
+     * Tests that nothing is chosen when the client sends no Accept-Encoding header or accepts neither coding.
+     */
+    @Test
+    public void testNothingAccepted() {
+        assertNull(CompressionInterceptor.chooseEncoding(null));
+        assertNull(choose("identity"));
+        assertNull(choose("gzip;q=0, deflate;q=0"));
+    }
+
+    /**
+     * Tests that gzip is preferred when both codings are accepted equally, and that names are case-insensitive.
+     */
+    @Test
+    public void testGzipPreferredOnTie() {
+        assertEquals(GZIP, choose("deflate, gzip"));
+        assertEquals(GZIP, choose("GZIP"));
+        assertEquals(DEFLATE, choose("Deflate"));
+    }
+
+    /**
+     * Tests that the coding with the higher quality is chosen, and that an invalid quality counts as 1.
+     */
+    @Test
+    public void testQualities() {
+        assertEquals(DEFLATE, choose("gzip;q=0.5, deflate"));
+        assertEquals(GZIP, choose("gzip; q=0.8, deflate;q=0.2"));
+        assertEquals(GZIP, choose("gzip;q=invalid, deflate;q=0.9"));
+    }
+
+    /**
+     * Tests that codings not listed take the quality of the wildcard.
+     */
+    @Test
+    public void testWildcard() {
+        assertEquals(GZIP, choose("*"));
+        assertEquals(DEFLATE, choose("*;q=0.5, gzip;q=0"));
+        assertNull(choose("*;q=0"));
+    }
+
+    /**
+     * Tests that codings listed across several Accept-Encoding headers are all considered.
+     */
+    @Test
+    public void testSeveralHeaders() {
+        assertEquals(DEFLATE, CompressionInterceptor.chooseEncoding(Arrays.asList("deflate", "gzip;q=0.1")));
+    }
+
+    /**
+     * Chooses a coding from a single Accept-Encoding header.
+     *
+     * @param acceptEncoding Value of the header
+     * @return Chosen coding, or null
+     */
+    private static String choose(String acceptEncoding) {
+        return CompressionInterceptor.chooseEncoding(Collections.singletonList(acceptEncoding));
+    }
+}
@@ -0,0 +1,100 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample.rest.graph;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import org.junit.Test;
+
+import ezbake.common.properties.EzProperties;
+import ezbake.services.graph.thrift.types.ElementId;
+import ezbake.services.graph.thrift.types.Graph;
+import ezbake.services.graph.thrift.types.Vertex;
+
+/**
+ * Unit tests for {@link ExpansionCache}.
+ */
+public final class ExpansionCacheTest {
+    private static final String START_USER = "start";
+    private static final String NEIGHBOR = "neighbor";
+    private static final String OTHER_USER = "other";
+    private static final String FINGERPRINT = "fingerprint";
+    private static final int NUM_HOPS = 2;
+
+    private final ExpansionCache cache = new ExpansionCache(new EzProperties(new Properties(), true), "screenName");
+
+    /**
+     * Tests that an expansion is invalidated when a user in it changes, but not when another user does.
+     */
+    @Test
+    public void testChangeInvalidates() {
+        final Graph graph = createGraph(START_USER, NEIGHBOR);
+        cache.put(START_USER, NUM_HOPS, FINGERPRINT, graph, cache.getVersion());
+
+        cache.changed(Collections.singleton(OTHER_USER));
+        assertSame(graph, cache.get(START_USER, NUM_HOPS, FINGERPRINT));
+
+        cache.changed(Collections.singleton(NEIGHBOR));
+        assertNull(cache.get(START_USER, NUM_HOPS, FINGERPRINT));
+    }
+
+    /**
+     * Tests that an expansion is not cached if a user in it changed while it was being computed.
+     */
+    @Test
+    public void testChangeDuringExpansionNotCached() {
+        final long startVersion = cache.getVersion();
+        cache.changed(Collections.singleton(NEIGHBOR));
+        cache.put(START_USER, NUM_HOPS, FINGERPRINT, createGraph(START_USER, NEIGHBOR), startVersion);
+
+        assertNull(cache.get(START_USER, NUM_HOPS, FINGERPRINT));
+    }
+
+    /**
+     * Tests that a reset of the change log, such as when it was replaced, invalidates every expansion, including ones
+     * being computed.
+     */
+    @Test
+    public void testResetInvalidatesAll() {
+        final long startVersion = cache.getVersion();
+        cache.put(START_USER, NUM_HOPS, FINGERPRINT, createGraph(START_USER, NEIGHBOR), startVersion);
+        cache.reset();
+        cache.put(OTHER_USER, NUM_HOPS, FINGERPRINT, createGraph(OTHER_USER), startVersion);
+
+        assertNull(cache.get(START_USER, NUM_HOPS, FINGERPRINT));
+        assertNull(cache.get(OTHER_USER, NUM_HOPS, FINGERPRINT));
+    }
+
+    /**
+     * Creates a graph of user vertices.
+     *
+     * @param screenNames Screen names of the users, used as their local IDs
+     * @return Graph of the users
+     */
+    private static Graph createGraph(String... screenNames) {
+        final List<Vertex> vertices = new ArrayList<>();
+        for (final String screenName : screenNames) {
+            vertices.add(new Vertex().setId(new ElementId().setLocalId(screenName)));
+        }
+
+        return new Graph().setVertices(vertices);
+    }
+}
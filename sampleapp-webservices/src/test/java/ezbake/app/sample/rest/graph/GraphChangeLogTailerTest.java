@@ -0,0 +1,158 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample.rest.graph;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit tests for {@link GraphChangeLogTailer}. The tailer is polled directly rather than by its scheduler.
+ */
+public final class GraphChangeLogTailerTest {
+    private static final String FIRST_USER = "first";
+    private static final String SECOND_USER = "second";
+    private static final String THIRD_USER = "third";
+    private static final String LOG_FILE = "changes.log";
+
+    /**
+     * Poll interval long enough that the scheduler never polls during a test.
+     */
+    private static final long NEVER_MILLIS = Long.MAX_VALUE / 2;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    /**
+     * Tests that only complete lines appended after the tailer started are reported.
+     *
+     * @throws Exception if an error occurred
+     */
+    @Test
+    public void testAppendedLinesReported() throws Exception {
+        final Path file = tempFolder.getRoot().toPath().resolve(LOG_FILE);
+        append(file, FIRST_USER + '\n');
+
+        final RecordingListener listener = new RecordingListener();
+        try (GraphChangeLogTailer tailer = new GraphChangeLogTailer(file, NEVER_MILLIS, listener)) {
+            append(file, SECOND_USER + '\n' + THIRD_USER);
+            tailer.poll();
+            append(file, "\n");
+            tailer.poll();
+        }
+
+        assertEquals(Arrays.asList(toSet(SECOND_USER), toSet(THIRD_USER)), listener.changes);
+        assertEquals(0, listener.resets);
+    }
+
+    /**
+     * Tests that a log replaced by a new file is detected even when the new file has grown past the position that was
+     * read to in the old one.
+     *
+     * @throws Exception if an error occurred
+     */
+    @Test
+    public void testReplacedLogResets() throws Exception {
+        final Path file = tempFolder.getRoot().toPath().resolve(LOG_FILE);
+        append(file, FIRST_USER + '\n');
+
+        final RecordingListener listener = new RecordingListener();
+        try (GraphChangeLogTailer tailer = new GraphChangeLogTailer(file, NEVER_MILLIS, listener)) {
+            final Path replacement = tempFolder.getRoot().toPath().resolve("replacement.log");
+            append(replacement, SECOND_USER + '\n' + THIRD_USER + '\n');
+            Files.move(replacement, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            tailer.poll();
+        }
+
+        assertEquals(1, listener.resets);
+        assertEquals(Arrays.asList(toSet(SECOND_USER, THIRD_USER)), listener.changes);
+    }
+
+    /**
+     * Tests that a log truncated in place to less than what was read is detected.
+     *
+     * @throws Exception if an error occurred
+     */
+    @Test
+    public void testTruncatedLogResets() throws Exception {
+        final Path file = tempFolder.getRoot().toPath().resolve(LOG_FILE);
+        append(file, FIRST_USER + '\n' + SECOND_USER + '\n');
+
+        final RecordingListener listener = new RecordingListener();
+        try (GraphChangeLogTailer tailer = new GraphChangeLogTailer(file, NEVER_MILLIS, listener)) {
+            Files.write(
+                    file, (THIRD_USER + '\n').getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            tailer.poll();
+        }
+
+        assertEquals(1, listener.resets);
+        assertEquals(Arrays.asList(toSet(THIRD_USER)), listener.changes);
+    }
+
+    /**
+     * Appends text to a file, creating it if necessary.
+     *
+     * @param file File to append to
+     * @param text Text to append
+     * @throws IOException if the file could not be written
+     */
+    private static void append(Path file, String text) throws IOException {
+        Files.write(
+                file, text.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Creates a set of screen names.
+     *
+     * @param screenNames Screen names
+     * @return Set of the screen names
+     */
+    private static Set<String> toSet(String... screenNames) {
+        return new HashSet<>(Arrays.asList(screenNames));
+    }
+
+    /**
+     * Listener that records the changes and resets it receives.
+     */
+    private static final class RecordingListener implements GraphChangeLogTailer.Listener {
+        private final List<Set<String>> changes = new ArrayList<>();
+        private int resets;
+
+        @Override
+        public void changed(Set<String> screenNames) {
+            changes.add(screenNames);
+        }
+
+        @Override
+        public void reset() {
+            resets++;
+        }
+    }
+}
@@ -0,0 +1,290 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample.rest.graph;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.ws.rs.core.Response;
+
+import org.jboss.resteasy.spi.AsynchronousResponse;
+import org.junit.After;
+import org.junit.Test;
+
+import ezbake.common.properties.EzProperties;
+
+/**
+ * Unit tests for {@link GremlinExecutor}.
+ */
+public final class GremlinExecutorTest {
+    private static final String PRINCIPAL = "user";
+    private static final String QUERY_ID = "query";
+    private static final long WAIT_SECONDS = 10;
+    private static final List<String> ELEMENTS = Arrays.asList("a", "b", "c");
+
+    /**
+     * Time given to released work to try to answer a request that was already answered.
+     */
+    private static final long SETTLE_MILLIS = 200;
+
+    /**
+     * Released at the end of each test so that blocked work finishes.
+     */
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    /**
+     * Releases blocked work.
+     */
+    @After
+    public void tearDown() {
+        release.countDown();
+    }
+
+    /**
+     * Tests that queries are sent with a range filter one past the limit, so that truncation can be reported.
+     *
+     * @throws Exception if an error occurred
+     */
+    @Test
+    public void testResultsLimited() throws Exception {
+        final BlockingQueue<String> sent = new LinkedBlockingQueue<>();
+        final GremlinExecutor.Results<String> results = createExecutor(null).run(
+                "_().out()", 2, new GremlinExecutor.Query<String>() {
+                    @Override
+                    public List<String> run(String gremlin) {
+                        sent.add(gremlin);
+                        return ELEMENTS;
+                    }
+                });
+
+        assertEquals("(_().out()\n)[0..2]", sent.poll());
+        assertEquals(ELEMENTS.subList(0, 2), results.getElements());
+        assertTrue(results.isTruncated());
+    }
+
+    /**
+     * Tests that a trailing comment in a query cannot swallow its range filter.
+     */
+    @Test
+    public void testRangeAfterComment() {
+        assertEquals("(_().out() // all\n)[0..9]", GremlinExecutor.withRange("_().out() // all", 10));
+    }
+
+    /**
+     * Tests that a request is answered with the response built by its work.
+     *
+     * @throws Exception if an error occurred
+     */
+    @Test
+    public void testWorkAnswers() throws Exception {
+        final RecordingResponse response = new RecordingResponse();
+        createExecutor(null).submit(null, response, PRINCIPAL, null, null, new Work(null));
+
+        assertEquals(Response.Status.OK.getStatusCode(), response.awaitStatus());
+    }
+
+    /**
+     * Tests that a request whose query passes its deadline is answered with 503 without waiting for the query, and
+     * that the late response of the query is dropped.
+     *
+     * @throws Exception if an error occurred
+     */
+    @Test
+    public void testDeadlineAnswersUnavailable() throws Exception {
+        final RecordingResponse response = new RecordingResponse();
+        createExecutor(null).submit(null, response, PRINCIPAL, null, 1L, new Work(release));
+
+        assertEquals(Response.Status.SERVICE_UNAVAILABLE.getStatusCode(), response.awaitStatus());
+
+        release.countDown();
+        assertNull(response.statuses.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * Tests that a cancelled query is answered with 409 and can only be cancelled once.
+     *
+     * @throws Exception if an error occurred
+     */
+    @Test
+    public void testCancelAnswersConflict() throws Exception {
+        final GremlinExecutor executor = createExecutor(null);
+        final RecordingResponse response = new RecordingResponse();
+        executor.submit(null, response, PRINCIPAL, QUERY_ID, null, new Work(release));
+
+        assertFalse(executor.cancel("otherUser", QUERY_ID));
+        assertTrue(executor.cancel(PRINCIPAL, QUERY_ID));
+        assertFalse(executor.cancel(PRINCIPAL, QUERY_ID));
+        assertEquals(Response.Status.CONFLICT.getStatusCode(), response.awaitStatus());
+    }
+
+    /**
+     * Tests that a user over their limit of concurrent queries is answered with 503, and that the slot is returned
+     * once the running query finishes.
+     *
+     * @throws Exception if an error occurred
+     */
+    @Test
+    public void testPerUserLimit() throws Exception {
+        final GremlinExecutor executor = createExecutor("1");
+        final RecordingResponse first = new RecordingResponse();
+        executor.submit(null, first, PRINCIPAL, null, null, new Work(release));
+
+        final RecordingResponse second = new RecordingResponse();
+        executor.submit(null, second, PRINCIPAL, null, null, new Work(null));
+        assertEquals(Response.Status.SERVICE_UNAVAILABLE.getStatusCode(), second.awaitStatus());
+
+        release.countDown();
+        assertEquals(Response.Status.OK.getStatusCode(), first.awaitStatus());
+
+        final RecordingResponse third = new RecordingResponse();
+        executor.submit(null, third, PRINCIPAL, null, null, new Work(null));
+        assertEquals(Response.Status.OK.getStatusCode(), third.awaitStatus());
+    }
+
+    /**
+     * Tests that a request that ends before its query completes, such as one whose client disconnected, is answered
+     * straight away, and that the late response of the query is dropped.
+     *
+     * @throws Exception if an error occurred
+     */
+    @Test
+    public void testEndedRequestAbandonsQuery() throws Exception {
+        final BlockingQueue<AsyncListener> listeners = new LinkedBlockingQueue<>();
+        final AsyncContext asyncContext = (AsyncContext) Proxy.newProxyInstance(
+                AsyncContext.class.getClassLoader(), new Class<?>[] {AsyncContext.class}, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if ("addListener".equals(method.getName())) {
+                            listeners.add((AsyncListener) args[0]);
+                        }
+
+                        return null;
+                    }
+                });
+
+        final RecordingResponse response = new RecordingResponse();
+        createExecutor(null).submit(asyncContext, response, PRINCIPAL, null, null, new Work(release));
+        listeners.remove().onError(new AsyncEvent(asyncContext));
+
+        assertEquals(Response.Status.SERVICE_UNAVAILABLE.getStatusCode(), response.awaitStatus());
+
+        release.countDown();
+        assertNull(response.statuses.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * Tests that a closed executor answers new requests with 503 rather than leaving them suspended.
+     *
+     * @throws Exception if an error occurred
+     */
+    @Test
+    public void testClosedAnswersUnavailable() throws Exception {
+        final GremlinExecutor executor = createExecutor(null);
+        executor.close();
+
+        final RecordingResponse response = new RecordingResponse();
+        executor.submit(null, response, PRINCIPAL, null, null, new Work(null));
+        assertEquals(Response.Status.SERVICE_UNAVAILABLE.getStatusCode(), response.awaitStatus());
+    }
+
+    /**
+     * Creates an executor.
+     *
+     * @param perUser Number of queries each user may run at once, or null for the default
+     * @return Executor
+     */
+    private static GremlinExecutor createExecutor(String perUser) {
+        final Properties props = new Properties();
+        if (perUser != null) {
+            props.setProperty(GremlinExecutor.PER_USER_PROP, perUser);
+        }
+
+        return new GremlinExecutor(new EzProperties(props, true));
+    }
+
+    /**
+     * Work that optionally waits for a latch and then answers 200.
+     */
+    private static final class Work implements Callable<Response> {
+        private final CountDownLatch latch;
+
+        /**
+         * Constructor.
+         *
+         * @param latch Latch to wait for, or null to answer straight away
+         */
+        Work(CountDownLatch latch) {
+            this.latch = latch;
+        }
+
+        @Override
+        public Response call() {
+            if (latch != null) {
+                // Ignores interrupts, as a Thrift call in progress does
+                boolean released = false;
+                while (!released) {
+                    try {
+                        released = latch.await(WAIT_SECONDS, TimeUnit.SECONDS);
+                    } catch (final InterruptedException e) {
+                        released = false;
+                    }
+                }
+            }
+
+            return Response.ok().build();
+        }
+    }
+
+    /**
+     * Suspended response that records the statuses it is completed with.
+     */
+    private static final class RecordingResponse implements AsynchronousResponse {
+        private final BlockingQueue<Integer> statuses = new LinkedBlockingQueue<>();
+
+        @Override
+        public void setResponse(Response response) {
+            statuses.add(response.getStatus());
+        }
+
+        /**
+         * Waits for the response to be completed.
+         *
+         * @return Status of the response
+         * @throws InterruptedException if interrupted while waiting
+         */
+        int awaitStatus() throws InterruptedException {
+            final Integer status = statuses.poll(WAIT_SECONDS, TimeUnit.SECONDS);
+            assertTrue("Request was not answered", status != null);
+            return status;
+        }
+    }
+}
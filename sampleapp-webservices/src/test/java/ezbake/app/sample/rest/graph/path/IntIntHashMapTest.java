@@ -0,0 +1,76 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample.rest.graph.path;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link IntIntHashMap}.
+ */
+public final class IntIntHashMapTest {
+    private static final int MISSING = -1;
+
+    /**
+     * Enough keys to grow the map several times from its minimum capacity.
+     */
+    private static final int MANY_KEYS = 1000;
+
+    /**
+     * Tests that values are stored, replaced and reported missing.
+     */
+    @Test
+    public void testPutAndGet() {
+        final IntIntHashMap map = new IntIntHashMap(0);
+        assertFalse(map.containsKey(0));
+        assertEquals(MISSING, map.get(0, MISSING));
+
+        map.put(0, 2);
+        map.put(0, 3);
+
+        assertTrue(map.containsKey(0));
+        assertEquals(3, map.get(0, MISSING));
+        assertEquals(1, map.size());
+    }
+
+    /**
+     * Tests that every key survives the map growing, including keys that collide in the smaller tables.
+     */
+    @Test
+    public void testGrowth() {
+        final IntIntHashMap map = new IntIntHashMap(0);
+        for (int key = 0; key < MANY_KEYS; key++) {
+            map.put(key * MANY_KEYS, key);
+        }
+
+        assertEquals(MANY_KEYS, map.size());
+        for (int key = 0; key < MANY_KEYS; key++) {
+            assertEquals(key, map.get(key * MANY_KEYS, MISSING));
+        }
+
+        assertFalse(map.containsKey(1));
+    }
+
+    /**
+     * Tests that negative keys, which mark empty slots, are rejected.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeKeyRejected() {
+        new IntIntHashMap(0).put(-1, 0);
+    }
+}
@@ -0,0 +1,203 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample.rest.graph.path;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import ezbake.services.graph.thrift.types.Edge;
+import ezbake.services.graph.thrift.types.ElementId;
+import ezbake.services.graph.thrift.types.Graph;
+import ezbake.services.graph.thrift.types.Vertex;
+
+/**
+ * Unit tests for {@link PathFinder}, on a graph in which "a" reaches "d" through "b" or "c" in two hops and through
+ * "e" and "f" in three, and "g" is not connected.
+ */
+public final class PathFinderTest {
+    private static final String A = "a";
+    private static final String B = "b";
+    private static final String C = "c";
+    private static final String D = "d";
+    private static final String E = "e";
+    private static final String F = "f";
+    private static final String G = "g";
+
+    private static final int MAX_HOPS = 4;
+    private static final int MAX_PATHS = 5;
+
+    private final Map<String, List<String>> neighbors = new HashMap<>();
+
+    /**
+     * Constructor. Builds the graph.
+     */
+    public PathFinderTest() {
+        connect(A, B);
+        connect(B, D);
+        connect(A, C);
+        connect(C, D);
+        connect(A, E);
+        connect(E, F);
+        connect(F, D);
+        neighbors.put(G, new ArrayList<String>());
+    }
+
+    /**
+     * Tests that paths are found shortest first, with one edge per hop.
+     *
+     * @throws Exception if an error occurred
+     */
+    @Test
+    public void testShortestFirst() throws Exception {
+        final List<Graph> paths = new PathFinder(new Loader(), Integer.MAX_VALUE).findPaths(
+                vertex(A), vertex(D), MAX_HOPS, MAX_PATHS);
+
+        assertEquals(3, paths.size());
+        assertEquals(
+                new HashSet<>(Arrays.asList(Arrays.asList(A, B, D), Arrays.asList(A, C, D))),
+                new HashSet<>(Arrays.asList(toIds(paths.get(0)), toIds(paths.get(1)))));
+        assertEquals(Arrays.asList(A, E, F, D), toIds(paths.get(2)));
+        for (final Graph path : paths) {
+            assertEquals(path.getVertices().size() - 1, path.getEdges().size());
+        }
+    }
+
+    /**
+     * Tests that paths longer than the maximum number of hops are not returned.
+     *
+     * @throws Exception if an error occurred
+     */
+    @Test
+    public void testMaxHops() throws Exception {
+        final PathFinder finder = new PathFinder(new Loader(), Integer.MAX_VALUE);
+
+        assertEquals(2, finder.findPaths(vertex(A), vertex(D), 2, MAX_PATHS).size());
+        assertTrue(finder.findPaths(vertex(A), vertex(D), 1, MAX_PATHS).isEmpty());
+    }
+
+    /**
+     * Tests that no path is found between vertices that are not connected.
+     *
+     * @throws Exception if an error occurred
+     */
+    @Test
+    public void testNotConnected() throws Exception {
+        final PathFinder finder = new PathFinder(new Loader(), Integer.MAX_VALUE);
+
+        assertTrue(finder.findPaths(vertex(A), vertex(G), MAX_HOPS, MAX_PATHS).isEmpty());
+        assertFalse(finder.isLimitReached());
+    }
+
+    /**
+     * Tests that a search that would load more neighborhoods than allowed gives up.
+     *
+     * @throws Exception if an error occurred
+     */
+    @Test
+    public void testLoadLimit() throws Exception {
+        final PathFinder finder = new PathFinder(new Loader(), 1);
+
+        assertTrue(finder.findPaths(vertex(A), vertex(D), MAX_HOPS, MAX_PATHS).isEmpty());
+        assertTrue(finder.isLimitReached());
+    }
+
+    /**
+     * Adds an edge to the graph.
+     *
+     * @param out ID of the vertex the edge leaves
+     * @param in ID of the vertex the edge enters
+     */
+    private void connect(String out, String in) {
+        addNeighbor(out, in);
+        addNeighbor(in, out);
+    }
+
+    /**
+     * Records that two vertices are neighbors.
+     *
+     * @param vertex ID of one vertex
+     * @param neighbor ID of the other vertex
+     */
+    private void addNeighbor(String vertex, String neighbor) {
+        if (!neighbors.containsKey(vertex)) {
+            neighbors.put(vertex, new ArrayList<String>());
+        }
+
+        neighbors.get(vertex).add(neighbor);
+    }
+
+    /**
+     * Creates a vertex.
+     *
+     * @param id Local ID of the vertex
+     * @return Vertex with the ID
+     */
+    private static Vertex vertex(String id) {
+        return new Vertex().setId(new ElementId().setLocalId(id));
+    }
+
+    /**
+     * Gets the IDs of the vertices along a path.
+     *
+     * @param path Path found
+     * @return Local IDs of the vertices, in order
+     */
+    private static List<String> toIds(Graph path) {
+        final List<String> ids = new ArrayList<>();
+        for (final Vertex vertex : path.getVertices()) {
+            ids.add(vertex.getId().getLocalId());
+        }
+
+        return ids;
+    }
+
+    /**
+     * Loads neighborhoods from the graph built by the test.
+     */
+    private final class Loader implements PathFinder.NeighborLoader {
+        @Override
+        public Map<ElementId, Graph> load(List<Vertex> vertices) {
+            final Map<ElementId, Graph> neighborhoods = new HashMap<>();
+            for (final Vertex center : vertices) {
+                final String id = center.getId().getLocalId();
+                final List<Vertex> neighborhoodVertices = new ArrayList<>();
+                final List<Edge> edges = new ArrayList<>();
+                neighborhoodVertices.add(vertex(id));
+                for (final String neighbor : neighbors.get(id)) {
+                    neighborhoodVertices.add(vertex(neighbor));
+
+                    final Edge edge = new Edge();
+                    edge.setOutVertex(new ElementId().setLocalId(id));
+                    edge.setInVertex(new ElementId().setLocalId(neighbor));
+                    edges.add(edge);
+                }
+
+                neighborhoods.put(center.getId(), new Graph().setVertices(neighborhoodVertices).setEdges(edges));
+            }
+
+            return neighborhoods;
+        }
+    }
+}
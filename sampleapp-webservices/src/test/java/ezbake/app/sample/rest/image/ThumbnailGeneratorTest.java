@@ -0,0 +1,248 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample.rest.image;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.ws.rs.core.Response;
+
+import org.junit.Test;
+
+import ezbake.app.sample.rest.WebServiceException;
+import ezbake.common.properties.EzProperties;
+import ezbake.services.indexing.image.thrift.IndexedImage;
+import ezbake.services.indexing.image.thrift.ThumbnailSize;
+
+/**
+ * Unit tests for {@link ThumbnailGenerator}.
+ */
+public final class ThumbnailGeneratorTest {
+    private static final String FINGERPRINT = "fingerprint";
+    private static final String IMAGE_ID = "abcd";
+
+    /**
+     * Tests that a resize rejected by a saturated pool is reported as unavailable.
+     */
+    @Test
+    public void testRejectedIsUnavailable() {
+        final ExecutorService pool = Executors.newSingleThreadExecutor();
+        pool.shutdown();
+
+        assertStatus(
+                Response.Status.SERVICE_UNAVAILABLE,
+                new ThumbnailGenerator(createProperties(null), pool), new ImageLoader(null));
+    }
+
+    /**
+     * Tests that a resize that does not finish in time is reported as unavailable and cancelled.
+     *
+     * @throws Exception if an error occurred
+     */
+    @Test
+    public void testTimeoutIsUnavailableAndCancelled() throws Exception {
+        final ThreadPoolExecutor pool =
+                new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(1));
+
+        final CountDownLatch release = new CountDownLatch(1);
+        pool.execute(
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        awaitQuietly(release);
+                    }
+                });
+
+        try {
+            assertStatus(
+                    Response.Status.SERVICE_UNAVAILABLE,
+                    new ThumbnailGenerator(createProperties("0"), pool), new ImageLoader(null));
+
+            assertTrue(((Future<?>) pool.getQueue().peek()).isCancelled());
+        } finally {
+            release.countDown();
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Tests that the status thrown by the loader of the original is passed through.
+     */
+    @Test
+    public void testLoaderStatusPassedThrough() {
+        final ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            assertStatus(
+                    Response.Status.NOT_FOUND, new ThumbnailGenerator(createProperties(null), pool),
+                    new ImageLoader(new WebServiceException(Response.Status.NOT_FOUND, IMAGE_ID)));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Tests that a caller that joins a generation in progress gets the same status as the first caller, without
+     * loading the original again.
+     *
+     * @throws Exception if an error occurred
+     */
+    @Test
+    public void testJoinedCallerSharesStatus() throws Exception {
+        final ExecutorService pool = Executors.newSingleThreadExecutor();
+        pool.shutdown();
+        final ThumbnailGenerator generator = new ThumbnailGenerator(createProperties(null), pool);
+
+        final CountDownLatch loading = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final Callable<IndexedImage> blockingLoader = new Callable<IndexedImage>() {
+            @Override
+            public IndexedImage call() {
+                loading.countDown();
+                awaitQuietly(release);
+                return new IndexedImage();
+            }
+        };
+
+        final ImageLoader joinedLoader = new ImageLoader(null);
+        final AtomicReference<Response.Status> firstStatus = new AtomicReference<>();
+        final AtomicReference<Response.Status> joinedStatus = new AtomicReference<>();
+        final Thread first = startGenerating(generator, blockingLoader, firstStatus);
+        loading.await();
+        final Thread joined = startGenerating(generator, joinedLoader, joinedStatus);
+        while (joined.getState() != Thread.State.TIMED_WAITING) {
+            Thread.yield();
+        }
+
+        release.countDown();
+        first.join();
+        joined.join();
+
+        assertEquals(Response.Status.SERVICE_UNAVAILABLE, firstStatus.get());
+        assertEquals(Response.Status.SERVICE_UNAVAILABLE, joinedStatus.get());
+        assertEquals(0, joinedLoader.calls.get());
+    }
+
+    /**
+     * Checks that generating a thumbnail fails with a status.
+     *
+     * @param expected Expected status
+     * @param generator Generator to use
+     * @param loader Loader of the original
+     */
+    private static void assertStatus(
+            Response.Status expected, ThumbnailGenerator generator, Callable<IndexedImage> loader) {
+        try {
+            generator.generate(FINGERPRINT, IMAGE_ID, ThumbnailSize.SMALL, loader);
+            fail("Thumbnail generated");
+        } catch (final WebServiceException e) {
+            assertEquals(expected, e.getStatus());
+        }
+    }
+
+    /**
+     * Starts generating a thumbnail on a new thread, recording the status it fails with.
+     *
+     * @param generator Generator to use
+     * @param loader Loader of the original
+     * @param status Receives the status
+     * @return Generating thread
+     */
+    private static Thread startGenerating(
+            final ThumbnailGenerator generator, final Callable<IndexedImage> loader,
+            final AtomicReference<Response.Status> status) {
+        final Thread thread = new Thread(
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            generator.generate(FINGERPRINT, IMAGE_ID, ThumbnailSize.SMALL, loader);
+                        } catch (final WebServiceException e) {
+                            status.set(e.getStatus());
+                        }
+                    }
+                });
+
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Waits for a latch, giving up if interrupted.
+     *
+     * @param latch Latch to wait for
+     */
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Creates the configuration of a generator.
+     *
+     * @param timeoutSeconds Resize timeout, or null for the default
+     * @return Configuration properties
+     */
+    private static EzProperties createProperties(String timeoutSeconds) {
+        final Properties props = new Properties();
+        if (timeoutSeconds != null) {
+            props.setProperty(ThumbnailGenerator.TIMEOUT_SECONDS_PROP, timeoutSeconds);
+        }
+
+        return new EzProperties(props, true);
+    }
+
+    /**
+     * Loader of an original image that counts its calls and optionally fails.
+     */
+    private static final class ImageLoader implements Callable<IndexedImage> {
+        private final AtomicInteger calls = new AtomicInteger();
+        private final WebServiceException failure;
+
+        /**
+         * Constructor.
+         *
+         * @param failure Exception to throw, or null to return an image without data
+         */
+        ImageLoader(WebServiceException failure) {
+            this.failure = failure;
+        }
+
+        @Override
+        public IndexedImage call() {
+            calls.incrementAndGet();
+            if (failure != null) {
+                throw failure;
+            }
+
+            return new IndexedImage();
+        }
+    }
+}
@@ -0,0 +1,202 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample.rest.json;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.Response;
+
+import org.jboss.resteasy.specimpl.MultivaluedMapImpl;
+import org.junit.Test;
+
+import ezbake.app.sample.rest.WebServiceException;
+
+/**
+ * Unit tests for {@link JsonBodyReader}.
+ */
+public final class JsonBodyReaderTest {
+    private static final int MAX_BYTES = 16;
+    private static final String SMALL_BODY = "{\"a\":\"b\"}";
+    private static final String LARGE_BODY = "{\"a\":\"bbbbbbbbbbbbbbbb\"}";
+    private static final String CHARSET_PARAM = "charset";
+
+    private final JsonBodyReader reader = new JsonBodyReader(MAX_BYTES);
+
+    /**
+     * Tests that a body within the limit is parsed.
+     *
+     * @throws Exception if an error occurred
+     */
+    @Test
+    public void testReadsBody() throws Exception {
+        final JsonBody body = read(MediaType.APPLICATION_JSON_TYPE, headers(null), stream(SMALL_BODY));
+
+        assertEquals(SMALL_BODY, body.getText());
+        assertEquals("b", body.getObject().getString("a"));
+    }
+
+    /**
+     * Tests that a body whose Content-Length is over the limit is rejected without being read.
+     *
+     * @throws Exception if an error occurred
+     */
+    @Test
+    public void testContentLengthTooLarge() throws Exception {
+        final InputStream unreadable = new InputStream() {
+            @Override
+            public int read() {
+                throw new AssertionError("Body was read");
+            }
+        };
+
+        assertStatus(
+                Response.Status.REQUEST_ENTITY_TOO_LARGE, MediaType.APPLICATION_JSON_TYPE,
+                headers(String.valueOf(MAX_BYTES + 1)), unreadable);
+    }
+
+    /**
+     * Tests that a body without a Content-Length is rejected once the limit is passed while reading.
+     *
+     * @throws Exception if an error occurred
+     */
+    @Test
+    public void testStreamedBodyTooLarge() throws Exception {
+        assertStatus(
+                Response.Status.REQUEST_ENTITY_TOO_LARGE, MediaType.APPLICATION_JSON_TYPE, headers(null),
+                stream(LARGE_BODY));
+    }
+
+    /**
+     * Tests that a Content-Length smaller than the body does not let an oversized body through.
+     *
+     * @throws Exception if an error occurred
+     */
+    @Test
+    public void testUnderstatedContentLength() throws Exception {
+        assertStatus(
+                Response.Status.REQUEST_ENTITY_TOO_LARGE, MediaType.APPLICATION_JSON_TYPE, headers("1"),
+                stream(LARGE_BODY));
+    }
+
+    /**
+     * Tests that empty and malformed bodies are rejected as bad requests.
+     *
+     * @throws Exception if an error occurred
+     */
+    @Test
+    public void testInvalidBody() throws Exception {
+        assertStatus(Response.Status.BAD_REQUEST, MediaType.APPLICATION_JSON_TYPE, headers(null), stream(""));
+        assertStatus(Response.Status.BAD_REQUEST, MediaType.APPLICATION_JSON_TYPE, headers(null), stream("[1]"));
+    }
+
+    /**
+     * Tests that a body is decoded with the charset of its media type, and that an unknown charset is rejected.
+     *
+     * @throws Exception if an error occurred
+     */
+    @Test
+    public void testCharset() throws Exception {
+        final String text = "{\"a\":\"\u00e9\"}";
+        final JsonBody body = read(
+                jsonWithCharset("ISO-8859-1"), headers(null),
+                new ByteArrayInputStream(text.getBytes(StandardCharsets.ISO_8859_1)));
+        assertEquals(text, body.getText());
+
+        assertStatus(
+                Response.Status.UNSUPPORTED_MEDIA_TYPE, jsonWithCharset("no-such-charset"), headers(null),
+                stream(SMALL_BODY));
+    }
+
+    /**
+     * Reads a body.
+     *
+     * @param mediaType Media type of the body
+     * @param headers Request headers
+     * @param entityStream Body
+     * @return Parsed body
+     * @throws IOException if the body could not be read
+     */
+    private JsonBody read(MediaType mediaType, MultivaluedMap<String, String> headers, InputStream entityStream)
+            throws IOException {
+        return reader.readFrom(JsonBody.class, JsonBody.class, null, mediaType, headers, entityStream);
+    }
+
+    /**
+     * Checks that reading a body fails with a status.
+     *
+     * @param expected Expected status
+     * @param mediaType Media type of the body
+     * @param headers Request headers
+     * @param entityStream Body
+     * @throws IOException if the body could not be read
+     */
+    private void assertStatus(
+            Response.Status expected, MediaType mediaType, MultivaluedMap<String, String> headers,
+            InputStream entityStream) throws IOException {
+        try {
+            read(mediaType, headers, entityStream);
+            fail("Body was accepted");
+        } catch (final WebServiceException e) {
+            assertEquals(expected, e.getStatus());
+        }
+    }
+
+    /**
+     * Creates the JSON media type with a charset.
+     *
+     * @param charset Name of the charset
+     * @return Media type
+     */
+    private static MediaType jsonWithCharset(String charset) {
+        return new MediaType(
+                MediaType.APPLICATION_JSON_TYPE.getType(), MediaType.APPLICATION_JSON_TYPE.getSubtype(),
+                Collections.singletonMap(CHARSET_PARAM, charset));
+    }
+
+    /**
+     * Creates request headers.
+     *
+     * @param contentLength Content-Length header, or null to leave it out
+     * @return Headers
+     */
+    private static MultivaluedMap<String, String> headers(String contentLength) {
+        final MultivaluedMap<String, String> headers = new MultivaluedMapImpl<>();
+        if (contentLength != null) {
+            headers.putSingle(HttpHeaders.CONTENT_LENGTH, contentLength);
+        }
+
+        return headers;
+    }
+
+    /**
+     * Creates a UTF-8 body.
+     *
+     * @param text Text of the body
+     * @return Stream of the body
+     */
+    private static InputStream stream(String text) {
+        return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,272 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample.rest.pool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.thrift.TException;
+import org.apache.thrift.TServiceClient;
+import org.apache.thrift.protocol.TBinaryProtocol;
+import org.apache.thrift.transport.TMemoryBuffer;
+import org.apache.thrift.transport.TTransportException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ezbake.common.properties.EzProperties;
+
+/**
+ * Unit tests for {@link ClientLeasePool}.
+ */
+public final class ClientLeasePoolTest {
+    private static final String SERVICE = "service";
+    private static final String OTHER_SERVICE = "otherService";
+    private static final String APP = "app";
+    private static final String ONE = "1";
+
+    private static int poolCount;
+
+    private FakeClientSource source;
+    private ClientLeasePool pool;
+
+    /**
+     * Creates a pool that allows one client per service and gives up on leases straight away.
+     */
+    @Before
+    public void setUp() {
+        final Properties props = new Properties();
+        props.setProperty(String.format(ClientLeasePool.MAX_CLIENTS_PROP_FORMAT, SERVICE), ONE);
+        props.setProperty(String.format(ClientLeasePool.MAX_CLIENTS_PROP_FORMAT, OTHER_SERVICE), ONE);
+        props.setProperty(String.format(ClientLeasePool.WARM_UP_CLIENTS_PROP_FORMAT, SERVICE), ONE);
+        props.setProperty(ClientLeasePool.LEASE_TIMEOUT_MILLIS_PROP, "0");
+        props.setProperty(ClientLeasePool.HEALTH_CHECK_SECONDS_PROP, "3600");
+
+        source = new FakeClientSource();
+        pool = new ClientLeasePool("test" + poolCount++, source, new EzProperties(props, true));
+    }
+
+    /**
+     * Closes the pool.
+     */
+    @After
+    public void tearDown() {
+        pool.close();
+    }
+
+    /**
+     * Tests that a service at its limit fails further leases without affecting other services.
+     *
+     * @throws Exception if an error occurred
+     */
+    @Test
+    public void testLimitPerService() throws Exception {
+        try (ClientLease<TestClient> lease = pool.lease(SERVICE, TestClient.class)) {
+            try {
+                pool.lease(SERVICE, TestClient.class);
+                fail("Leased a client over the limit");
+            } catch (final TException e) {
+                assertEquals(1, pool.getFailedLeases());
+            }
+
+            pool.lease(OTHER_SERVICE, TestClient.class).close();
+            assertEquals(1, pool.getActiveLeases());
+        }
+
+        pool.lease(SERVICE, TestClient.class).close();
+        assertEquals(0, pool.getActiveLeases());
+        assertEquals(3, pool.getTotalLeases());
+        assertEquals(2, pool.getPeakActiveLeases());
+    }
+
+    /**
+     * Tests that a lease returns its client once however often it is closed, and discards it if invalidated.
+     *
+     * @throws Exception if an error occurred
+     */
+    @Test
+    public void testCloseReturnsClient() throws Exception {
+        final ClientLease<TestClient> lease = pool.lease(SERVICE, TestClient.class);
+        lease.close();
+        lease.close();
+
+        assertEquals(1, source.returned.size());
+        assertSame(lease.getClient(), source.returned.get(0));
+
+        final ClientLease<TestClient> broken = pool.lease(SERVICE, TestClient.class);
+        broken.invalidate();
+        broken.close();
+
+        assertEquals(1, source.returned.size());
+        assertEquals(1, source.broken.size());
+        assertSame(broken.getClient(), source.broken.get(0));
+    }
+
+    /**
+     * Tests that a client whose call failed is discarded rather than leased again.
+     *
+     * @throws Exception if an error occurred
+     */
+    @Test
+    public void testFailedClientNotLeasedAgain() throws Exception {
+        final TestClient failed;
+        try (ClientLease<TestClient> lease = pool.lease(SERVICE, TestClient.class)) {
+            failed = lease.getClient();
+            try {
+                failed.call();
+                fail("Call succeeded");
+            } catch (final TException e) {
+                lease.invalidate();
+            }
+        }
+
+        try (ClientLease<TestClient> lease = pool.lease(SERVICE, TestClient.class)) {
+            assertNotSame(failed, lease.getClient());
+        }
+
+        assertEquals(Collections.singletonList(failed), source.broken);
+    }
+
+    /**
+     * Tests that a client leased by a thread that was interrupted is discarded rather than leased again.
+     *
+     * @throws Exception if an error occurred
+     */
+    @Test
+    public void testInterruptedClientNotLeasedAgain() throws Exception {
+        final TestClient interrupted;
+        try (ClientLease<TestClient> lease = pool.lease(SERVICE, TestClient.class)) {
+            interrupted = lease.getClient();
+            Thread.currentThread().interrupt();
+        } finally {
+            Thread.interrupted();
+        }
+
+        try (ClientLease<TestClient> lease = pool.lease(SERVICE, TestClient.class)) {
+            assertNotSame(interrupted, lease.getClient());
+        }
+
+        assertEquals(Collections.singletonList(interrupted), source.broken);
+    }
+
+    /**
+     * Tests that a client that could not be borrowed does not use up the service's limit.
+     *
+     * @throws Exception if an error occurred
+     */
+    @Test
+    public void testFailedBorrowReleasesLimit() throws Exception {
+        source.failure = new TException(SERVICE);
+        try {
+            pool.lease(SERVICE, TestClient.class);
+            fail("Leased a client that could not be borrowed");
+        } catch (final TException e) {
+            assertSame(source.failure, e);
+        }
+
+        source.failure = null;
+        pool.lease(SERVICE, TestClient.class).close();
+        assertEquals(1, pool.getFailedLeases());
+        assertEquals(1, pool.getTotalLeases());
+    }
+
+    /**
+     * Tests that registering a service borrows and returns the configured number of clients.
+     */
+    @Test
+    public void testRegisterWarmsUp() {
+        pool.register(APP, SERVICE, TestClient.class);
+        pool.register(APP, SERVICE, TestClient.class);
+
+        assertEquals(1, source.borrowed);
+        assertEquals(1, source.returned.size());
+        assertEquals(0, pool.getActiveLeases());
+    }
+
+    /**
+     * Source of clients that records what was returned to it, and hands returned clients out again like a pool.
+     */
+    private static final class FakeClientSource implements ClientSource {
+        private final Deque<TServiceClient> idle = new ArrayDeque<>();
+        private final List<TServiceClient> returned = new ArrayList<>();
+        private final List<TServiceClient> broken = new ArrayList<>();
+        private int borrowed;
+        private TException failure;
+
+        @Override
+        public <T extends TServiceClient> T getClient(String appName, String serviceName, Class<T> clientClass)
+                throws TException {
+            if (failure != null) {
+                throw failure;
+            }
+
+            borrowed++;
+            if (!idle.isEmpty()) {
+                return clientClass.cast(idle.pop());
+            }
+
+            try {
+                return clientClass.newInstance();
+            } catch (final ReflectiveOperationException e) {
+                throw new TException(e);
+            }
+        }
+
+        @Override
+        public void returnToPool(TServiceClient client) {
+            returned.add(client);
+            idle.push(client);
+        }
+
+        @Override
+        public void returnBrokenToPool(TServiceClient client) {
+            broken.add(client);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * Client whose only call fails as if its connection was lost.
+     */
+    public static final class TestClient extends TServiceClient {
+        /**
+         * Constructor.
+         */
+        public TestClient() {
+            super(new TBinaryProtocol(new TMemoryBuffer(1)));
+        }
+
+        /**
+         * Makes a call.
+         *
+         * @throws TTransportException always
+         */
+        public void call() throws TTransportException {
+            throw new TTransportException(SERVICE);
+        }
+    }
+}
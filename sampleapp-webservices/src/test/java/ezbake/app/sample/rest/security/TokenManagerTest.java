@@ -0,0 +1,253 @@
+/*   Copyright (C) 2013-2014 Computer Sciences Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+
+package ezbake.app.sample.rest.security;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.Properties;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.ws.rs.core.Response;
+
+import org.junit.After;
+import org.junit.Test;
+
+import ezbake.app.sample.rest.WebServiceException;
+import ezbake.base.thrift.EzSecurityPrincipal;
+import ezbake.base.thrift.EzSecurityToken;
+import ezbake.base.thrift.EzSecurityTokenException;
+import ezbake.base.thrift.ValidityCaveats;
+import ezbake.common.properties.EzProperties;
+
+/**
+ * Unit tests for {@link TokenManager}.
+ */
+public final class TokenManagerTest {
+    private static final String SESSION_ID = "session";
+    private static final String PRINCIPAL = "user";
+    private static final long WAIT_SECONDS = 10;
+
+    /**
+     * Lifetime of tokens that are not close to expiry, well outside the default refresh window.
+     */
+    private static final long LONG_LIFETIME_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    /**
+     * Lifetime of tokens inside the default refresh window.
+     */
+    private static final long SHORT_LIFETIME_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    /**
+     * Released at the end of each test so that blocked refreshes finish.
+     */
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    /**
+     * Releases blocked refreshes.
+     */
+    @After
+    public void tearDown() {
+        release.countDown();
+    }
+
+    /**
+     * Tests that a session token is validated once and then served from the cache.
+     */
+    @Test
+    public void testValidatedOnce() {
+        final FakeIssuer issuer = new FakeIssuer(true, null);
+        final TokenManager manager = createManager(issuer);
+        final EzSecurityToken token = createToken(LONG_LIFETIME_MILLIS);
+
+        assertSame(token, manager.getToken(SESSION_ID, token));
+        assertSame(token, manager.getToken(SESSION_ID, token));
+        assertEquals(1, issuer.validations.get());
+        assertEquals(0, issuer.refreshes.get());
+    }
+
+    /**
+     * Tests that a session without a token, or with an invalid token, is forbidden.
+     */
+    @Test
+    public void testMissingOrInvalidTokenForbidden() {
+        final TokenManager manager = createManager(new FakeIssuer(false, null));
+
+        assertForbidden(manager, null);
+        assertForbidden(manager, createToken(LONG_LIFETIME_MILLIS));
+    }
+
+    /**
+     * Tests that a new token placed in the session by the login filter replaces the managed token.
+     */
+    @Test
+    public void testNewSessionTokenReplaces() {
+        final FakeIssuer issuer = new FakeIssuer(true, null);
+        final TokenManager manager = createManager(issuer);
+        manager.getToken(SESSION_ID, createToken(LONG_LIFETIME_MILLIS));
+
+        final EzSecurityToken replacement = createToken(LONG_LIFETIME_MILLIS);
+        assertSame(replacement, manager.getToken(SESSION_ID, replacement));
+        assertEquals(2, issuer.validations.get());
+    }
+
+    /**
+     * Tests that an expired token is refreshed on the caller's thread, and that the session is forbidden if the
+     * refresh fails.
+     *
+     * @throws Exception if an error occurred
+     */
+    @Test
+    public void testExpiredRefreshedNow() throws Exception {
+        final FakeIssuer issuer = new FakeIssuer(true, null);
+        final TokenManager manager = createManager(issuer);
+        final EzSecurityToken expired = createToken(-1);
+
+        final EzSecurityToken refreshed = manager.getToken(SESSION_ID, expired);
+        assertSame(issuer.issued.poll(), refreshed);
+        assertSame(refreshed, manager.getToken(SESSION_ID, expired));
+        assertEquals(1, issuer.refreshes.get());
+
+        final FakeIssuer failing = new FakeIssuer(true, null);
+        failing.refreshable = false;
+        assertForbidden(createManager(failing), createToken(-1));
+    }
+
+    /**
+     * Tests that a token close to expiry keeps being served while a single refresh runs in the background, and that
+     * the refreshed token is served once the refresh finishes.
+     *
+     * @throws Exception if an error occurred
+     */
+    @Test
+    public void testRefreshedAheadOfExpiry() throws Exception {
+        final FakeIssuer issuer = new FakeIssuer(true, release);
+        final TokenManager manager = createManager(issuer);
+        final EzSecurityToken expiring = createToken(SHORT_LIFETIME_MILLIS);
+
+        assertSame(expiring, manager.getToken(SESSION_ID, expiring));
+        issuer.refreshing.await();
+        assertSame(expiring, manager.getToken(SESSION_ID, expiring));
+
+        release.countDown();
+        final EzSecurityToken refreshed = issuer.issued.poll(WAIT_SECONDS, TimeUnit.SECONDS);
+        final long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(WAIT_SECONDS);
+        while (manager.getToken(SESSION_ID, expiring) != refreshed && System.currentTimeMillis() < deadline) {
+            Thread.yield();
+        }
+
+        assertSame(refreshed, manager.getToken(SESSION_ID, expiring));
+        assertEquals(1, issuer.refreshes.get());
+    }
+
+    /**
+     * Checks that a session token is forbidden.
+     *
+     * @param manager Manager to ask for the token
+     * @param token Token placed in the session
+     */
+    private static void assertForbidden(TokenManager manager, EzSecurityToken token) {
+        try {
+            manager.getToken(SESSION_ID, token);
+            fail("Token was accepted");
+        } catch (final WebServiceException e) {
+            assertEquals(Response.Status.FORBIDDEN, e.getStatus());
+        }
+    }
+
+    /**
+     * Creates a manager with the default configuration.
+     *
+     * @param issuer Issuer of the managed tokens
+     * @return Token manager
+     */
+    private static TokenManager createManager(TokenIssuer issuer) {
+        return new TokenManager(new EzProperties(new Properties(), true), issuer);
+    }
+
+    /**
+     * Creates a token.
+     *
+     * @param lifetimeMillis Time until the token expires, negative for an expired token
+     * @return Token
+     */
+    private static EzSecurityToken createToken(long lifetimeMillis) {
+        return new EzSecurityToken()
+                .setValidity(new ValidityCaveats().setNotAfter(System.currentTimeMillis() + lifetimeMillis))
+                .setTokenPrincipal(new EzSecurityPrincipal().setPrincipal(PRINCIPAL));
+    }
+
+    /**
+     * Issuer that counts its calls and refreshes tokens with a long lifetime.
+     */
+    private static final class FakeIssuer implements TokenIssuer {
+        private final AtomicInteger validations = new AtomicInteger();
+        private final AtomicInteger refreshes = new AtomicInteger();
+        private final CountDownLatch refreshing = new CountDownLatch(1);
+        private final BlockingQueue<EzSecurityToken> issued = new LinkedBlockingQueue<>();
+        private final boolean valid;
+        private final CountDownLatch release;
+        private volatile boolean refreshable = true;
+
+        /**
+         * Constructor.
+         *
+         * @param valid Whether tokens pass validation
+         * @param release Latch that refreshes wait for, or null to refresh straight away
+         */
+        FakeIssuer(boolean valid, CountDownLatch release) {
+            this.valid = valid;
+            this.release = release;
+        }
+
+        @Override
+        public void validate(EzSecurityToken token) throws EzSecurityTokenException {
+            validations.incrementAndGet();
+            if (!valid) {
+                throw new EzSecurityTokenException("Invalid token");
+            }
+        }
+
+        @Override
+        public EzSecurityToken refresh(EzSecurityToken token) throws EzSecurityTokenException {
+            refreshes.incrementAndGet();
+            refreshing.countDown();
+            if (release != null) {
+                try {
+                    release.await();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            if (!refreshable) {
+                throw new EzSecurityTokenException("Cannot refresh token");
+            }
+
+            final EzSecurityToken refreshed = createToken(LONG_LIFETIME_MILLIS);
+            issued.add(refreshed);
+            return refreshed;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}